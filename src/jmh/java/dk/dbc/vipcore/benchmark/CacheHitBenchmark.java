@@ -0,0 +1,158 @@
+/*
+ * Copyright Dansk Bibliotekscenter a/s. Licensed under GNU GPL v3
+ *  See license text at https://opensource.dbc.dk/licenses/gpl-3.0
+ */
+
+package dk.dbc.vipcore.benchmark;
+
+import com.github.tomakehurst.wiremock.WireMockServer;
+import dk.dbc.commons.useragent.UserAgent;
+import dk.dbc.httpclient.HttpClient;
+import dk.dbc.vipcore.VipCoreConnector;
+import dk.dbc.vipcore.agencyinfo.VipCoreAgencyInfoConnector;
+import dk.dbc.vipcore.exception.VipCoreException;
+import dk.dbc.vipcore.libraryrules.VipCoreLibraryRulesConnector;
+import dk.dbc.vipcore.marshallers.Information;
+import dk.dbc.vipcore.marshallers.LibraryRule;
+import dk.dbc.vipcore.marshallers.LibraryRulesRequest;
+import dk.dbc.vipcore.service.VipCoreServiceConnector;
+import jakarta.ws.rs.client.Client;
+import org.glassfish.jersey.client.ClientConfig;
+import org.glassfish.jersey.jackson.JacksonFeature;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import static com.github.tomakehurst.wiremock.core.WireMockConfiguration.options;
+
+/**
+ * Measures the cost of connector calls served from cache
+ * <p>
+ * The caches are warmed against a WireMock server replaying the recorded
+ * mappings in src/test/resources, so every measured call is a cache hit.
+ * The *Contended variants run the same call from 8 threads at once.
+ * </p>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CacheHitBenchmark {
+    private WireMockServer wireMockServer;
+    private VipCoreLibraryRulesConnector libraryRulesConnector;
+    private VipCoreServiceConnector serviceConnector;
+    private VipCoreAgencyInfoConnector agencyInfoConnector;
+    private LibraryRulesRequest imsLibraryRequest;
+
+    @Setup(Level.Trial)
+    public void setUp() throws VipCoreException {
+        wireMockServer = new WireMockServer(options().dynamicPort());
+        wireMockServer.start();
+        final String wireMockHost = "http://localhost:" + wireMockServer.port();
+        final Client client = HttpClient.newClient(new ClientConfig()
+                .register(new JacksonFeature()));
+        final UserAgent userAgent = new UserAgent("CacheHitBenchmark");
+        libraryRulesConnector = new VipCoreLibraryRulesConnector(client, userAgent, wireMockHost, 8, VipCoreConnector.TimingLogLevel.INFO);
+        serviceConnector = new VipCoreServiceConnector(client, userAgent, wireMockHost, 8, VipCoreConnector.TimingLogLevel.INFO);
+        agencyInfoConnector = new VipCoreAgencyInfoConnector(client, userAgent, wireMockHost, 8, VipCoreConnector.TimingLogLevel.INFO);
+
+        final LibraryRule libraryRuleIms = new LibraryRule();
+        libraryRuleIms.setName(VipCoreLibraryRulesConnector.Rule.IMS_LIBRARY.getValue());
+        libraryRuleIms.setBool(true);
+        imsLibraryRequest = new LibraryRulesRequest();
+        imsLibraryRequest.setLibraryRule(Collections.singletonList(libraryRuleIms));
+
+        // Warm the caches
+        libraryRulesConnector.getLibraryRulesByAgencyId("710100");
+        libraryRulesConnector.getLibraries(imsLibraryRequest);
+        serviceConnector.getInformation("010100");
+        agencyInfoConnector.getAgencyName("790900");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        libraryRulesConnector.close();
+        wireMockServer.stop();
+    }
+
+    @Benchmark
+    public boolean hasFeature() throws VipCoreException {
+        return libraryRulesConnector.hasFeature("710100", VipCoreLibraryRulesConnector.Rule.USE_ENRICHMENTS);
+    }
+
+    @Benchmark
+    public boolean hasFeatureByInt() throws VipCoreException {
+        return libraryRulesConnector.hasFeature(710100, VipCoreLibraryRulesConnector.Rule.USE_ENRICHMENTS);
+    }
+
+    @Benchmark
+    @Threads(8)
+    public boolean hasFeatureContended() throws VipCoreException {
+        return libraryRulesConnector.hasFeature("710100", VipCoreLibraryRulesConnector.Rule.USE_ENRICHMENTS);
+    }
+
+    @Benchmark
+    public Set<String> getAllowedLibraryRules() throws VipCoreException {
+        return libraryRulesConnector.getAllowedLibraryRules("710100");
+    }
+
+    @Benchmark
+    @Threads(8)
+    public Set<String> getAllowedLibraryRulesContended() throws VipCoreException {
+        return libraryRulesConnector.getAllowedLibraryRules("710100");
+    }
+
+    @Benchmark
+    public Set<String> getLibraries() throws VipCoreException {
+        return libraryRulesConnector.getLibraries(imsLibraryRequest);
+    }
+
+    @Benchmark
+    @Threads(8)
+    public Set<String> getLibrariesContended() throws VipCoreException {
+        return libraryRulesConnector.getLibraries(imsLibraryRequest);
+    }
+
+    @Benchmark
+    public Information getInformation() throws VipCoreException {
+        return serviceConnector.getInformation("010100");
+    }
+
+    @Benchmark
+    public Information getInformationByInt() throws VipCoreException {
+        return serviceConnector.getInformation(10100);
+    }
+
+    @Benchmark
+    @Threads(8)
+    public Information getInformationContended() throws VipCoreException {
+        return serviceConnector.getInformation("010100");
+    }
+
+    @Benchmark
+    public String getAgencyName() throws VipCoreException {
+        return agencyInfoConnector.getAgencyName("790900");
+    }
+
+    @Benchmark
+    @Threads(8)
+    public String getAgencyNameContended() throws VipCoreException {
+        return agencyInfoConnector.getAgencyName("790900");
+    }
+}
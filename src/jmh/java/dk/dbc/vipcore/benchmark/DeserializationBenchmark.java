@@ -0,0 +1,121 @@
+/*
+ * Copyright Dansk Bibliotekscenter a/s. Licensed under GNU GPL v3
+ *  See license text at https://opensource.dbc.dk/licenses/gpl-3.0
+ */
+
+package dk.dbc.vipcore.benchmark;
+
+import dk.dbc.commons.jsonb.JSONBContext;
+import dk.dbc.commons.jsonb.JSONBException;
+import dk.dbc.vipcore.codec.AgencyInfoCodec;
+import dk.dbc.vipcore.codec.JsonCodec;
+import dk.dbc.vipcore.codec.LibraryRulesCodec;
+import dk.dbc.vipcore.codec.ServiceCodec;
+import dk.dbc.vipcore.exception.VipCoreException;
+import dk.dbc.vipcore.marshallers.AgencyInfoResponse;
+import dk.dbc.vipcore.marshallers.Information;
+import dk.dbc.vipcore.marshallers.LibraryRules;
+import dk.dbc.vipcore.marshallers.LibraryRulesResponse;
+import dk.dbc.vipcore.marshallers.PickupAgency;
+import dk.dbc.vipcore.marshallers.ServiceResponse;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures deserialization of the recorded VipCore response bodies
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class DeserializationBenchmark {
+    private static final Path RECORDED_BODIES = Path.of("src", "test", "resources", "__files");
+
+    private final JSONBContext jsonbContext = new JSONBContext();
+
+    /* Rules for a single agency (710100) */
+    private String libraryRulesSingleAgency;
+    /* Rule query cataloging_template_set=fbs, about 186 KB */
+    private String libraryRulesQuery;
+    private String service;
+    private String agencyInfo;
+    private byte[] libraryRulesSingleAgencyBytes;
+    private byte[] libraryRulesQueryBytes;
+    private byte[] serviceBytes;
+    private byte[] agencyInfoBytes;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        libraryRulesSingleAgency = readBody("body-1.0-api-libraryrules-NYAR7.json");
+        libraryRulesQuery = readBody("body-1.0-api-libraryrules-aBXHL.json");
+        service = readBody("body-1.0-api-service-6vNkY.json");
+        agencyInfo = readBody("body-1.0-api-agencyinfo-a1iiy.json");
+        libraryRulesSingleAgencyBytes = libraryRulesSingleAgency.getBytes(StandardCharsets.UTF_8);
+        libraryRulesQueryBytes = libraryRulesQuery.getBytes(StandardCharsets.UTF_8);
+        serviceBytes = service.getBytes(StandardCharsets.UTF_8);
+        agencyInfoBytes = agencyInfo.getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public LibraryRulesResponse libraryRulesSingleAgency() throws JSONBException {
+        return jsonbContext.unmarshall(libraryRulesSingleAgency, LibraryRulesResponse.class);
+    }
+
+    @Benchmark
+    public LibraryRulesResponse libraryRulesQuery() throws JSONBException {
+        return jsonbContext.unmarshall(libraryRulesQuery, LibraryRulesResponse.class);
+    }
+
+    @Benchmark
+    public ServiceResponse service() throws JSONBException {
+        return jsonbContext.unmarshall(service, ServiceResponse.class);
+    }
+
+    @Benchmark
+    public AgencyInfoResponse agencyInfo() throws JSONBException {
+        return jsonbContext.unmarshall(agencyInfo, AgencyInfoResponse.class);
+    }
+
+    @Benchmark
+    public List<LibraryRules> libraryRulesSingleAgencyStreaming() throws VipCoreException {
+        return JsonCodec.decode(libraryRulesSingleAgencyBytes, LibraryRulesCodec::readLibraryRules);
+    }
+
+    @Benchmark
+    public Set<String> libraryRulesQueryAgencyIdsStreaming() throws VipCoreException {
+        return JsonCodec.decode(libraryRulesQueryBytes, LibraryRulesCodec::readAgencyIds);
+    }
+
+    @Benchmark
+    public Information serviceInformationStreaming() throws VipCoreException {
+        return JsonCodec.decode(serviceBytes, ServiceCodec::readInformation);
+    }
+
+    @Benchmark
+    public PickupAgency agencyInfoPickupAgencyStreaming() throws VipCoreException {
+        return JsonCodec.decode(agencyInfoBytes, AgencyInfoCodec::readPickupAgency);
+    }
+
+    private static String readBody(String fileName) throws IOException {
+        return Files.readString(RECORDED_BODIES.resolve(fileName), StandardCharsets.UTF_8);
+    }
+}
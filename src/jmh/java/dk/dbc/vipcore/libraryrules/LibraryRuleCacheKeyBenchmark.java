@@ -0,0 +1,66 @@
+/*
+ * Copyright Dansk Bibliotekscenter a/s. Licensed under GNU GPL v3
+ *  See license text at https://opensource.dbc.dk/licenses/gpl-3.0
+ */
+
+package dk.dbc.vipcore.libraryrules;
+
+import dk.dbc.vipcore.marshallers.LibraryRule;
+import dk.dbc.vipcore.marshallers.LibraryRulesRequest;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures building the cache key of getLibraries rule queries
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class LibraryRuleCacheKeyBenchmark {
+    private LibraryRulesRequest singleRuleRequest;
+    private LibraryRulesRequest combinedRulesRequest;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        final LibraryRule catalogingTemplateSet = new LibraryRule();
+        catalogingTemplateSet.setName(VipCoreLibraryRulesConnector.Rule.CATALOGING_TEMPLATE_SET.getValue());
+        catalogingTemplateSet.setString("fbs");
+        singleRuleRequest = new LibraryRulesRequest();
+        singleRuleRequest.setLibraryRule(Collections.singletonList(catalogingTemplateSet));
+
+        final LibraryRule imsLibrary = new LibraryRule();
+        imsLibrary.setName(VipCoreLibraryRulesConnector.Rule.IMS_LIBRARY.getValue());
+        imsLibrary.setBool(true);
+        final LibraryRule createEnrichments = new LibraryRule();
+        createEnrichments.setName(VipCoreLibraryRulesConnector.Rule.CREATE_ENRICHMENTS.getValue());
+        createEnrichments.setBool(true);
+        combinedRulesRequest = new LibraryRulesRequest();
+        combinedRulesRequest.setLibraryRule(Arrays.asList(imsLibrary, createEnrichments));
+    }
+
+    @Benchmark
+    public String singleRule() {
+        return VipCoreLibraryRulesConnector.createLibraryRuleCacheKey(singleRuleRequest);
+    }
+
+    @Benchmark
+    public String combinedRules() {
+        return VipCoreLibraryRulesConnector.createLibraryRuleCacheKey(combinedRulesRequest);
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright Dansk Bibliotekscenter a/s. Licensed under GNU GPL v3
+ *  See license text at https://opensource.dbc.dk/licenses/gpl-3.0
+ */
+
+package dk.dbc.vipcore;
+
+import dk.dbc.vipcore.deadline.Deadline;
+import io.opentelemetry.context.Scope;
+import jakarta.ws.rs.client.ClientRequestContext;
+import jakarta.ws.rs.client.ClientRequestFilter;
+import jakarta.ws.rs.core.Response;
+import org.glassfish.jersey.client.ClientProperties;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Jersey client filter setting the connect and read timeouts of each HTTP attempt made by a connector
+ * <p>
+ * The timeouts are set as properties of the single request, which take precedence over those
+ * of the client, so connectors sharing a client each keep their own timeouts. Under a deadline
+ * the timeouts are shortened to the time remaining, and an attempt starting after the deadline,
+ * e.g. a retry, is aborted with status 504. Requests not issued from within a connector call
+ * pass through untouched, so the filter is safe to register on a client shared with other code.
+ * </p>
+ */
+class HttpTimeoutsFilter implements ClientRequestFilter {
+    private static final ThreadLocal<Timeouts> CURRENT = new ThreadLocal<>();
+
+    /**
+     * Applies timeouts to the requests issued by the calling thread until the returned scope is closed
+     *
+     * @param connectMillis connect timeout in milliseconds, zero for no timeout
+     * @param readMillis    read timeout in milliseconds, zero for no timeout
+     * @param deadline      deadline of the call, or null
+     * @return scope to close once the requests are done
+     */
+    static Scope apply(int connectMillis, int readMillis, Deadline deadline) {
+        final Timeouts previous = CURRENT.get();
+        CURRENT.set(new Timeouts(connectMillis, readMillis, deadline));
+        return () -> {
+            if (previous == null) {
+                CURRENT.remove();
+            } else {
+                CURRENT.set(previous);
+            }
+        };
+    }
+
+    /**
+     * Shortens the delay before a retry of a request issued by the calling thread to the time
+     * remaining before its deadline, so the retry starts no later than the deadline and is aborted
+     *
+     * @param delay retry delay of the retry policy
+     * @return the delay, at most the time remaining before the deadline of the current request
+     */
+    static Duration retryDelay(Duration delay) {
+        final Timeouts timeouts = CURRENT.get();
+        if (timeouts == null || timeouts.deadline == null) {
+            return delay;
+        }
+        final Duration remaining = timeouts.deadline.remaining();
+        return remaining.compareTo(delay) < 0 ? remaining : delay;
+    }
+
+    @Override
+    public void filter(ClientRequestContext requestContext) {
+        final Timeouts timeouts = CURRENT.get();
+        if (timeouts == null) {
+            return;
+        }
+        int connectMillis = timeouts.connectMillis;
+        int readMillis = timeouts.readMillis;
+        if (timeouts.deadline != null) {
+            if (timeouts.deadline.isExpired()) {
+                requestContext.abortWith(Response.status(Response.Status.GATEWAY_TIMEOUT).build());
+                return;
+            }
+            final int remainingMillis = (int) Math.min(Integer.MAX_VALUE,
+                    Math.max(1, TimeUnit.NANOSECONDS.toMillis(timeouts.deadline.remainingNanos())));
+            connectMillis = connectMillis == 0 ? remainingMillis : Math.min(connectMillis, remainingMillis);
+            readMillis = readMillis == 0 ? remainingMillis : Math.min(readMillis, remainingMillis);
+        }
+        requestContext.setProperty(ClientProperties.CONNECT_TIMEOUT, connectMillis);
+        requestContext.setProperty(ClientProperties.READ_TIMEOUT, readMillis);
+    }
+
+    private static final class Timeouts {
+        private final int connectMillis;
+        private final int readMillis;
+        private final Deadline deadline;
+
+        private Timeouts(int connectMillis, int readMillis, Deadline deadline) {
+            this.connectMillis = connectMillis;
+            this.readMillis = readMillis;
+            this.deadline = deadline;
+        }
+    }
+}
@@ -3,15 +3,31 @@ package dk.dbc.vipcore;
 import dk.dbc.commons.useragent.UserAgent;
 import dk.dbc.httpclient.FailSafeHttpClient;
 import dk.dbc.httpclient.HttpPost;
-import dk.dbc.vipcore.dto.ErrorMessageDTO;
-import dk.dbc.vipcore.exception.AgencyNotFoundException;
-import dk.dbc.vipcore.exception.AuthenticationErrorException;
-import dk.dbc.vipcore.exception.ErrorInRequestException;
-import dk.dbc.vipcore.exception.NoAgenciesFoundException;
-import dk.dbc.vipcore.exception.NoUserIdSelectedException;
-import dk.dbc.vipcore.exception.ProfileNotFoundException;
+import dk.dbc.vipcore.bulkhead.Bulkhead;
+import dk.dbc.vipcore.bulkhead.BulkheadPolicy;
+import dk.dbc.vipcore.bulkhead.Bulkheads;
+import dk.dbc.vipcore.bulkhead.Priority;
+import dk.dbc.vipcore.cache.AgencyCache;
+import dk.dbc.vipcore.cache.AgencyIds;
+import dk.dbc.vipcore.cache.CachePolicy;
+import dk.dbc.vipcore.cache.CacheSnapshot;
+import dk.dbc.vipcore.cache.CacheValueCodec;
+import dk.dbc.vipcore.cache.ServerCacheHint;
+import dk.dbc.vipcore.cache.SharedCache;
+import dk.dbc.vipcore.cache.VipCoreCache;
+import dk.dbc.vipcore.capture.CallCapture;
+import dk.dbc.vipcore.codec.ErrorMessageCodec;
+import dk.dbc.vipcore.codec.JsonCodec;
+import dk.dbc.vipcore.codec.RequestBodyTemplate;
+import dk.dbc.vipcore.codec.ResponseDecoder;
+import dk.dbc.vipcore.deadline.Deadline;
+import dk.dbc.vipcore.health.RequestStats;
+import dk.dbc.vipcore.exception.DeadlineExceededException;
 import dk.dbc.vipcore.exception.ServiceUnavailableException;
 import dk.dbc.vipcore.exception.VipCoreException;
+import dk.dbc.vipcore.tracing.VipCoreTracing;
+import io.opentelemetry.context.Context;
+import io.opentelemetry.context.Scope;
 import jakarta.ws.rs.ProcessingException;
 import jakarta.ws.rs.client.Client;
 import jakarta.ws.rs.core.Response;
@@ -21,8 +37,25 @@ import org.perf4j.log4j.Log4JStopWatch;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
 import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 public abstract class VipCoreConnector {
     public enum TimingLogLevel {
@@ -33,17 +66,39 @@ public abstract class VipCoreConnector {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(VipCoreConnector.class);
 
+    private static final Duration RETRY_DELAY = Duration.ofSeconds(10);
+
+    // Under a deadline the retry delay ends no later than the deadline, where the retry is aborted
     private static final RetryPolicy<Response> RETRY_POLICY = new RetryPolicy<Response>()
             .handle(ProcessingException.class)
             .handleResultIf(response -> response.getStatus() == 500
                     || response.getStatus() == 502)
-            .withDelay(Duration.ofSeconds(10))
+            .withDelay(RETRY_DELAY)
+            .withDelay((response, failure, context) -> HttpTimeoutsFilter.retryDelay(RETRY_DELAY))
             .withMaxRetries(3);
 
+    // Requests with a deadline run on virtual threads, as interrupting a virtual thread
+    // blocked in socket I/O closes the socket, which cancels the request in flight
+    private static final ExecutorService DEADLINE_EXECUTOR =
+            Context.taskWrapping(Executors.newVirtualThreadPerTaskExecutor());
+
     protected final FailSafeHttpClient failSafeHttpClient;
     private final String baseUrl;
     private final LogLevelMethod logger;
-
+    private final ExecutorService executor;
+    private final List<VipCoreCache<String, ?>> caches = new ArrayList<>();
+    private final Bulkheads bulkheads = new Bulkheads();
+    private final RequestStats requestStats = new RequestStats();
+    private volatile boolean lazyDecoding;
+    private volatile Duration defaultTimeout;
+    private volatile int connectTimeoutMillis;
+    private volatile int readTimeoutMillis;
+    // True for the default retry policy, whose retry delays end by the deadline
+    private volatile boolean retriesWithinDeadline;
+    private volatile long timingLogThresholdMs = LOG_DURATION_THRESHOLD_MS;
+    private volatile CallCapture callCapture;
+    private volatile boolean stacklessErrors;
+    private volatile boolean closed;
 
     /**
      * Returns new instance with default retry policy
@@ -53,6 +108,7 @@ public abstract class VipCoreConnector {
      */
     protected VipCoreConnector(Client httpClient, UserAgent userAgent, String baseUrl) {
         this(FailSafeHttpClient.create(httpClient, userAgent, RETRY_POLICY), baseUrl, TimingLogLevel.INFO);
+        retriesWithinDeadline = true;
     }
 
     /**
@@ -64,6 +120,21 @@ public abstract class VipCoreConnector {
      */
     protected VipCoreConnector(Client httpClient, UserAgent userAgent, String baseUrl, TimingLogLevel level) {
         this(FailSafeHttpClient.create(httpClient, userAgent, RETRY_POLICY), baseUrl, level);
+        retriesWithinDeadline = true;
+    }
+
+    /**
+     * Returns new instance with default retry policy and executor for fan-out work
+     *
+     * @param httpClient web resources client
+     * @param baseUrl    base URL for vipcore service endpoint
+     * @param level      timings log level
+     * @param executor   executor for fan-out work, or null to run bulk lookups sequentially
+     */
+    protected VipCoreConnector(Client httpClient, UserAgent userAgent, String baseUrl, TimingLogLevel level,
+                               ExecutorService executor) {
+        this(FailSafeHttpClient.create(httpClient, userAgent, RETRY_POLICY), baseUrl, level, executor);
+        retriesWithinDeadline = true;
     }
 
     /**
@@ -84,6 +155,24 @@ public abstract class VipCoreConnector {
      * @param level              timings log level
      */
     protected VipCoreConnector(FailSafeHttpClient failSafeHttpClient, String baseUrl, TimingLogLevel level) {
+        this(failSafeHttpClient, baseUrl, level, null);
+    }
+
+    /**
+     * Returns new instance with custom retry policy and executor for fan-out work
+     * <p>
+     * Bulk lookups run their single lookups in parallel on the executor. Passing
+     * {@code Executors.newVirtualThreadPerTaskExecutor()} runs them on virtual threads.
+     * The executor is not shut down by {@link #close()}.
+     * </p>
+     *
+     * @param failSafeHttpClient web resources client with custom retry policy
+     * @param baseUrl            base URL for vipcore service endpoint
+     * @param level              timings log level
+     * @param executor           executor for fan-out work, or null to run bulk lookups sequentially
+     */
+    protected VipCoreConnector(FailSafeHttpClient failSafeHttpClient, String baseUrl, TimingLogLevel level,
+                               ExecutorService executor) {
         Objects.requireNonNull(failSafeHttpClient, "failSafeHttpClient must not be null");
         Objects.requireNonNull(baseUrl, "baseUrl must not be null");
         if (baseUrl.isEmpty()) {
@@ -91,6 +180,8 @@ public abstract class VipCoreConnector {
         }
         this.failSafeHttpClient = failSafeHttpClient;
         this.baseUrl = baseUrl;
+        // Propagate the tracing context to fan-out tasks
+        this.executor = executor == null ? null : Context.taskWrapping(executor);
         switch (level) {
             case TRACE:
                 logger = LOGGER::trace;
@@ -114,24 +205,568 @@ public abstract class VipCoreConnector {
     }
 
     public void close() {
+        closed = true;
         failSafeHttpClient.getClient().close();
     }
 
+    public boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * @return latencies and outcomes of the recent requests to VipCore, cache hits not included
+     */
+    public RequestStats getRequestStats() {
+        return requestStats;
+    }
+
+    /**
+     * Enables lazy decoding of cached responses
+     * <p>
+     * When enabled, cache misses keep the compressed raw response body and decode it on
+     * demand, keeping the decoded value only weakly referenced. This saves heap for entries
+     * rarely read after loading, and with prefetching also the decoding CPU at load time,
+     * at the cost of decoding again when a collected value is read. Entries cached before
+     * the switch are kept as they are.
+     * </p>
+     *
+     * @param lazyDecoding true to enable lazy decoding
+     */
+    public void setLazyDecoding(boolean lazyDecoding) {
+        this.lazyDecoding = lazyDecoding;
+    }
+
+    public boolean isLazyDecoding() {
+        return lazyDecoding;
+    }
+
+    /**
+     * Throws shared exceptions without stack trace for the expected, high-volume VipCore
+     * errors agency_not_found, error_in_request and service_unavailable
+     * <p>
+     * Saves filling in a stack trace for each of them, e.g. during a VipCore incident or a
+     * flood of unknown agency ids. The exceptions still have their error code, see
+     * {@link VipCoreException#getErrorCode()}.
+     * </p>
+     *
+     * @param stacklessErrors true to throw exceptions without stack trace
+     */
+    public void setStacklessErrors(boolean stacklessErrors) {
+        this.stacklessErrors = stacklessErrors;
+    }
+
+    public boolean isStacklessErrors() {
+        return stacklessErrors;
+    }
+
+    /**
+     * @param threshold requests taking less time are not timing logged
+     */
+    public void setTimingLogThreshold(Duration threshold) {
+        timingLogThresholdMs = threshold.toMillis();
+    }
+
+    public Duration getTimingLogThreshold() {
+        return Duration.ofMillis(timingLogThresholdMs);
+    }
+
+    /**
+     * Removes the entries of an agency from all caches keyed by agency id
+     *
+     * @param agencyId agency id
+     * @return number of entries removed
+     */
+    public int invalidateAgency(String agencyId) {
+        int removed = 0;
+        for (VipCoreCache<String, ?> cache : caches) {
+            if (cache instanceof AgencyCache && cache.getEntry(agencyId) != null) {
+                cache.invalidate(agencyId);
+                removed++;
+            }
+        }
+        return removed;
+    }
+
+    /**
+     * Removes all entries from all caches
+     */
+    public void invalidateAll() {
+        for (VipCoreCache<String, ?> cache : caches) {
+            cache.invalidateAll();
+        }
+    }
+
+    /**
+     * Captures every call of this connector, see {@link CallCapture}
+     * <p>
+     * The capture is not closed by {@link #close()}, and may be shared by several connectors.
+     * </p>
+     *
+     * @param callCapture the capture, or null to stop capturing
+     */
+    public void setCallCapture(CallCapture callCapture) {
+        this.callCapture = callCapture;
+    }
+
+    public CallCapture getCallCapture() {
+        return callCapture;
+    }
+
+    /**
+     * Sets the timeout of calls made outside the scope of a {@link Deadline}
+     * <p>
+     * Each call then gets a deadline the timeout from its start, covering waiting for a
+     * bulkhead, connecting, reading and all retries. Calls inside the scope of a deadline
+     * get the earlier of the two.
+     * </p>
+     * <p>
+     * A request under a deadline runs on a virtual thread, which is cancelled when the
+     * deadline passes, unless the HTTP timeouts bound it within the deadline. It then runs
+     * on the calling thread with its timeouts shortened to the time remaining, and the delay
+     * before a retry ends by the deadline, where the retry is aborted. Connectors with a
+     * custom retry policy always take the cancellable path, as their retry delays are unbounded.
+     * </p>
+     *
+     * @param defaultTimeout the timeout, or null for no timeout
+     */
+    public void setDefaultTimeout(Duration defaultTimeout) {
+        this.defaultTimeout = defaultTimeout;
+    }
+
+    public Duration getDefaultTimeout() {
+        return defaultTimeout;
+    }
+
+    /**
+     * Sets the connect and read timeouts of each single HTTP request of this connector
+     * <p>
+     * The timeouts are set on each request, so other connectors and code sharing the HTTP
+     * client keep their own timeouts. Calls under a deadline leaving time for both timeouts
+     * then run on the calling thread, see {@link #setDefaultTimeout(Duration)}.
+     * </p>
+     *
+     * @param connectTimeout connect timeout, or null for no timeout
+     * @param readTimeout    read timeout, or null for no timeout
+     */
+    public void setHttpTimeouts(Duration connectTimeout, Duration readTimeout) {
+        final Client client = failSafeHttpClient.getClient();
+        synchronized (client) {
+            if (!client.getConfiguration().isRegistered(HttpTimeoutsFilter.class)) {
+                client.register(new HttpTimeoutsFilter());
+            }
+        }
+        connectTimeoutMillis = connectTimeout == null ? 0 : (int) connectTimeout.toMillis();
+        readTimeoutMillis = readTimeout == null ? 0 : (int) readTimeout.toMillis();
+    }
+
+    /**
+     * Limits the requests of a priority to each endpoint path of this connector
+     * <p>
+     * Each path and priority gets its own concurrency pool and request quota, so e.g. batch
+     * requests limited to a few concurrent requests and a modest rate leave the remaining
+     * capacity of VipCore to interactive requests. Cache hits are never limited. The
+     * priority of a call is taken from the current context, see {@link Priority}.
+     * </p>
+     *
+     * @param priority the priority
+     * @param policy   the limits, or null to not limit the priority
+     */
+    public void setBulkheadPolicy(Priority priority, BulkheadPolicy policy) {
+        bulkheads.setPolicy(priority, policy);
+    }
+
+    /**
+     * Limits the requests of a priority to one endpoint path of this connector
+     *
+     * @param path     endpoint path, e.g. {@code 1.0/api/libraryrules}
+     * @param priority the priority
+     * @param policy   the limits, or null to use the limits of the priority
+     */
+    public void setBulkheadPolicy(String path, Priority priority, BulkheadPolicy policy) {
+        bulkheads.setPolicy(path, priority, policy);
+    }
+
+    public Bulkheads getBulkheads() {
+        return bulkheads;
+    }
+
+    /**
+     * @return the caches of this connector
+     */
+    public List<VipCoreCache<String, ?>> getCaches() {
+        return Collections.unmodifiableList(caches);
+    }
+
+    /**
+     * @param cacheName name of the cache
+     * @return the cache of this connector with the given name
+     * @throws IllegalArgumentException if the connector has no such cache
+     */
+    public VipCoreCache<String, ?> getCache(String cacheName) {
+        for (VipCoreCache<String, ?> cache : caches) {
+            if (cache.getName().equals(cacheName)) {
+                return cache;
+            }
+        }
+        throw new IllegalArgumentException("Unknown cache " + cacheName + " of " + getClass().getSimpleName());
+    }
+
+    /**
+     * Sets the expiry and size settings of a cache, entries already cached keep their expiry time
+     *
+     * @param cacheName name of the cache, see the cache name constants of the connector
+     * @param policy    the policy
+     * @throws IllegalArgumentException if the connector has no such cache
+     */
+    public void setCachePolicy(String cacheName, CachePolicy policy) {
+        getCache(cacheName).setPolicy(policy);
+    }
+
+    /**
+     * Sets a shared second cache tier for all caches of this connector
+     * <p>
+     * Cache misses are then looked up in the shared cache before calling VipCore, and
+     * loaded values are written to it, see {@link VipCoreCache#setSharedCache(SharedCache, Duration)}.
+     * Caches without a codec are left out.
+     * </p>
+     *
+     * @param sharedCache shared cache, or null to use no second tier
+     * @param timeout     maximum time to wait for a lookup in the shared cache, after which it counts as a miss
+     */
+    public void setSharedCache(SharedCache sharedCache, Duration timeout) {
+        for (VipCoreCache<String, ?> cache : caches) {
+            if (cache.getCodec() != null) {
+                cache.setSharedCache(sharedCache, timeout);
+            }
+        }
+    }
+
+    /**
+     * Writes the unexpired entries of all caches to a snapshot file
+     *
+     * @param file snapshot file, replaced atomically
+     * @return number of entries written
+     * @throws IOException if the snapshot could not be written
+     */
+    public int writeCacheSnapshot(Path file) throws IOException {
+        return CacheSnapshot.write(file, caches);
+    }
+
+    /**
+     * Restores the caches from a snapshot file, entries keep their remaining time-to-live
+     *
+     * @param file snapshot file
+     * @return number of entries restored
+     * @throws IOException if the snapshot could not be read
+     */
+    public int readCacheSnapshot(Path file) throws IOException {
+        return CacheSnapshot.read(file, caches);
+    }
+
+    /**
+     * Creates a cache which is included in cache snapshots of this connector
+     *
+     * @param name  name of the cache, unique within the connector
+     * @param ttl   time-to-live of entries
+     * @param codec binary codec of the values
+     * @return the cache
+     */
+    protected <V> VipCoreCache<String, V> createCache(String name, Duration ttl, CacheValueCodec<V> codec) {
+        final VipCoreCache<String, V> cache = new VipCoreCache<>(name, ttl, codec);
+        caches.add(cache);
+        return cache;
+    }
+
+    /**
+     * Creates a cache keyed by agency id which is included in cache snapshots of this connector
+     *
+     * @param name  name of the cache, unique within the connector
+     * @param ttl   time-to-live of entries
+     * @param codec binary codec of the values
+     * @return the cache
+     */
+    protected <V> AgencyCache<V> createAgencyCache(String name, Duration ttl, CacheValueCodec<V> codec) {
+        final AgencyCache<V> cache = new AgencyCache<>(name, ttl, codec);
+        caches.add(cache);
+        return cache;
+    }
+
+    /**
+     * Runs a connector call inside a tracing span
+     *
+     * @param operation  name of the connector operation
+     * @param agencyId   agency id the call concerns, or null
+     * @param trackingId caller supplied tracking id, or null
+     * @param call       the call to run
+     * @return value returned by the call
+     * @throws VipCoreException on failure of the call
+     */
+    protected <T> T traced(String operation, String agencyId, String trackingId, VipCoreCall<T> call)
+            throws VipCoreException {
+        final VipCoreTracing.CallSpan span = VipCoreTracing.startCall(operation, agencyId, trackingId);
+        final CallCapture.Call captured = startCapture(operation, agencyId);
+        try (Scope ignored = defaultDeadlineScope()) {
+            return call.call();
+        } catch (VipCoreException | RuntimeException e) {
+            span.recordFailure(e);
+            throw e;
+        } finally {
+            span.end();
+            captured.close();
+        }
+    }
+
+    /**
+     * Runs a connector call of an agency given by int inside a tracing span
+     *
+     * @param operation  name of the connector operation
+     * @param agencyId   agency id as int
+     * @param trackingId caller supplied tracking id, or null
+     * @param call       the call to run
+     * @return value returned by the call
+     * @throws VipCoreException on failure of the call
+     */
+    protected <T> T traced(String operation, int agencyId, String trackingId, VipCoreCall<T> call)
+            throws VipCoreException {
+        final VipCoreTracing.CallSpan span = VipCoreTracing.startCall(operation, agencyId, trackingId);
+        final CallCapture.Call captured = startCapture(operation, AgencyIds.toString(agencyId));
+        try (Scope ignored = defaultDeadlineScope()) {
+            return call.call();
+        } catch (VipCoreException | RuntimeException e) {
+            span.recordFailure(e);
+            throw e;
+        } finally {
+            span.end();
+            captured.close();
+        }
+    }
+
+    private CallCapture.Call startCapture(String operation, String agencyId) {
+        final CallCapture capture = callCapture;
+        return capture == null ? CallCapture.Call.NONE : capture.start(operation, agencyId);
+    }
+
+    /**
+     * Runs a lookup for each of the given agencies, in parallel if the connector has an executor
+     *
+     * @param agencyIds agency ids to look up, duplicates are looked up once
+     * @param call      lookup of a single agency
+     * @return lookup results in iteration order of the agency ids
+     * @throws VipCoreException the first failure in iteration order, after all lookups completed
+     */
+    protected <T> Map<String, T> fanOut(Collection<String> agencyIds, AgencyCall<T> call) throws VipCoreException {
+        final Map<String, T> result = new LinkedHashMap<>();
+        if (executor == null) {
+            for (String agencyId : agencyIds) {
+                if (!result.containsKey(agencyId)) {
+                    result.put(agencyId, call.call(agencyId));
+                }
+            }
+            return result;
+        }
+
+        final Map<String, Future<T>> futures = new LinkedHashMap<>();
+        for (String agencyId : new LinkedHashSet<>(agencyIds)) {
+            futures.put(agencyId, executor.submit(() -> call.call(agencyId)));
+        }
+        VipCoreException failure = null;
+        for (Map.Entry<String, Future<T>> future : futures.entrySet()) {
+            try {
+                result.put(future.getKey(), future.getValue().get());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                futures.values().forEach(f -> f.cancel(true));
+                throw new VipCoreException("Interrupted during bulk lookup", e);
+            } catch (ExecutionException e) {
+                if (failure == null) {
+                    failure = e.getCause() instanceof VipCoreException
+                            ? (VipCoreException) e.getCause()
+                            : new VipCoreException("Lookup of agency " + future.getKey() + " failed", e.getCause());
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+        return result;
+    }
+
     protected <T> T postRequest(String basePath,
                                 String data,
                                 Class<T> type) throws VipCoreException {
-        final StopWatch watch = new Log4JStopWatch().setTimeThreshold(LOG_DURATION_THRESHOLD_MS);
-        try {
-            final HttpPost httpPost = new HttpPost(failSafeHttpClient)
-                    .withBaseUrl(baseUrl)
-                    .withPathElements(basePath)
-                    .withData(data, "application/json")
-                    .withHeader("Accept", "application/json");
-            final Response response = httpPost.execute();
-            assertResponseStatus(response, Response.Status.OK);
-            return readResponseEntity(response, type);
+        return post(basePath, data, "VipCoreConnector.postRequest", response -> readResponseEntity(response, type));
+    }
+
+    /**
+     * @param basePath path of the VipCore endpoint
+     * @param data     UTF-8 encoded request body, see {@link RequestBodyTemplate}
+     * @param type     response type
+     * @return the response
+     * @throws VipCoreException on failure of the request or on an error response
+     */
+    protected <T> T postRequest(String basePath, byte[] data, Class<T> type) throws VipCoreException {
+        return post(basePath, data, "VipCoreConnector.postRequest", response -> readResponseEntity(response, type));
+    }
+
+    /**
+     * Posts a request and decodes the response body as it is streamed
+     *
+     * @param basePath path of the VipCore endpoint
+     * @param data     UTF-8 encoded request body
+     * @param decoder  streaming decoder of the response
+     * @return the decoded response
+     * @throws VipCoreException on failure of the request, on an error response or if the response could not be decoded
+     */
+    protected <T> T postRequest(String basePath, byte[] data, ResponseDecoder<T> decoder) throws VipCoreException {
+        return post(basePath, data, "VipCoreConnector.postRequest",
+                response -> JsonCodec.decode(response.readEntity(InputStream.class), decoder));
+    }
+
+    /**
+     * Posts a request and returns the raw response body without decoding it
+     *
+     * @param basePath path of the VipCore endpoint
+     * @param data     UTF-8 encoded request body
+     * @return the response body
+     * @throws VipCoreException on failure of the request or on an error response
+     */
+    protected byte[] postRequestForBody(String basePath, byte[] data) throws VipCoreException {
+        return post(basePath, data, "VipCoreConnector.postRequestForBody",
+                response -> readResponseEntity(response, byte[].class));
+    }
+
+    /**
+     * Posts a request within the bulkhead and deadline of the call
+     * <p>
+     * The lifetime given by the cache headers of the response is recorded as the
+     * {@link ServerCacheHint} of the calling thread, and the request as part of the
+     * call being captured, if any.
+     * </p>
+     */
+    private <T> T post(String basePath, Object data, String tag, ResponseReader<T> reader) throws VipCoreException {
+        final StopWatch watch = new Log4JStopWatch().setTimeThreshold(timingLogThresholdMs);
+        final CallCapture.Call captured = CallCapture.current();
+        final long[] hint = {ServerCacheHint.NONE};
+        try (Bulkhead.Permit ignored = bulkheads.acquire(basePath)) {
+            final long start = System.nanoTime();
+            final Deadline deadline = currentDeadline();
+            boolean failed = true;
+            try {
+                final T result = withinDeadline(basePath, deadline, () -> {
+                    final Response response = executePost(basePath, data, deadline);
+                    captured.response(response.getStatus(), response.getLength());
+                    assertResponseStatus(response, Response.Status.OK);
+                    hint[0] = ServerCacheHint.maxAgeMillis(response.getHeaderString("Cache-Control"),
+                            response.getHeaderString("Expires"), response.getHeaderString("Date"));
+                    return reader.read(response);
+                });
+                // The request may have run on another thread, see withinDeadline
+                ServerCacheHint.record(hint[0]);
+                failed = false;
+                return result;
+            } catch (VipCoreException e) {
+                // An error code other than service_unavailable is an answer from a healthy VipCore
+                failed = e.getErrorCode() == null || ServiceUnavailableException.ERROR_CODE.equals(e.getErrorCode());
+                throw e;
+            } finally {
+                requestStats.record(System.nanoTime() - start, failed);
+                if (captured.isCaptured()) {
+                    captured.request(basePath, data instanceof String
+                            ? ((String) data).getBytes(StandardCharsets.UTF_8) : (byte[]) data,
+                            System.nanoTime() - start);
+                }
+            }
         } finally {
-            watch.stop("VipCoreConnector.postRequest");
+            watch.stop(tag);
+        }
+    }
+
+    private Scope defaultDeadlineScope() {
+        final Duration timeout = defaultTimeout;
+        return timeout == null ? Scope.noop() : Deadline.after(timeout).makeCurrent();
+    }
+
+    /**
+     * @return the deadline of the current context or else the default timeout, whichever is earlier, or null
+     */
+    private Deadline currentDeadline() {
+        final Deadline deadline = Deadline.current();
+        final Duration timeout = defaultTimeout;
+        return timeout == null ? deadline : Deadline.after(timeout).earliest(deadline);
+    }
+
+    /**
+     * Runs a request, cancelling it if it has not completed by the deadline
+     * <p>
+     * The request only runs on another thread if the deadline is tighter than the HTTP
+     * timeouts or the retry policy is custom, otherwise the timeouts and retry delays,
+     * shortened to the deadline, bound it on the calling thread.
+     * </p>
+     *
+     * @param basePath path of the VipCore endpoint
+     * @param deadline deadline of the call, or null
+     * @param request  the request, including reading the response
+     * @return value returned by the request
+     * @throws DeadlineExceededException if the deadline passed
+     * @throws VipCoreException          on failure of the request
+     */
+    private <T> T withinDeadline(String basePath, Deadline deadline, VipCoreCall<T> request) throws VipCoreException {
+        if (deadline == null) {
+            return request.call();
+        }
+        if (deadline.isExpired()) {
+            throw new DeadlineExceededException("Deadline passed before request to " + basePath);
+        }
+        if (isBoundedByHttpTimeouts(deadline)) {
+            try {
+                return request.call();
+            } catch (VipCoreException | ProcessingException e) {
+                if (deadline.isExpired()) {
+                    throw new DeadlineExceededException("Deadline passed during request to " + basePath);
+                }
+                throw e;
+            }
+        }
+        final Future<T> future = DEADLINE_EXECUTOR.submit(request::call);
+        try {
+            return future.get(deadline.remainingNanos(), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            future.cancel(true);
+            throw new DeadlineExceededException("Deadline passed during request to " + basePath);
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new VipCoreException("Interrupted during request to " + basePath, e);
+        } catch (ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof VipCoreException) {
+                throw (VipCoreException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new VipCoreException("Request to " + basePath + " failed", cause);
+        }
+    }
+
+    /**
+     * @return true if the HTTP timeouts end a single request before the deadline, and retries by it
+     */
+    private boolean isBoundedByHttpTimeouts(Deadline deadline) {
+        final long connect = connectTimeoutMillis;
+        final long read = readTimeoutMillis;
+        return retriesWithinDeadline && connect > 0 && read > 0 && TimeUnit.MILLISECONDS.toNanos(connect + read) <= deadline.remainingNanos();
+    }
+
+    private Response executePost(String basePath, Object data, Deadline deadline) {
+        final HttpPost httpPost = new HttpPost(failSafeHttpClient)
+                .withBaseUrl(baseUrl)
+                .withPathElements(basePath)
+                .withData(data, "application/json")
+                .withHeader("Accept", "application/json");
+        VipCoreTracing.injectHeaders(httpPost::withHeader);
+        try (Scope ignored = HttpTimeoutsFilter.apply(connectTimeoutMillis, readTimeoutMillis, deadline)) {
+            return httpPost.execute();
         }
     }
 
@@ -148,30 +783,42 @@ public abstract class VipCoreConnector {
 
     protected void assertResponseStatus(Response response, Response.Status expectedStatus)
             throws VipCoreException {
-        final Response.Status actualStatus =
-                Response.Status.fromStatusCode(response.getStatus());
-        if (actualStatus != expectedStatus) {
-            final ErrorMessageDTO errorMessage = readResponseEntity(response, ErrorMessageDTO.class);
-
-            switch (errorMessage.getError()) {
-                case "authentication_error":
-                    throw new AuthenticationErrorException();
-                case "service_unavailable":
-                    throw new ServiceUnavailableException();
-                case "agency_not_found":
-                    throw new AgencyNotFoundException();
-                case "error_in_request":
-                    throw new ErrorInRequestException();
-                case "no_agencies_found":
-                    throw new NoAgenciesFoundException();
-                case "no_userid_selected":
-                    throw new NoUserIdSelectedException();
-                case "profile_not_found":
-                    throw new ProfileNotFoundException();
-                default:
-                    throw new VipCoreException(errorMessage.getError());
+        if (response.getStatus() != expectedStatus.getStatusCode()) {
+            final String errorCode = readErrorCode(response);
+            if (errorCode == null) {
+                throw new VipCoreException("VipCore service returned with status " + response.getStatus());
             }
+            throw VipCoreException.of(errorCode, stacklessErrors);
+        }
+    }
+
+    /**
+     * @return error code of an error response, or null if the response is not a VipCore error
+     */
+    private static String readErrorCode(Response response) {
+        if (!response.hasEntity()) {
+            return null;
         }
+        try {
+            return JsonCodec.decode(response.readEntity(InputStream.class), ErrorMessageCodec::readErrorCode);
+        } catch (VipCoreException | ProcessingException e) {
+            return null;
+        }
+    }
+
+    @FunctionalInterface
+    protected interface VipCoreCall<T> {
+        T call() throws VipCoreException;
+    }
+
+    @FunctionalInterface
+    private interface ResponseReader<T> {
+        T read(Response response) throws VipCoreException;
+    }
+
+    @FunctionalInterface
+    protected interface AgencyCall<T> {
+        T call(String agencyId) throws VipCoreException;
     }
 
     @FunctionalInterface
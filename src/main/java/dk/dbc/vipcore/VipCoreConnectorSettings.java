@@ -0,0 +1,364 @@
+/*
+ * Copyright Dansk Bibliotekscenter a/s. Licensed under GNU GPL v3
+ *  See license text at https://opensource.dbc.dk/licenses/gpl-3.0
+ */
+
+package dk.dbc.vipcore;
+
+import dk.dbc.vipcore.bulkhead.BulkheadPolicy;
+import dk.dbc.vipcore.bulkhead.Priority;
+import dk.dbc.vipcore.cache.CachePolicy;
+import dk.dbc.vipcore.cache.CacheSnapshotter;
+import dk.dbc.vipcore.cache.FileSharedCache;
+import dk.dbc.vipcore.cache.SharedCache;
+import dk.dbc.vipcore.cache.VipCoreCache;
+import dk.dbc.vipcore.capture.CallCapture;
+import dk.dbc.vipcore.compression.ResponseCompressionFeature;
+import dk.dbc.vipcore.health.HealthPolicy;
+import dk.dbc.vipcore.management.VipCoreConnectorManagement;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.inject.Instance;
+import jakarta.inject.Inject;
+
+import javax.management.JMException;
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Configuration shared by the connector factories
+ * <p>
+ * Each paragraph below covers the settings of one feature. Settings of a single connector,
+ * such as its per data type cache lifetimes, warm-up and decoding, are read by its factory.
+ * </p>
+ * <p>
+ * The vipcore service baseurl is read from VIPCORE_ENDPOINT. VIPCORE_SERVICE_TIMING_LOG_LEVEL
+ * should be one of TRACE, DEBUG, INFO(default), WARN or ERROR, for setting log level.
+ * Setting VIPCORE_VIRTUAL_THREADS to true runs bulk lookups on virtual threads
+ * </p>
+ * <p>
+ * If VIPCORE_CACHE_SNAPSHOT_DIR is set, the caches are restored from &lt;name&gt;.snapshot in that
+ * directory at startup, and written back every VIPCORE_CACHE_SNAPSHOT_INTERVAL (ISO-8601 duration,
+ * default PT15M) and on shutdown
+ * </p>
+ * <p>
+ * Cached entries live VIPCORE_CACHE_AGE hours, shortened by a random fraction of up to
+ * VIPCORE_CACHE_JITTER (default 0.1) so that entries, and nodes, do not all refetch at once.
+ * If VIPCORE_CACHE_MIN_TTL and VIPCORE_CACHE_MAX_TTL (ISO-8601 durations) are both set, the
+ * lifetime of each entry adapts between them to how often its value changes. Setting
+ * VIPCORE_CACHE_SERVER_HINTS to true honors the Cache-Control and Expires headers of responses,
+ * see {@link CachePolicy}
+ * </p>
+ * <p>
+ * Cache misses are looked up in a shared second cache tier before calling VipCore if the
+ * application produces a {@link SharedCache} bean, or else if VIPCORE_SHARED_CACHE_DIR is set,
+ * in a {@link FileSharedCache} in that directory. Lookups taking longer than
+ * VIPCORE_SHARED_CACHE_TIMEOUT (ISO-8601 duration, default PT0.5S) count as misses
+ * </p>
+ * <p>
+ * Setting VIPCORE_RESPONSE_COMPRESSION to true requests gzip or deflate compressed responses
+ * </p>
+ * <p>
+ * VIPCORE_INTERACTIVE_MAX_CONCURRENT and VIPCORE_BATCH_MAX_CONCURRENT limit the concurrent
+ * requests, and VIPCORE_INTERACTIVE_RATE and VIPCORE_BATCH_RATE the requests per second, of
+ * each priority to each endpoint path (default 0, no limit). Callers wait at most
+ * VIPCORE_BULKHEAD_MAX_WAIT (ISO-8601 duration, default PT30S), see {@link Priority}
+ * </p>
+ * <p>
+ * VIPCORE_CONNECT_TIMEOUT and VIPCORE_READ_TIMEOUT (ISO-8601 durations) bound each single HTTP
+ * request, and VIPCORE_CALL_TIMEOUT each call including all retries, see
+ * {@link dk.dbc.vipcore.deadline.Deadline}. All default to no timeout
+ * </p>
+ * <p>
+ * Unless VIPCORE_MANAGEMENT_MBEAN is false, a {@link VipCoreConnectorManagement} bean is registered
+ * in the platform MBean server for invalidating, inspecting and tuning the caches and limits at runtime
+ * </p>
+ * <p>
+ * If VIPCORE_CALL_CAPTURE_DIR is set, every call is captured to &lt;name&gt;.capture in that
+ * directory for replaying offline, see {@link CallCapture}
+ * </p>
+ * <p>
+ * Setting VIPCORE_STACKLESS_ERRORS to true throws shared exceptions without stack trace for the
+ * expected errors agency_not_found, error_in_request and service_unavailable, see
+ * {@link VipCoreConnector#setStacklessErrors(boolean)}
+ * </p>
+ * <p>
+ * Readiness is judged against VIPCORE_HEALTH_LATENCY_SLO (ISO-8601 duration, default no SLO)
+ * for the VIPCORE_HEALTH_PERCENTILE (default 95) of the requests within VIPCORE_HEALTH_WINDOW
+ * (default PT1M), and against VIPCORE_HEALTH_MAX_ERROR_RATE (default 0.5). Windows with fewer
+ * than VIPCORE_HEALTH_MIN_REQUESTS (default 10) requests are not judged, see {@link HealthPolicy}.
+ * The factories produce MicroProfile Health checks for the connectors named in VIPCORE_HEALTH_CHECKS,
+ * e.g. VipCoreLibraryRulesConnector,VipCoreClient (default none)
+ * </p>
+ */
+@ApplicationScoped
+public class VipCoreConnectorSettings {
+    private static final Logger LOGGER = LoggerFactory.getLogger(VipCoreConnectorSettings.class);
+
+    @Inject
+    @ConfigProperty(name = "VIPCORE_ENDPOINT")
+    private String vipcoreServiceBaseUrl;
+
+    @Inject
+    @ConfigProperty(name = "VIPCORE_SERVICE_TIMING_LOG_LEVEL", defaultValue = "INFO")
+    private VipCoreConnector.TimingLogLevel level;
+
+    @Inject
+    @ConfigProperty(name = "VIPCORE_CACHE_AGE", defaultValue = "8")
+    private int cacheAge;
+
+    @Inject
+    @ConfigProperty(name = "VIPCORE_CACHE_JITTER", defaultValue = "0.1")
+    private double cacheJitter;
+
+    @Inject
+    @ConfigProperty(name = "VIPCORE_CACHE_MIN_TTL")
+    private Optional<Duration> cacheMinTtl;
+
+    @Inject
+    @ConfigProperty(name = "VIPCORE_CACHE_MAX_TTL")
+    private Optional<Duration> cacheMaxTtl;
+
+    @Inject
+    @ConfigProperty(name = "VIPCORE_CACHE_SERVER_HINTS", defaultValue = "false")
+    private boolean cacheServerHints;
+
+    @Inject
+    @ConfigProperty(name = "VIPCORE_VIRTUAL_THREADS", defaultValue = "false")
+    private boolean virtualThreads;
+
+    @Inject
+    @ConfigProperty(name = "VIPCORE_RESPONSE_COMPRESSION", defaultValue = "false")
+    private boolean responseCompression;
+
+    @Inject
+    @ConfigProperty(name = "VIPCORE_CACHE_SNAPSHOT_DIR")
+    private Optional<String> cacheSnapshotDir;
+
+    @Inject
+    @ConfigProperty(name = "VIPCORE_CACHE_SNAPSHOT_INTERVAL", defaultValue = "PT15M")
+    private Duration cacheSnapshotInterval;
+
+    @Inject
+    @ConfigProperty(name = "VIPCORE_SHARED_CACHE_DIR")
+    private Optional<String> sharedCacheDir;
+
+    @Inject
+    @ConfigProperty(name = "VIPCORE_SHARED_CACHE_TIMEOUT", defaultValue = "PT0.5S")
+    private Duration sharedCacheTimeout;
+
+    @Inject
+    @ConfigProperty(name = "VIPCORE_INTERACTIVE_MAX_CONCURRENT", defaultValue = "0")
+    private int interactiveMaxConcurrent;
+
+    @Inject
+    @ConfigProperty(name = "VIPCORE_INTERACTIVE_RATE", defaultValue = "0")
+    private double interactiveRate;
+
+    @Inject
+    @ConfigProperty(name = "VIPCORE_BATCH_MAX_CONCURRENT", defaultValue = "0")
+    private int batchMaxConcurrent;
+
+    @Inject
+    @ConfigProperty(name = "VIPCORE_BATCH_RATE", defaultValue = "0")
+    private double batchRate;
+
+    @Inject
+    @ConfigProperty(name = "VIPCORE_BULKHEAD_MAX_WAIT", defaultValue = "PT30S")
+    private Duration bulkheadMaxWait;
+
+    @Inject
+    @ConfigProperty(name = "VIPCORE_CONNECT_TIMEOUT")
+    private Optional<Duration> connectTimeout;
+
+    @Inject
+    @ConfigProperty(name = "VIPCORE_READ_TIMEOUT")
+    private Optional<Duration> readTimeout;
+
+    @Inject
+    @ConfigProperty(name = "VIPCORE_CALL_TIMEOUT")
+    private Optional<Duration> callTimeout;
+
+    @Inject
+    @ConfigProperty(name = "VIPCORE_MANAGEMENT_MBEAN", defaultValue = "true")
+    private boolean managementMBean;
+
+    @Inject
+    @ConfigProperty(name = "VIPCORE_CALL_CAPTURE_DIR")
+    private Optional<String> callCaptureDir;
+
+    @Inject
+    @ConfigProperty(name = "VIPCORE_STACKLESS_ERRORS", defaultValue = "false")
+    private boolean stacklessErrors;
+
+    @Inject
+    @ConfigProperty(name = "VIPCORE_HEALTH_LATENCY_SLO")
+    private Optional<Duration> healthLatencySlo;
+
+    @Inject
+    @ConfigProperty(name = "VIPCORE_HEALTH_PERCENTILE", defaultValue = "95")
+    private double healthPercentile;
+
+    @Inject
+    @ConfigProperty(name = "VIPCORE_HEALTH_MAX_ERROR_RATE", defaultValue = "0.5")
+    private double healthMaxErrorRate;
+
+    @Inject
+    @ConfigProperty(name = "VIPCORE_HEALTH_WINDOW", defaultValue = "PT1M")
+    private Duration healthWindow;
+
+    @Inject
+    @ConfigProperty(name = "VIPCORE_HEALTH_MIN_REQUESTS", defaultValue = "10")
+    private int healthMinRequests;
+
+    @Inject
+    @ConfigProperty(name = "VIPCORE_HEALTH_CHECKS")
+    private Optional<List<String>> healthChecks;
+
+    @Inject
+    private Instance<SharedCache> sharedCaches;
+
+    public String getVipcoreServiceBaseUrl() {
+        return vipcoreServiceBaseUrl;
+    }
+
+    public VipCoreConnector.TimingLogLevel getTimingLogLevel() {
+        return level;
+    }
+
+    public int getCacheAge() {
+        return cacheAge;
+    }
+
+    /**
+     * @return executor running bulk lookups on virtual threads, or null for the default executor
+     */
+    public ExecutorService createExecutor() {
+        // A virtual thread per task executor holds no threads while idle, so it needs no shutdown
+        return virtualThreads ? Executors.newVirtualThreadPerTaskExecutor() : null;
+    }
+
+    /**
+     * @return feature negotiating compressed responses, or null if response compression is not enabled
+     */
+    public ResponseCompressionFeature createCompression() {
+        return responseCompression ? new ResponseCompressionFeature() : null;
+    }
+
+    /**
+     * @param ttl     time to live of the data type, or empty for the cache age
+     * @param maxSize maximum number of entries of the data type, 0 for no limit
+     * @return policy of a cache with the shared jitter, adaptive TTL and server hint settings
+     */
+    public CachePolicy cachePolicy(Optional<Duration> ttl, int maxSize) {
+        CachePolicy policy = CachePolicy.of(ttl.orElse(Duration.ofHours(cacheAge)))
+                .withJitter(cacheJitter)
+                .withMaxSize(maxSize)
+                .withServerHints(cacheServerHints);
+        if (cacheMinTtl.isPresent() && cacheMaxTtl.isPresent()) {
+            policy = policy.withAdaptiveTtl(cacheMinTtl.get(), cacheMaxTtl.get());
+        }
+        return policy;
+    }
+
+    /**
+     * @param priority the priority
+     * @return limits of the priority, or null if the priority is not limited
+     */
+    public BulkheadPolicy bulkheadPolicy(Priority priority) {
+        final int maxConcurrent = priority == Priority.INTERACTIVE ? interactiveMaxConcurrent : batchMaxConcurrent;
+        final double rate = priority == Priority.INTERACTIVE ? interactiveRate : batchRate;
+        if (maxConcurrent == 0 && rate == 0) {
+            return null;
+        }
+        return BulkheadPolicy.of(maxConcurrent).withRate(rate).withMaxWait(bulkheadMaxWait);
+    }
+
+    public HealthPolicy healthPolicy() {
+        return HealthPolicy.of(healthLatencySlo.orElse(null))
+                .withPercentile(healthPercentile)
+                .withMaxErrorRate(healthMaxErrorRate)
+                .withWindow(healthWindow)
+                .withMinRequests(healthMinRequests);
+    }
+
+    /**
+     * @param name name of the checks, e.g. VipCoreLibraryRulesConnector
+     * @return true if the checks are listed in VIPCORE_HEALTH_CHECKS
+     */
+    public boolean isHealthCheckEnabled(String name) {
+        return healthChecks.map(names -> names.contains(name)).orElse(false);
+    }
+
+    /**
+     * Applies the shared cache tier, bulkhead, timeout and error settings to a connector
+     *
+     * @param connector the connector
+     */
+    public void configure(VipCoreConnector connector) {
+        final SharedCache sharedCache = sharedCaches.isResolvable() ? sharedCaches.get()
+                : sharedCacheDir.map(dir -> new FileSharedCache(Paths.get(dir))).orElse(null);
+        if (sharedCache != null) {
+            connector.setSharedCache(sharedCache, sharedCacheTimeout);
+        }
+        for (Priority priority : Priority.values()) {
+            connector.setBulkheadPolicy(priority, bulkheadPolicy(priority));
+        }
+        connector.setHttpTimeouts(connectTimeout.orElse(null), readTimeout.orElse(null));
+        connector.setDefaultTimeout(callTimeout.orElse(null));
+        connector.setStacklessErrors(stacklessErrors);
+    }
+
+    /**
+     * @param connector the connector
+     * @param name      name of the bean, unique among the connectors of the JVM
+     * @return registered management bean, or null if disabled or the bean could not be registered
+     */
+    public VipCoreConnectorManagement registerManagement(VipCoreConnector connector, String name) {
+        if (!managementMBean) {
+            return null;
+        }
+        try {
+            return new VipCoreConnectorManagement(connector).register(name);
+        } catch (JMException e) {
+            LOGGER.warn("Unable to register management bean {}", name, e);
+            return null;
+        }
+    }
+
+    /**
+     * @param name name of the capture file, without extension
+     * @return capture of all calls, or null if disabled or the capture file could not be opened
+     */
+    public CallCapture createCallCapture(String name) {
+        if (callCaptureDir.isEmpty()) {
+            return null;
+        }
+        try {
+            return new CallCapture(Paths.get(callCaptureDir.get(), name + ".capture"));
+        } catch (IOException e) {
+            LOGGER.warn("Unable to capture calls to {}", callCaptureDir.get(), e);
+            return null;
+        }
+    }
+
+    /**
+     * @param name   name of the snapshot file, without extension
+     * @param caches caches to snapshot
+     * @return started snapshotter, or null if cache snapshots are disabled
+     */
+    public CacheSnapshotter startCacheSnapshotter(String name, Collection<? extends VipCoreCache<String, ?>> caches) {
+        return cacheSnapshotDir
+                .map(dir -> new CacheSnapshotter(name, caches, Paths.get(dir, name + ".snapshot"), cacheSnapshotInterval).start())
+                .orElse(null);
+    }
+}
@@ -1,29 +1,41 @@
 package dk.dbc.vipcore.agencyinfo;
 
-import dk.dbc.commons.jsonb.JSONBContext;
-import dk.dbc.commons.jsonb.JSONBException;
 import dk.dbc.commons.useragent.UserAgent;
 import dk.dbc.httpclient.FailSafeHttpClient;
 import dk.dbc.vipcore.VipCoreConnector;
+import dk.dbc.vipcore.cache.AgencyCache;
+import dk.dbc.vipcore.cache.AgencyIds;
+import dk.dbc.vipcore.cache.JsonCacheValueCodec;
+import dk.dbc.vipcore.codec.AgencyInfoCodec;
+import dk.dbc.vipcore.codec.RequestBodyTemplate;
 import dk.dbc.vipcore.exception.VipCoreException;
-import dk.dbc.vipcore.marshallers.AgencyInfoRequest;
-import dk.dbc.vipcore.marshallers.AgencyInfoResponse;
-import dk.dbc.vipcore.marshallers.AgencyInfoSingle;
+import dk.dbc.vipcore.marshallers.Information;
 import dk.dbc.vipcore.marshallers.PickupAgency;
+import dk.dbc.vipcore.service.VipCoreServiceConnector;
+import dk.dbc.vipcore.tracing.VipCoreTracing;
 import jakarta.ws.rs.client.Client;
-import org.apache.commons.collections4.map.PassiveExpiringMap;
 
-import java.util.HashSet;
-import java.util.Set;
-import java.util.concurrent.TimeUnit;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.LongAdder;
 
 public class VipCoreAgencyInfoConnector extends VipCoreConnector {
-    private static final JSONBContext jsonbContext = new JSONBContext();
+    /**
+     * Name of the cache of agency names by agency id
+     */
+    public static final String AGENCY_NAME_CACHE = "agencyNameCache";
 
     private static final int MAX_CACHE_AGE = 8;
-    private final PassiveExpiringMap<String, Set<AgencyInfoSingle>> agencyInfoCache;
+    // Only the agency name is ever read, so only the name is cached
+    private final AgencyCache<String> agencyNameCache;
 
     private static final String AGENCY_INFO_PATH = "1.0/api/agencyinfo";
+    private static final RequestBodyTemplate AGENCY_INFO_REQUEST = RequestBodyTemplate.of();
+
+    private final LongAdder informationHits = new LongAdder();
+    private volatile VipCoreServiceConnector informationSource;
 
     /**
      * Returns new instance with default retry policy
@@ -34,7 +46,7 @@ public class VipCoreAgencyInfoConnector extends VipCoreConnector {
     public VipCoreAgencyInfoConnector(Client httpClient, UserAgent userAgent, String baseUrl) {
         super(httpClient, userAgent, baseUrl, TimingLogLevel.INFO);
 
-        agencyInfoCache = new PassiveExpiringMap<>(MAX_CACHE_AGE, TimeUnit.HOURS);
+        agencyNameCache = createAgencyCache(AGENCY_NAME_CACHE, Duration.ofHours(MAX_CACHE_AGE), JsonCacheValueCodec.of(String.class));
     }
 
     /**
@@ -47,7 +59,21 @@ public class VipCoreAgencyInfoConnector extends VipCoreConnector {
     public VipCoreAgencyInfoConnector(Client httpClient, UserAgent userAgent, String baseUrl, int cacheAge, TimingLogLevel level) {
         super(httpClient, userAgent, baseUrl, level);
 
-        agencyInfoCache = new PassiveExpiringMap<>(MAX_CACHE_AGE, TimeUnit.HOURS);
+        agencyNameCache = createAgencyCache(AGENCY_NAME_CACHE, Duration.ofHours(cacheAge), JsonCacheValueCodec.of(String.class));
+    }
+
+    /**
+     * Returns new instance with default retry policy and executor for bulk lookups
+     *
+     * @param httpClient web resources client
+     * @param baseUrl    base URL for vipcore service endpoint
+     * @param level      timings log level
+     * @param executor   executor for bulk lookups, or null to run them sequentially
+     */
+    public VipCoreAgencyInfoConnector(Client httpClient, UserAgent userAgent, String baseUrl, int cacheAge, TimingLogLevel level, ExecutorService executor) {
+        super(httpClient, userAgent, baseUrl, level, executor);
+
+        agencyNameCache = createAgencyCache(AGENCY_NAME_CACHE, Duration.ofHours(cacheAge), JsonCacheValueCodec.of(String.class));
     }
 
     /**
@@ -59,7 +85,7 @@ public class VipCoreAgencyInfoConnector extends VipCoreConnector {
     public VipCoreAgencyInfoConnector(FailSafeHttpClient failSafeHttpClient, String baseUrl) {
         super(failSafeHttpClient, baseUrl, TimingLogLevel.INFO);
 
-        agencyInfoCache = new PassiveExpiringMap<>(MAX_CACHE_AGE, TimeUnit.HOURS);
+        agencyNameCache = createAgencyCache(AGENCY_NAME_CACHE, Duration.ofHours(MAX_CACHE_AGE), JsonCacheValueCodec.of(String.class));
     }
 
     /**
@@ -72,44 +98,142 @@ public class VipCoreAgencyInfoConnector extends VipCoreConnector {
     public VipCoreAgencyInfoConnector(FailSafeHttpClient failSafeHttpClient, String baseUrl, int cacheAge, TimingLogLevel level) {
         super(failSafeHttpClient, baseUrl, level);
 
-        agencyInfoCache = new PassiveExpiringMap<>(MAX_CACHE_AGE, TimeUnit.HOURS);
+        agencyNameCache = createAgencyCache(AGENCY_NAME_CACHE, Duration.ofHours(cacheAge), JsonCacheValueCodec.of(String.class));
+    }
+
+    /**
+     * Returns new instance with custom retry policy and executor for bulk lookups
+     *
+     * @param failSafeHttpClient web resources client with custom retry policy
+     * @param baseUrl            base URL for vipcore service endpoint
+     * @param level              timings log level
+     * @param executor           executor for bulk lookups, or null to run them sequentially
+     */
+    public VipCoreAgencyInfoConnector(FailSafeHttpClient failSafeHttpClient, String baseUrl, int cacheAge, TimingLogLevel level, ExecutorService executor) {
+        super(failSafeHttpClient, baseUrl, level, executor);
+
+        agencyNameCache = createAgencyCache(AGENCY_NAME_CACHE, Duration.ofHours(cacheAge), JsonCacheValueCodec.of(String.class));
+    }
+
+    /**
+     * Answers name lookups missing the agency name cache from the information of a service connector
+     * <p>
+     * The agency info endpoint gives the name of the first pickup agency, which is the agency
+     * itself for a main agency, whereas the information of a branch gives the name of the agency
+     * it belongs to. The information is therefore only used when it describes the agency itself,
+     * i.e. when both its agency id and branch id are the id looked up. A name missing the cache is
+     * taken from the information cached by the service connector, see
+     * {@link VipCoreServiceConnector#getCachedInformation(String)}, or else the information is
+     * requested rather than the agency info, as its response is cached by the service connector for
+     * its own callers as well. The agency info is only requested if the information describes a
+     * branch or could not be had. Names taken from the information are cached like any other.
+     * </p>
+     *
+     * @param informationSource service connector, or null to only use the agency name cache
+     */
+    public void setInformationSource(VipCoreServiceConnector informationSource) {
+        this.informationSource = informationSource;
+    }
+
+    public VipCoreServiceConnector getInformationSource() {
+        return informationSource;
+    }
+
+    /**
+     * @return number of names taken from the information of the information source
+     */
+    public long getInformationHits() {
+        return informationHits.sum();
     }
 
     public String getAgencyName(String agencyId) throws VipCoreException {
-        Set<AgencyInfoSingle> agencyInfos = getAgencyInfo(agencyId);
+        return getAgencyName(agencyId, null);
+    }
 
-        return agencyInfos.stream()
-                .findFirst()
-                .map(AgencyInfoSingle::getPickupAgency)
-                .map(PickupAgency::getAgencyName)
-                .orElseThrow(() -> new VipCoreAgencyInfoConnectorException("No agency info found for agency id: " + agencyId));
+    public String getAgencyName(String agencyId, String trackingId) throws VipCoreException {
+        return traced("getAgencyName", agencyId, trackingId, () -> lookupAgencyName(agencyId, trackingId));
     }
 
-    private Set<AgencyInfoSingle> getAgencyInfo(String agencyId) throws VipCoreException {
-        Set<AgencyInfoSingle> result;
-        try {
-            result = agencyInfoCache.get(agencyId);
-            if (result != null) {
-                return result;
+    public String getAgencyName(int agencyId) throws VipCoreException {
+        return getAgencyName(agencyId, null);
+    }
+
+    public String getAgencyName(int agencyId, String trackingId) throws VipCoreException {
+        return traced("getAgencyName", agencyId, trackingId, () -> {
+            // Hits need no string form of the agency id
+            final String agencyName = agencyNameCache.getIfPresent(agencyId);
+            if (agencyName != null) {
+                VipCoreTracing.cacheHit(true);
+                return agencyName;
             }
+            return lookupAgencyName(AgencyIds.toString(agencyId), trackingId);
+        });
+    }
 
-            final AgencyInfoRequest agencyInfoRequest = new AgencyInfoRequest();
-            agencyInfoRequest.setAgencyId(agencyId);
+    /**
+     * Looks up the names of several agencies, in parallel if the connector
+     * was created with an executor
+     *
+     * @param agencyIds agency ids to look up
+     * @return agency name by agency id
+     * @throws VipCoreException if any of the lookups failed
+     */
+    public Map<String, String> getAgencyNames(Collection<String> agencyIds) throws VipCoreException {
+        return traced("getAgencyNames", null, null,
+                () -> fanOut(agencyIds, agencyId -> lookupAgencyName(agencyId, null)));
+    }
 
-            final AgencyInfoResponse AgencyInfoResponse = postRequest(AGENCY_INFO_PATH, jsonbContext.marshall(agencyInfoRequest), AgencyInfoResponse.class);
+    private String lookupAgencyName(String agencyId, String trackingId) throws VipCoreException {
+        return agencyNameCache.get(agencyId, () -> loadAgencyName(agencyId, trackingId));
+    }
 
-            if (AgencyInfoResponse.getAgencyInfo() != null) {
-                result = new HashSet<>(AgencyInfoResponse.getAgencyInfo());
-            } else {
-                result = new HashSet<>();
+    /**
+     * Loads a name missing the cache from the cheapest source giving the same name as the agency info
+     */
+    private String loadAgencyName(String agencyId, String trackingId) throws VipCoreException {
+        final VipCoreServiceConnector source = informationSource;
+        if (source != null) {
+            final Information information = informationOf(source, agencyId, trackingId);
+            if (describesAgency(information, agencyId)) {
+                informationHits.increment();
+                return information.getAgencyName();
             }
+        }
+        return fetchAgencyName(agencyId, trackingId);
+    }
 
-            agencyInfoCache.put(agencyId, result);
+    private static Information informationOf(VipCoreServiceConnector source, String agencyId, String trackingId) {
+        final Information information = source.getCachedInformation(agencyId);
+        if (information != null) {
+            return information;
+        }
+        try {
+            // Joins a load of the same information already in flight, e.g. by an agency profile
+            return source.getInformation(agencyId, trackingId);
+        } catch (VipCoreException e) {
+            // The agency info endpoint may still know the agency
+            return null;
+        }
+    }
+
+    /**
+     * @return true if the information is that of the agency itself rather than of a branch, so its
+     * name is the one given by the agency info
+     */
+    private static boolean describesAgency(Information information, String agencyId) {
+        return information != null && information.getAgencyName() != null
+                && agencyId.equals(information.getAgencyId()) && agencyId.equals(information.getBranchId());
+    }
 
-            return result;
-        } catch (JSONBException e) {
-            throw new VipCoreAgencyInfoConnectorException("Caught unexpected JSONBException", e);
+    private String fetchAgencyName(String agencyId, String trackingId) throws VipCoreException {
+        // Only the id and name of the pickup agency are decoded, the rest of the agency info is skipped
+        final PickupAgency pickupAgency = postRequest(AGENCY_INFO_PATH,
+                AGENCY_INFO_REQUEST.encode(agencyId, VipCoreTracing.trackingId(trackingId)),
+                AgencyInfoCodec::readPickupAgency);
+        if (pickupAgency == null) {
+            throw new VipCoreAgencyInfoConnectorException("No agency info found for agency id: " + agencyId);
         }
+        return pickupAgency.getAgencyName();
     }
 
 }
@@ -3,18 +3,35 @@ package dk.dbc.vipcore.agencyinfo;
 import dk.dbc.commons.useragent.UserAgent;
 import dk.dbc.httpclient.HttpClient;
 import dk.dbc.vipcore.VipCoreConnector;
+import dk.dbc.vipcore.VipCoreConnectorSettings;
+import dk.dbc.vipcore.cache.CachePolicy;
+import dk.dbc.vipcore.cache.CacheSnapshotter;
+import dk.dbc.vipcore.capture.CallCapture;
+import dk.dbc.vipcore.compression.ResponseCompressionFeature;
+import dk.dbc.vipcore.compression.ResponseCompressionMetrics;
+import dk.dbc.vipcore.health.VipCoreHealth;
+import dk.dbc.vipcore.management.VipCoreConnectorManagement;
+import dk.dbc.vipcore.tracing.VipCoreTracingFilter;
 import jakarta.annotation.PostConstruct;
 import jakarta.annotation.PreDestroy;
 import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.inject.Instance;
 import jakarta.enterprise.inject.Produces;
 import jakarta.inject.Inject;
 import jakarta.ws.rs.client.Client;
 import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.eclipse.microprofile.health.HealthCheck;
+import org.eclipse.microprofile.health.Liveness;
+import org.eclipse.microprofile.health.Readiness;
 import org.glassfish.jersey.client.ClientConfig;
 import org.glassfish.jersey.jackson.JacksonFeature;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+
 /**
  * VipCoreAgencyInfoConnector factory
  * <p>
@@ -37,9 +54,17 @@ import org.slf4j.LoggerFactory;
  * <p>
  * CDI case depends on the vipcore service baseurl being defined as
  * the value of either a system property or environment variable
- * named VIPCORE_ENDPOINT. VIPCORE_SERVICE_TIMING_LOG_LEVEL
- * should be one of TRACE, DEBUG, INFO(default), WARN or ERROR, for setting
- * log level
+ * named VIPCORE_ENDPOINT. The settings shared by all connector factories,
+ * such as cache, bulkhead, timeout and health settings, are read by
+ * {@link VipCoreConnectorSettings}. Cache snapshots and call captures are
+ * named VipCoreAgencyInfoConnector, {@link #getCompressionMetrics()} reports the
+ * bytes transferred versus decoded and {@link #getHealth()} the readiness, produced as
+ * MicroProfile Health checks if VIPCORE_HEALTH_CHECKS lists VipCoreAgencyInfoConnector
+ * </p>
+ * <p>
+ * VIPCORE_AGENCY_NAME_CACHE_TTL (ISO-8601 duration) overrides the cache age, and
+ * VIPCORE_AGENCY_NAME_CACHE_MAX_SIZE (default 0, no limit) bounds the number of entries, see
+ * {@link CachePolicy}
  * </p>
  */
 @ApplicationScoped
@@ -48,35 +73,71 @@ public class VipCoreAgencyInfoConnectorFactory {
 
     public static VipCoreAgencyInfoConnector create(String vipcoreServiceBaseUrl) {
         final Client client = HttpClient.newClient(new ClientConfig()
-                .register(new JacksonFeature()));
+                .register(new JacksonFeature())
+                .register(new VipCoreTracingFilter()));
         LOGGER.info("Creating VipCoreAgencyInfoConnector for: {}", vipcoreServiceBaseUrl);
         return new VipCoreAgencyInfoConnector(client, UserAgent.forInternalRequests(), vipcoreServiceBaseUrl);
     }
 
     public static VipCoreAgencyInfoConnector create(String vipcoreServiceBaseUrl, int cacheAge, VipCoreConnector.TimingLogLevel level) {
         final Client client = HttpClient.newClient(new ClientConfig()
-                .register(new JacksonFeature()));
+                .register(new JacksonFeature())
+                .register(new VipCoreTracingFilter()));
         LOGGER.info("Creating VipCoreAgencyInfoConnector for: {}", vipcoreServiceBaseUrl);
         return new VipCoreAgencyInfoConnector(client, UserAgent.forInternalRequests(), vipcoreServiceBaseUrl, cacheAge, level);
     }
 
+    public static VipCoreAgencyInfoConnector create(String vipcoreServiceBaseUrl, int cacheAge, VipCoreConnector.TimingLogLevel level, ExecutorService executor) {
+        return create(vipcoreServiceBaseUrl, cacheAge, level, executor, null);
+    }
+
+    /**
+     * @param compression feature negotiating compressed responses, or null for uncompressed responses
+     */
+    public static VipCoreAgencyInfoConnector create(String vipcoreServiceBaseUrl, int cacheAge, VipCoreConnector.TimingLogLevel level, ExecutorService executor,
+            ResponseCompressionFeature compression) {
+        final ClientConfig clientConfig = new ClientConfig()
+                .register(new JacksonFeature())
+                .register(new VipCoreTracingFilter());
+        if (compression != null) {
+            clientConfig.register(compression);
+        }
+        final Client client = HttpClient.newClient(clientConfig);
+        LOGGER.info("Creating VipCoreAgencyInfoConnector for: {}", vipcoreServiceBaseUrl);
+        return new VipCoreAgencyInfoConnector(client, UserAgent.forInternalRequests(), vipcoreServiceBaseUrl, cacheAge, level, executor);
+    }
+
     @Inject
-    @ConfigProperty(name = "VIPCORE_ENDPOINT")
-    private String vipcoreServiceBaseUrl;
+    private VipCoreConnectorSettings settings;
 
     @Inject
-    @ConfigProperty(name = "VIPCORE_SERVICE_TIMING_LOG_LEVEL", defaultValue = "INFO")
-    private VipCoreConnector.TimingLogLevel level;
+    @ConfigProperty(name = "VIPCORE_AGENCY_NAME_CACHE_TTL")
+    private Optional<Duration> agencyNameCacheTtl;
 
     @Inject
-    @ConfigProperty(name = "VIPCORE_CACHE_AGE", defaultValue = "8")
-    private int cacheAge;
+    @ConfigProperty(name = "VIPCORE_AGENCY_NAME_CACHE_MAX_SIZE", defaultValue = "0")
+    private int agencyNameCacheMaxSize;
 
     VipCoreAgencyInfoConnector vipCoreAgencyInfoConnector;
+    ResponseCompressionFeature compression;
+    CacheSnapshotter cacheSnapshotter;
+    CallCapture callCapture;
+    VipCoreConnectorManagement management;
+    VipCoreHealth health;
 
     @PostConstruct
     public void initializeConnector() {
-        vipCoreAgencyInfoConnector = VipCoreAgencyInfoConnectorFactory.create(vipcoreServiceBaseUrl, cacheAge, level);
+        compression = settings.createCompression();
+        vipCoreAgencyInfoConnector = VipCoreAgencyInfoConnectorFactory.create(settings.getVipcoreServiceBaseUrl(),
+                settings.getCacheAge(), settings.getTimingLogLevel(), settings.createExecutor(), compression);
+        vipCoreAgencyInfoConnector.setCachePolicy(VipCoreAgencyInfoConnector.AGENCY_NAME_CACHE,
+                settings.cachePolicy(agencyNameCacheTtl, agencyNameCacheMaxSize));
+        settings.configure(vipCoreAgencyInfoConnector);
+        health = new VipCoreHealth("VipCoreAgencyInfoConnector", settings.healthPolicy(), vipCoreAgencyInfoConnector);
+        management = settings.registerManagement(vipCoreAgencyInfoConnector, "VipCoreAgencyInfoConnector");
+        callCapture = settings.createCallCapture("VipCoreAgencyInfoConnector");
+        vipCoreAgencyInfoConnector.setCallCapture(callCapture);
+        cacheSnapshotter = settings.startCacheSnapshotter("VipCoreAgencyInfoConnector", vipCoreAgencyInfoConnector.getCaches());
     }
 
     @Produces
@@ -84,8 +145,52 @@ public class VipCoreAgencyInfoConnectorFactory {
         return vipCoreAgencyInfoConnector;
     }
 
+    /**
+     * @return liveness and readiness checks of the connector, see {@link VipCoreHealth}
+     */
+    public VipCoreHealth getHealth() {
+        return health;
+    }
+
+    /**
+     * @return readiness check of the connector if VIPCORE_HEALTH_CHECKS lists VipCoreAgencyInfoConnector, see {@link VipCoreHealth}
+     */
+    @Produces
+    @Readiness
+    static HealthCheck readinessCheck(VipCoreConnectorSettings settings, Instance<VipCoreAgencyInfoConnectorFactory> factory) {
+        // The factory is only created if its checks are enabled
+        return settings.isHealthCheckEnabled("VipCoreAgencyInfoConnector") ? factory.get().getHealth().getReadinessCheck()
+                : VipCoreHealth.disabledCheck("VipCoreAgencyInfoConnector");
+    }
+
+    /**
+     * @return liveness check of the connector if VIPCORE_HEALTH_CHECKS lists VipCoreAgencyInfoConnector, see {@link VipCoreHealth}
+     */
+    @Produces
+    @Liveness
+    static HealthCheck livenessCheck(VipCoreConnectorSettings settings, Instance<VipCoreAgencyInfoConnectorFactory> factory) {
+        return settings.isHealthCheckEnabled("VipCoreAgencyInfoConnector") ? factory.get().getHealth().getLivenessCheck()
+                : VipCoreHealth.disabledCheck("VipCoreAgencyInfoConnector");
+    }
+
+    /**
+     * @return bytes transferred versus decoded, or null if response compression is not enabled
+     */
+    public ResponseCompressionMetrics getCompressionMetrics() {
+        return compression == null ? null : compression.getMetrics();
+    }
+
     @PreDestroy
     public void tearDownConnector() {
+        if (management != null) {
+            management.unregister();
+        }
+        if (cacheSnapshotter != null) {
+            cacheSnapshotter.close();
+        }
         vipCoreAgencyInfoConnector.close();
+        if (callCapture != null) {
+            callCapture.close();
+        }
     }
 }
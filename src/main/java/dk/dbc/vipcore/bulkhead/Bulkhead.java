@@ -0,0 +1,184 @@
+/*
+ * Copyright Dansk Bibliotekscenter a/s. Licensed under GNU GPL v3
+ *  See license text at https://opensource.dbc.dk/licenses/gpl-3.0
+ */
+
+package dk.dbc.vipcore.bulkhead;
+
+import dk.dbc.vipcore.deadline.Deadline;
+import dk.dbc.vipcore.exception.BulkheadFullException;
+import dk.dbc.vipcore.exception.DeadlineExceededException;
+import dk.dbc.vipcore.exception.VipCoreException;
+
+import java.util.Objects;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Concurrency pool and token bucket quota of the requests of one priority to one endpoint path
+ * <p>
+ * The policy may be replaced while requests are in flight. The pool is resized rather than
+ * replaced, so requests in flight keep counting against the new limit.
+ * </p>
+ */
+public class Bulkhead {
+    // Permits of a pool not limiting concurrency, leaving room for resizing without overflow
+    private static final int UNLIMITED = 1 << 30;
+
+    private final String name;
+    private final ResizableSemaphore semaphore;
+    private final Permit permit;
+    private final AtomicLong rejections = new AtomicLong();
+    private volatile BulkheadPolicy policy;
+    private volatile TokenBucket tokenBucket;
+
+    /**
+     * @param name   name of the bulkhead, used in rejection messages
+     * @param policy limits of the bulkhead
+     */
+    public Bulkhead(String name, BulkheadPolicy policy) {
+        this.name = Objects.requireNonNull(name, "name must not be null");
+        this.policy = Objects.requireNonNull(policy, "policy must not be null");
+        semaphore = new ResizableSemaphore(permits(policy));
+        tokenBucket = tokenBucket(policy);
+        permit = semaphore::release;
+    }
+
+    /**
+     * Waits for a token and a concurrency slot, at most until the deadline of the current context
+     * <p>
+     * A token reserved by a caller which then times out or is interrupted while waiting for
+     * a concurrency slot is given back to the bucket. A wait cut short by the deadline is not
+     * counted as a rejection.
+     * </p>
+     *
+     * @return permit to close when the request completed
+     * @throws BulkheadFullException     if no capacity became available within the maximum wait
+     * @throws DeadlineExceededException if no capacity became available before the deadline,
+     *                                   ending before the maximum wait
+     * @throws VipCoreException          if interrupted while waiting
+     */
+    public Permit acquire() throws VipCoreException {
+        final BulkheadPolicy currentPolicy = policy;
+        final TokenBucket currentTokenBucket = tokenBucket;
+        final Deadline callDeadline = Deadline.current();
+        final long policyWaitNanos = currentPolicy.getMaxWait().toNanos();
+        final long remainingNanos = callDeadline == null ? Long.MAX_VALUE : callDeadline.remainingNanos();
+        // A wait cut short by the deadline ends the call rather than counting as a rejection
+        final boolean deadlineBound = remainingNanos < policyWaitNanos;
+        final long maxWaitNanos = deadlineBound ? Math.max(0, remainingNanos) : policyWaitNanos;
+        final long deadline = System.nanoTime() + maxWaitNanos;
+        boolean reserved = false;
+        try {
+            if (currentTokenBucket != null) {
+                final long wait = currentTokenBucket.reserve(maxWaitNanos);
+                if (wait < 0) {
+                    throw rejected("request quota", currentPolicy, deadlineBound);
+                }
+                reserved = true;
+                TimeUnit.NANOSECONDS.sleep(wait);
+            }
+            if (!semaphore.tryAcquire(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS)) {
+                if (reserved) {
+                    currentTokenBucket.refund();
+                }
+                throw rejected("concurrent requests", currentPolicy, deadlineBound);
+            }
+        } catch (InterruptedException e) {
+            if (reserved) {
+                currentTokenBucket.refund();
+            }
+            Thread.currentThread().interrupt();
+            throw new VipCoreException("Interrupted while waiting for bulkhead " + name, e);
+        }
+        return permit;
+    }
+
+    /**
+     * Replaces the limits of the bulkhead, keeping the requests in flight in the pool
+     *
+     * @param policy the new limits
+     */
+    public synchronized void setPolicy(BulkheadPolicy policy) {
+        Objects.requireNonNull(policy, "policy must not be null");
+        final BulkheadPolicy replaced = this.policy;
+        final int delta = permits(policy) - permits(replaced);
+        if (delta > 0) {
+            semaphore.release(delta);
+        } else if (delta < 0) {
+            // Permits may go negative until enough requests in flight have completed
+            semaphore.reducePermits(-delta);
+        }
+        if (policy.getRate() != replaced.getRate() || policy.getBurst() != replaced.getBurst()) {
+            tokenBucket = tokenBucket(policy);
+        }
+        this.policy = policy;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public BulkheadPolicy getPolicy() {
+        return policy;
+    }
+
+    /**
+     * @return number of free concurrency slots, or -1 if concurrency is not limited
+     */
+    public int getAvailable() {
+        return policy.getMaxConcurrent() > 0 ? Math.max(0, semaphore.availablePermits()) : -1;
+    }
+
+    /**
+     * @return number of callers waiting for a concurrency slot
+     */
+    public int getQueueLength() {
+        return semaphore.getQueueLength();
+    }
+
+    public long getRejections() {
+        return rejections.get();
+    }
+
+    private VipCoreException rejected(String limit, BulkheadPolicy policy, boolean deadlineBound) {
+        if (deadlineBound) {
+            return new DeadlineExceededException("Deadline passed while waiting for " + limit + " of bulkhead " + name);
+        }
+        rejections.incrementAndGet();
+        return new BulkheadFullException("Bulkhead " + name + " reached its limit of " + limit
+                + " within " + policy.getMaxWait());
+    }
+
+    private static int permits(BulkheadPolicy policy) {
+        return policy.getMaxConcurrent() > 0 ? policy.getMaxConcurrent() : UNLIMITED;
+    }
+
+    private static TokenBucket tokenBucket(BulkheadPolicy policy) {
+        return policy.getRate() > 0 ? new TokenBucket(policy.getRate(), policy.getBurst()) : null;
+    }
+
+    /**
+     * Capacity held by a request, released on close
+     */
+    @FunctionalInterface
+    public interface Permit extends AutoCloseable {
+        Permit NONE = () -> {
+        };
+
+        @Override
+        void close();
+    }
+
+    private static final class ResizableSemaphore extends Semaphore {
+        private ResizableSemaphore(int permits) {
+            super(permits, true);
+        }
+
+        @Override
+        protected void reducePermits(int reduction) {
+            super.reducePermits(reduction);
+        }
+    }
+}
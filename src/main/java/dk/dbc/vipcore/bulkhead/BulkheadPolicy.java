@@ -0,0 +1,134 @@
+/*
+ * Copyright Dansk Bibliotekscenter a/s. Licensed under GNU GPL v3
+ *  See license text at https://opensource.dbc.dk/licenses/gpl-3.0
+ */
+
+package dk.dbc.vipcore.bulkhead;
+
+import java.time.Duration;
+import java.util.Objects;
+
+/**
+ * Immutable concurrency and rate limits of a {@link Bulkhead}
+ * <p>
+ * The rate is enforced by a token bucket holding up to burst tokens, refilled at the
+ * rate, so short bursts pass at once while the average stays at the rate. A caller
+ * waits at most the maximum wait for both a token and a concurrency slot, after which
+ * the call is rejected.
+ * </p>
+ */
+public final class BulkheadPolicy {
+    private static final Duration DEFAULT_MAX_WAIT = Duration.ofSeconds(30);
+
+    private final int maxConcurrent;
+    private final double rate;
+    private final int burst;
+    private final Duration maxWait;
+
+    private BulkheadPolicy(int maxConcurrent, double rate, int burst, Duration maxWait) {
+        if (maxConcurrent < 0) {
+            throw new IllegalArgumentException("maxConcurrent must not be negative");
+        }
+        if (rate < 0 || Double.isNaN(rate)) {
+            throw new IllegalArgumentException("rate must not be negative");
+        }
+        if (burst < 0) {
+            throw new IllegalArgumentException("burst must not be negative");
+        }
+        this.maxWait = Objects.requireNonNull(maxWait, "maxWait must not be null");
+        if (maxWait.isNegative()) {
+            throw new IllegalArgumentException("maxWait must not be negative");
+        }
+        this.maxConcurrent = maxConcurrent;
+        this.rate = rate;
+        this.burst = burst;
+    }
+
+    /**
+     * @param maxConcurrent maximum number of concurrent requests, zero for no limit
+     * @return policy without rate limit, waiting at most 30 seconds
+     */
+    public static BulkheadPolicy of(int maxConcurrent) {
+        return new BulkheadPolicy(maxConcurrent, 0, 0, DEFAULT_MAX_WAIT);
+    }
+
+    /**
+     * @param maxConcurrent maximum number of concurrent requests, zero for no limit
+     * @return copy of this policy with the given maximum number of concurrent requests
+     */
+    public BulkheadPolicy withMaxConcurrent(int maxConcurrent) {
+        return new BulkheadPolicy(maxConcurrent, rate, burst, maxWait);
+    }
+
+    /**
+     * @param rate average number of requests per second, zero for no limit
+     * @return copy of this policy with the given rate
+     */
+    public BulkheadPolicy withRate(double rate) {
+        return new BulkheadPolicy(maxConcurrent, rate, burst, maxWait);
+    }
+
+    /**
+     * @param burst number of requests passing at once after an idle period, zero for
+     *              one second worth of requests at the rate
+     * @return copy of this policy with the given burst
+     */
+    public BulkheadPolicy withBurst(int burst) {
+        return new BulkheadPolicy(maxConcurrent, rate, burst, maxWait);
+    }
+
+    /**
+     * @param maxWait maximum time to wait for a token and a concurrency slot, zero to reject at once
+     * @return copy of this policy with the given maximum wait
+     */
+    public BulkheadPolicy withMaxWait(Duration maxWait) {
+        return new BulkheadPolicy(maxConcurrent, rate, burst, maxWait);
+    }
+
+    public int getMaxConcurrent() {
+        return maxConcurrent;
+    }
+
+    public double getRate() {
+        return rate;
+    }
+
+    /**
+     * @return the burst, or one second worth of requests at the rate if not given
+     */
+    public int getBurst() {
+        return burst > 0 ? burst : Math.max(1, (int) Math.ceil(rate));
+    }
+
+    public Duration getMaxWait() {
+        return maxWait;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        final BulkheadPolicy that = (BulkheadPolicy) o;
+        return maxConcurrent == that.maxConcurrent && Double.compare(that.rate, rate) == 0
+                && burst == that.burst && maxWait.equals(that.maxWait);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(maxConcurrent, rate, burst, maxWait);
+    }
+
+    @Override
+    public String toString() {
+        return "BulkheadPolicy{" +
+                "maxConcurrent=" + maxConcurrent +
+                ", rate=" + rate +
+                ", burst=" + burst +
+                ", maxWait=" + maxWait +
+                '}';
+    }
+}
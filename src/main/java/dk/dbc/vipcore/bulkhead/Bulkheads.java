@@ -0,0 +1,130 @@
+/*
+ * Copyright Dansk Bibliotekscenter a/s. Licensed under GNU GPL v3
+ *  See license text at https://opensource.dbc.dk/licenses/gpl-3.0
+ */
+
+package dk.dbc.vipcore.bulkhead;
+
+import dk.dbc.vipcore.exception.VipCoreException;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Bulkheads of a connector, one per endpoint path and priority
+ * <p>
+ * Each priority has a default policy, which may be overridden per path. Requests of a
+ * path and priority without a policy are not limited. As each path and priority has its
+ * own pool, batch requests queueing for their pool never delay interactive requests.
+ * Changing a policy resizes the existing pools, so requests in flight keep counting
+ * against the new limits.
+ * </p>
+ */
+public class Bulkheads {
+    private final Map<Priority, BulkheadPolicy> defaultPolicies = new ConcurrentHashMap<>();
+    private final Map<String, BulkheadPolicy> pathPolicies = new ConcurrentHashMap<>();
+    private final Map<String, Bulkhead> bulkheads = new ConcurrentHashMap<>();
+
+    /**
+     * Sets the policy of all paths of a priority without a policy of their own
+     *
+     * @param priority the priority
+     * @param policy   the policy, or null to not limit the priority
+     */
+    public synchronized void setPolicy(Priority priority, BulkheadPolicy policy) {
+        Objects.requireNonNull(priority, "priority must not be null");
+        if (policy == null) {
+            defaultPolicies.remove(priority);
+        } else {
+            defaultPolicies.put(priority, policy);
+        }
+        updateBulkheads();
+    }
+
+    /**
+     * @param path     endpoint path
+     * @param priority the priority
+     * @param policy   the policy, or null to use the policy of the priority
+     */
+    public synchronized void setPolicy(String path, Priority priority, BulkheadPolicy policy) {
+        Objects.requireNonNull(path, "path must not be null");
+        Objects.requireNonNull(priority, "priority must not be null");
+        if (policy == null) {
+            pathPolicies.remove(key(path, priority));
+        } else {
+            pathPolicies.put(key(path, priority), policy);
+        }
+        updateBulkheads();
+    }
+
+    /**
+     * @param priority the priority
+     * @return policy of the paths of the priority without a policy of their own, or null if not limited
+     */
+    public BulkheadPolicy getPolicy(Priority priority) {
+        return defaultPolicies.get(priority);
+    }
+
+    /**
+     * @param path     endpoint path
+     * @param priority the priority
+     * @return bulkhead of the path and priority, or null if they are not limited
+     */
+    public Bulkhead get(String path, Priority priority) {
+        final String key = key(path, priority);
+        final Bulkhead bulkhead = bulkheads.get(key);
+        if (bulkhead != null) {
+            return bulkhead;
+        }
+        synchronized (this) {
+            final BulkheadPolicy policy = policy(key, priority);
+            if (policy == null) {
+                return null;
+            }
+            return bulkheads.computeIfAbsent(key, k -> new Bulkhead(k, policy));
+        }
+    }
+
+    /**
+     * @return the bulkheads of the paths and priorities requested so far
+     */
+    public Collection<Bulkhead> getAll() {
+        return new ArrayList<>(bulkheads.values());
+    }
+
+    /**
+     * Waits for capacity for a request to a path with the priority of the current context
+     *
+     * @param path endpoint path
+     * @return permit to close when the request completed
+     * @throws VipCoreException if rejected or interrupted, see {@link Bulkhead#acquire()}
+     */
+    public Bulkhead.Permit acquire(String path) throws VipCoreException {
+        final Bulkhead bulkhead = get(path, Priority.current());
+        return bulkhead == null ? Bulkhead.Permit.NONE : bulkhead.acquire();
+    }
+
+    private void updateBulkheads() {
+        for (Map.Entry<String, Bulkhead> entry : bulkheads.entrySet()) {
+            final String key = entry.getKey();
+            final BulkheadPolicy policy = policy(key, Priority.valueOf(key.substring(key.lastIndexOf('/') + 1)));
+            if (policy == null) {
+                // No longer limited, requests in flight release their permits to the removed bulkhead
+                bulkheads.remove(key);
+            } else {
+                entry.getValue().setPolicy(policy);
+            }
+        }
+    }
+
+    private BulkheadPolicy policy(String key, Priority priority) {
+        return pathPolicies.getOrDefault(key, defaultPolicies.get(priority));
+    }
+
+    private static String key(String path, Priority priority) {
+        return path + "/" + priority;
+    }
+}
@@ -0,0 +1,51 @@
+/*
+ * Copyright Dansk Bibliotekscenter a/s. Licensed under GNU GPL v3
+ *  See license text at https://opensource.dbc.dk/licenses/gpl-3.0
+ */
+
+package dk.dbc.vipcore.bulkhead;
+
+import io.opentelemetry.context.Context;
+import io.opentelemetry.context.ContextKey;
+import io.opentelemetry.context.ImplicitContextKeyed;
+
+/**
+ * Priority class of the calls made by a caller
+ * <p>
+ * The priority is carried in the current {@link Context}, so it follows the caller into
+ * the fan-out tasks of bulk lookups:
+ * </p>
+ * <pre>
+ *    try (Scope ignored = Priority.BATCH.makeCurrent()) {
+ *        connector.prefetchLibraryRules(agencyIds);
+ *    }
+ * </pre>
+ * <p>
+ * Calls made outside such a scope are {@link #INTERACTIVE}.
+ * </p>
+ */
+public enum Priority implements ImplicitContextKeyed {
+    /**
+     * Latency sensitive calls, e.g. made while serving a request
+     */
+    INTERACTIVE,
+    /**
+     * Throughput oriented calls, e.g. made by batch jobs and cache warm-up
+     */
+    BATCH;
+
+    private static final ContextKey<Priority> KEY = ContextKey.named("vipcore-priority");
+
+    /**
+     * @return priority of the current context, {@link #INTERACTIVE} if none is set
+     */
+    public static Priority current() {
+        final Priority priority = Context.current().get(KEY);
+        return priority == null ? INTERACTIVE : priority;
+    }
+
+    @Override
+    public Context storeInContext(Context context) {
+        return context.with(KEY, this);
+    }
+}
@@ -0,0 +1,64 @@
+/*
+ * Copyright Dansk Bibliotekscenter a/s. Licensed under GNU GPL v3
+ *  See license text at https://opensource.dbc.dk/licenses/gpl-3.0
+ */
+
+package dk.dbc.vipcore.bulkhead;
+
+import java.util.function.LongSupplier;
+
+/**
+ * Token bucket handing out tokens by reservation
+ * <p>
+ * A caller finding the bucket empty reserves the next token, driving the balance
+ * negative, and waits for it outside the lock. Waiting callers are thereby served in
+ * reservation order and never exceed the rate.
+ * </p>
+ */
+final class TokenBucket {
+    private final double tokensPerNano;
+    private final double capacity;
+    private final LongSupplier nanoClock;
+    private double tokens;
+    private long refilledAt;
+
+    TokenBucket(double tokensPerSecond, int capacity) {
+        this(tokensPerSecond, capacity, System::nanoTime);
+    }
+
+    TokenBucket(double tokensPerSecond, int capacity, LongSupplier nanoClock) {
+        this.tokensPerNano = tokensPerSecond / 1e9;
+        this.capacity = capacity;
+        this.nanoClock = nanoClock;
+        this.tokens = capacity;
+        this.refilledAt = nanoClock.getAsLong();
+    }
+
+    /**
+     * @param maxWaitNanos maximum time the caller is willing to wait for the token
+     * @return nanoseconds to wait before the reserved token is available, or -1 if no
+     * token becomes available within the maximum wait, in which case nothing is reserved
+     */
+    synchronized long reserve(long maxWaitNanos) {
+        final long now = nanoClock.getAsLong();
+        tokens = Math.min(capacity, tokens + (now - refilledAt) * tokensPerNano);
+        refilledAt = now;
+        if (tokens >= 1) {
+            tokens -= 1;
+            return 0;
+        }
+        final long wait = (long) Math.ceil((1 - tokens) / tokensPerNano);
+        if (wait > maxWaitNanos) {
+            return -1;
+        }
+        tokens -= 1;
+        return wait;
+    }
+
+    /**
+     * Gives back a reserved token which was not used, e.g. because the caller gave up waiting
+     */
+    synchronized void refund() {
+        tokens = Math.min(capacity, tokens + 1);
+    }
+}
@@ -0,0 +1,162 @@
+/*
+ * Copyright Dansk Bibliotekscenter a/s. Licensed under GNU GPL v3
+ *  See license text at https://opensource.dbc.dk/licenses/gpl-3.0
+ */
+
+package dk.dbc.vipcore.cache;
+
+import dk.dbc.vipcore.exception.VipCoreException;
+import dk.dbc.vipcore.tracing.VipCoreTracing;
+
+import java.time.Duration;
+import java.util.function.BiConsumer;
+
+/**
+ * Cache keyed by agency id
+ * <p>
+ * Entries of canonical six digit agency ids are kept in a primitive int keyed map, so
+ * lookups by int, see {@link #get(int, CacheLoader)}, neither create nor hash strings.
+ * Entries of any other id are kept by their string key as in {@link VipCoreCache}.
+ * Lookups by string of a canonical id use the int keyed map as well.
+ * </p>
+ *
+ * @param <V> value type
+ */
+public class AgencyCache<V> extends VipCoreCache<String, V> {
+    private final IntEntryMap<CacheEntry<V>> intEntries = new IntEntryMap<>();
+
+    public AgencyCache(String name, Duration ttl) {
+        this(name, ttl, null);
+    }
+
+    public AgencyCache(String name, Duration ttl, CacheValueCodec<V> codec) {
+        super(name, ttl, codec);
+    }
+
+    public AgencyCache(String name, CachePolicy policy, CacheValueCodec<V> codec) {
+        super(name, policy, codec);
+    }
+
+    /**
+     * @param agencyId agency id as int
+     * @return cached value, or null if absent or expired
+     */
+    public V getIfPresent(int agencyId) {
+        final CacheEntry<V> entry = intEntries.get(agencyId);
+        if (entry == null) {
+            return null;
+        }
+        if (entry.isExpired(System.currentTimeMillis())) {
+            if (!keepsExpired(entry)) {
+                intEntries.remove(agencyId, entry);
+            }
+            return null;
+        }
+        final V value = entry.getValue();
+        if (value == null) {
+            intEntries.remove(agencyId, entry);
+        }
+        return value;
+    }
+
+    /**
+     * Returns the cached value for the agency, loading it on a miss
+     *
+     * @param agencyId agency id as int
+     * @param loader   loader of the value on a miss
+     * @return the value
+     * @throws VipCoreException if the loader failed
+     */
+    public V get(int agencyId, CacheLoader<V> loader) throws VipCoreException {
+        final V cached = getIfPresent(agencyId);
+        if (cached != null) {
+            VipCoreTracing.cacheHit(true);
+            return cached;
+        }
+        // Misses, and ids without an int form, go through the coalescing string keyed path
+        return get(AgencyIds.toString(agencyId), loader);
+    }
+
+    /**
+     * Returns the cached value for the agency, loading the raw response body on a miss
+     *
+     * @param agencyId agency id as int
+     * @param loader   loader of the raw response body on a miss
+     * @param decoder  decoder of the value from the body
+     * @return the value
+     * @throws VipCoreException if the loader or the decoder failed
+     */
+    public V get(int agencyId, RawCacheLoader loader, CacheValueDecoder<V> decoder) throws VipCoreException {
+        final V cached = getIfPresent(agencyId);
+        if (cached != null) {
+            VipCoreTracing.cacheHit(true);
+            return cached;
+        }
+        return get(AgencyIds.toString(agencyId), loader, decoder);
+    }
+
+    /**
+     * Returns the cached value for the agency, loading and revalidating the raw response body on a miss
+     *
+     * @param agencyId agency id as int
+     * @param loader   loader of the raw response body on a miss
+     * @param decoder  decoder of the value from the body
+     * @return the value
+     * @throws VipCoreException if the loader or the decoder failed
+     */
+    public V getRevalidating(int agencyId, RawCacheLoader loader, CacheValueDecoder<V> decoder) throws VipCoreException {
+        final V cached = getIfPresent(agencyId);
+        if (cached != null) {
+            VipCoreTracing.cacheHit(true);
+            return cached;
+        }
+        return getRevalidating(AgencyIds.toString(agencyId), loader, decoder);
+    }
+
+    @Override
+    protected void forEachEntry(BiConsumer<String, CacheEntry<V>> action) {
+        super.forEachEntry(action);
+        intEntries.forEach((key, entry) -> action.accept(AgencyIds.toString(key), entry));
+    }
+
+    public void invalidate(int agencyId) {
+        intEntries.remove(agencyId, null);
+    }
+
+    @Override
+    public void invalidateAll() {
+        super.invalidateAll();
+        intEntries.clear();
+    }
+
+    @Override
+    protected CacheEntry<V> entryOf(String agencyId) {
+        final int key = AgencyIds.toInt(agencyId);
+        return key == AgencyIds.NOT_NUMERIC ? super.entryOf(agencyId) : intEntries.get(key);
+    }
+
+    @Override
+    protected void storeEntry(String agencyId, CacheEntry<V> entry) {
+        final int key = AgencyIds.toInt(agencyId);
+        if (key == AgencyIds.NOT_NUMERIC) {
+            super.storeEntry(agencyId, entry);
+        } else {
+            intEntries.put(key, entry);
+        }
+    }
+
+    @Override
+    protected void removeEntry(String agencyId, CacheEntry<V> entry) {
+        final int key = AgencyIds.toInt(agencyId);
+        if (key == AgencyIds.NOT_NUMERIC) {
+            super.removeEntry(agencyId, entry);
+        } else {
+            intEntries.remove(key, entry);
+        }
+    }
+
+    @Override
+    public int size() {
+        return super.size() + intEntries.size();
+    }
+}
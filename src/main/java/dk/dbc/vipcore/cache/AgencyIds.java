@@ -0,0 +1,72 @@
+/*
+ * Copyright Dansk Bibliotekscenter a/s. Licensed under GNU GPL v3
+ *  See license text at https://opensource.dbc.dk/licenses/gpl-3.0
+ */
+
+package dk.dbc.vipcore.cache;
+
+/**
+ * Conversion between agency ids and their primitive int form
+ * <p>
+ * Agency ids are six digit numbers. An id in exactly that canonical form maps to an
+ * int in the range 0 to 999999 and back without loss, any other id has no int form.
+ * </p>
+ */
+public final class AgencyIds {
+    /**
+     * Returned by {@link #toInt(String)} for ids without an int form
+     */
+    public static final int NOT_NUMERIC = -1;
+
+    static final int MAX = 999999;
+
+    private static final int LENGTH = 6;
+
+    private AgencyIds() {
+    }
+
+    /**
+     * @param agencyId agency id
+     * @return the agency id as int, or {@link #NOT_NUMERIC} if not a canonical six digit id
+     */
+    public static int toInt(String agencyId) {
+        if (agencyId == null || agencyId.length() != LENGTH) {
+            return NOT_NUMERIC;
+        }
+        int value = 0;
+        for (int i = 0; i < LENGTH; i++) {
+            final char c = agencyId.charAt(i);
+            if (c < '0' || c > '9') {
+                return NOT_NUMERIC;
+            }
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+
+    /**
+     * @param agencyId agency id as int
+     * @return true if the int is the int form of a canonical agency id
+     */
+    public static boolean isValid(int agencyId) {
+        return agencyId >= 0 && agencyId <= MAX;
+    }
+
+    /**
+     * @param agencyId agency id as int
+     * @return the agency id zero padded to six digits, e.g. 10100 becomes "010100", or
+     * the plain decimal form if the int is not the int form of a canonical agency id
+     */
+    public static String toString(int agencyId) {
+        if (!isValid(agencyId)) {
+            return Integer.toString(agencyId);
+        }
+        final char[] chars = new char[LENGTH];
+        int value = agencyId;
+        for (int i = LENGTH - 1; i >= 0; i--) {
+            chars[i] = (char) ('0' + value % 10);
+            value /= 10;
+        }
+        return new String(chars);
+    }
+}
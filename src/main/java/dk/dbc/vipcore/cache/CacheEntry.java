@@ -0,0 +1,84 @@
+/*
+ * Copyright Dansk Bibliotekscenter a/s. Licensed under GNU GPL v3
+ *  See license text at https://opensource.dbc.dk/licenses/gpl-3.0
+ */
+
+package dk.dbc.vipcore.cache;
+
+/**
+ * Immutable cached value with its expiry time
+ * <p>
+ * Entries loaded or put with a raw response body carry the fingerprint of the body, which
+ * lets an expired entry be renewed without decoding when the response has not changed.
+ * Entries of values cached without a body never carry a fingerprint.
+ * </p>
+ *
+ * @param <V> value type
+ */
+public class CacheEntry<V> {
+    private final V value;
+    private final long createdAt;
+    private final long expiresAt;
+    private final byte[] fingerprint;
+
+    public CacheEntry(V value, long createdAt, long expiresAt) {
+        this(value, createdAt, expiresAt, null);
+    }
+
+    CacheEntry(V value, long createdAt, long expiresAt, byte[] fingerprint) {
+        this.value = value;
+        this.createdAt = createdAt;
+        this.expiresAt = expiresAt;
+        this.fingerprint = fingerprint;
+    }
+
+    /**
+     * @return the cached value, or null if the value is no longer available
+     */
+    public V getValue() {
+        return value;
+    }
+
+    /**
+     * @return creation time in epoch milliseconds
+     */
+    public long getCreatedAt() {
+        return createdAt;
+    }
+
+    /**
+     * @return expiry time in epoch milliseconds
+     */
+    public long getExpiresAt() {
+        return expiresAt;
+    }
+
+    public boolean isExpired(long now) {
+        return now >= expiresAt;
+    }
+
+    /**
+     * @return fingerprint of the response body the value was decoded from, or null
+     */
+    byte[] getFingerprint() {
+        return fingerprint;
+    }
+
+    /**
+     * @param createdAt creation time of the copy in epoch milliseconds
+     * @param expiresAt expiry time of the copy in epoch milliseconds
+     * @return copy of this entry, sharing the value, with the given times
+     */
+    CacheEntry<V> withTimes(long createdAt, long expiresAt) {
+        return new CacheEntry<>(value, createdAt, expiresAt, fingerprint);
+    }
+
+    @Override
+    public String toString() {
+        return "CacheEntry{" +
+                "value=" + value +
+                ", createdAt=" + createdAt +
+                ", expiresAt=" + expiresAt +
+                '}';
+    }
+}
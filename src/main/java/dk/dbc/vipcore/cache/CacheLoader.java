@@ -0,0 +1,18 @@
+/*
+ * Copyright Dansk Bibliotekscenter a/s. Licensed under GNU GPL v3
+ *  See license text at https://opensource.dbc.dk/licenses/gpl-3.0
+ */
+
+package dk.dbc.vipcore.cache;
+
+import dk.dbc.vipcore.exception.VipCoreException;
+
+/**
+ * Loads the value of a cache miss, typically by calling VipCore
+ *
+ * @param <V> value type
+ */
+@FunctionalInterface
+public interface CacheLoader<V> {
+    V load() throws VipCoreException;
+}
@@ -0,0 +1,242 @@
+/*
+ * Copyright Dansk Bibliotekscenter a/s. Licensed under GNU GPL v3
+ *  See license text at https://opensource.dbc.dk/licenses/gpl-3.0
+ */
+
+package dk.dbc.vipcore.cache;
+
+import java.time.Duration;
+import java.util.Objects;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Immutable expiry, size and refresh settings of a cache
+ * <p>
+ * With a jitter of e.g. 0.1, each entry lives a random time between 90% and 100% of
+ * the time-to-live, so entries loaded together, on one node or across nodes started
+ * together, do not all expire at the same instant.
+ * </p>
+ * <p>
+ * A cache holding more than its maximum size evicts the entries closest to expiry
+ * until it holds 90% of the maximum size.
+ * </p>
+ * <p>
+ * With an adaptive time-to-live, the lifetime of each key doubles every time a reload
+ * finds its value unchanged and halves every time it finds it changed, within the
+ * bounds. With server hints, a lifetime given by the Cache-Control or Expires headers of
+ * the response takes precedence, within the same bounds, or up to the time-to-live if
+ * the time-to-live is not adaptive.
+ * </p>
+ */
+public final class CachePolicy {
+    private final Duration ttl;
+    private final double jitter;
+    private final int maxSize;
+    private final Duration refreshInterval;
+    private final Duration minTtl;
+    private final Duration maxTtl;
+    private final boolean serverHints;
+
+    private CachePolicy(Duration ttl, double jitter, int maxSize, Duration refreshInterval) {
+        this(ttl, jitter, maxSize, refreshInterval, ttl, ttl, false);
+    }
+
+    private CachePolicy(Duration ttl, double jitter, int maxSize, Duration refreshInterval,
+                        Duration minTtl, Duration maxTtl, boolean serverHints) {
+        this.ttl = Objects.requireNonNull(ttl, "ttl must not be null");
+        if (ttl.isNegative()) {
+            throw new IllegalArgumentException("ttl must not be negative");
+        }
+        if (jitter < 0 || jitter > 1) {
+            throw new IllegalArgumentException("jitter must be between 0 and 1");
+        }
+        if (maxSize < 0) {
+            throw new IllegalArgumentException("maxSize must not be negative");
+        }
+        this.jitter = jitter;
+        this.maxSize = maxSize;
+        this.refreshInterval = Objects.requireNonNull(refreshInterval, "refreshInterval must not be null");
+        this.minTtl = Objects.requireNonNull(minTtl, "minTtl must not be null");
+        this.maxTtl = Objects.requireNonNull(maxTtl, "maxTtl must not be null");
+        if (minTtl.isNegative() || minTtl.compareTo(maxTtl) > 0) {
+            throw new IllegalArgumentException("minTtl must be between zero and maxTtl");
+        }
+        if (!ttl.isZero() && (ttl.compareTo(minTtl) < 0 || ttl.compareTo(maxTtl) > 0)) {
+            throw new IllegalArgumentException("ttl must be zero or between minTtl and maxTtl");
+        }
+        this.serverHints = serverHints;
+    }
+
+    /**
+     * @param ttl time-to-live of entries, zero disables caching
+     * @return policy without jitter, size limit or refresh
+     */
+    public static CachePolicy of(Duration ttl) {
+        return new CachePolicy(ttl, 0, 0, Duration.ZERO);
+    }
+
+    /**
+     * @param ttl time-to-live of entries, zero disables caching. The lifetime new keys start
+     *            with if adaptive, and then must lie within the adaptive bounds
+     * @return copy of this policy with the given time-to-live
+     */
+    public CachePolicy withTtl(Duration ttl) {
+        if (isAdaptive()) {
+            return new CachePolicy(ttl, jitter, maxSize, refreshInterval, minTtl, maxTtl, serverHints);
+        }
+        return new CachePolicy(ttl, jitter, maxSize, refreshInterval, ttl, ttl, serverHints);
+    }
+
+    /**
+     * @param jitter fraction of the time-to-live by which the lifetime of each entry is randomly shortened
+     * @return copy of this policy with the given jitter
+     */
+    public CachePolicy withJitter(double jitter) {
+        return new CachePolicy(ttl, jitter, maxSize, refreshInterval, minTtl, maxTtl, serverHints);
+    }
+
+    /**
+     * @param maxSize maximum number of entries, zero for no limit
+     * @return copy of this policy with the given maximum size
+     */
+    public CachePolicy withMaxSize(int maxSize) {
+        return new CachePolicy(ttl, jitter, maxSize, refreshInterval, minTtl, maxTtl, serverHints);
+    }
+
+    /**
+     * @param refreshInterval interval between background refreshes of the cached entries,
+     *                        zero for no refresh. Only honored by caches with a refresh,
+     *                        see {@link CacheRefresher}
+     * @return copy of this policy with the given refresh interval
+     */
+    public CachePolicy withRefreshInterval(Duration refreshInterval) {
+        return new CachePolicy(ttl, jitter, maxSize, refreshInterval, minTtl, maxTtl, serverHints);
+    }
+
+    /**
+     * @param minTtl shortest lifetime of keys whose value keeps changing, at most the time-to-live
+     * @param maxTtl longest lifetime of keys whose value stays unchanged, at least the time-to-live
+     * @return copy of this policy adapting the lifetime of each key to how often its value changes
+     */
+    public CachePolicy withAdaptiveTtl(Duration minTtl, Duration maxTtl) {
+        return new CachePolicy(ttl, jitter, maxSize, refreshInterval, minTtl, maxTtl, serverHints);
+    }
+
+    /**
+     * @param serverHints true to honor the Cache-Control and Expires headers of responses
+     * @return copy of this policy with the given server hints setting
+     */
+    public CachePolicy withServerHints(boolean serverHints) {
+        return new CachePolicy(ttl, jitter, maxSize, refreshInterval, minTtl, maxTtl, serverHints);
+    }
+
+    public Duration getTtl() {
+        return ttl;
+    }
+
+    public double getJitter() {
+        return jitter;
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public Duration getRefreshInterval() {
+        return refreshInterval;
+    }
+
+    public Duration getMinTtl() {
+        return minTtl;
+    }
+
+    public Duration getMaxTtl() {
+        return maxTtl;
+    }
+
+    /**
+     * @return true if the lifetime of each key adapts to how often its value changes
+     */
+    public boolean isAdaptive() {
+        return !minTtl.equals(maxTtl);
+    }
+
+    public boolean isServerHints() {
+        return serverHints;
+    }
+
+    /**
+     * @return lifetime in milliseconds of a new entry, the time-to-live shortened by a random jitter
+     */
+    long lifetimeMillis() {
+        return jittered(ttl.toMillis());
+    }
+
+    /**
+     * @param previousLifetime lifetime in milliseconds of the entry previously cached for the key, zero if none
+     * @param unchanged        true if the reloaded value equals the previous value
+     * @param hintMillis       lifetime given by the server, or {@link ServerCacheHint#NONE}
+     * @return lifetime in milliseconds of the reloaded entry, shortened by a random jitter
+     */
+    long lifetimeMillis(long previousLifetime, boolean unchanged, long hintMillis) {
+        if (serverHints && hintMillis != ServerCacheHint.NONE) {
+            return jittered(bounded(hintMillis));
+        }
+        if (isAdaptive() && previousLifetime > 0) {
+            // The previous lifetime includes its jitter, which the bounds keep from compounding
+            return jittered(bounded(unchanged ? 2 * previousLifetime : previousLifetime / 2));
+        }
+        return lifetimeMillis();
+    }
+
+    /**
+     * @return longest lifetime in milliseconds an entry may be given, zero if caching is disabled
+     */
+    long longestLifetimeMillis() {
+        return isAdaptive() && !ttl.isZero() ? maxTtl.toMillis() : ttl.toMillis();
+    }
+
+    private long bounded(long lifetime) {
+        final long lower = isAdaptive() ? minTtl.toMillis() : 0;
+        return Math.max(lower, Math.min(longestLifetimeMillis(), lifetime));
+    }
+
+    private long jittered(long lifetime) {
+        if (jitter == 0 || lifetime == 0) {
+            return lifetime;
+        }
+        return lifetime - (long) (lifetime * jitter * ThreadLocalRandom.current().nextDouble());
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        final CachePolicy that = (CachePolicy) o;
+        return Double.compare(that.jitter, jitter) == 0 && maxSize == that.maxSize
+                && ttl.equals(that.ttl) && refreshInterval.equals(that.refreshInterval)
+                && minTtl.equals(that.minTtl) && maxTtl.equals(that.maxTtl) && serverHints == that.serverHints;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(ttl, jitter, maxSize, refreshInterval, minTtl, maxTtl, serverHints);
+    }
+
+    @Override
+    public String toString() {
+        return "CachePolicy{" +
+                "ttl=" + ttl +
+                ", jitter=" + jitter +
+                ", maxSize=" + maxSize +
+                ", refreshInterval=" + refreshInterval +
+                ", minTtl=" + minTtl +
+                ", maxTtl=" + maxTtl +
+                ", serverHints=" + serverHints +
+                '}';
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright Dansk Bibliotekscenter a/s. Licensed under GNU GPL v3
+ *  See license text at https://opensource.dbc.dk/licenses/gpl-3.0
+ */
+
+package dk.dbc.vipcore.cache;
+
+import dk.dbc.vipcore.bulkhead.Priority;
+import dk.dbc.vipcore.exception.VipCoreException;
+import io.opentelemetry.context.Scope;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.Objects;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Periodically refreshes cached entries in the background
+ * <p>
+ * Failures are logged and never propagated, the next refresh is attempted after the
+ * interval as usual.
+ * </p>
+ */
+public class CacheRefresher implements AutoCloseable {
+    private static final Logger LOGGER = LoggerFactory.getLogger(CacheRefresher.class);
+
+    /**
+     * Refreshes cached entries
+     */
+    @FunctionalInterface
+    public interface Refresh {
+        /**
+         * @return number of entries which changed
+         * @throws VipCoreException if the refresh failed
+         */
+        int refresh() throws VipCoreException;
+    }
+
+    private final String name;
+    private final Duration interval;
+    private final Refresh refresh;
+    private ScheduledExecutorService scheduler;
+
+    /**
+     * @param name     name of what is refreshed, used for logging
+     * @param interval interval between refreshes, zero or negative to never refresh
+     * @param refresh  the refresh
+     */
+    public CacheRefresher(String name, Duration interval, Refresh refresh) {
+        this.name = Objects.requireNonNull(name, "name must not be null");
+        this.interval = Objects.requireNonNull(interval, "interval must not be null");
+        this.refresh = Objects.requireNonNull(refresh, "refresh must not be null");
+    }
+
+    /**
+     * Schedules the periodic refreshes, the first after one interval
+     *
+     * @return this refresher
+     */
+    public CacheRefresher start() {
+        if (!interval.isZero() && !interval.isNegative()) {
+            scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                final Thread thread = new Thread(runnable, "vipcore-cache-refresh");
+                thread.setDaemon(true);
+                return thread;
+            });
+            final long millis = interval.toMillis();
+            scheduler.scheduleWithFixedDelay(this::run, millis, millis, TimeUnit.MILLISECONDS);
+        }
+        return this;
+    }
+
+    public Duration getInterval() {
+        return interval;
+    }
+
+    /**
+     * Stops the periodic refreshes
+     */
+    @Override
+    public void close() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+    }
+
+    private void run() {
+        try (Scope ignored = Priority.BATCH.makeCurrent()) {
+            final int changed = refresh.refresh();
+            LOGGER.debug("Refreshed {}, {} changed", name, changed);
+        } catch (VipCoreException | RuntimeException e) {
+            LOGGER.warn("Unable to refresh {}", name, e);
+        }
+    }
+}
@@ -0,0 +1,173 @@
+/*
+ * Copyright Dansk Bibliotekscenter a/s. Licensed under GNU GPL v3
+ *  See license text at https://opensource.dbc.dk/licenses/gpl-3.0
+ */
+
+package dk.dbc.vipcore.cache;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Binary snapshot of cache contents
+ * <p>
+ * The snapshot is a gzipped stream of a header followed by the entries of each cache:
+ * cache name, entry count, and per entry the key, creation time, expiry time and
+ * the value encoded by the {@link CacheValueCodec} of the cache. Caches without a
+ * codec are left out.
+ * </p>
+ * <p>
+ * Snapshots are written to a temporary file which then replaces the snapshot, so a
+ * reader never sees a partially written snapshot. On read, entries of unknown caches,
+ * expired entries and entries the codec cannot decode are skipped, and restored entries
+ * keep their original expiry time.
+ * </p>
+ */
+public final class CacheSnapshot {
+    private static final Logger LOGGER = LoggerFactory.getLogger(CacheSnapshot.class);
+
+    private static final int MAGIC = 0x56495043; // "VIPC"
+    private static final int VERSION = 1;
+
+    private CacheSnapshot() {
+    }
+
+    /**
+     * @param file   snapshot file
+     * @param caches caches to write
+     * @return number of entries written
+     * @throws IOException if the snapshot could not be written
+     */
+    public static int write(Path file, Collection<? extends VipCoreCache<String, ?>> caches) throws IOException {
+        final Path parent = file.toAbsolutePath().getParent();
+        Files.createDirectories(parent);
+        final Path tmp = Files.createTempFile(parent, file.getFileName().toString(), ".tmp");
+        int written = 0;
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                    new GZIPOutputStream(Files.newOutputStream(tmp))))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                int count = 0;
+                for (VipCoreCache<String, ?> cache : caches) {
+                    if (cache.getCodec() != null) {
+                        count++;
+                    }
+                }
+                out.writeInt(count);
+                for (VipCoreCache<String, ?> cache : caches) {
+                    if (cache.getCodec() != null) {
+                        written += writeCache(out, cache);
+                    }
+                }
+            }
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+        return written;
+    }
+
+    /**
+     * @param file   snapshot file
+     * @param caches caches to restore
+     * @return number of entries restored, zero if the snapshot file does not exist
+     * @throws IOException if the snapshot could not be read
+     */
+    public static int read(Path file, Collection<? extends VipCoreCache<String, ?>> caches) throws IOException {
+        final Map<String, VipCoreCache<String, ?>> cachesByName = new HashMap<>();
+        for (VipCoreCache<String, ?> cache : caches) {
+            cachesByName.put(cache.getName(), cache);
+        }
+        int restored = 0;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                new GZIPInputStream(Files.newInputStream(file))))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Not a cache snapshot: " + file);
+            }
+            final int version = in.readInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported cache snapshot version " + version + ": " + file);
+            }
+            final int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                final String name = in.readUTF();
+                final VipCoreCache<String, ?> cache = cachesByName.get(name);
+                if (cache == null || cache.getCodec() == null) {
+                    LOGGER.info("Skipping unknown cache {} in snapshot {}", name, file);
+                }
+                restored += readCache(in, cache);
+            }
+        } catch (NoSuchFileException e) {
+            return 0;
+        }
+        return restored;
+    }
+
+    private static <V> int writeCache(DataOutputStream out, VipCoreCache<String, V> cache) throws IOException {
+        final CacheValueCodec<V> codec = cache.getCodec();
+        final Map<String, CacheEntry<V>> entries = cache.entries();
+        final Map<String, byte[]> encoded = new HashMap<>();
+        for (Map.Entry<String, CacheEntry<V>> entry : entries.entrySet()) {
+            // Lazily decoded entries are decoded here, and left out if that fails
+            final V value = entry.getValue().getValue();
+            if (value != null) {
+                encoded.put(entry.getKey(), codec.encode(value));
+            }
+        }
+        out.writeUTF(cache.getName());
+        out.writeInt(encoded.size());
+        for (Map.Entry<String, byte[]> entry : encoded.entrySet()) {
+            final CacheEntry<V> cacheEntry = entries.get(entry.getKey());
+            out.writeUTF(entry.getKey());
+            out.writeLong(cacheEntry.getCreatedAt());
+            out.writeLong(cacheEntry.getExpiresAt());
+            out.writeInt(entry.getValue().length);
+            out.write(entry.getValue());
+        }
+        return encoded.size();
+    }
+
+    private static <V> int readCache(DataInputStream in, VipCoreCache<String, V> cache) throws IOException {
+        final int size = in.readInt();
+        final long now = System.currentTimeMillis();
+        int restored = 0;
+        for (int i = 0; i < size; i++) {
+            final String key = in.readUTF();
+            final long createdAt = in.readLong();
+            final long expiresAt = in.readLong();
+            final byte[] bytes = new byte[in.readInt()];
+            in.readFully(bytes);
+            if (cache == null || cache.getCodec() == null || expiresAt <= now) {
+                continue;
+            }
+            final V value;
+            try {
+                value = cache.getCodec().decode(bytes);
+            } catch (IOException | RuntimeException e) {
+                // The entry is fully read, so the remaining entries and caches can still be restored
+                LOGGER.warn("Skipping undecodable entry {} of cache {}: {}", key, cache.getName(), e.getMessage());
+                continue;
+            }
+            if (value != null && cache.restore(key, new CacheEntry<>(value, createdAt, expiresAt))) {
+                restored++;
+            }
+        }
+        return restored;
+    }
+}
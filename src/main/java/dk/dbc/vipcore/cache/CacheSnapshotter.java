@@ -0,0 +1,114 @@
+/*
+ * Copyright Dansk Bibliotekscenter a/s. Licensed under GNU GPL v3
+ *  See license text at https://opensource.dbc.dk/licenses/gpl-3.0
+ */
+
+package dk.dbc.vipcore.cache;
+
+import dk.dbc.vipcore.VipCoreConnector;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps a cache snapshot file of a connector up to date
+ * <p>
+ * On {@link #start()} the caches are restored from the snapshot file,
+ * if it exists, after which a snapshot is written periodically and once more on
+ * {@link #close()}. Failures are logged and never propagated, a broken snapshot only
+ * means that the connector starts with cold caches.
+ * </p>
+ */
+public class CacheSnapshotter implements AutoCloseable {
+    private static final Logger LOGGER = LoggerFactory.getLogger(CacheSnapshotter.class);
+
+    private final String name;
+    private final List<VipCoreCache<String, ?>> caches;
+    private final Path file;
+    private final Duration interval;
+    private ScheduledExecutorService scheduler;
+
+    /**
+     * @param connector connector owning the caches
+     * @param file      snapshot file
+     * @param interval  interval between snapshots, zero or negative to only write on close
+     */
+    public CacheSnapshotter(VipCoreConnector connector, Path file, Duration interval) {
+        this(Objects.requireNonNull(connector, "connector must not be null").getClass().getSimpleName(),
+                connector.getCaches(), file, interval);
+    }
+
+    /**
+     * @param name     name of the owner of the caches, used for logging
+     * @param caches   caches to snapshot
+     * @param file     snapshot file
+     * @param interval interval between snapshots, zero or negative to only write on close
+     */
+    public CacheSnapshotter(String name, Collection<? extends VipCoreCache<String, ?>> caches, Path file, Duration interval) {
+        this.name = Objects.requireNonNull(name, "name must not be null");
+        this.caches = List.copyOf(Objects.requireNonNull(caches, "caches must not be null"));
+        this.file = Objects.requireNonNull(file, "file must not be null");
+        this.interval = Objects.requireNonNull(interval, "interval must not be null");
+    }
+
+    /**
+     * Restores the caches from the snapshot file and schedules periodic snapshots
+     *
+     * @return this snapshotter
+     */
+    public CacheSnapshotter start() {
+        load();
+        if (!interval.isZero() && !interval.isNegative()) {
+            scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                final Thread thread = new Thread(runnable, "vipcore-cache-snapshot");
+                thread.setDaemon(true);
+                return thread;
+            });
+            final long millis = interval.toMillis();
+            scheduler.scheduleWithFixedDelay(this::write, millis, millis, TimeUnit.MILLISECONDS);
+        }
+        return this;
+    }
+
+    public Path getFile() {
+        return file;
+    }
+
+    /**
+     * Stops periodic snapshots and writes a final snapshot
+     */
+    @Override
+    public void close() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+        write();
+    }
+
+    private void load() {
+        try {
+            final int restored = CacheSnapshot.read(file, caches);
+            LOGGER.info("Restored {} cache entries of {} from {}", restored, name, file);
+        } catch (IOException | RuntimeException e) {
+            LOGGER.warn("Unable to restore caches of {} from {}", name, file, e);
+        }
+    }
+
+    private void write() {
+        try {
+            final int written = CacheSnapshot.write(file, caches);
+            LOGGER.debug("Wrote {} cache entries of {} to {}", written, name, file);
+        } catch (IOException | RuntimeException e) {
+            LOGGER.warn("Unable to write caches of {} to {}", name, file, e);
+        }
+    }
+}
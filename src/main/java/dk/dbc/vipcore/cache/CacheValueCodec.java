@@ -0,0 +1,39 @@
+/*
+ * Copyright Dansk Bibliotekscenter a/s. Licensed under GNU GPL v3
+ *  See license text at https://opensource.dbc.dk/licenses/gpl-3.0
+ */
+
+package dk.dbc.vipcore.cache;
+
+import java.io.IOException;
+import java.util.function.UnaryOperator;
+
+/**
+ * Binary encoding of cached values, used when cache contents leave the heap
+ *
+ * @param <V> value type
+ */
+public interface CacheValueCodec<V> {
+    byte[] encode(V value) throws IOException;
+
+    V decode(byte[] bytes) throws IOException;
+
+    /**
+     * @param hook applied to every decoded value, e.g. to compact it
+     * @return codec decoding like this codec followed by the hook
+     */
+    default CacheValueCodec<V> afterDecode(UnaryOperator<V> hook) {
+        final CacheValueCodec<V> codec = this;
+        return new CacheValueCodec<>() {
+            @Override
+            public byte[] encode(V value) throws IOException {
+                return codec.encode(value);
+            }
+
+            @Override
+            public V decode(byte[] bytes) throws IOException {
+                return hook.apply(codec.decode(bytes));
+            }
+        };
+    }
+}
@@ -0,0 +1,18 @@
+/*
+ * Copyright Dansk Bibliotekscenter a/s. Licensed under GNU GPL v3
+ *  See license text at https://opensource.dbc.dk/licenses/gpl-3.0
+ */
+
+package dk.dbc.vipcore.cache;
+
+import dk.dbc.vipcore.exception.VipCoreException;
+
+/**
+ * Decodes a cached value from a raw VipCore response body
+ *
+ * @param <V> value type
+ */
+@FunctionalInterface
+public interface CacheValueDecoder<V> {
+    V decode(byte[] body) throws VipCoreException;
+}
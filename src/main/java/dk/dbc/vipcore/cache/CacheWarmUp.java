@@ -0,0 +1,162 @@
+/*
+ * Copyright Dansk Bibliotekscenter a/s. Licensed under GNU GPL v3
+ *  See license text at https://opensource.dbc.dk/licenses/gpl-3.0
+ */
+
+package dk.dbc.vipcore.cache;
+
+import dk.dbc.vipcore.bulkhead.Priority;
+import io.opentelemetry.context.Scope;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Preloads connector caches in the background
+ * <p>
+ * Warm-up tasks are ordinary connector calls filling the caches as a side effect.
+ * They run in parallel on at most {@code concurrency} threads. A failing task is
+ * logged and counted, it never stops the remaining tasks.
+ * </p>
+ * <p>
+ * {@link #isDone()} is meant as a readiness hook, it is true once every task has
+ * either completed or failed.
+ * </p>
+ */
+public class CacheWarmUp {
+    private static final Logger LOGGER = LoggerFactory.getLogger(CacheWarmUp.class);
+
+    private final String name;
+    private final int concurrency;
+    private final List<Task> tasks = new ArrayList<>();
+    private final AtomicInteger completed = new AtomicInteger();
+    private final AtomicInteger failed = new AtomicInteger();
+    private volatile CountDownLatch done;
+
+    /**
+     * @param name        name used in logging and thread names
+     * @param concurrency maximum number of tasks running at once
+     */
+    public CacheWarmUp(String name, int concurrency) {
+        if (concurrency < 1) {
+            throw new IllegalArgumentException("concurrency must be at least 1");
+        }
+        this.name = name;
+        this.concurrency = concurrency;
+    }
+
+    /**
+     * @param description description of the task used in logging
+     * @param loader      the task
+     * @return this warm-up
+     */
+    public synchronized CacheWarmUp add(String description, CacheLoader<?> loader) {
+        if (done != null) {
+            throw new IllegalStateException("Warm-up " + name + " already started");
+        }
+        tasks.add(new Task(description, loader));
+        return this;
+    }
+
+    /**
+     * Starts running the tasks, returns immediately
+     *
+     * @return this warm-up
+     */
+    public synchronized CacheWarmUp start() {
+        if (done != null) {
+            return this;
+        }
+        final CountDownLatch latch = new CountDownLatch(tasks.size());
+        done = latch;
+        if (tasks.isEmpty()) {
+            return this;
+        }
+        LOGGER.info("Starting warm-up {} of {} tasks", name, tasks.size());
+        final long start = System.currentTimeMillis();
+        final AtomicInteger threadCount = new AtomicInteger();
+        final ExecutorService executor = Executors.newFixedThreadPool(Math.min(concurrency, tasks.size()), runnable -> {
+            final Thread thread = new Thread(runnable, name + "-warmup-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        for (Task task : tasks) {
+            executor.execute(() -> {
+                // Warm-up is background work, which must not crowd out interactive requests
+                try (Scope ignored = Priority.BATCH.makeCurrent()) {
+                    task.loader.load();
+                    completed.incrementAndGet();
+                } catch (Exception e) {
+                    failed.incrementAndGet();
+                    LOGGER.warn("Warm-up {} of {} failed: {}", name, task.description, e.getMessage());
+                } finally {
+                    latch.countDown();
+                    if (latch.getCount() == 0) {
+                        LOGGER.info("Warm-up {} finished in {} ms: {}", name, System.currentTimeMillis() - start, this);
+                    }
+                }
+            });
+        }
+        // Lets the threads terminate once the queued tasks have run
+        executor.shutdown();
+        return this;
+    }
+
+    /**
+     * @param timeout maximum time to wait
+     * @return true if the warm-up is done
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public boolean await(Duration timeout) throws InterruptedException {
+        final CountDownLatch latch = done;
+        return latch != null && latch.await(timeout.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @return true when the warm-up has been started and all tasks have completed or failed
+     */
+    public boolean isDone() {
+        final CountDownLatch latch = done;
+        return latch != null && latch.getCount() == 0;
+    }
+
+    public int getTotal() {
+        return tasks.size();
+    }
+
+    public int getCompleted() {
+        return completed.get();
+    }
+
+    public int getFailed() {
+        return failed.get();
+    }
+
+    @Override
+    public String toString() {
+        return "CacheWarmUp{" +
+                "name='" + name + '\'' +
+                ", total=" + getTotal() +
+                ", completed=" + getCompleted() +
+                ", failed=" + getFailed() +
+                '}';
+    }
+
+    private static final class Task {
+        private final String description;
+        private final CacheLoader<?> loader;
+
+        private Task(String description, CacheLoader<?> loader) {
+            this.description = description;
+            this.loader = loader;
+        }
+    }
+}
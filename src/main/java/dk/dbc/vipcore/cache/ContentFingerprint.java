@@ -0,0 +1,39 @@
+/*
+ * Copyright Dansk Bibliotekscenter a/s. Licensed under GNU GPL v3
+ *  See license text at https://opensource.dbc.dk/licenses/gpl-3.0
+ */
+
+package dk.dbc.vipcore.cache;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * SHA-256 fingerprints of raw response bodies
+ * <p>
+ * VipCore answers POST requests without ETag or Last-Modified validators, so an
+ * unchanged response is recognized by the fingerprint of its body instead.
+ * </p>
+ */
+final class ContentFingerprint {
+    private static final String ALGORITHM = "SHA-256";
+
+    private ContentFingerprint() {
+    }
+
+    static byte[] of(byte[] body) {
+        try {
+            return MessageDigest.getInstance(ALGORITHM).digest(body);
+        } catch (NoSuchAlgorithmException e) {
+            // Every Java platform is required to support SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * @return true if both fingerprints are present and equal
+     */
+    static boolean matches(byte[] fingerprint, byte[] other) {
+        return fingerprint != null && other != null && MessageDigest.isEqual(fingerprint, other);
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright Dansk Bibliotekscenter a/s. Licensed under GNU GPL v3
+ *  See license text at https://opensource.dbc.dk/licenses/gpl-3.0
+ */
+
+package dk.dbc.vipcore.cache;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.HexFormat;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+
+/**
+ * Shared cache keeping a file per entry in a directory, e.g. on a volume mounted by all nodes
+ * <p>
+ * Each cache has a subdirectory named after the cache, holding a file per key named by
+ * the SHA-256 hash of the key. An entry is written to a temporary file which then
+ * replaces the entry file, so readers never see a partially written entry. Expired
+ * entry files are not deleted, as another node may be replacing them, but overwritten
+ * by the next load of the key.
+ * </p>
+ */
+public class FileSharedCache implements SharedCache {
+    private static final int MAGIC = 0x56495045; // "VIPE"
+
+    private final Path directory;
+    private final Executor executor;
+
+    /**
+     * Returns new instance doing its file I/O on virtual threads
+     *
+     * @param directory directory of the cache files
+     */
+    public FileSharedCache(Path directory) {
+        // A virtual thread per task executor holds no threads while idle, so it needs no shutdown
+        this(directory, Executors.newVirtualThreadPerTaskExecutor());
+    }
+
+    /**
+     * @param directory directory of the cache files
+     * @param executor  executor of the file I/O
+     */
+    public FileSharedCache(Path directory, Executor executor) {
+        this.directory = Objects.requireNonNull(directory, "directory must not be null");
+        this.executor = Objects.requireNonNull(executor, "executor must not be null");
+    }
+
+    public Path getDirectory() {
+        return directory;
+    }
+
+    @Override
+    public CompletableFuture<CacheEntry<byte[]>> get(String cacheName, String key) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return read(fileOf(cacheName, key));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }, executor);
+    }
+
+    @Override
+    public CompletableFuture<Void> put(String cacheName, String key, CacheEntry<byte[]> entry) {
+        return CompletableFuture.runAsync(() -> {
+            try {
+                write(fileOf(cacheName, key), entry);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }, executor);
+    }
+
+    Path fileOf(String cacheName, String key) {
+        final byte[] hash = ContentFingerprint.of(key.getBytes(StandardCharsets.UTF_8));
+        return directory.resolve(cacheName).resolve(HexFormat.of().formatHex(hash));
+    }
+
+    private static CacheEntry<byte[]> read(Path file) throws IOException {
+        final CacheEntry<byte[]> entry;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Not a cache entry: " + file);
+            }
+            final long createdAt = in.readLong();
+            final long expiresAt = in.readLong();
+            final byte[] value = new byte[in.readInt()];
+            in.readFully(value);
+            entry = new CacheEntry<>(value, createdAt, expiresAt);
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+        return entry.isExpired(System.currentTimeMillis()) ? null : entry;
+    }
+
+    private static void write(Path file, CacheEntry<byte[]> entry) throws IOException {
+        final Path parent = file.getParent();
+        Files.createDirectories(parent);
+        final Path tmp = Files.createTempFile(parent, file.getFileName().toString(), ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+                out.writeInt(MAGIC);
+                out.writeLong(entry.getCreatedAt());
+                out.writeLong(entry.getExpiresAt());
+                out.writeInt(entry.getValue().length);
+                out.write(entry.getValue());
+            }
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+}
@@ -0,0 +1,51 @@
+/*
+ * Copyright Dansk Bibliotekscenter a/s. Licensed under GNU GPL v3
+ *  See license text at https://opensource.dbc.dk/licenses/gpl-3.0
+ */
+
+package dk.dbc.vipcore.cache;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Shared cache on the heap, for sharing between connectors in the same JVM and for tests
+ * <p>
+ * Expired entries are removed when looked up.
+ * </p>
+ */
+public class InMemorySharedCache implements SharedCache {
+    private final ConcurrentHashMap<String, CacheEntry<byte[]>> entries = new ConcurrentHashMap<>();
+
+    @Override
+    public CompletableFuture<CacheEntry<byte[]>> get(String cacheName, String key) {
+        final String sharedKey = sharedKey(cacheName, key);
+        final CacheEntry<byte[]> entry = entries.get(sharedKey);
+        if (entry != null && entry.isExpired(System.currentTimeMillis())) {
+            entries.remove(sharedKey, entry);
+            return CompletableFuture.completedFuture(null);
+        }
+        return CompletableFuture.completedFuture(entry);
+    }
+
+    @Override
+    public CompletableFuture<Void> put(String cacheName, String key, CacheEntry<byte[]> entry) {
+        entries.put(sharedKey(cacheName, key), entry);
+        return CompletableFuture.completedFuture(null);
+    }
+
+    /**
+     * @return number of entries, including expired entries not yet removed
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    public void clear() {
+        entries.clear();
+    }
+
+    private static String sharedKey(String cacheName, String key) {
+        return cacheName + '\0' + key;
+    }
+}
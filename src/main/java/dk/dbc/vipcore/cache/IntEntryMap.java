@@ -0,0 +1,227 @@
+/*
+ * Copyright Dansk Bibliotekscenter a/s. Licensed under GNU GPL v3
+ *  See license text at https://opensource.dbc.dk/licenses/gpl-3.0
+ */
+
+package dk.dbc.vipcore.cache;
+
+import java.util.Arrays;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * Open-addressing hash map from non-negative int keys to values
+ * <p>
+ * Keys are stored unboxed in an int array with linear probing. Reads are optimistic
+ * and normally take no lock, writes are serialized by a {@link StampedLock}, which
+ * never pins the carrier thread of a virtual thread.
+ * </p>
+ *
+ * @param <E> value type
+ */
+final class IntEntryMap<E> {
+    private static final int EMPTY = -1;
+    private static final int INITIAL_CAPACITY = 64;
+
+    private final StampedLock lock = new StampedLock();
+    private volatile Table table = new Table(INITIAL_CAPACITY);
+    private int size;
+
+    E get(int key) {
+        if (key < 0) {
+            // Never stored, and -1 would match the first empty slot
+            return null;
+        }
+        long stamp = lock.tryOptimisticRead();
+        if (stamp != 0) {
+            final E value = find(table, key);
+            if (lock.validate(stamp)) {
+                return value;
+            }
+        }
+        stamp = lock.readLock();
+        try {
+            return find(table, key);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    void put(int key, E value) {
+        checkKey(key);
+        final long stamp = lock.writeLock();
+        try {
+            Table t = table;
+            int index = indexOf(t, key);
+            if (t.keys[index] == key) {
+                t.values[index] = value;
+                return;
+            }
+            if ((size + 1) * 2 > t.keys.length) {
+                t = resize(t);
+                index = indexOf(t, key);
+            }
+            t.keys[index] = key;
+            t.values[index] = value;
+            size++;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Removes the key if mapped to the given value, or to any value if the given value is null
+     */
+    boolean remove(int key, E value) {
+        if (key < 0) {
+            // Never stored, and -1 would match the first empty slot
+            return false;
+        }
+        final long stamp = lock.writeLock();
+        try {
+            final Table t = table;
+            final int index = indexOf(t, key);
+            if (t.keys[index] != key || value != null && t.values[index] != value) {
+                return false;
+            }
+            delete(t, index);
+            size--;
+            return true;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    void clear() {
+        final long stamp = lock.writeLock();
+        try {
+            table = new Table(INITIAL_CAPACITY);
+            size = 0;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    int size() {
+        final long stamp = lock.readLock();
+        try {
+            return size;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    void forEach(IntEntryConsumer<E> consumer) {
+        final long stamp = lock.readLock();
+        final int[] keys;
+        final Object[] values;
+        try {
+            // Copy, so the consumer runs without holding the lock
+            keys = table.keys.clone();
+            values = table.values.clone();
+        } finally {
+            lock.unlockRead(stamp);
+        }
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != EMPTY) {
+                consumer.accept(keys[i], cast(values[i]));
+            }
+        }
+    }
+
+    private E find(Table t, int key) {
+        final int[] keys = t.keys;
+        final int mask = keys.length - 1;
+        // Bounded, a concurrent writer may leave an optimistic reader without an empty slot to stop at
+        for (int i = hash(key) & mask, probes = 0; probes < keys.length; i = (i + 1) & mask, probes++) {
+            final int k = keys[i];
+            if (k == key) {
+                return cast(t.values[i]);
+            }
+            if (k == EMPTY) {
+                return null;
+            }
+        }
+        return null;
+    }
+
+    private static int indexOf(Table t, int key) {
+        final int[] keys = t.keys;
+        final int mask = keys.length - 1;
+        int i = hash(key) & mask;
+        while (keys[i] != key && keys[i] != EMPTY) {
+            i = (i + 1) & mask;
+        }
+        return i;
+    }
+
+    private Table resize(Table old) {
+        final Table t = new Table(old.keys.length * 2);
+        for (int i = 0; i < old.keys.length; i++) {
+            if (old.keys[i] != EMPTY) {
+                final int index = indexOf(t, old.keys[i]);
+                t.keys[index] = old.keys[i];
+                t.values[index] = old.values[i];
+            }
+        }
+        table = t;
+        return t;
+    }
+
+    /**
+     * Backward shift deletion, keeps probe sequences intact without tombstones
+     */
+    private static void delete(Table t, int index) {
+        final int[] keys = t.keys;
+        final int mask = keys.length - 1;
+        int gap = index;
+        int i = index;
+        while (true) {
+            i = (i + 1) & mask;
+            final int k = keys[i];
+            if (k == EMPTY) {
+                break;
+            }
+            final int home = hash(k) & mask;
+            // Move the entry into the gap unless its home slot lies cyclically in (gap, i]
+            if (gap <= i ? home <= gap || home > i : home <= gap && home > i) {
+                keys[gap] = k;
+                t.values[gap] = t.values[i];
+                gap = i;
+            }
+        }
+        keys[gap] = EMPTY;
+        t.values[gap] = null;
+    }
+
+    private static int hash(int key) {
+        final int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    private static void checkKey(int key) {
+        if (key < 0) {
+            throw new IllegalArgumentException("key must not be negative: " + key);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <E> E cast(Object value) {
+        return (E) value;
+    }
+
+    @FunctionalInterface
+    interface IntEntryConsumer<E> {
+        void accept(int key, E value);
+    }
+
+    private static final class Table {
+        private final int[] keys;
+        private final Object[] values;
+
+        private Table(int capacity) {
+            keys = new int[capacity];
+            values = new Object[capacity];
+            Arrays.fill(keys, EMPTY);
+        }
+    }
+}
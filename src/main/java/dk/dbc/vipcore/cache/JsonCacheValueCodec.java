@@ -0,0 +1,75 @@
+/*
+ * Copyright Dansk Bibliotekscenter a/s. Licensed under GNU GPL v3
+ *  See license text at https://opensource.dbc.dk/licenses/gpl-3.0
+ */
+
+package dk.dbc.vipcore.cache;
+
+import dk.dbc.commons.jsonb.JSONBContext;
+import dk.dbc.commons.jsonb.JSONBException;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Encodes cached values as UTF-8 JSON
+ *
+ * @param <V> value type
+ */
+public class JsonCacheValueCodec<V> implements CacheValueCodec<V> {
+    private static final JSONBContext jsonbContext = new JSONBContext();
+
+    private final Class<V> type;
+
+    private JsonCacheValueCodec(Class<V> type) {
+        this.type = type;
+    }
+
+    public static <V> CacheValueCodec<V> of(Class<V> type) {
+        return new JsonCacheValueCodec<>(type);
+    }
+
+    /**
+     * @param arrayType array type of the set elements, e.g. String[].class
+     * @return codec of sets encoded as JSON arrays
+     */
+    public static <E> CacheValueCodec<Set<E>> setOf(Class<E[]> arrayType) {
+        final CacheValueCodec<E[]> arrayCodec = new JsonCacheValueCodec<>(arrayType);
+        return new CacheValueCodec<>() {
+            @Override
+            public byte[] encode(Set<E> value) throws IOException {
+                return marshall(value);
+            }
+
+            @Override
+            public Set<E> decode(byte[] bytes) throws IOException {
+                return new HashSet<>(Arrays.asList(arrayCodec.decode(bytes)));
+            }
+        };
+    }
+
+    @Override
+    public byte[] encode(V value) throws IOException {
+        return marshall(value);
+    }
+
+    @Override
+    public V decode(byte[] bytes) throws IOException {
+        try {
+            return jsonbContext.unmarshall(new String(bytes, StandardCharsets.UTF_8), type);
+        } catch (JSONBException e) {
+            throw new IOException("Unable to decode " + type.getName(), e);
+        }
+    }
+
+    private static byte[] marshall(Object value) throws IOException {
+        try {
+            return jsonbContext.marshall(value).getBytes(StandardCharsets.UTF_8);
+        } catch (JSONBException e) {
+            throw new IOException("Unable to encode " + value.getClass().getName(), e);
+        }
+    }
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright Dansk Bibliotekscenter a/s. Licensed under GNU GPL v3
+ *  See license text at https://opensource.dbc.dk/licenses/gpl-3.0
+ */
+
+package dk.dbc.vipcore.cache;
+
+import dk.dbc.vipcore.exception.VipCoreException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.lang.ref.WeakReference;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Cache entry holding the compressed raw response body, decoded on first access
+ * <p>
+ * The decoded value is only weakly referenced, so a value nobody uses is reclaimed by
+ * the garbage collector and decoded again on the next access. If decoding fails, the
+ * value is reported as unavailable and the cache treats the entry as a miss.
+ * </p>
+ *
+ * @param <V> value type
+ */
+public class LazyCacheEntry<V> extends CacheEntry<V> {
+    private static final Logger LOGGER = LoggerFactory.getLogger(LazyCacheEntry.class);
+
+    private final byte[] compressed;
+    private final int length;
+    private final CacheValueDecoder<V> decoder;
+    private volatile WeakReference<V> decoded;
+
+    /**
+     * @param body      raw response body
+     * @param decoder   decoder of the value
+     * @param decoded   already decoded value, or null
+     * @param createdAt creation time in epoch milliseconds
+     * @param expiresAt expiry time in epoch milliseconds
+     */
+    public LazyCacheEntry(byte[] body, CacheValueDecoder<V> decoder, V decoded, long createdAt, long expiresAt) {
+        this(body, ContentFingerprint.of(body), decoder, decoded, createdAt, expiresAt);
+    }
+
+    LazyCacheEntry(byte[] body, byte[] fingerprint, CacheValueDecoder<V> decoder, V decoded,
+                   long createdAt, long expiresAt) {
+        this(compress(body), body.length, fingerprint, decoder,
+                decoded == null ? null : new WeakReference<>(decoded), createdAt, expiresAt);
+    }
+
+    private LazyCacheEntry(byte[] compressed, int length, byte[] fingerprint, CacheValueDecoder<V> decoder,
+                           WeakReference<V> decoded, long createdAt, long expiresAt) {
+        super(null, createdAt, expiresAt, fingerprint);
+        this.compressed = compressed;
+        this.length = length;
+        this.decoder = decoder;
+        this.decoded = decoded;
+    }
+
+    @Override
+    public V getValue() {
+        final WeakReference<V> reference = decoded;
+        V value = reference == null ? null : reference.get();
+        if (value == null) {
+            // Concurrent first accesses may both decode, which is harmless
+            try {
+                value = decoder.decode(decompress());
+            } catch (VipCoreException | RuntimeException e) {
+                LOGGER.warn("Unable to decode cached response: {}", e.getMessage());
+                return null;
+            }
+            decoded = new WeakReference<>(value);
+        }
+        return value;
+    }
+
+    /**
+     * Copies share the compressed body and the decoded value, if not yet reclaimed
+     */
+    @Override
+    CacheEntry<V> withTimes(long createdAt, long expiresAt) {
+        return new LazyCacheEntry<>(compressed, length, getFingerprint(), decoder, decoded, createdAt, expiresAt);
+    }
+
+    /**
+     * @return size in bytes of the compressed body
+     */
+    public int getCompressedSize() {
+        return compressed.length;
+    }
+
+    private byte[] decompress() {
+        final Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(compressed);
+            final byte[] body = new byte[length];
+            int offset = 0;
+            while (offset < length && !inflater.finished()) {
+                final int inflated = inflater.inflate(body, offset, length - offset);
+                if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new DataFormatException("Truncated cache entry");
+                }
+                offset += inflated;
+            }
+            return body;
+        } catch (DataFormatException e) {
+            throw new IllegalStateException("Corrupt cache entry", e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    private static byte[] compress(byte[] body) {
+        final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            deflater.setInput(body);
+            deflater.finish();
+            final ByteArrayOutputStream out = new ByteArrayOutputStream(body.length / 2 + 16);
+            final byte[] buffer = new byte[1024];
+            while (!deflater.finished()) {
+                out.write(buffer, 0, deflater.deflate(buffer));
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+}
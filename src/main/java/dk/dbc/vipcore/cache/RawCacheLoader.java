@@ -0,0 +1,16 @@
+/*
+ * Copyright Dansk Bibliotekscenter a/s. Licensed under GNU GPL v3
+ *  See license text at https://opensource.dbc.dk/licenses/gpl-3.0
+ */
+
+package dk.dbc.vipcore.cache;
+
+import dk.dbc.vipcore.exception.VipCoreException;
+
+/**
+ * Loads the raw VipCore response body of a cache entry
+ */
+@FunctionalInterface
+public interface RawCacheLoader {
+    byte[] load() throws VipCoreException;
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright Dansk Bibliotekscenter a/s. Licensed under GNU GPL v3
+ *  See license text at https://opensource.dbc.dk/licenses/gpl-3.0
+ */
+
+package dk.dbc.vipcore.cache;
+
+import java.time.Instant;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Locale;
+
+/**
+ * Lifetime of the last response received by the current thread, as given by its cache headers
+ * <p>
+ * The connector records the hint of every response, and a cache storing a value loaded by
+ * the thread takes the hint, so the lifetime of the entry follows the server when the
+ * {@link CachePolicy} honors server hints.
+ * </p>
+ */
+public final class ServerCacheHint {
+    /**
+     * No hint, the response had no cache headers
+     */
+    public static final long NONE = -1;
+
+    private static final ThreadLocal<long[]> HINT = ThreadLocal.withInitial(() -> new long[]{NONE});
+
+    private ServerCacheHint() {
+    }
+
+    /**
+     * @param hintMillis lifetime in milliseconds given by the last response, or {@link #NONE}
+     */
+    public static void record(long hintMillis) {
+        HINT.get()[0] = hintMillis;
+    }
+
+    /**
+     * Returns and clears the hint of the current thread
+     *
+     * @return lifetime in milliseconds given by the last response, or {@link #NONE}
+     */
+    public static long take() {
+        final long[] hint = HINT.get();
+        final long hintMillis = hint[0];
+        hint[0] = NONE;
+        return hintMillis;
+    }
+
+    public static void clear() {
+        HINT.get()[0] = NONE;
+    }
+
+    /**
+     * @param cacheControl value of the Cache-Control header, or null
+     * @param expires      value of the Expires header, or null
+     * @param date         value of the Date header, or null to use the current time
+     * @return lifetime in milliseconds given by the headers, zero if the response must not be
+     * cached, or {@link #NONE} if the headers give no lifetime
+     */
+    public static long maxAgeMillis(String cacheControl, String expires, String date) {
+        if (cacheControl != null) {
+            for (String directive : cacheControl.split(",")) {
+                final String name = directive.trim().toLowerCase(Locale.ROOT);
+                if (name.equals("no-store") || name.equals("no-cache")) {
+                    return 0;
+                }
+                if (name.startsWith("max-age=")) {
+                    try {
+                        return Math.max(0, Long.parseLong(name.substring(8).replace("\"", "")) * 1000);
+                    } catch (NumberFormatException e) {
+                        return 0;
+                    }
+                }
+            }
+        }
+        if (expires == null) {
+            return NONE;
+        }
+        // An invalid date, typically "0", means already expired
+        final Instant expiresAt = parseDate(expires);
+        if (expiresAt == null) {
+            return 0;
+        }
+        final Instant now = date == null ? null : parseDate(date);
+        return Math.max(0, expiresAt.toEpochMilli() - (now == null ? System.currentTimeMillis() : now.toEpochMilli()));
+    }
+
+    private static Instant parseDate(String value) {
+        try {
+            return ZonedDateTime.parse(value.trim(), DateTimeFormatter.RFC_1123_DATE_TIME).toInstant();
+        } catch (DateTimeParseException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,39 @@
+/*
+ * Copyright Dansk Bibliotekscenter a/s. Licensed under GNU GPL v3
+ *  See license text at https://opensource.dbc.dk/licenses/gpl-3.0
+ */
+
+package dk.dbc.vipcore.cache;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Second cache tier shared by several connectors, typically across nodes
+ * <p>
+ * A {@link VipCoreCache} with a shared cache, see {@link VipCoreCache#setSharedCache(SharedCache, java.time.Duration)},
+ * looks up its misses in the shared cache before calling VipCore, and writes the values
+ * it loads back to the shared cache. Values are stored encoded by the
+ * {@link CacheValueCodec} of the cache, and keys are only unique within a cache, so
+ * implementations must keep the caches apart by their names.
+ * </p>
+ * <p>
+ * Implementations must be thread-safe and should not block the calling thread. A failed
+ * future is treated as a miss, respectively a lost write.
+ * </p>
+ */
+public interface SharedCache {
+    /**
+     * @param cacheName name of the cache
+     * @param key       cache key
+     * @return future of the entry, completed with null if absent or expired
+     */
+    CompletableFuture<CacheEntry<byte[]>> get(String cacheName, String key);
+
+    /**
+     * @param cacheName name of the cache
+     * @param key       cache key
+     * @param entry     encoded value with its creation and expiry time
+     * @return future completed when the entry has been stored
+     */
+    CompletableFuture<Void> put(String cacheName, String key, CacheEntry<byte[]> entry);
+}
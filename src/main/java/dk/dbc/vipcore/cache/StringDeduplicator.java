@@ -0,0 +1,53 @@
+/*
+ * Copyright Dansk Bibliotekscenter a/s. Licensed under GNU GPL v3
+ *  See license text at https://opensource.dbc.dk/licenses/gpl-3.0
+ */
+
+package dk.dbc.vipcore.cache;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Canonicalizes equal strings to a single instance
+ * <p>
+ * Meant for low-cardinality values repeated across many cached responses, such as
+ * agency types, rule names, cities and postal codes. Unlike {@link String#intern()}
+ * the pool is bounded, once full, strings not already pooled are returned as given.
+ * </p>
+ */
+public final class StringDeduplicator {
+    /**
+     * Pool shared by all connectors, large enough for every Danish city and postal code
+     */
+    public static final StringDeduplicator SHARED = new StringDeduplicator(20000);
+
+    private final ConcurrentHashMap<String, String> pool = new ConcurrentHashMap<>();
+    private final int maxSize;
+
+    public StringDeduplicator(int maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * @param value string to canonicalize, may be null
+     * @return pooled string equal to the given string, or the string itself
+     */
+    public String dedup(String value) {
+        if (value == null) {
+            return null;
+        }
+        final String pooled = pool.get(value);
+        if (pooled != null) {
+            return pooled;
+        }
+        if (pool.size() >= maxSize) {
+            return value;
+        }
+        final String previous = pool.putIfAbsent(value, value);
+        return previous != null ? previous : value;
+    }
+
+    public int size() {
+        return pool.size();
+    }
+}
@@ -0,0 +1,805 @@
+/*
+ * Copyright Dansk Bibliotekscenter a/s. Licensed under GNU GPL v3
+ *  See license text at https://opensource.dbc.dk/licenses/gpl-3.0
+ */
+
+package dk.dbc.vipcore.cache;
+
+import dk.dbc.vipcore.deadline.Deadline;
+import dk.dbc.vipcore.exception.DeadlineExceededException;
+import dk.dbc.vipcore.exception.VipCoreException;
+import dk.dbc.vipcore.tracing.VipCoreTracing;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+
+/**
+ * Thread-safe expiring cache for VipCore responses
+ * <p>
+ * Lookups are lock-free. Concurrent misses for the same key are coalesced so that only one
+ * caller loads the value while the others wait for it. The loader always runs outside any
+ * monitor, and waiting is done by parking on a {@link CompletableFuture}, so neither
+ * blocking I/O nor waiting callers pin the carrier thread of a virtual thread.
+ * </p>
+ * <p>
+ * A time-to-live of zero disables caching, concurrent misses are still coalesced. The
+ * lifetime of entries, and the maximum number of entries, are given by the {@link CachePolicy}
+ * of the cache.
+ * </p>
+ * <p>
+ * Values loaded from raw response bodies are revalidated: an expired entry is kept until
+ * the next load, and if the new body has the same fingerprint as the body of the entry,
+ * the entry is renewed for another time-to-live instead of decoding the body again.
+ * Expired entries are kept for revalidation for at most their own lifetime, after which
+ * they are swept, so keys which are never loaded again do not stay in the heap.
+ * </p>
+ * <p>
+ * With an adaptive {@link CachePolicy}, every reload of a key is compared with the previous
+ * entry of the key, and the lifetime of the new entry is derived from the lifetime of the
+ * previous entry. The {@link ServerCacheHint} left by the loader is honored if the policy
+ * says so. Fingerprints are only ever taken of raw response bodies, so a reload from a body
+ * is compared by fingerprint with an entry from a body, whichever way either was loaded or
+ * put. Otherwise the values themselves are compared by their encoded form, and expired
+ * entries are kept for that comparison like entries with a fingerprint.
+ * </p>
+ * <p>
+ * With a {@link SharedCache} as second tier, misses are looked up in the shared cache
+ * before being loaded, and loaded values are written to the shared cache, so VipCore
+ * is only called on a miss in both tiers.
+ * </p>
+ *
+ * @param <K> key type
+ * @param <V> value type
+ */
+public class VipCoreCache<K, V> {
+    private static final Logger LOGGER = LoggerFactory.getLogger(VipCoreCache.class);
+
+    private final String name;
+    private final CacheValueCodec<V> codec;
+    private final ConcurrentHashMap<K, CacheEntry<V>> entries = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<K, CompletableFuture<V>> loading = new ConcurrentHashMap<>();
+    private final LongAdder revalidations = new LongAdder();
+    private final LongAdder sharedHits = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder changedReloads = new LongAdder();
+    private final LongAdder unchangedReloads = new LongAdder();
+    private final AtomicBoolean evicting = new AtomicBoolean();
+    private final AtomicLong nextSweepAt = new AtomicLong();
+    private volatile CachePolicy policy;
+    private volatile SharedCache sharedCache;
+    private volatile long sharedCacheTimeoutMillis;
+
+    public VipCoreCache(String name, Duration ttl) {
+        this(name, ttl, null);
+    }
+
+    /**
+     * @param name  name of the cache, unique within a connector
+     * @param ttl   time-to-live of entries
+     * @param codec binary codec of the values, or null if the values are never written
+     *              outside the heap
+     */
+    public VipCoreCache(String name, Duration ttl, CacheValueCodec<V> codec) {
+        this(name, CachePolicy.of(Objects.requireNonNull(ttl, "ttl must not be null")), codec);
+    }
+
+    /**
+     * @param name   name of the cache, unique within a connector
+     * @param policy expiry and size settings of the cache
+     * @param codec  binary codec of the values, or null if the values are never written
+     *               outside the heap
+     */
+    public VipCoreCache(String name, CachePolicy policy, CacheValueCodec<V> codec) {
+        this.name = Objects.requireNonNull(name, "name must not be null");
+        this.policy = Objects.requireNonNull(policy, "policy must not be null");
+        this.codec = codec;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public CacheValueCodec<V> getCodec() {
+        return codec;
+    }
+
+    public Duration getTtl() {
+        return policy.getTtl();
+    }
+
+    public CachePolicy getPolicy() {
+        return policy;
+    }
+
+    /**
+     * Changes the policy, entries already cached keep their expiry time
+     *
+     * @param policy expiry and size settings of the cache
+     */
+    public void setPolicy(CachePolicy policy) {
+        this.policy = Objects.requireNonNull(policy, "policy must not be null");
+        evictIfFull();
+    }
+
+    /**
+     * @return number of entries evicted because the cache was full
+     */
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    /**
+     * @return number of expired entries renewed because their response body was unchanged
+     */
+    public long getRevalidations() {
+        return revalidations.sum();
+    }
+
+    /**
+     * @return number of reloads of a cached key which found its value changed
+     */
+    public long getChangedReloads() {
+        return changedReloads.sum();
+    }
+
+    /**
+     * @return number of reloads of a cached key which found its value unchanged
+     */
+    public long getUnchangedReloads() {
+        return unchangedReloads.sum();
+    }
+
+    /**
+     * Sets the second cache tier
+     *
+     * @param sharedCache shared cache, or null to use no second tier
+     * @param timeout     maximum time to wait for a lookup in the shared cache, after which it counts as a miss
+     * @throws IllegalStateException if the cache has no codec
+     */
+    public void setSharedCache(SharedCache sharedCache, Duration timeout) {
+        if (sharedCache != null && codec == null) {
+            throw new IllegalStateException("Cache " + name + " has no codec for a shared cache");
+        }
+        this.sharedCacheTimeoutMillis = Objects.requireNonNull(timeout, "timeout must not be null").toMillis();
+        this.sharedCache = sharedCache;
+    }
+
+    public SharedCache getSharedCache() {
+        return sharedCache;
+    }
+
+    /**
+     * @return number of misses served by the shared cache
+     */
+    public long getSharedHits() {
+        return sharedHits.sum();
+    }
+
+    /**
+     * @param key cache key
+     * @return cached value, or null if absent or expired
+     */
+    public V getIfPresent(K key) {
+        final CacheEntry<V> entry = entryOf(key);
+        if (entry == null) {
+            return null;
+        }
+        if (entry.isExpired(System.currentTimeMillis())) {
+            if (!keepsExpired(entry)) {
+                removeEntry(key, entry);
+            }
+            return null;
+        }
+        final V value = entry.getValue();
+        if (value == null) {
+            // A lazily decoded entry which could not be decoded
+            removeEntry(key, entry);
+        }
+        return value;
+    }
+
+    /**
+     * @param key cache key
+     * @return cached entry, even if expired, or null if absent
+     */
+    public CacheEntry<V> getEntry(K key) {
+        return entryOf(key);
+    }
+
+    /**
+     * Returns the cached value for the key, even if expired, without removing the entry
+     *
+     * @param key cache key
+     * @return cached value, or null if absent or not decodable
+     */
+    public V peek(K key) {
+        final CacheEntry<V> entry = entryOf(key);
+        return entry == null ? null : entry.getValue();
+    }
+
+    /**
+     * Renews the entry of the key, expired or not, for another time-to-live keeping its value
+     * <p>
+     * The renewal counts as a reload finding the value unchanged.
+     * </p>
+     *
+     * @param key cache key
+     * @return true if renewed, false if the key has no entry or caching is disabled
+     */
+    public boolean touch(K key) {
+        final CacheEntry<V> entry = entryOf(key);
+        if (entry == null) {
+            return false;
+        }
+        final long ttl = lifetimeMillis(entry, true);
+        if (ttl <= 0) {
+            return false;
+        }
+        countReload(entry, true);
+        final long now = System.currentTimeMillis();
+        storeEntry(key, entry.withTimes(now, now + ttl));
+        return true;
+    }
+
+    /**
+     * Returns the cached value for the key, loading it on a miss
+     *
+     * @param key    cache key
+     * @param loader loader of the value on a miss
+     * @return the value
+     * @throws VipCoreException if the loader failed
+     */
+    public V get(K key, CacheLoader<V> loader) throws VipCoreException {
+        return get(key, loader, true);
+    }
+
+    /**
+     * Returns the cached value for the key, loading the raw response body on a miss
+     * <p>
+     * The body is stored compressed and decoded again on demand, see {@link LazyCacheEntry}.
+     * </p>
+     *
+     * @param key     cache key
+     * @param loader  loader of the raw response body on a miss
+     * @param decoder decoder of the value from the body
+     * @return the value
+     * @throws VipCoreException if the loader or the decoder failed
+     */
+    public V get(K key, RawCacheLoader loader, CacheValueDecoder<V> decoder) throws VipCoreException {
+        return get(key, () -> loadRaw(key, loader, decoder, true), false);
+    }
+
+    /**
+     * Returns the cached value for the key, loading the raw response body on a miss
+     * <p>
+     * Unlike {@link #get(Object, RawCacheLoader, CacheValueDecoder)} the decoded value is
+     * cached, the body only by its fingerprint for revalidation.
+     * </p>
+     *
+     * @param key     cache key
+     * @param loader  loader of the raw response body on a miss
+     * @param decoder decoder of the value from the body
+     * @return the value
+     * @throws VipCoreException if the loader or the decoder failed
+     */
+    public V getRevalidating(K key, RawCacheLoader loader, CacheValueDecoder<V> decoder) throws VipCoreException {
+        return get(key, () -> loadRaw(key, loader, decoder, false), false);
+    }
+
+    /**
+     * Loads the raw response body of the key unless cached, without decoding it
+     * <p>
+     * Concurrent preloads and lookups of the same key are not coalesced. Values found in
+     * the shared cache are decoded, loaded bodies are not written to the shared cache.
+     * </p>
+     *
+     * @param key     cache key
+     * @param loader  loader of the raw response body
+     * @param decoder decoder of the value from the body on first access
+     * @return true if loaded, false if already cached
+     * @throws VipCoreException if the loader failed
+     */
+    public boolean preload(K key, RawCacheLoader loader, CacheValueDecoder<V> decoder) throws VipCoreException {
+        final CacheEntry<V> entry = entryOf(key);
+        if (entry != null && !entry.isExpired(System.currentTimeMillis())) {
+            return false;
+        }
+        if (getShared(key) != null) {
+            return true;
+        }
+        ServerCacheHint.clear();
+        final byte[] body = loader.load();
+        final byte[] fingerprint = ContentFingerprint.of(body);
+        if (renew(key, fingerprint) == null) {
+            storeLazy(key, body, fingerprint, decoder, null);
+        }
+        return true;
+    }
+
+    private V loadRaw(K key, RawCacheLoader loader, CacheValueDecoder<V> decoder, boolean lazy)
+            throws VipCoreException {
+        final byte[] body = loader.load();
+        final byte[] fingerprint = ContentFingerprint.of(body);
+        final CacheEntry<V> renewed = renew(key, fingerprint);
+        if (renewed != null) {
+            final V value = renewed.getValue();
+            if (value != null) {
+                return value;
+            }
+        }
+        final V value = decoder.decode(body);
+        if (renewed != null) {
+            // The renewal counted the reload, the undecodable entry is replaced keeping its lifetime
+            replaceUndecodable(key, renewed, lazy
+                    ? new LazyCacheEntry<>(body, fingerprint, decoder, value, renewed.getCreatedAt(), renewed.getExpiresAt())
+                    : new CacheEntry<>(value, renewed.getCreatedAt(), renewed.getExpiresAt(), fingerprint));
+        } else if (lazy) {
+            storeLazy(key, body, fingerprint, decoder, value);
+        } else {
+            final CacheEntry<V> previous = entryOf(key);
+            final boolean unchanged = isUnchanged(previous, value, fingerprint);
+            final long ttl = lifetimeMillis(previous, unchanged);
+            if (value != null && ttl > 0) {
+                countReload(previous, unchanged);
+                final long now = System.currentTimeMillis();
+                // An unchanged value put without a body keeps its instance, now with the fingerprint of the body
+                final V kept = unchanged ? previous.getValue() : null;
+                storeEntry(key, new CacheEntry<>(kept != null ? kept : value, now, now + ttl, fingerprint));
+                evictIfFull();
+                if (kept != null) {
+                    return kept;
+                }
+            }
+        }
+        return value;
+    }
+
+    /**
+     * Renews the expired entry of the key if it was decoded from a body with the given fingerprint
+     *
+     * @return the renewed entry, or null if the key has no such entry
+     */
+    private CacheEntry<V> renew(K key, byte[] fingerprint) {
+        final CacheEntry<V> stale = entryOf(key);
+        if (stale == null || !ContentFingerprint.matches(stale.getFingerprint(), fingerprint)) {
+            return null;
+        }
+        final long ttl = lifetimeMillis(stale, true);
+        if (ttl <= 0) {
+            return null;
+        }
+        final long now = System.currentTimeMillis();
+        final CacheEntry<V> renewed = stale.withTimes(now, now + ttl);
+        storeEntry(key, renewed);
+        countReload(stale, true);
+        revalidations.increment();
+        return renewed;
+    }
+
+    /**
+     * @param key         cache key
+     * @param renewed     renewed entry whose value could not be decoded
+     * @param replacement entry decoded from the reloaded body
+     */
+    private void replaceUndecodable(K key, CacheEntry<V> renewed, CacheEntry<V> replacement) {
+        if (replacement.getValue() == null) {
+            removeEntry(key, renewed);
+        } else if (entryOf(key) == renewed) {
+            storeEntry(key, replacement);
+        }
+    }
+
+    private V get(K key, CacheLoader<V> loader, boolean store) throws VipCoreException {
+        final V cached = getIfPresent(key);
+        VipCoreTracing.cacheHit(cached != null);
+        if (cached != null) {
+            return cached;
+        }
+
+        final CompletableFuture<V> future = new CompletableFuture<>();
+        final CompletableFuture<V> inFlight = loading.putIfAbsent(key, future);
+        if (inFlight != null) {
+            return await(inFlight);
+        }
+        try {
+            // Another caller may have completed a load between the lookup and winning the race
+            V value = getIfPresent(key);
+            if (value == null) {
+                value = getShared(key);
+            }
+            if (value == null) {
+                ServerCacheHint.clear();
+                value = loader.load();
+                if (store) {
+                    put(key, value);
+                } else {
+                    putShared(key, value);
+                }
+            }
+            future.complete(value);
+            return value;
+        } catch (VipCoreException | RuntimeException e) {
+            future.completeExceptionally(e);
+            throw e;
+        } finally {
+            loading.remove(key, future);
+        }
+    }
+
+    /**
+     * Caches a value, null values are not cached
+     * <p>
+     * The value is written to the shared cache as well, if any.
+     * </p>
+     *
+     * @param key   cache key
+     * @param value value to cache
+     */
+    public void put(K key, V value) {
+        store(key, newEntry(key, value, null), value);
+    }
+
+    /**
+     * Caches a value decoded from a raw response body, null values are not cached
+     * <p>
+     * Like entries loaded by {@link #getRevalidating(Object, RawCacheLoader, CacheValueDecoder)},
+     * the entry carries the fingerprint of the body, so it is compared with reloads of either
+     * kind by the body, and renewed without decoding by a revalidating load of the same body.
+     * </p>
+     *
+     * @param key   cache key
+     * @param value value to cache
+     * @param body  raw response body the value was decoded from
+     */
+    public void put(K key, V value, byte[] body) {
+        store(key, newEntry(key, value, ContentFingerprint.of(body)), value);
+    }
+
+    private void store(K key, CacheEntry<V> entry, V value) {
+        if (entry != null) {
+            storeEntry(key, entry);
+            evictIfFull();
+            putShared(key, value);
+        }
+    }
+
+    /**
+     * Looks up a key in the shared cache, restoring a found value in this cache
+     *
+     * @return the value, or null if there is no shared cache or it has no value for the key
+     */
+    private V getShared(K key) throws VipCoreException {
+        final SharedCache shared = sharedCache;
+        if (shared == null) {
+            return null;
+        }
+        try {
+            final CacheEntry<byte[]> entry = shared.get(name, String.valueOf(key))
+                    .get(sharedCacheTimeoutMillis, TimeUnit.MILLISECONDS);
+            if (entry == null || entry.isExpired(System.currentTimeMillis())) {
+                return null;
+            }
+            final V value = codec.decode(entry.getValue());
+            if (value != null) {
+                restore(key, new CacheEntry<>(value, entry.getCreatedAt(), entry.getExpiresAt()));
+                sharedHits.increment();
+            }
+            return value;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new VipCoreException("Interrupted while looking up " + name + " in shared cache", e);
+        } catch (ExecutionException | TimeoutException | IOException | RuntimeException e) {
+            LOGGER.warn("Unable to look up {} {} in shared cache: {}", name, key, e.toString());
+            return null;
+        }
+    }
+
+    private void putShared(K key, V value) {
+        final SharedCache shared = sharedCache;
+        final long ttl = policy.lifetimeMillis();
+        if (shared == null || value == null || ttl <= 0) {
+            return;
+        }
+        try {
+            final long now = System.currentTimeMillis();
+            shared.put(name, String.valueOf(key), new CacheEntry<>(codec.encode(value), now, now + ttl))
+                    .whenComplete((ignored, e) -> {
+                        if (e != null) {
+                            LOGGER.warn("Unable to write {} {} to shared cache: {}", name, key, e.toString());
+                        }
+                    });
+        } catch (IOException | RuntimeException e) {
+            LOGGER.warn("Unable to write {} {} to shared cache: {}", name, key, e.toString());
+        }
+    }
+
+    /**
+     * Restores an entry, e.g. from a snapshot, keeping its original expiry time
+     * <p>
+     * If the time-to-live has been lowered since the entry was created, the entry
+     * expires according to the current time-to-live.
+     * </p>
+     *
+     * @param key   cache key
+     * @param entry entry to restore
+     * @return true if restored, false if the entry has already expired
+     */
+    public boolean restore(K key, CacheEntry<V> entry) {
+        final CacheEntry<V> restored = restoredEntry(entry);
+        if (restored == null) {
+            return false;
+        }
+        storeEntry(key, restored);
+        evictIfFull();
+        return true;
+    }
+
+    /**
+     * @return copy of all unexpired entries
+     */
+    public Map<K, CacheEntry<V>> entries() {
+        final long now = System.currentTimeMillis();
+        final Map<K, CacheEntry<V>> copy = new HashMap<>();
+        forEachEntry((key, entry) -> {
+            if (!entry.isExpired(now)) {
+                copy.put(key, entry);
+            }
+        });
+        return copy;
+    }
+
+    public void invalidate(K key) {
+        removeEntry(key, null);
+    }
+
+    public void invalidateAll() {
+        entries.clear();
+    }
+
+    /**
+     * @return number of entries, including expired entries not yet removed
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * @param action action applied to every entry, including expired entries not yet removed
+     */
+    protected void forEachEntry(BiConsumer<K, CacheEntry<V>> action) {
+        entries.forEach(action);
+    }
+
+    protected CacheEntry<V> entryOf(K key) {
+        return entries.get(key);
+    }
+
+    protected void storeEntry(K key, CacheEntry<V> entry) {
+        entries.put(key, entry);
+    }
+
+    /**
+     * @param key   cache key
+     * @param entry entry to remove, or null to remove any entry of the key
+     */
+    protected void removeEntry(K key, CacheEntry<V> entry) {
+        if (entry == null) {
+            entries.remove(key);
+        } else {
+            entries.remove(key, entry);
+        }
+    }
+
+    /**
+     * Evicts the entries closest to expiry if the cache holds more than its maximum size
+     * <p>
+     * Only one caller evicts at a time, concurrent callers skip eviction.
+     * </p>
+     */
+    private void evictIfFull() {
+        sweepIfDue();
+        final int maxSize = policy.getMaxSize();
+        if (maxSize == 0 || size() <= maxSize || !evicting.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            final List<Map.Entry<K, CacheEntry<V>>> candidates = new ArrayList<>();
+            forEachEntry((key, entry) -> candidates.add(Map.entry(key, entry)));
+            candidates.sort(Comparator.comparingLong(candidate -> candidate.getValue().getExpiresAt()));
+            // Evicting below the maximum size spreads the cost of sorting over many stores
+            final int excess = candidates.size() - (maxSize - maxSize / 10);
+            for (int i = 0; i < excess; i++) {
+                removeEntry(candidates.get(i).getKey(), candidates.get(i).getValue());
+            }
+            evictions.add(Math.max(excess, 0));
+        } finally {
+            evicting.set(false);
+        }
+    }
+
+    /**
+     * Removes the entries no longer worth keeping, at most once per time-to-live
+     * <p>
+     * Entries not kept for comparison are removed once expired, the others once they have
+     * been expired for their own lifetime without being reloaded, see {@link #keepsExpired(CacheEntry)}.
+     * </p>
+     */
+    private void sweepIfDue() {
+        final long now = System.currentTimeMillis();
+        final long due = nextSweepAt.get();
+        if (now < due || !nextSweepAt.compareAndSet(due, now + policy.lifetimeMillis())) {
+            return;
+        }
+        forEachEntry((key, entry) -> {
+            final long keptUntil = !keepsExpired(entry)
+                    ? entry.getExpiresAt()
+                    : entry.getExpiresAt() + (entry.getExpiresAt() - entry.getCreatedAt());
+            if (now >= keptUntil) {
+                removeEntry(key, entry);
+            }
+        });
+    }
+
+    private void storeLazy(K key, byte[] body, byte[] fingerprint, CacheValueDecoder<V> decoder, V value) {
+        final CacheEntry<V> previous = entryOf(key);
+        final boolean unchanged = isUnchanged(previous, value, fingerprint);
+        final long ttl = lifetimeMillis(previous, unchanged);
+        if (ttl <= 0) {
+            return;
+        }
+        countReload(previous, unchanged);
+        final long now = System.currentTimeMillis();
+        storeEntry(key, new LazyCacheEntry<>(body, fingerprint, decoder, value, now, now + ttl));
+        evictIfFull();
+    }
+
+    /**
+     * @param key         cache key
+     * @param value       value to cache
+     * @param fingerprint fingerprint of the raw response body the value was decoded from, or null
+     * @return new entry expiring after the time-to-live, or null if the value must not be cached
+     */
+    protected CacheEntry<V> newEntry(K key, V value, byte[] fingerprint) {
+        if (value == null) {
+            return null;
+        }
+        // Comparing values without a body requires encoding them, which is only worth it for adaptive policies
+        final CacheEntry<V> previous = fingerprint != null || policy.isAdaptive() ? entryOf(key) : null;
+        final boolean unchanged = isUnchanged(previous, value, fingerprint);
+        final long ttl = lifetimeMillis(previous, unchanged);
+        if (ttl <= 0) {
+            return null;
+        }
+        countReload(previous, unchanged);
+        final long now = System.currentTimeMillis();
+        return new CacheEntry<>(value, now, now + ttl, fingerprint);
+    }
+
+    /**
+     * Compares a reloaded value with the previous entry of its key
+     * <p>
+     * Bodies are compared by fingerprint. If either side has no body, the values are compared
+     * by their encoded form, for adaptive policies only.
+     * </p>
+     *
+     * @param previous    entry previously cached for the key, or null
+     * @param value       reloaded value, or null if not decoded
+     * @param fingerprint fingerprint of the body of the reloaded value, or null
+     * @return true if the reloaded value is known to equal the value of the previous entry
+     */
+    private boolean isUnchanged(CacheEntry<V> previous, V value, byte[] fingerprint) {
+        if (previous == null) {
+            return false;
+        }
+        if (previous.getFingerprint() != null && fingerprint != null) {
+            return ContentFingerprint.matches(previous.getFingerprint(), fingerprint);
+        }
+        if (value == null || !policy.isAdaptive()) {
+            return false;
+        }
+        final V previousValue = previous.getValue();
+        return previousValue != null
+                && ContentFingerprint.matches(fingerprintOf(previousValue), fingerprintOf(value));
+    }
+
+    /**
+     * @return true if the entry is kept once expired, to be compared with the next load of its key
+     */
+    boolean keepsExpired(CacheEntry<V> entry) {
+        return entry.getFingerprint() != null || policy.isAdaptive();
+    }
+
+    /**
+     * @return fingerprint of the encoded value, only ever compared with another such fingerprint
+     */
+    private byte[] fingerprintOf(V value) {
+        if (codec == null) {
+            return null;
+        }
+        try {
+            return ContentFingerprint.of(codec.encode(value));
+        } catch (IOException | RuntimeException e) {
+            LOGGER.warn("Unable to encode {} value: {}", name, e.toString());
+            return null;
+        }
+    }
+
+    /**
+     * Lifetime of a reloaded entry, taking the server hint left by the loader, if any
+     *
+     * @param previous  entry previously cached for the key, or null
+     * @param unchanged true if the reloaded value equals the value of the previous entry
+     * @return lifetime in milliseconds of the reloaded entry
+     */
+    private long lifetimeMillis(CacheEntry<V> previous, boolean unchanged) {
+        final long previousLifetime = previous == null ? 0 : previous.getExpiresAt() - previous.getCreatedAt();
+        return policy.lifetimeMillis(previousLifetime, unchanged, ServerCacheHint.take());
+    }
+
+    /**
+     * Counts a reload once its entry is stored, so every reload is counted exactly once
+     *
+     * @param previous  entry previously cached for the key, or null if not a reload
+     * @param unchanged true if the reloaded value equals the value of the previous entry
+     */
+    private void countReload(CacheEntry<V> previous, boolean unchanged) {
+        if (previous != null) {
+            (unchanged ? unchangedReloads : changedReloads).increment();
+        }
+    }
+
+    /**
+     * @param entry entry to restore
+     * @return the entry, capped to the current time-to-live, or null if it must not be restored
+     */
+    protected CacheEntry<V> restoredEntry(CacheEntry<V> entry) {
+        final long ttl = policy.longestLifetimeMillis();
+        if (entry.getValue() == null || ttl <= 0) {
+            return null;
+        }
+        final long expiresAt = Math.min(entry.getExpiresAt(), entry.getCreatedAt() + ttl);
+        if (System.currentTimeMillis() >= expiresAt) {
+            return null;
+        }
+        return expiresAt == entry.getExpiresAt()
+                ? entry : entry.withTimes(entry.getCreatedAt(), expiresAt);
+    }
+
+    private V await(CompletableFuture<V> inFlight) throws VipCoreException {
+        final Deadline deadline = Deadline.current();
+        try {
+            return deadline == null ? inFlight.get() : inFlight.get(deadline.remainingNanos(), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            throw new DeadlineExceededException("Deadline passed while waiting for " + name + " to load");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new VipCoreException("Interrupted while waiting for " + name + " to load", e);
+        } catch (ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof VipCoreException) {
+                throw (VipCoreException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new VipCoreException("Loading " + name + " failed", cause);
+        }
+    }
+}
@@ -0,0 +1,265 @@
+/*
+ * Copyright Dansk Bibliotekscenter a/s. Licensed under GNU GPL v3
+ *  See license text at https://opensource.dbc.dk/licenses/gpl-3.0
+ */
+
+package dk.dbc.vipcore.capture;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Stream;
+
+/**
+ * Opt-in capture of the connector calls made in production, for replaying offline
+ * <p>
+ * Every call of a connector with a capture, served from the cache or not, is appended as a
+ * {@link CapturedCall} line to the capture file. Lines are written by a background thread,
+ * so callers never wait for the disk. If the writer falls behind, calls are dropped rather
+ * than queued without bound, see {@link #getDropped()}.
+ * </p>
+ * <p>
+ * Request bodies are never written, only the agency id of a call or a hash of its request.
+ * </p>
+ */
+public class CallCapture implements AutoCloseable {
+    private static final Logger LOGGER = LoggerFactory.getLogger(CallCapture.class);
+    private static final ThreadLocal<Call> CURRENT = new ThreadLocal<>();
+
+    private final Path file;
+    private final BlockingQueue<CapturedCall> queue;
+    private final LongAdder captured = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final BufferedWriter writer;
+    private final Thread writerThread;
+    private volatile boolean closed;
+
+    public CallCapture(Path file) throws IOException {
+        this(file, 10000);
+    }
+
+    /**
+     * @param file     capture file, appended to if it exists
+     * @param capacity maximum number of calls waiting to be written
+     * @throws IOException if the file could not be opened
+     */
+    public CallCapture(Path file, int capacity) throws IOException {
+        this.file = file;
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        this.writerThread = new Thread(this::write, "vipcore-call-capture");
+        writerThread.setDaemon(true);
+        writerThread.start();
+        LOGGER.info("Capturing VipCore calls to {}", file);
+    }
+
+    /**
+     * @param file capture file
+     * @return the captured calls in the order they ended
+     * @throws IOException if the file could not be read
+     */
+    public static List<CapturedCall> read(Path file) throws IOException {
+        final List<CapturedCall> calls = new ArrayList<>();
+        try (Stream<String> lines = Files.lines(file, StandardCharsets.UTF_8)) {
+            lines.filter(line -> !line.isBlank()).forEach(line -> calls.add(CapturedCall.parse(line)));
+        }
+        return calls;
+    }
+
+    public Path getFile() {
+        return file;
+    }
+
+    /**
+     * @return number of calls captured
+     */
+    public long getCaptured() {
+        return captured.sum();
+    }
+
+    /**
+     * @return number of calls dropped because the writer fell behind
+     */
+    public long getDropped() {
+        return dropped.sum();
+    }
+
+    /**
+     * Starts capturing a connector call made by the current thread
+     * <p>
+     * Calls made within the call, e.g. one operation implemented by another, are part of
+     * the outer call and not captured on their own.
+     * </p>
+     *
+     * @param operation connector operation
+     * @param agencyId  agency id the call concerns, or null
+     * @return the call, to be closed when it ends
+     */
+    public Call start(String operation, String agencyId) {
+        if (closed || CURRENT.get() != null) {
+            return Call.NONE;
+        }
+        final Call call = new Call(this, operation, agencyId == null ? null : agencyId.replaceAll("\\s", "_"));
+        CURRENT.set(call);
+        return call;
+    }
+
+    /**
+     * @return the call being captured on the current thread, or {@link Call#NONE}
+     */
+    public static Call current() {
+        final Call call = CURRENT.get();
+        return call == null ? Call.NONE : call;
+    }
+
+    /**
+     * @param bytes request or query
+     * @return short hash identifying the request or query
+     */
+    public static String hash(byte[] bytes) {
+        try {
+            final byte[] digest = MessageDigest.getInstance("SHA-256").digest(bytes);
+            return HexFormat.of().formatHex(digest, 0, 8);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    /**
+     * Stops capturing, writing the calls already captured
+     */
+    @Override
+    public void close() {
+        closed = true;
+        try {
+            writerThread.join(TimeUnit.SECONDS.toMillis(10));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void record(CapturedCall call) {
+        if (queue.offer(call)) {
+            captured.increment();
+        } else {
+            dropped.increment();
+        }
+    }
+
+    private void write() {
+        try (BufferedWriter out = writer) {
+            while (!closed || !queue.isEmpty()) {
+                CapturedCall call = queue.poll(100, TimeUnit.MILLISECONDS);
+                while (call != null) {
+                    out.write(call.toLine());
+                    out.newLine();
+                    call = queue.poll();
+                }
+                out.flush();
+            }
+        } catch (IOException e) {
+            LOGGER.error("Capture of VipCore calls to {} failed", file, e);
+            closed = true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * A connector call being captured
+     */
+    public static final class Call implements AutoCloseable {
+        /**
+         * A call which is not captured
+         */
+        public static final Call NONE = new Call(null, null, null);
+
+        private final CallCapture capture;
+        private final String operation;
+        private final long timestamp = System.currentTimeMillis();
+        private final long startNanos = System.nanoTime();
+        private volatile String key;
+        private volatile String path;
+        private volatile int status;
+        private volatile long size = -1;
+        private volatile long requestNanos;
+
+        private Call(CallCapture capture, String operation, String key) {
+            this.capture = capture;
+            this.operation = operation;
+            this.key = key;
+        }
+
+        /**
+         * @return true if the call is captured
+         */
+        public boolean isCaptured() {
+            return capture != null;
+        }
+
+        /**
+         * Identifies a call not concerning a single agency by what it asks for
+         *
+         * @param query e.g. the cache key of the call
+         */
+        public void describe(String query) {
+            if (capture != null && key == null) {
+                key = hash(query.getBytes(StandardCharsets.UTF_8));
+            }
+        }
+
+        /**
+         * @param status HTTP status of the response
+         * @param size   size in bytes of the response body, or -1 if unknown
+         */
+        public void response(int status, long size) {
+            if (capture == null) {
+                return;
+            }
+            this.status = status;
+            this.size = size;
+        }
+
+        /**
+         * @param path  endpoint path of a request made by the call
+         * @param body  request body, hashed as key of a call not concerning a single agency
+         * @param nanos time spent in the request
+         */
+        public void request(String path, byte[] body, long nanos) {
+            if (capture == null) {
+                return;
+            }
+            if (key == null && body != null) {
+                key = hash(body);
+            }
+            this.path = path;
+            requestNanos += nanos;
+        }
+
+        @Override
+        public void close() {
+            if (capture == null) {
+                return;
+            }
+            CURRENT.remove();
+            capture.record(new CapturedCall(timestamp, operation, key, path, status, size,
+                    requestNanos / 1000, (System.nanoTime() - startNanos) / 1000));
+        }
+    }
+}
@@ -0,0 +1,147 @@
+/*
+ * Copyright Dansk Bibliotekscenter a/s. Licensed under GNU GPL v3
+ *  See license text at https://opensource.dbc.dk/licenses/gpl-3.0
+ */
+
+package dk.dbc.vipcore.capture;
+
+import java.util.Objects;
+
+/**
+ * One captured connector call, a line of a capture file
+ * <p>
+ * The line holds tab separated: time of the call in epoch milliseconds, connector operation,
+ * key, endpoint path, HTTP status, response size in bytes, request time and call time in
+ * microseconds. The key is the agency id of the call, or a hash of what it asked for. Calls
+ * served from the cache have path "-" and status 0.
+ * </p>
+ */
+public final class CapturedCall {
+    static final String NONE = "-";
+
+    private final long timestamp;
+    private final String operation;
+    private final String key;
+    private final String path;
+    private final int status;
+    private final long size;
+    private final long requestMicros;
+    private final long callMicros;
+
+    /**
+     * @param timestamp     time of the call in epoch milliseconds
+     * @param operation     connector operation
+     * @param key           agency id or hash of the request, or null
+     * @param path          endpoint path of the request, or null if the call made no request
+     * @param status        HTTP status of the response, or 0 if none was received
+     * @param size          size in bytes of the response body, or -1 if unknown
+     * @param requestMicros time spent in requests in microseconds
+     * @param callMicros    time spent in the call in microseconds
+     */
+    public CapturedCall(long timestamp, String operation, String key, String path, int status, long size,
+                        long requestMicros, long callMicros) {
+        this.timestamp = timestamp;
+        this.operation = Objects.requireNonNull(operation, "operation must not be null");
+        this.key = key;
+        this.path = path;
+        this.status = status;
+        this.size = size;
+        this.requestMicros = requestMicros;
+        this.callMicros = callMicros;
+    }
+
+    /**
+     * @param line line of a capture file
+     * @return the call
+     * @throws IllegalArgumentException if the line is not a captured call
+     */
+    public static CapturedCall parse(String line) {
+        final String[] fields = line.split("\t");
+        if (fields.length != 8) {
+            throw new IllegalArgumentException("Not a captured call: " + line);
+        }
+        try {
+            return new CapturedCall(Long.parseLong(fields[0]), fields[1], orNull(fields[2]), orNull(fields[3]),
+                    Integer.parseInt(fields[4]), Long.parseLong(fields[5]),
+                    Long.parseLong(fields[6]), Long.parseLong(fields[7]));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Not a captured call: " + line, e);
+        }
+    }
+
+    public String toLine() {
+        return timestamp + "\t" + operation + "\t" + orNone(key) + "\t" + orNone(path) + "\t" + status + "\t"
+                + size + "\t" + requestMicros + "\t" + callMicros;
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public String getOperation() {
+        return operation;
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    /**
+     * @return true if the call was served without a request to VipCore
+     */
+    public boolean isCacheHit() {
+        return path == null;
+    }
+
+    public int getStatus() {
+        return status;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    public long getRequestMicros() {
+        return requestMicros;
+    }
+
+    public long getCallMicros() {
+        return callMicros;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        final CapturedCall that = (CapturedCall) o;
+        return timestamp == that.timestamp && status == that.status && size == that.size
+                && requestMicros == that.requestMicros && callMicros == that.callMicros
+                && operation.equals(that.operation) && Objects.equals(key, that.key) && Objects.equals(path, that.path);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(timestamp, operation, key, path, status, size, requestMicros, callMicros);
+    }
+
+    @Override
+    public String toString() {
+        return "CapturedCall{" + toLine().replace('\t', ' ') + '}';
+    }
+
+    private static String orNone(String value) {
+        return value == null ? NONE : value;
+    }
+
+    private static String orNull(String value) {
+        return NONE.equals(value) ? null : value;
+    }
+}
@@ -0,0 +1,52 @@
+/*
+ * Copyright Dansk Bibliotekscenter a/s. Licensed under GNU GPL v3
+ *  See license text at https://opensource.dbc.dk/licenses/gpl-3.0
+ */
+
+package dk.dbc.vipcore.client;
+
+import dk.dbc.vipcore.marshallers.Information;
+import dk.dbc.vipcore.marshallers.LibraryRules;
+
+/**
+ * Library rules, service information and name of a single agency
+ */
+public class AgencyProfile {
+    private final String agencyId;
+    private final LibraryRules libraryRules;
+    private final Information information;
+    private final String agencyName;
+
+    public AgencyProfile(String agencyId, LibraryRules libraryRules, Information information, String agencyName) {
+        this.agencyId = agencyId;
+        this.libraryRules = libraryRules;
+        this.information = information;
+        this.agencyName = agencyName;
+    }
+
+    public String getAgencyId() {
+        return agencyId;
+    }
+
+    public LibraryRules getLibraryRules() {
+        return libraryRules;
+    }
+
+    public Information getInformation() {
+        return information;
+    }
+
+    public String getAgencyName() {
+        return agencyName;
+    }
+
+    @Override
+    public String toString() {
+        return "AgencyProfile{" +
+                "agencyId='" + agencyId + '\'' +
+                ", libraryRules=" + libraryRules +
+                ", information=" + information +
+                ", agencyName='" + agencyName + '\'' +
+                '}';
+    }
+}
@@ -0,0 +1,368 @@
+/*
+ * Copyright Dansk Bibliotekscenter a/s. Licensed under GNU GPL v3
+ *  See license text at https://opensource.dbc.dk/licenses/gpl-3.0
+ */
+
+package dk.dbc.vipcore.client;
+
+import dk.dbc.commons.useragent.UserAgent;
+import dk.dbc.httpclient.FailSafeHttpClient;
+import dk.dbc.vipcore.VipCoreConnector;
+import dk.dbc.vipcore.agencyinfo.VipCoreAgencyInfoConnector;
+import dk.dbc.vipcore.bulkhead.BulkheadPolicy;
+import dk.dbc.vipcore.bulkhead.Priority;
+import dk.dbc.vipcore.cache.AgencyIds;
+import dk.dbc.vipcore.cache.CachePolicy;
+import dk.dbc.vipcore.cache.CacheSnapshot;
+import dk.dbc.vipcore.cache.SharedCache;
+import dk.dbc.vipcore.cache.VipCoreCache;
+import dk.dbc.vipcore.capture.CallCapture;
+import dk.dbc.vipcore.exception.VipCoreException;
+import dk.dbc.vipcore.libraryrules.VipCoreLibraryRulesConnector;
+import dk.dbc.vipcore.marshallers.Information;
+import dk.dbc.vipcore.marshallers.LibraryRules;
+import dk.dbc.vipcore.service.VipCoreServiceConnector;
+import dk.dbc.vipcore.tracing.VipCoreTracing;
+import io.opentelemetry.context.Context;
+import jakarta.ws.rs.client.Client;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Facade over the library rules, service and agency info connectors
+ * <p>
+ * The connectors share one HTTP client and one executor, and their caches are managed
+ * together, see {@link #getCaches()}. Composite lookups such as
+ * {@link #getAgencyProfile(String)} look up their parts in parallel, each through the
+ * cache of its connector, so they take as long as the slowest part rather than the sum
+ * of all parts.
+ * </p>
+ */
+public class VipCoreClient {
+    private static final int MAX_CACHE_AGE = 8;
+
+    private final VipCoreLibraryRulesConnector libraryRulesConnector;
+    private final VipCoreServiceConnector serviceConnector;
+    private final VipCoreAgencyInfoConnector agencyInfoConnector;
+    private final ExecutorService executor;
+
+    /**
+     * Returns new instance with default retry policy
+     *
+     * @param httpClient web resources client
+     * @param baseUrl    base URL for vipcore service endpoint
+     */
+    public VipCoreClient(Client httpClient, UserAgent userAgent, String baseUrl) {
+        this(httpClient, userAgent, baseUrl, MAX_CACHE_AGE, VipCoreConnector.TimingLogLevel.INFO, null);
+    }
+
+    /**
+     * Returns new instance with default retry policy
+     *
+     * @param httpClient web resources client
+     * @param baseUrl    base URL for vipcore service endpoint
+     * @param level      timings log level
+     * @param executor   executor for composite and bulk lookups, or null to run them on virtual threads
+     */
+    public VipCoreClient(Client httpClient, UserAgent userAgent, String baseUrl, int cacheAge,
+                         VipCoreConnector.TimingLogLevel level, ExecutorService executor) {
+        this.executor = executorOrDefault(executor);
+        libraryRulesConnector = new VipCoreLibraryRulesConnector(httpClient, userAgent, baseUrl, cacheAge, level, this.executor);
+        serviceConnector = new VipCoreServiceConnector(httpClient, userAgent, baseUrl, cacheAge, level, this.executor);
+        agencyInfoConnector = new VipCoreAgencyInfoConnector(httpClient, userAgent, baseUrl, cacheAge, level, this.executor);
+    }
+
+    /**
+     * Returns new instance with custom retry policy
+     *
+     * @param failSafeHttpClient web resources client with custom retry policy
+     * @param baseUrl            base URL for vipcore service endpoint
+     * @param level              timings log level
+     * @param executor           executor for composite and bulk lookups, or null to run them on virtual threads
+     */
+    public VipCoreClient(FailSafeHttpClient failSafeHttpClient, String baseUrl, int cacheAge,
+                         VipCoreConnector.TimingLogLevel level, ExecutorService executor) {
+        this.executor = executorOrDefault(executor);
+        libraryRulesConnector = new VipCoreLibraryRulesConnector(failSafeHttpClient, baseUrl, cacheAge, level, this.executor);
+        serviceConnector = new VipCoreServiceConnector(failSafeHttpClient, baseUrl, cacheAge, level, this.executor);
+        agencyInfoConnector = new VipCoreAgencyInfoConnector(failSafeHttpClient, baseUrl, cacheAge, level, this.executor);
+    }
+
+    public VipCoreLibraryRulesConnector getLibraryRulesConnector() {
+        return libraryRulesConnector;
+    }
+
+    public VipCoreServiceConnector getServiceConnector() {
+        return serviceConnector;
+    }
+
+    public VipCoreAgencyInfoConnector getAgencyInfoConnector() {
+        return agencyInfoConnector;
+    }
+
+    /**
+     * Answers agency name lookups from the service information where it gives the same name, see
+     * {@link VipCoreAgencyInfoConnector#setInformationSource(VipCoreServiceConnector)}
+     * <p>
+     * The lookups of an agency profile still run in parallel. The name lookup joins the load
+     * of the information by the profile, so the profile of an agency, rather than of a branch,
+     * costs no request to the agency info endpoint, even when nothing is cached.
+     * </p>
+     *
+     * @param agencyNamesFromInformation true to answer names from the information
+     */
+    public void setAgencyNamesFromInformation(boolean agencyNamesFromInformation) {
+        agencyInfoConnector.setInformationSource(agencyNamesFromInformation ? serviceConnector : null);
+    }
+
+    public boolean isAgencyNamesFromInformation() {
+        return agencyInfoConnector.getInformationSource() != null;
+    }
+
+    public AgencyProfile getAgencyProfile(String agencyId) throws VipCoreException {
+        return getAgencyProfile(agencyId, null);
+    }
+
+    /**
+     * Looks up the library rules, service information and name of an agency in parallel
+     *
+     * @param agencyId   agency id
+     * @param trackingId tracking id, or null
+     * @return the profile of the agency
+     * @throws VipCoreException if any of the lookups failed, the others are then cancelled
+     */
+    public AgencyProfile getAgencyProfile(String agencyId, String trackingId) throws VipCoreException {
+        final VipCoreTracing.CallSpan span = VipCoreTracing.startCall("getAgencyProfile", agencyId, trackingId);
+        try {
+            return lookUpProfile(agencyId,
+                    () -> libraryRulesConnector.getLibraryRulesByAgencyId(agencyId, trackingId),
+                    () -> serviceConnector.getInformation(agencyId, trackingId),
+                    () -> agencyInfoConnector.getAgencyName(agencyId, trackingId));
+        } catch (VipCoreException | RuntimeException e) {
+            span.recordFailure(e);
+            throw e;
+        } finally {
+            span.end();
+        }
+    }
+
+    public AgencyProfile getAgencyProfile(int agencyId) throws VipCoreException {
+        return getAgencyProfile(agencyId, null);
+    }
+
+    /**
+     * @param agencyId   agency id as int, e.g. 10100 for agency 010100
+     * @param trackingId tracking id, or null
+     * @return the profile of the agency
+     * @throws VipCoreException if any of the lookups failed, the others are then cancelled
+     */
+    public AgencyProfile getAgencyProfile(int agencyId, String trackingId) throws VipCoreException {
+        final VipCoreTracing.CallSpan span = VipCoreTracing.startCall("getAgencyProfile", agencyId, trackingId);
+        try {
+            return lookUpProfile(AgencyIds.toString(agencyId),
+                    () -> libraryRulesConnector.getLibraryRulesByAgencyId(agencyId, trackingId),
+                    () -> serviceConnector.getInformation(agencyId, trackingId),
+                    () -> agencyInfoConnector.getAgencyName(agencyId, trackingId));
+        } catch (VipCoreException | RuntimeException e) {
+            span.recordFailure(e);
+            throw e;
+        } finally {
+            span.end();
+        }
+    }
+
+    private AgencyProfile lookUpProfile(String agencyId, Lookup<LibraryRules> libraryRulesLookup,
+                                        Lookup<Information> informationLookup,
+                                        Lookup<String> agencyNameLookup) throws VipCoreException {
+        final Future<LibraryRules> libraryRules = executor.submit(libraryRulesLookup::lookup);
+        final Future<String> agencyName = executor.submit(agencyNameLookup::lookup);
+        try {
+            // The calling thread looks up the third part instead of waiting idle
+            final Information information = informationLookup.lookup();
+            return new AgencyProfile(agencyId, await(libraryRules, agencyId), information, await(agencyName, agencyId));
+        } finally {
+            // Only has an effect on lookups still running after a failure
+            libraryRules.cancel(true);
+            agencyName.cancel(true);
+        }
+    }
+
+    /**
+     * @return the caches of all connectors, cache names are unique across the connectors
+     */
+    public List<VipCoreCache<String, ?>> getCaches() {
+        final List<VipCoreCache<String, ?>> caches = new ArrayList<>();
+        for (VipCoreConnector connector : connectors()) {
+            caches.addAll(connector.getCaches());
+        }
+        return Collections.unmodifiableList(caches);
+    }
+
+    /**
+     * @param cacheName name of the cache, see the cache name constants of the connectors
+     * @param policy    the policy
+     * @throws IllegalArgumentException if no connector has such a cache
+     */
+    public void setCachePolicy(String cacheName, CachePolicy policy) {
+        getCache(cacheName).setPolicy(policy);
+    }
+
+    /**
+     * @param cacheName name of the cache
+     * @return the cache with the given name
+     * @throws IllegalArgumentException if no connector has such a cache
+     */
+    public VipCoreCache<String, ?> getCache(String cacheName) {
+        for (VipCoreCache<String, ?> cache : getCaches()) {
+            if (cache.getName().equals(cacheName)) {
+                return cache;
+            }
+        }
+        throw new IllegalArgumentException("Unknown cache " + cacheName);
+    }
+
+    /**
+     * Sets a shared second cache tier for all caches, see {@link VipCoreConnector#setSharedCache(SharedCache, Duration)}
+     *
+     * @param sharedCache shared cache, or null to use no second tier
+     * @param timeout     maximum time to wait for a lookup in the shared cache
+     */
+    public void setSharedCache(SharedCache sharedCache, Duration timeout) {
+        for (VipCoreConnector connector : connectors()) {
+            connector.setSharedCache(sharedCache, timeout);
+        }
+    }
+
+    /**
+     * Limits the requests of a priority to each endpoint path of all connectors,
+     * see {@link VipCoreConnector#setBulkheadPolicy(Priority, BulkheadPolicy)}
+     *
+     * @param priority the priority
+     * @param policy   the limits, or null to not limit the priority
+     */
+    public void setBulkheadPolicy(Priority priority, BulkheadPolicy policy) {
+        for (VipCoreConnector connector : connectors()) {
+            connector.setBulkheadPolicy(priority, policy);
+        }
+    }
+
+    /**
+     * Sets the timeout of calls made outside the scope of a deadline,
+     * see {@link VipCoreConnector#setDefaultTimeout(Duration)}
+     *
+     * @param defaultTimeout the timeout, or null for no timeout
+     */
+    public void setDefaultTimeout(Duration defaultTimeout) {
+        for (VipCoreConnector connector : connectors()) {
+            connector.setDefaultTimeout(defaultTimeout);
+        }
+    }
+
+    /**
+     * Captures every call of all connectors, see {@link VipCoreConnector#setCallCapture(CallCapture)}
+     *
+     * @param callCapture the capture, or null to stop capturing
+     */
+    public void setCallCapture(CallCapture callCapture) {
+        for (VipCoreConnector connector : connectors()) {
+            connector.setCallCapture(callCapture);
+        }
+    }
+
+    /**
+     * Throws exceptions without stack trace for the expected VipCore errors of all connectors,
+     * see {@link VipCoreConnector#setStacklessErrors(boolean)}
+     *
+     * @param stacklessErrors true to throw exceptions without stack trace
+     */
+    public void setStacklessErrors(boolean stacklessErrors) {
+        for (VipCoreConnector connector : connectors()) {
+            connector.setStacklessErrors(stacklessErrors);
+        }
+    }
+
+    /**
+     * Sets the connect and read timeouts of each single HTTP request of all connectors,
+     * see {@link VipCoreConnector#setHttpTimeouts(Duration, Duration)}
+     *
+     * @param connectTimeout connect timeout, or null for no timeout
+     * @param readTimeout    read timeout, or null for no timeout
+     */
+    public void setHttpTimeouts(Duration connectTimeout, Duration readTimeout) {
+        for (VipCoreConnector connector : connectors()) {
+            connector.setHttpTimeouts(connectTimeout, readTimeout);
+        }
+    }
+
+    /**
+     * Writes the unexpired entries of all caches to a single snapshot file
+     *
+     * @param file snapshot file, replaced atomically
+     * @return number of entries written
+     * @throws IOException if the snapshot could not be written
+     */
+    public int writeCacheSnapshot(Path file) throws IOException {
+        return CacheSnapshot.write(file, getCaches());
+    }
+
+    /**
+     * Restores all caches from a snapshot file
+     *
+     * @param file snapshot file
+     * @return number of entries restored
+     * @throws IOException if the snapshot could not be read
+     */
+    public int readCacheSnapshot(Path file) throws IOException {
+        return CacheSnapshot.read(file, getCaches());
+    }
+
+    /**
+     * Closes the shared HTTP client, a given executor is not shut down
+     */
+    public void close() {
+        for (VipCoreConnector connector : connectors()) {
+            connector.close();
+        }
+    }
+
+    @FunctionalInterface
+    private interface Lookup<T> {
+        T lookup() throws VipCoreException;
+    }
+
+    private List<VipCoreConnector> connectors() {
+        return List.of(libraryRulesConnector, serviceConnector, agencyInfoConnector);
+    }
+
+    private static ExecutorService executorOrDefault(ExecutorService executor) {
+        // A virtual thread per task executor holds no threads while idle, so it needs no shutdown
+        return Context.taskWrapping(executor != null ? executor : Executors.newVirtualThreadPerTaskExecutor());
+    }
+
+    private static <T> T await(Future<T> future, String agencyId) throws VipCoreException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new VipCoreException("Interrupted while looking up the profile of agency " + agencyId, e);
+        } catch (ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof VipCoreException) {
+                throw (VipCoreException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new VipCoreException("Lookup of the profile of agency " + agencyId + " failed", cause);
+        }
+    }
+}
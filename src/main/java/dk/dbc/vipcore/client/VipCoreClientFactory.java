@@ -0,0 +1,174 @@
+package dk.dbc.vipcore.client;
+
+import dk.dbc.commons.useragent.UserAgent;
+import dk.dbc.httpclient.HttpClient;
+import dk.dbc.vipcore.VipCoreConnector;
+import dk.dbc.vipcore.VipCoreConnectorSettings;
+import dk.dbc.vipcore.cache.CacheSnapshotter;
+import dk.dbc.vipcore.capture.CallCapture;
+import dk.dbc.vipcore.compression.ResponseCompressionFeature;
+import dk.dbc.vipcore.compression.ResponseCompressionMetrics;
+import dk.dbc.vipcore.health.VipCoreHealth;
+import dk.dbc.vipcore.management.VipCoreConnectorManagement;
+import dk.dbc.vipcore.tracing.VipCoreTracingFilter;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.inject.Instance;
+import jakarta.enterprise.inject.Produces;
+import jakarta.inject.Inject;
+import jakarta.ws.rs.client.Client;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.eclipse.microprofile.health.HealthCheck;
+import org.eclipse.microprofile.health.Liveness;
+import org.eclipse.microprofile.health.Readiness;
+import org.glassfish.jersey.client.ClientConfig;
+import org.glassfish.jersey.jackson.JacksonFeature;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * VipCoreClient factory
+ * <p>
+ * Synopsis:
+ * </p>
+ * <pre>
+ *    // New instance
+ *    VipCoreClient client = VipCoreClientFactory.create("http://vip-core");
+ *
+ *    // Singleton instance in CDI enabled environment
+ *    {@literal @}Inject
+ *    VipCoreClient client;
+ * </pre>
+ * <p>
+ * CDI case depends on the vipcore service baseurl being defined as
+ * the value of either a system property or environment variable
+ * named VIPCORE_ENDPOINT. The settings shared by all connector factories
+ * are read by {@link VipCoreConnectorSettings} and apply to each connector of
+ * the client, except VIPCORE_VIRTUAL_THREADS as composite and bulk lookups always
+ * run on virtual threads. The caches of all connectors are snapshot to VipCoreClient.snapshot,
+ * calls are captured to VipCoreClient.capture, and a {@link VipCoreConnectorManagement} bean
+ * is registered for each connector, named VipCoreClient.&lt;connector class&gt;. The health
+ * checks of {@link #getHealth()} are produced as MicroProfile Health checks if
+ * VIPCORE_HEALTH_CHECKS lists VipCoreClient
+ * </p>
+ * <p>
+ * Setting VIPCORE_AGENCY_NAMES_FROM_INFORMATION to true answers agency name lookups from the service
+ * information where it gives the same name, see {@link VipCoreClient#setAgencyNamesFromInformation(boolean)}
+ * </p>
+ */
+@ApplicationScoped
+public class VipCoreClientFactory {
+    private static final Logger LOGGER = LoggerFactory.getLogger(VipCoreClientFactory.class);
+
+    public static VipCoreClient create(String vipcoreServiceBaseUrl) {
+        return create(vipcoreServiceBaseUrl, 8, VipCoreConnector.TimingLogLevel.INFO, null);
+    }
+
+    /**
+     * @param compression feature negotiating compressed responses, or null for uncompressed responses
+     */
+    public static VipCoreClient create(String vipcoreServiceBaseUrl, int cacheAge, VipCoreConnector.TimingLogLevel level,
+            ResponseCompressionFeature compression) {
+        final ClientConfig clientConfig = new ClientConfig()
+                .register(new JacksonFeature())
+                .register(new VipCoreTracingFilter());
+        if (compression != null) {
+            clientConfig.register(compression);
+        }
+        final Client client = HttpClient.newClient(clientConfig);
+        LOGGER.info("Creating VipCoreClient for: {}", vipcoreServiceBaseUrl);
+        return new VipCoreClient(client, UserAgent.forInternalRequests(), vipcoreServiceBaseUrl, cacheAge, level, null);
+    }
+
+    @Inject
+    private VipCoreConnectorSettings settings;
+
+    @Inject
+    @ConfigProperty(name = "VIPCORE_AGENCY_NAMES_FROM_INFORMATION", defaultValue = "false")
+    private boolean agencyNamesFromInformation;
+
+    VipCoreClient vipCoreClient;
+    ResponseCompressionFeature compression;
+    CacheSnapshotter cacheSnapshotter;
+    CallCapture callCapture;
+    final List<VipCoreConnectorManagement> managements = new ArrayList<>();
+    VipCoreHealth health;
+
+    @PostConstruct
+    public void initializeClient() {
+        compression = settings.createCompression();
+        vipCoreClient = VipCoreClientFactory.create(settings.getVipcoreServiceBaseUrl(), settings.getCacheAge(),
+                settings.getTimingLogLevel(), compression);
+        final List<VipCoreConnector> connectors = List.of(vipCoreClient.getLibraryRulesConnector(),
+                vipCoreClient.getServiceConnector(), vipCoreClient.getAgencyInfoConnector());
+        for (VipCoreConnector connector : connectors) {
+            settings.configure(connector);
+            final VipCoreConnectorManagement management = settings.registerManagement(connector,
+                    "VipCoreClient." + connector.getClass().getSimpleName());
+            if (management != null) {
+                managements.add(management);
+            }
+        }
+        vipCoreClient.setAgencyNamesFromInformation(agencyNamesFromInformation);
+        health = new VipCoreHealth("VipCoreClient", settings.healthPolicy(), connectors);
+        callCapture = settings.createCallCapture("VipCoreClient");
+        vipCoreClient.setCallCapture(callCapture);
+        cacheSnapshotter = settings.startCacheSnapshotter("VipCoreClient", vipCoreClient.getCaches());
+    }
+
+    @Produces
+    public VipCoreClient getInstance() {
+        return vipCoreClient;
+    }
+
+    /**
+     * @return liveness and readiness checks of the connectors of the client, see {@link VipCoreHealth}
+     */
+    public VipCoreHealth getHealth() {
+        return health;
+    }
+
+    /**
+     * @return readiness check of the connectors of the client if VIPCORE_HEALTH_CHECKS lists VipCoreClient, see {@link VipCoreHealth}
+     */
+    @Produces
+    @Readiness
+    static HealthCheck readinessCheck(VipCoreConnectorSettings settings, Instance<VipCoreClientFactory> factory) {
+        // The factory is only created if its checks are enabled
+        return settings.isHealthCheckEnabled("VipCoreClient") ? factory.get().getHealth().getReadinessCheck()
+                : VipCoreHealth.disabledCheck("VipCoreClient");
+    }
+
+    /**
+     * @return liveness check of the connectors of the client if VIPCORE_HEALTH_CHECKS lists VipCoreClient, see {@link VipCoreHealth}
+     */
+    @Produces
+    @Liveness
+    static HealthCheck livenessCheck(VipCoreConnectorSettings settings, Instance<VipCoreClientFactory> factory) {
+        return settings.isHealthCheckEnabled("VipCoreClient") ? factory.get().getHealth().getLivenessCheck()
+                : VipCoreHealth.disabledCheck("VipCoreClient");
+    }
+
+    /**
+     * @return bytes transferred versus decoded, or null if response compression is not enabled
+     */
+    public ResponseCompressionMetrics getCompressionMetrics() {
+        return compression == null ? null : compression.getMetrics();
+    }
+
+    @PreDestroy
+    public void tearDownClient() {
+        managements.forEach(VipCoreConnectorManagement::unregister);
+        if (cacheSnapshotter != null) {
+            cacheSnapshotter.close();
+        }
+        vipCoreClient.close();
+        if (callCapture != null) {
+            callCapture.close();
+        }
+    }
+}
@@ -0,0 +1,68 @@
+/*
+ * Copyright Dansk Bibliotekscenter a/s. Licensed under GNU GPL v3
+ *  See license text at https://opensource.dbc.dk/licenses/gpl-3.0
+ */
+
+package dk.dbc.vipcore.codec;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import dk.dbc.vipcore.marshallers.PickupAgency;
+
+import java.io.IOException;
+
+/**
+ * Streaming decoder of agency info responses
+ */
+public final class AgencyInfoCodec {
+    private AgencyInfoCodec() {
+    }
+
+    /**
+     * Reads only the id and name of the first pickup agency with a name of an agency info
+     * response, the rest of the response is skipped without being decoded
+     *
+     * @param parser parser positioned at the start of an agency info response
+     * @return the pickup agency, or null if the response has no pickup agency with a name
+     * @throws IOException on invalid JSON
+     */
+    public static PickupAgency readPickupAgency(JsonParser parser) throws IOException {
+        PickupAgency pickupAgency = null;
+        String field;
+        while ((field = JsonCodec.nextField(parser)) != null) {
+            if ("agencyInfo".equals(field) && JsonCodec.isArray(parser)) {
+                while (JsonCodec.nextObject(parser)) {
+                    final PickupAgency entry = readPickupAgencyOfEntry(parser);
+                    if (pickupAgency == null && entry.getAgencyName() != null) {
+                        pickupAgency = entry;
+                    }
+                }
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return pickupAgency;
+    }
+
+    private static PickupAgency readPickupAgencyOfEntry(JsonParser parser) throws IOException {
+        final PickupAgency pickupAgency = new PickupAgency();
+        String field;
+        while ((field = JsonCodec.nextField(parser)) != null) {
+            if ("pickupAgency".equals(field) && parser.currentToken() == JsonToken.START_OBJECT) {
+                String pickupAgencyField;
+                while ((pickupAgencyField = JsonCodec.nextField(parser)) != null) {
+                    if ("agencyId".equals(pickupAgencyField)) {
+                        pickupAgency.setAgencyId(JsonCodec.stringValue(parser));
+                    } else if ("agencyName".equals(pickupAgencyField)) {
+                        pickupAgency.setAgencyName(JsonCodec.stringValue(parser));
+                    } else {
+                        parser.skipChildren();
+                    }
+                }
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return pickupAgency;
+    }
+}
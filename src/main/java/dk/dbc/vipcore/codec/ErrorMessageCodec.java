@@ -0,0 +1,36 @@
+/*
+ * Copyright Dansk Bibliotekscenter a/s. Licensed under GNU GPL v3
+ *  See license text at https://opensource.dbc.dk/licenses/gpl-3.0
+ */
+
+package dk.dbc.vipcore.codec;
+
+import com.fasterxml.jackson.core.JsonParser;
+
+import java.io.IOException;
+
+/**
+ * Streaming decoder of VipCore error responses
+ */
+public final class ErrorMessageCodec {
+    private ErrorMessageCodec() {
+    }
+
+    /**
+     * Reads only the error code, leaving the rest of the response unread
+     *
+     * @param parser parser positioned at the start of an error response
+     * @return the error code, or null if the response has none
+     * @throws IOException on invalid JSON
+     */
+    public static String readErrorCode(JsonParser parser) throws IOException {
+        String field;
+        while ((field = JsonCodec.nextField(parser)) != null) {
+            if ("error".equals(field)) {
+                return JsonCodec.stringValue(parser);
+            }
+            parser.skipChildren();
+        }
+        return null;
+    }
+}
@@ -0,0 +1,199 @@
+/*
+ * Copyright Dansk Bibliotekscenter a/s. Licensed under GNU GPL v3
+ *  See license text at https://opensource.dbc.dk/licenses/gpl-3.0
+ */
+
+package dk.dbc.vipcore.codec;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import dk.dbc.vipcore.exception.VipCoreException;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Entry points and helpers of the streaming VipCore codecs
+ * <p>
+ * The codecs read the responses token by token with the Jackson streaming parser and
+ * set the fields of the marshaller classes directly, without the reflection, annotation
+ * scanning and per-type serializer setup of object mapping. Unknown fields are skipped,
+ * so new fields in VipCore responses do not break decoding. Requests are written the same
+ * way with the streaming generator. The one exception is the information object of service
+ * responses, see {@link ServiceCodec}.
+ * </p>
+ */
+public final class JsonCodec {
+    // JsonFactory is thread safe and meant to be shared
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    private JsonCodec() {
+    }
+
+    /**
+     * Decodes a response, closing the stream afterwards
+     *
+     * @param in      response body
+     * @param decoder decoder of the response
+     * @return the decoded response
+     * @throws VipCoreException if the response could not be decoded
+     */
+    public static <T> T decode(InputStream in, ResponseDecoder<T> decoder) throws VipCoreException {
+        try (JsonParser parser = JSON_FACTORY.createParser(in)) {
+            return decode(parser, decoder);
+        } catch (IOException e) {
+            throw new VipCoreException("Unable to decode VipCore response", e);
+        }
+    }
+
+    /**
+     * @param body    response body
+     * @param decoder decoder of the response
+     * @return the decoded response
+     * @throws VipCoreException if the response could not be decoded
+     */
+    public static <T> T decode(byte[] body, ResponseDecoder<T> decoder) throws VipCoreException {
+        try (JsonParser parser = JSON_FACTORY.createParser(body)) {
+            return decode(parser, decoder);
+        } catch (IOException e) {
+            throw new VipCoreException("Unable to decode VipCore response", e);
+        }
+    }
+
+    /**
+     * Encodes a request
+     *
+     * @param encoder writer of the request
+     * @return UTF-8 encoded request body
+     * @throws IOException if the request could not be written
+     */
+    static byte[] encode(RequestEncoder encoder) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream(128);
+        try (JsonGenerator generator = JSON_FACTORY.createGenerator(out, JsonEncoding.UTF8)) {
+            encoder.encode(generator);
+        }
+        return out.toByteArray();
+    }
+
+    private static <T> T decode(JsonParser parser, ResponseDecoder<T> decoder) throws IOException {
+        if (parser.nextToken() != JsonToken.START_OBJECT) {
+            throw new JsonParseException(parser, "Expected a JSON object");
+        }
+        return decoder.decode(parser);
+    }
+
+    /**
+     * Advances to the next field of the current object
+     *
+     * @param parser parser positioned in an object
+     * @return name of the field with the parser positioned at its value, or null at the end of the object
+     * @throws IOException on invalid JSON
+     */
+    static String nextField(JsonParser parser) throws IOException {
+        final JsonToken token = parser.nextToken();
+        if (token == JsonToken.END_OBJECT) {
+            return null;
+        }
+        if (token != JsonToken.FIELD_NAME) {
+            throw new JsonParseException(parser, "Expected a field name but found " + token);
+        }
+        final String name = parser.currentName();
+        parser.nextToken();
+        return name;
+    }
+
+    /**
+     * Advances to the next element of the current array, skipping elements which are not objects
+     *
+     * @param parser parser positioned in an array
+     * @return true with the parser positioned at the start of an object, or false at the end of the array
+     * @throws IOException on invalid JSON
+     */
+    static boolean nextObject(JsonParser parser) throws IOException {
+        JsonToken token;
+        while ((token = parser.nextToken()) != JsonToken.END_ARRAY) {
+            if (token == null) {
+                throw new JsonParseException(parser, "Unexpected end of array");
+            }
+            if (token == JsonToken.START_OBJECT) {
+                return true;
+            }
+            parser.skipChildren();
+        }
+        return false;
+    }
+
+    /**
+     * @param parser parser positioned at a value
+     * @return the value as string, or null if the value is null, an object or an array
+     * @throws IOException on invalid JSON
+     */
+    static String stringValue(JsonParser parser) throws IOException {
+        if (parser.currentToken().isStructStart()) {
+            parser.skipChildren();
+            return null;
+        }
+        return parser.getValueAsString();
+    }
+
+    /**
+     * @param parser parser positioned at a value
+     * @return the value as boolean, accepting "true" and "false" strings, or null for any other value
+     * @throws IOException on invalid JSON
+     */
+    static Boolean booleanValue(JsonParser parser) throws IOException {
+        switch (parser.currentToken()) {
+            case VALUE_TRUE:
+                return Boolean.TRUE;
+            case VALUE_FALSE:
+                return Boolean.FALSE;
+            case VALUE_STRING:
+                final String text = parser.getText();
+                if ("true".equalsIgnoreCase(text)) {
+                    return Boolean.TRUE;
+                }
+                if ("false".equalsIgnoreCase(text)) {
+                    return Boolean.FALSE;
+                }
+                return null;
+            default:
+                parser.skipChildren();
+                return null;
+        }
+    }
+
+    /**
+     * @param generator generator positioned in an object
+     * @param name      name of the field
+     * @param value     value of the field, or null to leave the field out
+     * @throws IOException if the field could not be written
+     */
+    static void writeStringField(JsonGenerator generator, String name, String value) throws IOException {
+        if (value != null) {
+            generator.writeStringField(name, value);
+        }
+    }
+
+    /**
+     * @param parser parser positioned at a value
+     * @return true if the value is an array, otherwise the value is skipped
+     * @throws IOException on invalid JSON
+     */
+    static boolean isArray(JsonParser parser) throws IOException {
+        if (parser.currentToken() == JsonToken.START_ARRAY) {
+            return true;
+        }
+        parser.skipChildren();
+        return false;
+    }
+
+    @FunctionalInterface
+    interface RequestEncoder {
+        void encode(JsonGenerator generator) throws IOException;
+    }
+}
@@ -0,0 +1,163 @@
+/*
+ * Copyright Dansk Bibliotekscenter a/s. Licensed under GNU GPL v3
+ *  See license text at https://opensource.dbc.dk/licenses/gpl-3.0
+ */
+
+package dk.dbc.vipcore.codec;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import dk.dbc.vipcore.marshallers.LibraryRule;
+import dk.dbc.vipcore.marshallers.LibraryRules;
+import dk.dbc.vipcore.marshallers.LibraryRulesRequest;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Streaming decoder of library rules responses and encoder of library rules queries
+ */
+public final class LibraryRulesCodec {
+    private LibraryRulesCodec() {
+    }
+
+    /**
+     * @param parser parser positioned at the start of a library rules response
+     * @return the library rules of the response, or null if the response has none
+     * @throws IOException on invalid JSON
+     */
+    public static List<LibraryRules> readLibraryRules(JsonParser parser) throws IOException {
+        List<LibraryRules> result = null;
+        String field;
+        while ((field = JsonCodec.nextField(parser)) != null) {
+            if ("libraryRules".equals(field) && JsonCodec.isArray(parser)) {
+                result = new ArrayList<>();
+                while (JsonCodec.nextObject(parser)) {
+                    result.add(readLibraryRulesEntry(parser));
+                }
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Reads only the agency ids of a library rules response, as needed for library lookups by rule
+     *
+     * @param parser parser positioned at the start of a library rules response
+     * @return agency ids of the response, empty if the response has none
+     * @throws IOException on invalid JSON
+     */
+    public static Set<String> readAgencyIds(JsonParser parser) throws IOException {
+        final Set<String> result = new HashSet<>();
+        String field;
+        while ((field = JsonCodec.nextField(parser)) != null) {
+            if ("libraryRules".equals(field) && JsonCodec.isArray(parser)) {
+                while (JsonCodec.nextObject(parser)) {
+                    String entryField;
+                    while ((entryField = JsonCodec.nextField(parser)) != null) {
+                        if ("agencyId".equals(entryField)) {
+                            final String agencyId = JsonCodec.stringValue(parser);
+                            if (agencyId != null) {
+                                result.add(agencyId);
+                            }
+                        } else {
+                            parser.skipChildren();
+                        }
+                    }
+                }
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Encodes a library rules query, leaving out null fields
+     *
+     * @param libraryRulesRequest the query
+     * @param trackingId          tracking id replacing that of the query, or null to keep it
+     * @return UTF-8 encoded request body
+     * @throws IOException if the request could not be written
+     */
+    public static byte[] encodeLibraryRulesRequest(LibraryRulesRequest libraryRulesRequest, String trackingId)
+            throws IOException {
+        return JsonCodec.encode(generator -> {
+            generator.writeStartObject();
+            JsonCodec.writeStringField(generator, "agencyId", libraryRulesRequest.getAgencyId());
+            if (libraryRulesRequest.getLibraryRule() != null) {
+                generator.writeArrayFieldStart("libraryRule");
+                for (LibraryRule libraryRule : libraryRulesRequest.getLibraryRule()) {
+                    writeLibraryRule(generator, libraryRule);
+                }
+                generator.writeEndArray();
+            }
+            JsonCodec.writeStringField(generator, "trackingId",
+                    trackingId != null ? trackingId : libraryRulesRequest.getTrackingId());
+            generator.writeEndObject();
+        });
+    }
+
+    private static void writeLibraryRule(JsonGenerator generator, LibraryRule libraryRule) throws IOException {
+        generator.writeStartObject();
+        JsonCodec.writeStringField(generator, "name", libraryRule.getName());
+        if (libraryRule.getBool() != null) {
+            generator.writeBooleanField("bool", libraryRule.getBool());
+        }
+        JsonCodec.writeStringField(generator, "string", libraryRule.getString());
+        generator.writeEndObject();
+    }
+
+    private static LibraryRules readLibraryRulesEntry(JsonParser parser) throws IOException {
+        final LibraryRules libraryRules = new LibraryRules();
+        String field;
+        while ((field = JsonCodec.nextField(parser)) != null) {
+            switch (field) {
+                case "agencyId":
+                    libraryRules.setAgencyId(JsonCodec.stringValue(parser));
+                    break;
+                case "agencyType":
+                    libraryRules.setAgencyType(JsonCodec.stringValue(parser));
+                    break;
+                case "libraryRule":
+                    if (JsonCodec.isArray(parser)) {
+                        final List<LibraryRule> rules = new ArrayList<>();
+                        while (JsonCodec.nextObject(parser)) {
+                            rules.add(readLibraryRule(parser));
+                        }
+                        libraryRules.setLibraryRule(rules);
+                    }
+                    break;
+                default:
+                    parser.skipChildren();
+            }
+        }
+        return libraryRules;
+    }
+
+    private static LibraryRule readLibraryRule(JsonParser parser) throws IOException {
+        final LibraryRule libraryRule = new LibraryRule();
+        String field;
+        while ((field = JsonCodec.nextField(parser)) != null) {
+            switch (field) {
+                case "name":
+                    libraryRule.setName(JsonCodec.stringValue(parser));
+                    break;
+                case "bool":
+                    libraryRule.setBool(JsonCodec.booleanValue(parser));
+                    break;
+                case "string":
+                    libraryRule.setString(JsonCodec.stringValue(parser));
+                    break;
+                default:
+                    parser.skipChildren();
+            }
+        }
+        return libraryRule;
+    }
+}
@@ -0,0 +1,162 @@
+/*
+ * Copyright Dansk Bibliotekscenter a/s. Licensed under GNU GPL v3
+ *  See license text at https://opensource.dbc.dk/licenses/gpl-3.0
+ */
+
+package dk.dbc.vipcore.codec;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Pre-encoded body of single agency requests
+ * <p>
+ * Encodes requests of the fixed shape {"service":"information","agencyId":"710100","trackingId":"..."},
+ * where the constant fields are encoded once when the template is created. Each request
+ * is written straight into a byte array of the exact size, without a request object or
+ * intermediate strings. The agency id and tracking id are escaped as JSON strings, with
+ * any character outside printable ASCII written as a unicode escape. A null tracking id is
+ * left out.
+ * </p>
+ */
+public final class RequestBodyTemplate {
+    private static final byte[] AGENCY_ID = ascii("\"agencyId\":");
+    private static final byte[] TRACKING_ID = ascii(",\"trackingId\":");
+    private static final byte[] NULL = ascii("null");
+    private static final byte[] HEX = ascii("0123456789abcdef");
+    private static final int AGENCY_ID_DIGITS = 6;
+
+    // Opening brace followed by the constant fields, each with a trailing comma
+    private final byte[] head;
+
+    private RequestBodyTemplate(byte[] head) {
+        this.head = head;
+    }
+
+    /**
+     * @param constantFields names and values of the constant fields of the request, in pairs
+     * @return template of requests with an agency id, an optional tracking id and the given constant fields
+     */
+    public static RequestBodyTemplate of(String... constantFields) {
+        if (constantFields.length % 2 != 0) {
+            throw new IllegalArgumentException("Constant fields must be given as name and value pairs");
+        }
+        final StringBuilder head = new StringBuilder("{");
+        for (int i = 0; i < constantFields.length; i += 2) {
+            head.append(escape(constantFields[i])).append(':').append(escape(constantFields[i + 1])).append(',');
+        }
+        return new RequestBodyTemplate(ascii(head.toString()));
+    }
+
+    /**
+     * @param agencyId   agency id, may be null
+     * @param trackingId tracking id, or null to leave it out
+     * @return UTF-8 encoded request body
+     */
+    public byte[] encode(String agencyId, String trackingId) {
+        final byte[] body = new byte[head.length + AGENCY_ID.length + encodedLength(agencyId)
+                + (trackingId == null ? 0 : TRACKING_ID.length + encodedLength(trackingId)) + 1];
+        int offset = writeHead(body);
+        offset = write(agencyId, body, offset);
+        offset = writeTrackingId(trackingId, body, offset);
+        body[offset] = '}';
+        return body;
+    }
+
+    /**
+     * @param agencyId   agency id as int, written zero padded to six digits
+     * @param trackingId tracking id, or null to leave it out
+     * @return UTF-8 encoded request body
+     */
+    public byte[] encode(int agencyId, String trackingId) {
+        if (agencyId < 0 || agencyId > 999999) {
+            return encode(Integer.toString(agencyId), trackingId);
+        }
+        final byte[] body = new byte[head.length + AGENCY_ID.length + AGENCY_ID_DIGITS + 2
+                + (trackingId == null ? 0 : TRACKING_ID.length + encodedLength(trackingId)) + 1];
+        int offset = writeHead(body);
+        body[offset] = '"';
+        int value = agencyId;
+        for (int i = AGENCY_ID_DIGITS; i > 0; i--) {
+            body[offset + i] = (byte) ('0' + value % 10);
+            value /= 10;
+        }
+        offset += AGENCY_ID_DIGITS + 1;
+        body[offset++] = '"';
+        offset = writeTrackingId(trackingId, body, offset);
+        body[offset] = '}';
+        return body;
+    }
+
+    @Override
+    public String toString() {
+        return new String(encode("{agencyId}", "{trackingId}"), StandardCharsets.UTF_8);
+    }
+
+    private int writeHead(byte[] body) {
+        System.arraycopy(head, 0, body, 0, head.length);
+        System.arraycopy(AGENCY_ID, 0, body, head.length, AGENCY_ID.length);
+        return head.length + AGENCY_ID.length;
+    }
+
+    private static int writeTrackingId(String trackingId, byte[] body, int offset) {
+        if (trackingId == null) {
+            return offset;
+        }
+        System.arraycopy(TRACKING_ID, 0, body, offset, TRACKING_ID.length);
+        return write(trackingId, body, offset + TRACKING_ID.length);
+    }
+
+    private static int encodedLength(String value) {
+        if (value == null) {
+            return NULL.length;
+        }
+        int length = 2;
+        for (int i = 0; i < value.length(); i++) {
+            final char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                length += 2;
+            } else if (c < 0x20 || c > 0x7e) {
+                length += 6;
+            } else {
+                length++;
+            }
+        }
+        return length;
+    }
+
+    private static int write(String value, byte[] body, int offset) {
+        if (value == null) {
+            System.arraycopy(NULL, 0, body, offset, NULL.length);
+            return offset + NULL.length;
+        }
+        body[offset++] = '"';
+        for (int i = 0; i < value.length(); i++) {
+            final char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                body[offset++] = '\\';
+                body[offset++] = (byte) c;
+            } else if (c < 0x20 || c > 0x7e) {
+                body[offset++] = '\\';
+                body[offset++] = 'u';
+                body[offset++] = HEX[c >> 12 & 0xf];
+                body[offset++] = HEX[c >> 8 & 0xf];
+                body[offset++] = HEX[c >> 4 & 0xf];
+                body[offset++] = HEX[c & 0xf];
+            } else {
+                body[offset++] = (byte) c;
+            }
+        }
+        body[offset++] = '"';
+        return offset;
+    }
+
+    private static String escape(String value) {
+        final byte[] encoded = new byte[encodedLength(value)];
+        write(value, encoded, 0);
+        return new String(encoded, StandardCharsets.US_ASCII);
+    }
+
+    private static byte[] ascii(String value) {
+        return value.getBytes(StandardCharsets.US_ASCII);
+    }
+}
@@ -0,0 +1,25 @@
+/*
+ * Copyright Dansk Bibliotekscenter a/s. Licensed under GNU GPL v3
+ *  See license text at https://opensource.dbc.dk/licenses/gpl-3.0
+ */
+
+package dk.dbc.vipcore.codec;
+
+import com.fasterxml.jackson.core.JsonParser;
+
+import java.io.IOException;
+
+/**
+ * Decoder of a VipCore response document
+ *
+ * @param <T> decoded type
+ */
+@FunctionalInterface
+public interface ResponseDecoder<T> {
+    /**
+     * @param parser parser positioned at the start of the response object
+     * @return the decoded response, the parser is left at the end of the response object
+     * @throws IOException if the response is not valid JSON of the expected shape
+     */
+    T decode(JsonParser parser) throws IOException;
+}
@@ -0,0 +1,57 @@
+/*
+ * Copyright Dansk Bibliotekscenter a/s. Licensed under GNU GPL v3
+ *  See license text at https://opensource.dbc.dk/licenses/gpl-3.0
+ */
+
+package dk.dbc.vipcore.codec;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import dk.dbc.vipcore.marshallers.Information;
+
+import java.io.IOException;
+
+/**
+ * Streaming decoder of service responses
+ * <p>
+ * Unlike the other codecs, the information object is bound by a Jackson object reader rather
+ * than field by field. Information is defined in the marshallers artifact with many fields, and
+ * a hand written decoder would silently drop each field added there until it was mirrored here.
+ * The reader is created once, so the reflection and annotation scanning of the binding are paid
+ * at class initialisation, not per response. The envelope around the information is streamed.
+ * </p>
+ */
+public final class ServiceCodec {
+    // Immutable and thread safe, so the bindings of Information are resolved only once
+    private static final ObjectReader INFORMATION_READER = new ObjectMapper()
+            .disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES)
+            .readerFor(Information.class);
+
+    private ServiceCodec() {
+    }
+
+    /**
+     * Reads the information of a service response of type information, the rest
+     * of the response is skipped without being decoded
+     *
+     * @param parser parser positioned at the start of a service response
+     * @return the information, or null if the response has none
+     * @throws IOException on invalid JSON
+     */
+    public static Information readInformation(JsonParser parser) throws IOException {
+        Information information = null;
+        String field;
+        while ((field = JsonCodec.nextField(parser)) != null) {
+            if ("information".equals(field) && parser.currentToken() == JsonToken.START_OBJECT) {
+                // Leaves the parser at the end of the information object
+                information = INFORMATION_READER.readValue(parser);
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return information;
+    }
+}
@@ -0,0 +1,112 @@
+/*
+ * Copyright Dansk Bibliotekscenter a/s. Licensed under GNU GPL v3
+ *  See license text at https://opensource.dbc.dk/licenses/gpl-3.0
+ */
+
+package dk.dbc.vipcore.compression;
+
+import jakarta.ws.rs.Priorities;
+import jakarta.ws.rs.core.Feature;
+import jakarta.ws.rs.core.FeatureContext;
+import jakarta.ws.rs.core.HttpHeaders;
+import jakarta.ws.rs.ext.ReaderInterceptor;
+import jakarta.ws.rs.ext.ReaderInterceptorContext;
+import org.glassfish.jersey.client.filter.EncodingFilter;
+import org.glassfish.jersey.message.DeflateEncoder;
+import org.glassfish.jersey.message.GZipEncoder;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.function.LongConsumer;
+
+/**
+ * Jersey client feature negotiating gzip or deflate compressed responses
+ * <p>
+ * Requests are sent with an Accept-Encoding header, and compressed responses are
+ * decompressed as they are streamed, before any entity is decoded. Bytes read are counted
+ * both as transferred and as decoded, see {@link #getMetrics()}. Like the tracing filter,
+ * the feature is registered on the client given to a connector, e.g.
+ * </p>
+ * <pre>
+ *    Client client = HttpClient.newClient(new ClientConfig()
+ *            .register(new JacksonFeature())
+ *            .register(new ResponseCompressionFeature()));
+ * </pre>
+ */
+public class ResponseCompressionFeature implements Feature {
+    private final ResponseCompressionMetrics metrics = new ResponseCompressionMetrics();
+
+    @Override
+    public boolean configure(FeatureContext context) {
+        context.register(EncodingFilter.class);
+        context.register(GZipEncoder.class);
+        context.register(DeflateEncoder.class);
+        // Interceptors with a lower priority wrap those with a higher, so the first sees the
+        // stream as transferred and the second the stream as decompressed by the encoders
+        context.register(new CountingInterceptor(metrics, true), Priorities.ENTITY_CODER - 100);
+        context.register(new CountingInterceptor(metrics, false), Priorities.ENTITY_CODER + 100);
+        return true;
+    }
+
+    public ResponseCompressionMetrics getMetrics() {
+        return metrics;
+    }
+
+    private static class CountingInterceptor implements ReaderInterceptor {
+        private final ResponseCompressionMetrics metrics;
+        private final boolean wire;
+
+        CountingInterceptor(ResponseCompressionMetrics metrics, boolean wire) {
+            this.metrics = metrics;
+            this.wire = wire;
+        }
+
+        @Override
+        public Object aroundReadFrom(ReaderInterceptorContext context) throws IOException {
+            if (wire) {
+                metrics.recordResponse(context.getHeaders().containsKey(HttpHeaders.CONTENT_ENCODING));
+                context.setInputStream(new CountingInputStream(context.getInputStream(), metrics::addWireBytes));
+            } else {
+                context.setInputStream(new CountingInputStream(context.getInputStream(), metrics::addDecodedBytes));
+            }
+            return context.proceed();
+        }
+    }
+
+    private static class CountingInputStream extends FilterInputStream {
+        private final LongConsumer counter;
+
+        CountingInputStream(InputStream in, LongConsumer counter) {
+            super(in);
+            this.counter = counter;
+        }
+
+        @Override
+        public int read() throws IOException {
+            final int b = super.read();
+            if (b >= 0) {
+                counter.accept(1);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            final int read = super.read(b, off, len);
+            if (read > 0) {
+                counter.accept(read);
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            final long skipped = super.skip(n);
+            if (skipped > 0) {
+                counter.accept(skipped);
+            }
+            return skipped;
+        }
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright Dansk Bibliotekscenter a/s. Licensed under GNU GPL v3
+ *  See license text at https://opensource.dbc.dk/licenses/gpl-3.0
+ */
+
+package dk.dbc.vipcore.compression;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts of response bytes as transferred and as decoded
+ * <p>
+ * Only bytes actually read from the responses are counted. Uncompressed responses
+ * count the same number of bytes on the wire as decoded.
+ * </p>
+ */
+public class ResponseCompressionMetrics {
+    private final LongAdder responses = new LongAdder();
+    private final LongAdder compressedResponses = new LongAdder();
+    private final LongAdder wireBytes = new LongAdder();
+    private final LongAdder decodedBytes = new LongAdder();
+
+    void recordResponse(boolean compressed) {
+        responses.increment();
+        if (compressed) {
+            compressedResponses.increment();
+        }
+    }
+
+    void addWireBytes(long bytes) {
+        wireBytes.add(bytes);
+    }
+
+    void addDecodedBytes(long bytes) {
+        decodedBytes.add(bytes);
+    }
+
+    /**
+     * @return number of response entities read
+     */
+    public long getResponses() {
+        return responses.sum();
+    }
+
+    /**
+     * @return number of response entities read which were compressed on the wire
+     */
+    public long getCompressedResponses() {
+        return compressedResponses.sum();
+    }
+
+    /**
+     * @return number of response bytes read as transferred
+     */
+    public long getWireBytes() {
+        return wireBytes.sum();
+    }
+
+    /**
+     * @return number of response bytes read after decompression
+     */
+    public long getDecodedBytes() {
+        return decodedBytes.sum();
+    }
+
+    /**
+     * @return decoded bytes per wire byte, 1 if nothing was read yet
+     */
+    public double getCompressionRatio() {
+        final long wire = getWireBytes();
+        return wire == 0 ? 1 : (double) getDecodedBytes() / wire;
+    }
+
+    @Override
+    public String toString() {
+        return "ResponseCompressionMetrics{" +
+                "responses=" + getResponses() +
+                ", compressedResponses=" + getCompressedResponses() +
+                ", wireBytes=" + getWireBytes() +
+                ", decodedBytes=" + getDecodedBytes() +
+                '}';
+    }
+}
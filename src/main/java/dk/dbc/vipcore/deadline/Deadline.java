@@ -0,0 +1,112 @@
+/*
+ * Copyright Dansk Bibliotekscenter a/s. Licensed under GNU GPL v3
+ *  See license text at https://opensource.dbc.dk/licenses/gpl-3.0
+ */
+
+package dk.dbc.vipcore.deadline;
+
+import io.opentelemetry.context.Context;
+import io.opentelemetry.context.ContextKey;
+import io.opentelemetry.context.ImplicitContextKeyed;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Objects;
+
+/**
+ * Point in time by which a call must have completed
+ * <p>
+ * The deadline is carried in the current {@link Context}, so it bounds every connector call
+ * made in its scope, including the fan-out tasks of bulk lookups:
+ * </p>
+ * <pre>
+ *    try (Scope ignored = Deadline.after(Duration.ofMillis(200)).makeCurrent()) {
+ *        connector.getLibraryRulesByAgencyId(agencyId);
+ *    } catch (DeadlineExceededException e) {
+ *        // degrade gracefully
+ *    }
+ * </pre>
+ * <p>
+ * The deadline covers waiting for a bulkhead, connecting, reading and all retries of a
+ * request, which is cancelled when the deadline passes. A deadline made current inside the
+ * scope of another never extends it, the earlier of the two applies.
+ * </p>
+ */
+public final class Deadline implements ImplicitContextKeyed {
+    private static final ContextKey<Deadline> KEY = ContextKey.named("vipcore-deadline");
+
+    private final long nanoTime;
+
+    private Deadline(long nanoTime) {
+        this.nanoTime = nanoTime;
+    }
+
+    /**
+     * @param timeout time from now
+     * @return deadline the given time from now
+     */
+    public static Deadline after(Duration timeout) {
+        Objects.requireNonNull(timeout, "timeout must not be null");
+        return new Deadline(System.nanoTime() + saturatedNanos(timeout));
+    }
+
+    /**
+     * @param instant the point in time
+     * @return deadline at the given point in time
+     */
+    public static Deadline at(Instant instant) {
+        Objects.requireNonNull(instant, "instant must not be null");
+        return after(Duration.between(Instant.now(), instant));
+    }
+
+    /**
+     * @return deadline of the current context, or null if none is set
+     */
+    public static Deadline current() {
+        return Context.current().get(KEY);
+    }
+
+    /**
+     * @return time left until the deadline, zero if it has passed
+     */
+    public Duration remaining() {
+        return Duration.ofNanos(remainingNanos());
+    }
+
+    /**
+     * @return nanoseconds left until the deadline, zero if it has passed
+     */
+    public long remainingNanos() {
+        return Math.max(0, nanoTime - System.nanoTime());
+    }
+
+    public boolean isExpired() {
+        return nanoTime - System.nanoTime() <= 0;
+    }
+
+    /**
+     * @param other another deadline, or null
+     * @return the earlier of this and the other deadline
+     */
+    public Deadline earliest(Deadline other) {
+        return other == null || nanoTime - other.nanoTime <= 0 ? this : other;
+    }
+
+    @Override
+    public Context storeInContext(Context context) {
+        return context.with(KEY, earliest(context.get(KEY)));
+    }
+
+    @Override
+    public String toString() {
+        return "Deadline{remaining=" + remaining() + '}';
+    }
+
+    private static long saturatedNanos(Duration duration) {
+        try {
+            return duration.toNanos();
+        } catch (ArithmeticException e) {
+            return duration.isNegative() ? Long.MIN_VALUE / 2 : Long.MAX_VALUE / 2;
+        }
+    }
+}
@@ -12,7 +12,22 @@ public class AgencyNotFoundException extends VipCoreException {
      */
     private static final long serialVersionUID = -5551623825951240784L;
 
+    public static final String ERROR_CODE = "agency_not_found";
+
+    private static final AgencyNotFoundException STACKLESS = new AgencyNotFoundException(false);
+
     public AgencyNotFoundException() {
-        super("agency_not_found");
+        this(true);
+    }
+
+    private AgencyNotFoundException(boolean writableStackTrace) {
+        super(ERROR_CODE, ERROR_CODE, writableStackTrace);
+    }
+
+    /**
+     * @return shared instance without stack trace, cheap to throw when the error is expected
+     */
+    public static AgencyNotFoundException stackless() {
+        return STACKLESS;
     }
 }
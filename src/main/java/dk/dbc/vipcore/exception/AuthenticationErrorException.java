@@ -11,7 +11,9 @@ public class AuthenticationErrorException extends VipCoreException {
      */
     private static final long serialVersionUID = 4475500850148307809L;
 
+    public static final String ERROR_CODE = "authentication_error";
+
     public AuthenticationErrorException() {
-        super("authentication_error");
+        super(ERROR_CODE, ERROR_CODE, true);
     }
 }
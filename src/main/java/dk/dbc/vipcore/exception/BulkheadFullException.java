@@ -0,0 +1,21 @@
+/*
+ * Copyright Dansk Bibliotekscenter a/s. Licensed under GNU GPL v3
+ *  See license text at https://opensource.dbc.dk/licenses/gpl-3.0
+ */
+
+package dk.dbc.vipcore.exception;
+
+/**
+ * Thrown when a call is rejected because its bulkhead had no capacity within the maximum wait
+ */
+public class BulkheadFullException extends VipCoreException {
+
+    /**
+     *
+     */
+    private static final long serialVersionUID = -3052749017416282187L;
+
+    public BulkheadFullException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,21 @@
+/*
+ * Copyright Dansk Bibliotekscenter a/s. Licensed under GNU GPL v3
+ *  See license text at https://opensource.dbc.dk/licenses/gpl-3.0
+ */
+
+package dk.dbc.vipcore.exception;
+
+/**
+ * Thrown when a call did not complete before its deadline, see {@link dk.dbc.vipcore.deadline.Deadline}
+ */
+public class DeadlineExceededException extends VipCoreException {
+
+    /**
+     *
+     */
+    private static final long serialVersionUID = 4409712855213034516L;
+
+    public DeadlineExceededException(String message) {
+        super(message);
+    }
+}
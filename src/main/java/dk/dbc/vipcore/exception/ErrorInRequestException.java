@@ -12,7 +12,22 @@ public class ErrorInRequestException extends VipCoreException {
      */
     private static final long serialVersionUID = 2559697170711315421L;
 
+    public static final String ERROR_CODE = "error_in_request";
+
+    private static final ErrorInRequestException STACKLESS = new ErrorInRequestException(false);
+
     public ErrorInRequestException() {
-        super("error_in_request");
+        this(true);
+    }
+
+    private ErrorInRequestException(boolean writableStackTrace) {
+        super(ERROR_CODE, ERROR_CODE, writableStackTrace);
+    }
+
+    /**
+     * @return shared instance without stack trace, cheap to throw when the error is expected
+     */
+    public static ErrorInRequestException stackless() {
+        return STACKLESS;
     }
 }
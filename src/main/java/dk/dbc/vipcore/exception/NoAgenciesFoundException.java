@@ -12,7 +12,9 @@ public class NoAgenciesFoundException extends VipCoreException {
      */
     private static final long serialVersionUID = 2586680270239903460L;
 
+    public static final String ERROR_CODE = "no_agencies_found";
+
     public NoAgenciesFoundException() {
-        super("no_agencies_found");
+        super(ERROR_CODE, ERROR_CODE, true);
     }
 }
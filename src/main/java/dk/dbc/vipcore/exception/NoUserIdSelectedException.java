@@ -12,7 +12,9 @@ public class NoUserIdSelectedException extends VipCoreException {
      */
     private static final long serialVersionUID = 903152243614742548L;
 
+    public static final String ERROR_CODE = "no_userid_selected";
+
     public NoUserIdSelectedException() {
-        super("no_userid_selected");
+        super(ERROR_CODE, ERROR_CODE, true);
     }
 }
@@ -12,7 +12,9 @@ public class ProfileNotFoundException extends VipCoreException {
      */
     private static final long serialVersionUID = -2210120792555756098L;
 
+    public static final String ERROR_CODE = "profile_not_found";
+
     public ProfileNotFoundException() {
-        super("profile_not_found");
+        super(ERROR_CODE, ERROR_CODE, true);
     }
 }
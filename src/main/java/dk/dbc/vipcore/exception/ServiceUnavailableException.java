@@ -12,7 +12,22 @@ public class ServiceUnavailableException extends VipCoreException {
      */
     private static final long serialVersionUID = 6212049466598679047L;
 
+    public static final String ERROR_CODE = "service_unavailable";
+
+    private static final ServiceUnavailableException STACKLESS = new ServiceUnavailableException(false);
+
     public ServiceUnavailableException() {
-        super("service_unavailable");
+        this(true);
+    }
+
+    private ServiceUnavailableException(boolean writableStackTrace) {
+        super(ERROR_CODE, ERROR_CODE, writableStackTrace);
+    }
+
+    /**
+     * @return shared instance without stack trace, cheap to throw when the error is expected
+     */
+    public static ServiceUnavailableException stackless() {
+        return STACKLESS;
     }
 }
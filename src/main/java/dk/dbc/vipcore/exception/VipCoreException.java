@@ -11,11 +11,63 @@ public class VipCoreException extends Exception {
      */
     private static final long serialVersionUID = 868126125555959437L;
 
+    private final String errorCode;
+
     public VipCoreException(String message) {
         super(message);
+        this.errorCode = null;
     }
 
     public VipCoreException(String message, Throwable throwable) {
         super(message, throwable);
+        this.errorCode = null;
+    }
+
+    /**
+     * @param message            detail message
+     * @param errorCode          error code of the VipCore error response
+     * @param writableStackTrace false for an exception without stack trace, e.g. one thrown
+     *                           again and again for an expected error
+     */
+    public VipCoreException(String message, String errorCode, boolean writableStackTrace) {
+        super(message, null, writableStackTrace, writableStackTrace);
+        this.errorCode = errorCode;
+    }
+
+    /**
+     * @return error code of the VipCore error response, e.g. "agency_not_found", or null
+     * if the exception was not caused by an error response
+     */
+    public String getErrorCode() {
+        return errorCode;
+    }
+
+    /**
+     * Classifies a VipCore error response by its error code
+     *
+     * @param errorCode error code of the response
+     * @param stackless true to get the shared instance without stack trace of the
+     *                  exceptions which have one, see {@link AgencyNotFoundException#stackless()}
+     * @return exception for the error code
+     */
+    public static VipCoreException of(String errorCode, boolean stackless) {
+        switch (errorCode) {
+            case AuthenticationErrorException.ERROR_CODE:
+                return new AuthenticationErrorException();
+            case ServiceUnavailableException.ERROR_CODE:
+                return stackless ? ServiceUnavailableException.stackless() : new ServiceUnavailableException();
+            case AgencyNotFoundException.ERROR_CODE:
+                return stackless ? AgencyNotFoundException.stackless() : new AgencyNotFoundException();
+            case ErrorInRequestException.ERROR_CODE:
+                return stackless ? ErrorInRequestException.stackless() : new ErrorInRequestException();
+            case NoAgenciesFoundException.ERROR_CODE:
+                return new NoAgenciesFoundException();
+            case NoUserIdSelectedException.ERROR_CODE:
+                return new NoUserIdSelectedException();
+            case ProfileNotFoundException.ERROR_CODE:
+                return new ProfileNotFoundException();
+            default:
+                return new VipCoreException(errorCode, errorCode, true);
+        }
     }
 }
@@ -0,0 +1,142 @@
+/*
+ * Copyright Dansk Bibliotekscenter a/s. Licensed under GNU GPL v3
+ *  See license text at https://opensource.dbc.dk/licenses/gpl-3.0
+ */
+
+package dk.dbc.vipcore.health;
+
+import java.time.Duration;
+import java.util.Objects;
+
+/**
+ * Immutable thresholds of the readiness reported by {@link VipCoreHealth}
+ * <p>
+ * A connector is not ready while the latency percentile or the error rate of its requests
+ * within the window exceeds the threshold. Windows with fewer than the minimum number of
+ * requests are too small to judge and never make a connector unready, so a connector taken
+ * out of traffic becomes ready again once the window has passed.
+ * </p>
+ */
+public final class HealthPolicy {
+    private static final Duration DEFAULT_WINDOW = Duration.ofMinutes(1);
+
+    private final Duration latencySlo;
+    private final double percentile;
+    private final double maxErrorRate;
+    private final Duration window;
+    private final int minRequests;
+
+    private HealthPolicy(Duration latencySlo, double percentile, double maxErrorRate, Duration window, int minRequests) {
+        if (latencySlo != null && latencySlo.isNegative()) {
+            throw new IllegalArgumentException("latencySlo must not be negative");
+        }
+        if (!(percentile > 0 && percentile <= 100)) {
+            throw new IllegalArgumentException("percentile must be above 0 and at most 100");
+        }
+        if (!(maxErrorRate >= 0 && maxErrorRate <= 1)) {
+            throw new IllegalArgumentException("maxErrorRate must be between 0 and 1");
+        }
+        this.window = Objects.requireNonNull(window, "window must not be null");
+        if (window.isNegative() || window.isZero()) {
+            throw new IllegalArgumentException("window must be positive");
+        }
+        if (minRequests < 1) {
+            throw new IllegalArgumentException("minRequests must be positive");
+        }
+        this.latencySlo = latencySlo;
+        this.percentile = percentile;
+        this.maxErrorRate = maxErrorRate;
+        this.minRequests = minRequests;
+    }
+
+    /**
+     * @param latencySlo maximum latency of the 95th percentile of requests, or null for no maximum
+     * @return policy allowing an error rate of 0.5 within a one minute window of at least 10 requests
+     */
+    public static HealthPolicy of(Duration latencySlo) {
+        return new HealthPolicy(latencySlo, 95, 0.5, DEFAULT_WINDOW, 10);
+    }
+
+    /**
+     * @param percentile percentile of the request latencies held against the SLO, e.g. 99
+     * @return copy of this policy with the given percentile
+     */
+    public HealthPolicy withPercentile(double percentile) {
+        return new HealthPolicy(latencySlo, percentile, maxErrorRate, window, minRequests);
+    }
+
+    /**
+     * @param maxErrorRate maximum fraction of failed requests, 1 for no maximum
+     * @return copy of this policy with the given maximum error rate
+     */
+    public HealthPolicy withMaxErrorRate(double maxErrorRate) {
+        return new HealthPolicy(latencySlo, percentile, maxErrorRate, window, minRequests);
+    }
+
+    /**
+     * @param window how far back requests are judged
+     * @return copy of this policy with the given window
+     */
+    public HealthPolicy withWindow(Duration window) {
+        return new HealthPolicy(latencySlo, percentile, maxErrorRate, window, minRequests);
+    }
+
+    /**
+     * @param minRequests fewest requests within the window to judge latency and error rate
+     * @return copy of this policy with the given minimum number of requests
+     */
+    public HealthPolicy withMinRequests(int minRequests) {
+        return new HealthPolicy(latencySlo, percentile, maxErrorRate, window, minRequests);
+    }
+
+    public Duration getLatencySlo() {
+        return latencySlo;
+    }
+
+    public double getPercentile() {
+        return percentile;
+    }
+
+    public double getMaxErrorRate() {
+        return maxErrorRate;
+    }
+
+    public Duration getWindow() {
+        return window;
+    }
+
+    public int getMinRequests() {
+        return minRequests;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        final HealthPolicy that = (HealthPolicy) o;
+        return Double.compare(that.percentile, percentile) == 0
+                && Double.compare(that.maxErrorRate, maxErrorRate) == 0
+                && minRequests == that.minRequests
+                && Objects.equals(latencySlo, that.latencySlo) && window.equals(that.window);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(latencySlo, percentile, maxErrorRate, window, minRequests);
+    }
+
+    @Override
+    public String toString() {
+        return "HealthPolicy{" +
+                "latencySlo=" + latencySlo +
+                ", percentile=" + percentile +
+                ", maxErrorRate=" + maxErrorRate +
+                ", window=" + window +
+                ", minRequests=" + minRequests +
+                '}';
+    }
+}
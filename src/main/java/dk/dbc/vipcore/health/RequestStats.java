@@ -0,0 +1,137 @@
+/*
+ * Copyright Dansk Bibliotekscenter a/s. Licensed under GNU GPL v3
+ *  See license text at https://opensource.dbc.dk/licenses/gpl-3.0
+ */
+
+package dk.dbc.vipcore.health;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Latencies and outcomes of the most recent VipCore requests of a connector
+ * <p>
+ * Keeps the last requests in a fixed size ring, so recording costs no allocation.
+ * Statistics cover only the requests ended within a window, so a connector no longer
+ * receiving traffic forgets an incident rather than reporting it forever.
+ * </p>
+ */
+public class RequestStats {
+    private final long[] endedAt;
+    private final long[] latencies;
+    private final boolean[] failures;
+    private long count;
+
+    public RequestStats() {
+        this(1024);
+    }
+
+    /**
+     * @param capacity number of most recent requests kept
+     */
+    public RequestStats(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity must be positive");
+        }
+        endedAt = new long[capacity];
+        latencies = new long[capacity];
+        failures = new boolean[capacity];
+    }
+
+    /**
+     * @param nanos  time spent in the request, including retries
+     * @param failed true if VipCore did not answer, or answered with a server error
+     */
+    public synchronized void record(long nanos, boolean failed) {
+        final int i = (int) (count++ % latencies.length);
+        endedAt[i] = System.nanoTime();
+        latencies[i] = nanos;
+        failures[i] = failed;
+    }
+
+    /**
+     * @return number of requests recorded since creation
+     */
+    public synchronized long getCount() {
+        return count;
+    }
+
+    /**
+     * @param window how far back to look
+     * @return statistics of the requests ended within the window
+     */
+    public Snapshot snapshot(Duration window) {
+        return snapshot(window, List.of(this));
+    }
+
+    /**
+     * @param window how far back to look
+     * @param stats  statistics of several connectors
+     * @return statistics of the requests of all of them ended within the window
+     */
+    public static Snapshot snapshot(Duration window, Collection<RequestStats> stats) {
+        final long since = System.nanoTime() - window.toNanos();
+        long[] recent = new long[0];
+        int n = 0;
+        int failed = 0;
+        for (RequestStats requestStats : stats) {
+            synchronized (requestStats) {
+                final int kept = (int) Math.min(requestStats.count, requestStats.latencies.length);
+                recent = Arrays.copyOf(recent, n + kept);
+                for (int i = 0; i < kept; i++) {
+                    if (requestStats.endedAt[i] - since >= 0) {
+                        recent[n++] = requestStats.latencies[i];
+                        if (requestStats.failures[i]) {
+                            failed++;
+                        }
+                    }
+                }
+            }
+        }
+        final long[] sorted = Arrays.copyOf(recent, n);
+        Arrays.sort(sorted);
+        return new Snapshot(sorted, failed);
+    }
+
+    /**
+     * Statistics of the requests within a window
+     */
+    public static final class Snapshot {
+        private final long[] sortedLatencies;
+        private final int failures;
+
+        private Snapshot(long[] sortedLatencies, int failures) {
+            this.sortedLatencies = sortedLatencies;
+            this.failures = failures;
+        }
+
+        public int getRequests() {
+            return sortedLatencies.length;
+        }
+
+        public int getFailures() {
+            return failures;
+        }
+
+        /**
+         * @return fraction of the requests which failed, 0 if there were none
+         */
+        public double getErrorRate() {
+            return sortedLatencies.length == 0 ? 0 : (double) failures / sortedLatencies.length;
+        }
+
+        /**
+         * @param percentile percentile between 0 and 100, e.g. 95
+         * @return latency of the percentile, or zero if there were no requests
+         */
+        public Duration getLatency(double percentile) {
+            if (sortedLatencies.length == 0) {
+                return Duration.ZERO;
+            }
+            final int rank = (int) Math.ceil(percentile / 100 * sortedLatencies.length);
+            return Duration.ofNanos(sortedLatencies[Math.min(Math.max(rank, 1), sortedLatencies.length) - 1]);
+        }
+    }
+}
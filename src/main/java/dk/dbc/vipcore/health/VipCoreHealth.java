@@ -0,0 +1,173 @@
+/*
+ * Copyright Dansk Bibliotekscenter a/s. Licensed under GNU GPL v3
+ *  See license text at https://opensource.dbc.dk/licenses/gpl-3.0
+ */
+
+package dk.dbc.vipcore.health;
+
+import dk.dbc.vipcore.VipCoreConnector;
+import dk.dbc.vipcore.bulkhead.Bulkhead;
+import dk.dbc.vipcore.cache.CacheWarmUp;
+import dk.dbc.vipcore.cache.VipCoreCache;
+import org.eclipse.microprofile.health.HealthCheck;
+import org.eclipse.microprofile.health.HealthCheckResponse;
+import org.eclipse.microprofile.health.HealthCheckResponseBuilder;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Objects;
+
+/**
+ * MicroProfile Health liveness and readiness of one or more connectors
+ * <p>
+ * Readiness is down while the recent requests to VipCore are slower than the latency SLO
+ * or fail more often than allowed, see {@link HealthPolicy}, while a bulkhead is saturated
+ * with callers queueing for it, or while the cache warm-up is running. Orchestrators then
+ * route traffic to pods serving VipCore backed requests faster. Liveness is only down for
+ * a closed connector, as restarting a pod does not make VipCore any faster.
+ * </p>
+ * <p>
+ * The connectors have no circuit breaker, failing requests are only retried by the
+ * {@link dk.dbc.httpclient.FailSafeHttpClient}, so no circuit state is reported. The error
+ * rate judgement takes its place, taking the pod out of traffic while VipCore fails.
+ * </p>
+ * <p>
+ * The connector factories produce the checks as {@code @Readiness} and {@code @Liveness}
+ * beans for the connectors named in VIPCORE_HEALTH_CHECKS, see
+ * {@link dk.dbc.vipcore.VipCoreConnectorSettings}.
+ * </p>
+ */
+public class VipCoreHealth {
+    private final String name;
+    private final HealthPolicy policy;
+    private final List<VipCoreConnector> connectors;
+    private final List<RequestStats> requestStats = new ArrayList<>();
+    private volatile CacheWarmUp warmUp;
+
+    public VipCoreHealth(String name, HealthPolicy policy, VipCoreConnector connector) {
+        this(name, policy, List.of(connector));
+    }
+
+    /**
+     * @param name       name of the checks
+     * @param policy     readiness thresholds
+     * @param connectors connectors judged together, e.g. those of a client
+     */
+    public VipCoreHealth(String name, HealthPolicy policy, List<? extends VipCoreConnector> connectors) {
+        this.name = Objects.requireNonNull(name, "name must not be null");
+        this.policy = Objects.requireNonNull(policy, "policy must not be null");
+        this.connectors = List.copyOf(connectors);
+        for (VipCoreConnector connector : this.connectors) {
+            requestStats.add(connector.getRequestStats());
+        }
+    }
+
+    /**
+     * @param warmUp cache warm-up to wait for before reporting ready, or null
+     */
+    public void setWarmUp(CacheWarmUp warmUp) {
+        this.warmUp = warmUp;
+    }
+
+    /**
+     * @param name name of the check
+     * @return check which is always up, produced for connectors whose checks are not enabled
+     */
+    public static HealthCheck disabledCheck(String name) {
+        return () -> HealthCheckResponse.named(name).withData("enabled", false).up().build();
+    }
+
+    public HealthPolicy getPolicy() {
+        return policy;
+    }
+
+    public HealthCheck getReadinessCheck() {
+        return this::readiness;
+    }
+
+    public HealthCheck getLivenessCheck() {
+        return this::liveness;
+    }
+
+    public HealthCheckResponse readiness() {
+        final HealthCheckResponseBuilder builder = HealthCheckResponse.named(name);
+        final List<String> reasons = new ArrayList<>();
+        if (isClosed()) {
+            reasons.add("closed");
+        }
+
+        final RequestStats.Snapshot snapshot = RequestStats.snapshot(policy.getWindow(), requestStats);
+        final Duration latency = snapshot.getLatency(policy.getPercentile());
+        builder.withData("requests", snapshot.getRequests())
+                .withData("errorRate", String.format(Locale.ROOT, "%.3f", snapshot.getErrorRate()))
+                .withData("latencyPercentile", String.format(Locale.ROOT, "%.1f", policy.getPercentile()))
+                .withData("latencyMillis", latency.toMillis());
+        if (policy.getLatencySlo() != null) {
+            builder.withData("latencySloMillis", policy.getLatencySlo().toMillis());
+        }
+        if (snapshot.getRequests() >= policy.getMinRequests()) {
+            if (policy.getLatencySlo() != null && latency.compareTo(policy.getLatencySlo()) > 0) {
+                reasons.add("latency above SLO");
+            }
+            if (snapshot.getErrorRate() > policy.getMaxErrorRate()) {
+                reasons.add("error rate above maximum");
+            }
+        }
+
+        int saturated = 0;
+        long rejections = 0;
+        int cachedEntries = 0;
+        for (VipCoreConnector connector : connectors) {
+            for (Bulkhead bulkhead : connector.getBulkheads().getAll()) {
+                if (bulkhead.getAvailable() == 0 && bulkhead.getQueueLength() > 0) {
+                    saturated++;
+                }
+                rejections += bulkhead.getRejections();
+            }
+            for (VipCoreCache<String, ?> cache : connector.getCaches()) {
+                cachedEntries += cache.size();
+            }
+        }
+        builder.withData("saturatedBulkheads", saturated)
+                .withData("bulkheadRejections", rejections)
+                .withData("cachedEntries", cachedEntries);
+        if (saturated > 0) {
+            reasons.add("bulkheads saturated");
+        }
+
+        final CacheWarmUp cacheWarmUp = warmUp;
+        if (cacheWarmUp != null) {
+            builder.withData("warmUp", cacheWarmUp.getCompleted() + "/" + cacheWarmUp.getTotal());
+            if (!cacheWarmUp.isDone()) {
+                reasons.add("cache warm-up running");
+            }
+        }
+
+        if (!reasons.isEmpty()) {
+            builder.withData("reason", String.join(", ", reasons));
+        }
+        return builder.status(reasons.isEmpty()).build();
+    }
+
+    public HealthCheckResponse liveness() {
+        long requests = 0;
+        for (RequestStats stats : requestStats) {
+            requests += stats.getCount();
+        }
+        return HealthCheckResponse.named(name)
+                .withData("requests", requests)
+                .status(!isClosed())
+                .build();
+    }
+
+    private boolean isClosed() {
+        for (VipCoreConnector connector : connectors) {
+            if (connector.isClosed()) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
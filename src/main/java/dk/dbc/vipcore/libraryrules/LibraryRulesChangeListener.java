@@ -0,0 +1,25 @@
+/*
+ * Copyright Dansk Bibliotekscenter a/s. Licensed under GNU GPL v3
+ *  See license text at https://opensource.dbc.dk/licenses/gpl-3.0
+ */
+
+package dk.dbc.vipcore.libraryrules;
+
+import dk.dbc.vipcore.marshallers.LibraryRules;
+
+/**
+ * Notified when a refresh finds that the library rules of an agency have changed
+ * <p>
+ * Listeners are called on the refreshing thread, one agency at a time per thread, and
+ * must not block. Listeners are not called for agencies refreshed for the first time.
+ * </p>
+ */
+@FunctionalInterface
+public interface LibraryRulesChangeListener {
+    /**
+     * @param agencyId agency id
+     * @param before   previously cached library rules
+     * @param after    refreshed library rules, now cached
+     */
+    void onRulesChanged(String agencyId, LibraryRules before, LibraryRules after);
+}
@@ -1,30 +1,57 @@
 package dk.dbc.vipcore.libraryrules;
 
-import dk.dbc.commons.jsonb.JSONBContext;
-import dk.dbc.commons.jsonb.JSONBException;
 import dk.dbc.commons.useragent.UserAgent;
 import dk.dbc.httpclient.FailSafeHttpClient;
 import dk.dbc.vipcore.VipCoreConnector;
+import dk.dbc.vipcore.cache.AgencyCache;
+import dk.dbc.vipcore.cache.AgencyIds;
+import dk.dbc.vipcore.cache.CacheValueCodec;
+import dk.dbc.vipcore.cache.JsonCacheValueCodec;
+import dk.dbc.vipcore.cache.StringDeduplicator;
+import dk.dbc.vipcore.cache.VipCoreCache;
+import dk.dbc.vipcore.capture.CallCapture;
+import dk.dbc.vipcore.codec.JsonCodec;
+import dk.dbc.vipcore.codec.LibraryRulesCodec;
+import dk.dbc.vipcore.codec.RequestBodyTemplate;
 import dk.dbc.vipcore.exception.VipCoreException;
 import dk.dbc.vipcore.marshallers.LibraryRule;
 import dk.dbc.vipcore.marshallers.LibraryRules;
 import dk.dbc.vipcore.marshallers.LibraryRulesRequest;
-import dk.dbc.vipcore.marshallers.LibraryRulesResponse;
-import org.apache.commons.collections4.map.PassiveExpiringMap;
+import dk.dbc.vipcore.tracing.VipCoreTracing;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import jakarta.ws.rs.client.Client;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Collection;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
 import java.util.stream.Collectors;
 
 public class VipCoreLibraryRulesConnector extends VipCoreConnector {
-    private static final JSONBContext jsonbContext = new JSONBContext();
+    private static final Logger LOGGER = LoggerFactory.getLogger(VipCoreLibraryRulesConnector.class);
+
+    /**
+     * Name of the cache of library rules by agency id
+     */
+    public static final String LIBRARY_RULES_CACHE = "libraryRulesByAgencyIdCache";
+
+    /**
+     * Name of the cache of libraries by library rule query
+     */
+    public static final String LIBRARIES_CACHE = "libraryRuleCache";
 
     private static final int MAX_CACHE_AGE = 8;
-    private final PassiveExpiringMap<String, Set<String>> libraryRuleCache;
-    private final PassiveExpiringMap<String, LibraryRules> libraryRulesByAgencyIdCache;
+    private final VipCoreCache<String, Set<String>> libraryRuleCache;
+    private final AgencyCache<LibraryRules> libraryRulesByAgencyIdCache;
+    private final List<LibraryRulesChangeListener> changeListeners = new CopyOnWriteArrayList<>();
+    private volatile boolean revalidation;
 
     public enum Rule {
         AUTH_ADD_DK5_TO_PHD_ALLOWED("auth_add_dk5_to_phd"),
@@ -71,6 +98,26 @@ public class VipCoreLibraryRulesConnector extends VipCoreConnector {
     }
 
     private static final String LIBRARY_RULES_PATH = "1.0/api/libraryrules";
+    private static final RequestBodyTemplate LIBRARY_RULES_REQUEST = RequestBodyTemplate.of();
+
+    // FNV-1a parameters of the library rules fingerprint
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    // Agency ids have their own pool, so the thousands of them do not fill the shared pool
+    private static final StringDeduplicator AGENCY_IDS = new StringDeduplicator(10000);
+
+    static {
+        // Pooled rule names are then identical to the rule values, making hasFeature comparisons cheap
+        for (Rule rule : Rule.values()) {
+            StringDeduplicator.SHARED.dedup(rule.getValue());
+        }
+    }
+
+    private static final CacheValueCodec<Set<String>> LIBRARIES_CODEC =
+            JsonCacheValueCodec.setOf(String[].class).afterDecode(VipCoreLibraryRulesConnector::compact);
+    private static final CacheValueCodec<LibraryRules> LIBRARY_RULES_CODEC =
+            JsonCacheValueCodec.of(LibraryRules.class).afterDecode(VipCoreLibraryRulesConnector::compact);
 
     /**
      * Returns new instance with default retry policy
@@ -81,8 +128,8 @@ public class VipCoreLibraryRulesConnector extends VipCoreConnector {
     public VipCoreLibraryRulesConnector(Client httpClient, UserAgent userAgent, String baseUrl) {
         super(httpClient, userAgent, baseUrl, TimingLogLevel.INFO);
 
-        libraryRuleCache = new PassiveExpiringMap<>(MAX_CACHE_AGE, TimeUnit.HOURS);
-        libraryRulesByAgencyIdCache = new PassiveExpiringMap<>(MAX_CACHE_AGE, TimeUnit.HOURS);
+        libraryRuleCache = createCache(LIBRARIES_CACHE, Duration.ofHours(MAX_CACHE_AGE), LIBRARIES_CODEC);
+        libraryRulesByAgencyIdCache = createAgencyCache(LIBRARY_RULES_CACHE, Duration.ofHours(MAX_CACHE_AGE), LIBRARY_RULES_CODEC);
     }
 
     /**
@@ -95,8 +142,23 @@ public class VipCoreLibraryRulesConnector extends VipCoreConnector {
     public VipCoreLibraryRulesConnector(Client httpClient, UserAgent userAgent, String baseUrl, int cacheAge, TimingLogLevel level) {
         super(httpClient, userAgent, baseUrl, level);
 
-        libraryRuleCache = new PassiveExpiringMap<>(cacheAge, TimeUnit.HOURS);
-        libraryRulesByAgencyIdCache = new PassiveExpiringMap<>(cacheAge, TimeUnit.HOURS);
+        libraryRuleCache = createCache(LIBRARIES_CACHE, Duration.ofHours(cacheAge), LIBRARIES_CODEC);
+        libraryRulesByAgencyIdCache = createAgencyCache(LIBRARY_RULES_CACHE, Duration.ofHours(cacheAge), LIBRARY_RULES_CODEC);
+    }
+
+    /**
+     * Returns new instance with default retry policy and executor for bulk lookups
+     *
+     * @param httpClient web resources client
+     * @param baseUrl    base URL for vipcore service endpoint
+     * @param level      timings log level
+     * @param executor   executor for bulk lookups, or null to run them sequentially
+     */
+    public VipCoreLibraryRulesConnector(Client httpClient, UserAgent userAgent, String baseUrl, int cacheAge, TimingLogLevel level, ExecutorService executor) {
+        super(httpClient, userAgent, baseUrl, level, executor);
+
+        libraryRuleCache = createCache(LIBRARIES_CACHE, Duration.ofHours(cacheAge), LIBRARIES_CODEC);
+        libraryRulesByAgencyIdCache = createAgencyCache(LIBRARY_RULES_CACHE, Duration.ofHours(cacheAge), LIBRARY_RULES_CODEC);
     }
 
     /**
@@ -108,8 +170,8 @@ public class VipCoreLibraryRulesConnector extends VipCoreConnector {
     public VipCoreLibraryRulesConnector(FailSafeHttpClient failSafeHttpClient, String baseUrl) {
         super(failSafeHttpClient, baseUrl, TimingLogLevel.INFO);
 
-        libraryRuleCache = new PassiveExpiringMap<>(MAX_CACHE_AGE, TimeUnit.HOURS);
-        libraryRulesByAgencyIdCache = new PassiveExpiringMap<>(MAX_CACHE_AGE, TimeUnit.HOURS);
+        libraryRuleCache = createCache(LIBRARIES_CACHE, Duration.ofHours(MAX_CACHE_AGE), LIBRARIES_CODEC);
+        libraryRulesByAgencyIdCache = createAgencyCache(LIBRARY_RULES_CACHE, Duration.ofHours(MAX_CACHE_AGE), LIBRARY_RULES_CODEC);
     }
 
     /**
@@ -122,23 +184,70 @@ public class VipCoreLibraryRulesConnector extends VipCoreConnector {
     public VipCoreLibraryRulesConnector(FailSafeHttpClient failSafeHttpClient, String baseUrl, int cacheAge, TimingLogLevel level) {
         super(failSafeHttpClient, baseUrl, level);
 
-        libraryRuleCache = new PassiveExpiringMap<>(cacheAge, TimeUnit.HOURS);
-        libraryRulesByAgencyIdCache = new PassiveExpiringMap<>(cacheAge, TimeUnit.HOURS);
+        libraryRuleCache = createCache(LIBRARIES_CACHE, Duration.ofHours(cacheAge), LIBRARIES_CODEC);
+        libraryRulesByAgencyIdCache = createAgencyCache(LIBRARY_RULES_CACHE, Duration.ofHours(cacheAge), LIBRARY_RULES_CODEC);
+    }
+
+    /**
+     * Returns new instance with custom retry policy and executor for bulk lookups
+     *
+     * @param failSafeHttpClient web resources client with custom retry policy
+     * @param baseUrl            base URL for vipcore service endpoint
+     * @param level              timings log level
+     * @param executor           executor for bulk lookups, or null to run them sequentially
+     */
+    public VipCoreLibraryRulesConnector(FailSafeHttpClient failSafeHttpClient, String baseUrl, int cacheAge, TimingLogLevel level, ExecutorService executor) {
+        super(failSafeHttpClient, baseUrl, level, executor);
+
+        libraryRuleCache = createCache(LIBRARIES_CACHE, Duration.ofHours(cacheAge), LIBRARIES_CODEC);
+        libraryRulesByAgencyIdCache = createAgencyCache(LIBRARY_RULES_CACHE, Duration.ofHours(cacheAge), LIBRARY_RULES_CODEC);
+    }
+
+    /**
+     * Enables revalidation of expired library rules
+     * <p>
+     * When enabled, responses are fingerprinted, and an expired entry is kept until it is
+     * loaded again. If the new response has the same fingerprint, the entry is renewed
+     * without decoding the response. Library rules rarely change, so most refreshes then
+     * cost only the transfer. Lazily decoded entries are always revalidated, see
+     * {@link #setLazyDecoding(boolean)}.
+     * </p>
+     *
+     * @param revalidation true to enable revalidation
+     */
+    public void setRevalidation(boolean revalidation) {
+        this.revalidation = revalidation;
+    }
+
+    public boolean isRevalidation() {
+        return revalidation;
     }
 
+    /**
+     * @param agencyId agency id as int, e.g. 10100 for agency 010100
+     * @param feature  the feature
+     * @return true if the agency has the feature
+     * @throws VipCoreException on failure to look up the library rules
+     */
     public boolean hasFeature(int agencyId, Rule feature) throws VipCoreException {
-        return hasFeature(Integer.toString(agencyId), feature);
+        return traced("hasFeature", agencyId, null,
+                () -> hasFeature(postLibraryRulesRequest(agencyId, null), feature));
     }
 
     public boolean hasFeature(String agencyId, Rule feature) throws VipCoreException {
-        final List<LibraryRule> libraryRules = postLibraryRulesRequest(agencyId, null).getLibraryRule();
+        return traced("hasFeature", agencyId, null,
+                () -> hasFeature(postLibraryRulesRequest(agencyId, null), feature));
+    }
 
-        return libraryRules.stream()
-                .anyMatch(libraryRule ->
-                        feature.getValue().equals(libraryRule.getName()) &&
-                                libraryRule.getBool() != null &&
-                                libraryRule.getBool()
-                );
+    private static boolean hasFeature(LibraryRules libraryRules, Rule feature) {
+        for (LibraryRule libraryRule : libraryRules.getLibraryRule()) {
+            if (feature.getValue().equals(libraryRule.getName()) &&
+                    libraryRule.getBool() != null &&
+                    libraryRule.getBool()) {
+                return true;
+            }
+        }
+        return false;
     }
 
     public Set<String> getAllowedLibraryRules(String agencyId) throws VipCoreException {
@@ -146,78 +255,323 @@ public class VipCoreLibraryRulesConnector extends VipCoreConnector {
     }
 
     public Set<String> getAllowedLibraryRules(String agencyId, String trackingId) throws VipCoreException {
-        final List<LibraryRule> libraryRules = postLibraryRulesRequest(agencyId, trackingId).getLibraryRule();
+        return traced("getAllowedLibraryRules", agencyId, trackingId,
+                () -> getAllowedLibraryRules(postLibraryRulesRequest(agencyId, trackingId)));
+    }
+
+    public Set<String> getAllowedLibraryRules(int agencyId) throws VipCoreException {
+        return getAllowedLibraryRules(agencyId, null);
+    }
 
-        return libraryRules.stream()
+    public Set<String> getAllowedLibraryRules(int agencyId, String trackingId) throws VipCoreException {
+        return traced("getAllowedLibraryRules", agencyId, trackingId,
+                () -> getAllowedLibraryRules(postLibraryRulesRequest(agencyId, trackingId)));
+    }
+
+    private static Set<String> getAllowedLibraryRules(LibraryRules libraryRules) {
+        return libraryRules.getLibraryRule().stream()
                 .filter(libraryRule -> libraryRule.getBool() != null && libraryRule.getBool())
                 .map(LibraryRule::getName)
                 .collect(Collectors.toSet());
     }
 
     public LibraryRules getLibraryRulesByAgencyId(String agencyId) throws VipCoreException {
-        return postLibraryRulesRequest(agencyId, null);
+        return getLibraryRulesByAgencyId(agencyId, null);
     }
 
     public LibraryRules getLibraryRulesByAgencyId(String agencyId, String trackingId) throws VipCoreException {
-        return postLibraryRulesRequest(agencyId, trackingId);
+        return traced("getLibraryRulesByAgencyId", agencyId, trackingId,
+                () -> postLibraryRulesRequest(agencyId, trackingId));
+    }
+
+    public LibraryRules getLibraryRulesByAgencyId(int agencyId) throws VipCoreException {
+        return getLibraryRulesByAgencyId(agencyId, null);
+    }
+
+    public LibraryRules getLibraryRulesByAgencyId(int agencyId, String trackingId) throws VipCoreException {
+        return traced("getLibraryRulesByAgencyId", agencyId, trackingId,
+                () -> postLibraryRulesRequest(agencyId, trackingId));
+    }
+
+    /**
+     * Looks up the library rules of several agencies, in parallel if the connector
+     * was created with an executor
+     *
+     * @param agencyIds agency ids to look up
+     * @return library rules by agency id
+     * @throws VipCoreException if any of the lookups failed
+     */
+    public Map<String, LibraryRules> getLibraryRulesByAgencyIds(Collection<String> agencyIds) throws VipCoreException {
+        return traced("getLibraryRulesByAgencyIds", null, null,
+                () -> fanOut(agencyIds, agencyId -> postLibraryRulesRequest(agencyId, null)));
+    }
+
+    /**
+     * Loads the library rules of agencies into the cache unless already cached
+     * <p>
+     * With lazy decoding enabled, see {@link #setLazyDecoding(boolean)}, the responses are
+     * cached without being decoded.
+     * </p>
+     *
+     * @param agencyIds agency ids to load
+     * @return number of agencies loaded
+     * @throws VipCoreException if any of the loads failed
+     */
+    public int prefetchLibraryRules(Collection<String> agencyIds) throws VipCoreException {
+        return traced("prefetchLibraryRules", null, null, () -> {
+            final Map<String, Boolean> loaded = fanOut(agencyIds, this::prefetchLibraryRules);
+            return (int) loaded.values().stream().filter(Boolean::booleanValue).count();
+        });
+    }
+
+    /**
+     * Fetches the library rules of agencies and updates the cache where they have changed
+     * <p>
+     * The fetched rules are compared to the cached rules, expired or not, by a content
+     * fingerprint. Unchanged entries keep their cached instance and are only renewed, so
+     * anything derived from them stays valid. Changed entries are replaced, and the change
+     * listeners are notified, see {@link #addRulesChangeListener(LibraryRulesChangeListener)}.
+     * Refreshes of the same agency must not run concurrently.
+     * </p>
+     *
+     * @param agencyIds agency ids to refresh
+     * @return number of agencies whose library rules changed
+     * @throws VipCoreException if any of the fetches failed
+     */
+    public int refreshLibraryRules(Collection<String> agencyIds) throws VipCoreException {
+        return traced("refreshLibraryRules", null, null, () -> {
+            final Map<String, Boolean> changed = fanOut(agencyIds, this::refreshLibraryRules);
+            return (int) changed.values().stream().filter(Boolean::booleanValue).count();
+        });
+    }
+
+    /**
+     * Refreshes the library rules of all agencies currently cached, see {@link #refreshLibraryRules(Collection)}
+     *
+     * @return number of agencies whose library rules changed
+     * @throws VipCoreException if any of the fetches failed
+     */
+    public int refreshCachedLibraryRules() throws VipCoreException {
+        return refreshLibraryRules(libraryRulesByAgencyIdCache.entries().keySet());
+    }
+
+    /**
+     * @param listener listener notified of changed library rules found by a refresh
+     */
+    public void addRulesChangeListener(LibraryRulesChangeListener listener) {
+        changeListeners.add(Objects.requireNonNull(listener, "listener must not be null"));
+    }
+
+    public void removeRulesChangeListener(LibraryRulesChangeListener listener) {
+        changeListeners.remove(listener);
+    }
+
+    private boolean refreshLibraryRules(String agencyId) throws VipCoreException {
+        final byte[] body = postRequestForBody(LIBRARY_RULES_PATH, createLibraryRulesRequestBody(agencyId, null));
+        final LibraryRules after = decodeLibraryRules(agencyId, body);
+        final LibraryRules before = libraryRulesByAgencyIdCache.peek(agencyId);
+        if (before != null && fingerprint(before) == fingerprint(after)) {
+            libraryRulesByAgencyIdCache.touch(agencyId);
+            return false;
+        }
+        // Cached with the fingerprint of the body, like the entries of revalidating loads
+        libraryRulesByAgencyIdCache.put(agencyId, after, body);
+        if (before == null) {
+            return false;
+        }
+        for (LibraryRulesChangeListener listener : changeListeners) {
+            try {
+                listener.onRulesChanged(agencyId, before, after);
+            } catch (RuntimeException e) {
+                LOGGER.warn("Library rules change listener failed for agency {}", agencyId, e);
+            }
+        }
+        return true;
+    }
+
+    private boolean prefetchLibraryRules(String agencyId) throws VipCoreException {
+        if (isLazyDecoding()) {
+            return libraryRulesByAgencyIdCache.preload(agencyId,
+                    () -> postRequestForBody(LIBRARY_RULES_PATH, createLibraryRulesRequestBody(agencyId, null)),
+                    body -> decodeLibraryRules(agencyId, body));
+        }
+        if (libraryRulesByAgencyIdCache.getIfPresent(agencyId) != null) {
+            return false;
+        }
+        postLibraryRulesRequest(agencyId, null);
+        return true;
     }
 
     private LibraryRules postLibraryRulesRequest(String agencyId, String trackingId) throws VipCoreException {
-        try {
-            final LibraryRules cacheValue = libraryRulesByAgencyIdCache.get(agencyId);
-            if (cacheValue != null) {
-                return cacheValue;
-            } else {
-                final LibraryRulesRequest libraryRulesRequest = new LibraryRulesRequest();
-                libraryRulesRequest.setAgencyId(agencyId);
-                if (trackingId != null) {
-                    libraryRulesRequest.setTrackingId(trackingId);
-                }
+        if (isLazyDecoding()) {
+            return libraryRulesByAgencyIdCache.get(agencyId,
+                    () -> postRequestForBody(LIBRARY_RULES_PATH, createLibraryRulesRequestBody(agencyId, trackingId)),
+                    body -> decodeLibraryRules(agencyId, body));
+        }
+        if (revalidation) {
+            return libraryRulesByAgencyIdCache.getRevalidating(agencyId,
+                    () -> postRequestForBody(LIBRARY_RULES_PATH, createLibraryRulesRequestBody(agencyId, trackingId)),
+                    body -> decodeLibraryRules(agencyId, body));
+        }
+        return libraryRulesByAgencyIdCache.get(agencyId, () -> fetchLibraryRules(agencyId, trackingId));
+    }
 
-                final LibraryRulesResponse libraryRulesResponse = postRequest(LIBRARY_RULES_PATH, jsonbContext.marshall(libraryRulesRequest), LibraryRulesResponse.class);
-                for (LibraryRules libraryRules : libraryRulesResponse.getLibraryRules()) {
-                    if (agencyId.equals(libraryRules.getAgencyId())) {
-                        libraryRulesByAgencyIdCache.put(agencyId, libraryRules);
-                        return libraryRules;
-                    }
-                }
+    private LibraryRules postLibraryRulesRequest(int agencyId, String trackingId) throws VipCoreException {
+        if (isLazyDecoding()) {
+            return libraryRulesByAgencyIdCache.get(agencyId,
+                    () -> postRequestForBody(LIBRARY_RULES_PATH, createLibraryRulesRequestBody(agencyId, trackingId)),
+                    body -> decodeLibraryRules(AgencyIds.toString(agencyId), body));
+        }
+        if (revalidation) {
+            return libraryRulesByAgencyIdCache.getRevalidating(agencyId,
+                    () -> postRequestForBody(LIBRARY_RULES_PATH, createLibraryRulesRequestBody(agencyId, trackingId)),
+                    body -> decodeLibraryRules(AgencyIds.toString(agencyId), body));
+        }
+        return libraryRulesByAgencyIdCache.get(agencyId,
+                () -> fetchLibraryRules(AgencyIds.toString(agencyId), trackingId));
+    }
+
+    private LibraryRules fetchLibraryRules(String agencyId, String trackingId) throws VipCoreException {
+        final List<LibraryRules> libraryRules = postRequest(LIBRARY_RULES_PATH,
+                createLibraryRulesRequestBody(agencyId, trackingId), LibraryRulesCodec::readLibraryRules);
+        return selectLibraryRules(agencyId, libraryRules);
+    }
+
+    private static LibraryRules decodeLibraryRules(String agencyId, byte[] body) throws VipCoreException {
+        return selectLibraryRules(agencyId, JsonCodec.decode(body, LibraryRulesCodec::readLibraryRules));
+    }
 
-                throw new VipCoreLibraryRulesConnectorException(String.format("Could not find LibraryRules for agencyId %s", agencyId));
+    private static LibraryRules selectLibraryRules(String agencyId, List<LibraryRules> libraryRulesList)
+            throws VipCoreException {
+        if (libraryRulesList != null) {
+            for (LibraryRules libraryRules : libraryRulesList) {
+                if (agencyId.equals(libraryRules.getAgencyId())) {
+                    return compact(libraryRules);
+                }
             }
-        } catch (JSONBException e) {
-            throw new VipCoreLibraryRulesConnectorException("Caught unexpected JSONBException", e);
         }
+
+        throw new VipCoreLibraryRulesConnectorException(String.format("Could not find LibraryRules for agencyId %s", agencyId));
+    }
+
+    private static byte[] createLibraryRulesRequestBody(String agencyId, String trackingId) {
+        return LIBRARY_RULES_REQUEST.encode(agencyId, VipCoreTracing.trackingId(trackingId));
+    }
+
+    private static byte[] createLibraryRulesRequestBody(int agencyId, String trackingId) {
+        return LIBRARY_RULES_REQUEST.encode(agencyId, VipCoreTracing.trackingId(trackingId));
     }
 
     public Set<String> getLibraries(LibraryRulesRequest libraryRulesRequest) throws VipCoreException {
-        Set<String> result;
-        try {
-            final String libraryRuleCacheKey = createLibraryRuleCacheKey(libraryRulesRequest);
-            result = libraryRuleCache.get(libraryRuleCacheKey);
-            if (result != null) {
-                return result;
+        return traced("getLibraries", null, libraryRulesRequest.getTrackingId(), () -> {
+            final String cacheKey = createLibraryRuleCacheKey(libraryRulesRequest);
+            CallCapture.current().describe(cacheKey);
+            if (revalidation) {
+                return libraryRuleCache.getRevalidating(cacheKey,
+                        () -> postRequestForBody(LIBRARY_RULES_PATH, createLibrariesRequestBody(libraryRulesRequest)),
+                        body -> compact(JsonCodec.decode(body, LibraryRulesCodec::readAgencyIds)));
             }
+            return libraryRuleCache.get(cacheKey, () -> fetchLibraries(libraryRulesRequest));
+        });
+    }
+
+    /**
+     * Removes the cached libraries matching the rules of a request
+     *
+     * @param libraryRulesRequest the request
+     */
+    public void invalidateLibraries(LibraryRulesRequest libraryRulesRequest) {
+        libraryRuleCache.invalidate(createLibraryRuleCacheKey(libraryRulesRequest));
+    }
 
-            final LibraryRulesResponse libraryRulesResponse = postRequest(LIBRARY_RULES_PATH, jsonbContext.marshall(libraryRulesRequest), LibraryRulesResponse.class);
+    private Set<String> fetchLibraries(LibraryRulesRequest libraryRulesRequest) throws VipCoreException {
+        // Only the agency ids are decoded, the rules of each library are skipped. An empty set means no
+        // libraries with that rule were found
+        final Set<String> agencyIds = postRequest(LIBRARY_RULES_PATH,
+                createLibrariesRequestBody(libraryRulesRequest), LibraryRulesCodec::readAgencyIds);
+        return compact(agencyIds);
+    }
 
-            if (libraryRulesResponse.getLibraryRules() != null) {
-                result = libraryRulesResponse.getLibraryRules().stream()
-                        .map(LibraryRules::getAgencyId)
-                        .collect(Collectors.toSet());
-            } else {
-                // If libraryRulesResponse.getLibraryRules() is null it is because no libraries with that rule was found
-                result = new HashSet<>();
+    private static byte[] createLibrariesRequestBody(LibraryRulesRequest libraryRulesRequest) throws VipCoreException {
+        try {
+            // The request owned by the caller is encoded with the tracking id of the call, not modified
+            return LibraryRulesCodec.encodeLibraryRulesRequest(libraryRulesRequest,
+                    VipCoreTracing.trackingId(libraryRulesRequest.getTrackingId()));
+        } catch (IOException e) {
+            throw new VipCoreLibraryRulesConnectorException("Unable to encode library rules request", e);
+        }
+    }
+
+    /**
+     * Replaces the rule names and values, which are shared by all agencies, with pooled instances
+     *
+     * @param libraryRules library rules to compact
+     * @return the given library rules
+     */
+    static LibraryRules compact(LibraryRules libraryRules) {
+        final StringDeduplicator strings = StringDeduplicator.SHARED;
+        libraryRules.setAgencyType(strings.dedup(libraryRules.getAgencyType()));
+        if (libraryRules.getLibraryRule() != null) {
+            for (LibraryRule libraryRule : libraryRules.getLibraryRule()) {
+                libraryRule.setName(strings.dedup(libraryRule.getName()));
+                libraryRule.setString(strings.dedup(libraryRule.getString()));
             }
+        }
+        return libraryRules;
+    }
 
-            libraryRuleCache.put(libraryRuleCacheKey, result);
+    /**
+     * Order-insensitive 64 bit fingerprint of the agency type and the rules
+     *
+     * @param libraryRules library rules
+     * @return the fingerprint
+     */
+    static long fingerprint(LibraryRules libraryRules) {
+        long fingerprint = mix(hash(FNV_OFFSET, libraryRules.getAgencyType()));
+        if (libraryRules.getLibraryRule() != null) {
+            for (LibraryRule libraryRule : libraryRules.getLibraryRule()) {
+                long hash = hash(FNV_OFFSET, libraryRule.getName());
+                hash = (hash ^ (libraryRule.getBool() == null ? 2 : libraryRule.getBool() ? 1 : 0)) * FNV_PRIME;
+                hash = hash(hash, libraryRule.getString());
+                // Summing mixed rule hashes makes the fingerprint independent of the rule order
+                fingerprint += mix(hash);
+            }
+        }
+        return fingerprint;
+    }
 
-            return result;
-        } catch (JSONBException e) {
-            throw new VipCoreLibraryRulesConnectorException("Caught unexpected JSONBException", e);
+    private static long hash(long hash, String value) {
+        if (value == null) {
+            return (hash ^ 0xffff) * FNV_PRIME;
+        }
+        for (int i = 0; i < value.length(); i++) {
+            hash = (hash ^ value.charAt(i)) * FNV_PRIME;
+        }
+        // Separates consecutive strings, so "ab" + "c" differs from "a" + "bc"
+        return (hash ^ 0x10000) * FNV_PRIME;
+    }
+
+    private static long mix(long hash) {
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        return hash ^ (hash >>> 33);
+    }
+
+    /**
+     * @param agencyIds agency ids to compact
+     * @return the given agency ids, replaced by instances pooled apart from the shared pool
+     */
+    static Set<String> compact(Set<String> agencyIds) {
+        final Set<String> compacted = new HashSet<>(agencyIds.size() * 4 / 3 + 1);
+        for (String agencyId : agencyIds) {
+            compacted.add(AGENCY_IDS.dedup(agencyId));
         }
+        return compacted;
     }
 
-    private String createLibraryRuleCacheKey(LibraryRulesRequest libraryRulesRequest) {
+    static String createLibraryRuleCacheKey(LibraryRulesRequest libraryRulesRequest) {
         StringBuilder stringBuilder = new StringBuilder();
 
         for (LibraryRule libraryRule : libraryRulesRequest.getLibraryRule()) {
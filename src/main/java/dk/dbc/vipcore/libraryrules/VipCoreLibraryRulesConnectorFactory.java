@@ -3,8 +3,24 @@ package dk.dbc.vipcore.libraryrules;
 import dk.dbc.commons.useragent.UserAgent;
 import dk.dbc.httpclient.HttpClient;
 import dk.dbc.vipcore.VipCoreConnector;
+import dk.dbc.vipcore.VipCoreConnectorSettings;
+import dk.dbc.vipcore.cache.CachePolicy;
+import dk.dbc.vipcore.cache.CacheRefresher;
+import dk.dbc.vipcore.cache.CacheSnapshotter;
+import dk.dbc.vipcore.cache.CacheWarmUp;
+import dk.dbc.vipcore.capture.CallCapture;
+import dk.dbc.vipcore.compression.ResponseCompressionFeature;
+import dk.dbc.vipcore.compression.ResponseCompressionMetrics;
+import dk.dbc.vipcore.health.VipCoreHealth;
+import dk.dbc.vipcore.management.VipCoreConnectorManagement;
+import dk.dbc.vipcore.marshallers.LibraryRule;
+import dk.dbc.vipcore.marshallers.LibraryRulesRequest;
+import dk.dbc.vipcore.tracing.VipCoreTracingFilter;
 
 import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.eclipse.microprofile.health.HealthCheck;
+import org.eclipse.microprofile.health.Liveness;
+import org.eclipse.microprofile.health.Readiness;
 import org.glassfish.jersey.client.ClientConfig;
 import org.glassfish.jersey.jackson.JacksonFeature;
 import org.slf4j.Logger;
@@ -13,10 +29,16 @@ import org.slf4j.LoggerFactory;
 import jakarta.annotation.PostConstruct;
 import jakarta.annotation.PreDestroy;
 import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.inject.Instance;
 import jakarta.enterprise.inject.Produces;
 import jakarta.inject.Inject;
 import jakarta.ws.rs.client.Client;
 
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+
 /**
  * VipCoreLibraryRulesConnector factory
  * <p>
@@ -39,9 +61,36 @@ import jakarta.ws.rs.client.Client;
  * <p>
  * CDI case depends on the vipcore service baseurl being defined as
  * the value of either a system property or environment variable
- * named VIPCORE_ENDPOINT. VIPCORE_SERVICE_TIMING_LOG_LEVEL
- * should be one of TRACE, DEBUG, INFO(default), WARN or ERROR, for setting
- * log level
+ * named VIPCORE_ENDPOINT. The settings shared by all connector factories,
+ * such as cache, bulkhead, timeout and health settings, are read by
+ * {@link VipCoreConnectorSettings}. Cache snapshots and call captures are
+ * named VipCoreLibraryRulesConnector, {@link #getCompressionMetrics()} reports the
+ * bytes transferred versus decoded and {@link #getHealth()} the readiness, produced as
+ * MicroProfile Health checks if VIPCORE_HEALTH_CHECKS lists VipCoreLibraryRulesConnector
+ * </p>
+ * <p>
+ * Per data type, VIPCORE_LIBRARY_RULES_CACHE_TTL and VIPCORE_LIBRARIES_CACHE_TTL (ISO-8601
+ * durations) override the cache age, and VIPCORE_LIBRARY_RULES_CACHE_MAX_SIZE and
+ * VIPCORE_LIBRARIES_CACHE_MAX_SIZE (default 0, no limit) bound the number of entries, see
+ * {@link CachePolicy}
+ * </p>
+ * <p>
+ * The caches are warmed up in the background at startup with the library rules of the
+ * agencies listed in VIPCORE_WARMUP_AGENCIES, and the libraries matching each of the
+ * rules listed in VIPCORE_WARMUP_LIBRARY_RULES, given as name=value, e.g.
+ * ims_library=true or cataloging_template_set=ffu. At most VIPCORE_WARMUP_CONCURRENCY
+ * (default 4) requests run at once, {@link #getWarmUp()} reports the progress.
+ * </p>
+ * <p>
+ * Setting VIPCORE_CACHE_LAZY_DECODING to true caches compressed response bodies which are
+ * decoded on first use, see {@link VipCoreConnector#setLazyDecoding(boolean)}. Setting
+ * VIPCORE_CACHE_REVALIDATION to true renews expired library rules without decoding them
+ * again if the response is unchanged, see {@link VipCoreLibraryRulesConnector#setRevalidation(boolean)}
+ * </p>
+ * <p>
+ * If VIPCORE_LIBRARY_RULES_REFRESH_INTERVAL (ISO-8601 duration) is set, the cached library rules
+ * are refreshed in the background at that interval, replacing only the rules which changed, see
+ * {@link VipCoreLibraryRulesConnector#refreshLibraryRules(java.util.Collection)}
  * </p>
  */
 @ApplicationScoped
@@ -50,35 +99,123 @@ public class VipCoreLibraryRulesConnectorFactory {
 
     public static VipCoreLibraryRulesConnector create(String vipcoreServiceBaseUrl) {
         final Client client = HttpClient.newClient(new ClientConfig()
-                .register(new JacksonFeature()));
+                .register(new JacksonFeature())
+                .register(new VipCoreTracingFilter()));
         LOGGER.info("Creating VipCoreLibraryRulesConnector for: {}", vipcoreServiceBaseUrl);
         return new VipCoreLibraryRulesConnector(client, UserAgent.forInternalRequests(), vipcoreServiceBaseUrl);
     }
 
     public static VipCoreLibraryRulesConnector create(String vipcoreServiceBaseUrl, int cacheAge, VipCoreConnector.TimingLogLevel level) {
         final Client client = HttpClient.newClient(new ClientConfig()
-                .register(new JacksonFeature()));
+                .register(new JacksonFeature())
+                .register(new VipCoreTracingFilter()));
         LOGGER.info("Creating VipCoreLibraryRulesConnector for: {}", vipcoreServiceBaseUrl);
         return new VipCoreLibraryRulesConnector(client, UserAgent.forInternalRequests(), vipcoreServiceBaseUrl, cacheAge, level);
     }
 
+    public static VipCoreLibraryRulesConnector create(String vipcoreServiceBaseUrl, int cacheAge, VipCoreConnector.TimingLogLevel level, ExecutorService executor) {
+        return create(vipcoreServiceBaseUrl, cacheAge, level, executor, null);
+    }
+
+    /**
+     * @param compression feature negotiating compressed responses, or null for uncompressed responses
+     */
+    public static VipCoreLibraryRulesConnector create(String vipcoreServiceBaseUrl, int cacheAge, VipCoreConnector.TimingLogLevel level, ExecutorService executor,
+            ResponseCompressionFeature compression) {
+        final ClientConfig clientConfig = new ClientConfig()
+                .register(new JacksonFeature())
+                .register(new VipCoreTracingFilter());
+        if (compression != null) {
+            clientConfig.register(compression);
+        }
+        final Client client = HttpClient.newClient(clientConfig);
+        LOGGER.info("Creating VipCoreLibraryRulesConnector for: {}", vipcoreServiceBaseUrl);
+        return new VipCoreLibraryRulesConnector(client, UserAgent.forInternalRequests(), vipcoreServiceBaseUrl, cacheAge, level, executor);
+    }
+
+    @Inject
+    private VipCoreConnectorSettings settings;
+
+    @Inject
+    @ConfigProperty(name = "VIPCORE_LIBRARY_RULES_CACHE_TTL")
+    private Optional<Duration> libraryRulesCacheTtl;
+
+    @Inject
+    @ConfigProperty(name = "VIPCORE_LIBRARY_RULES_CACHE_MAX_SIZE", defaultValue = "0")
+    private int libraryRulesCacheMaxSize;
+
+    @Inject
+    @ConfigProperty(name = "VIPCORE_LIBRARIES_CACHE_TTL")
+    private Optional<Duration> librariesCacheTtl;
+
     @Inject
-    @ConfigProperty(name = "VIPCORE_ENDPOINT")
-    private String vipcoreServiceBaseUrl;
+    @ConfigProperty(name = "VIPCORE_LIBRARIES_CACHE_MAX_SIZE", defaultValue = "0")
+    private int librariesCacheMaxSize;
 
     @Inject
-    @ConfigProperty(name = "VIPCORE_SERVICE_TIMING_LOG_LEVEL", defaultValue = "INFO")
-    private VipCoreConnector.TimingLogLevel level;
+    @ConfigProperty(name = "VIPCORE_CACHE_LAZY_DECODING", defaultValue = "false")
+    private boolean lazyDecoding;
 
     @Inject
-    @ConfigProperty(name = "VIPCORE_CACHE_AGE", defaultValue = "8")
-    private int cacheAge;
+    @ConfigProperty(name = "VIPCORE_CACHE_REVALIDATION", defaultValue = "false")
+    private boolean revalidation;
+
+    @Inject
+    @ConfigProperty(name = "VIPCORE_LIBRARY_RULES_REFRESH_INTERVAL")
+    private Optional<Duration> refreshInterval;
+
+    @Inject
+    @ConfigProperty(name = "VIPCORE_WARMUP_AGENCIES")
+    private Optional<List<String>> warmUpAgencies;
+
+    @Inject
+    @ConfigProperty(name = "VIPCORE_WARMUP_LIBRARY_RULES")
+    private Optional<List<String>> warmUpLibraryRules;
+
+    @Inject
+    @ConfigProperty(name = "VIPCORE_WARMUP_CONCURRENCY", defaultValue = "4")
+    private int warmUpConcurrency;
 
     VipCoreLibraryRulesConnector vipCoreLibraryRulesConnector;
+    ResponseCompressionFeature compression;
+    CacheSnapshotter cacheSnapshotter;
+    CallCapture callCapture;
+    VipCoreConnectorManagement management;
+    VipCoreHealth health;
+    CacheRefresher refresher;
+    CacheWarmUp warmUp;
 
     @PostConstruct
     public void initializeConnector() {
-        vipCoreLibraryRulesConnector = VipCoreLibraryRulesConnectorFactory.create(vipcoreServiceBaseUrl, cacheAge, level);
+        compression = settings.createCompression();
+        vipCoreLibraryRulesConnector = VipCoreLibraryRulesConnectorFactory.create(settings.getVipcoreServiceBaseUrl(),
+                settings.getCacheAge(), settings.getTimingLogLevel(), settings.createExecutor(), compression);
+        final CachePolicy libraryRulesCachePolicy = settings.cachePolicy(libraryRulesCacheTtl, libraryRulesCacheMaxSize)
+                .withRefreshInterval(refreshInterval.orElse(Duration.ZERO));
+        vipCoreLibraryRulesConnector.setCachePolicy(VipCoreLibraryRulesConnector.LIBRARY_RULES_CACHE, libraryRulesCachePolicy);
+        vipCoreLibraryRulesConnector.setCachePolicy(VipCoreLibraryRulesConnector.LIBRARIES_CACHE,
+                settings.cachePolicy(librariesCacheTtl, librariesCacheMaxSize));
+        settings.configure(vipCoreLibraryRulesConnector);
+        vipCoreLibraryRulesConnector.setLazyDecoding(lazyDecoding);
+        vipCoreLibraryRulesConnector.setRevalidation(revalidation);
+        health = new VipCoreHealth("VipCoreLibraryRulesConnector", settings.healthPolicy(), vipCoreLibraryRulesConnector);
+        management = settings.registerManagement(vipCoreLibraryRulesConnector, "VipCoreLibraryRulesConnector");
+        callCapture = settings.createCallCapture("VipCoreLibraryRulesConnector");
+        vipCoreLibraryRulesConnector.setCallCapture(callCapture);
+        cacheSnapshotter = settings.startCacheSnapshotter("VipCoreLibraryRulesConnector", vipCoreLibraryRulesConnector.getCaches());
+        final Duration interval = libraryRulesCachePolicy.getRefreshInterval();
+        refresher = interval.isZero() ? null : new CacheRefresher("VipCoreLibraryRulesConnector library rules",
+                interval, vipCoreLibraryRulesConnector::refreshCachedLibraryRules).start();
+        warmUp = new CacheWarmUp("VipCoreLibraryRulesConnector", warmUpConcurrency);
+        for (String agencyId : warmUpAgencies.orElse(List.of())) {
+            warmUp.add("library rules of " + agencyId, () -> vipCoreLibraryRulesConnector.prefetchLibraryRules(List.of(agencyId)));
+        }
+        for (String libraryRule : warmUpLibraryRules.orElse(List.of())) {
+            final LibraryRulesRequest libraryRulesRequest = createLibraryRulesRequest(libraryRule);
+            warmUp.add("libraries with " + libraryRule, () -> vipCoreLibraryRulesConnector.getLibraries(libraryRulesRequest));
+        }
+        warmUp.start();
+        health.setWarmUp(warmUp);
     }
 
     @Produces
@@ -86,8 +223,84 @@ public class VipCoreLibraryRulesConnectorFactory {
         return vipCoreLibraryRulesConnector;
     }
 
+    /**
+     * @return liveness and readiness checks of the connector, see {@link VipCoreHealth}
+     */
+    public VipCoreHealth getHealth() {
+        return health;
+    }
+
+    /**
+     * @return readiness check of the connector if VIPCORE_HEALTH_CHECKS lists VipCoreLibraryRulesConnector, see {@link VipCoreHealth}
+     */
+    @Produces
+    @Readiness
+    static HealthCheck readinessCheck(VipCoreConnectorSettings settings, Instance<VipCoreLibraryRulesConnectorFactory> factory) {
+        // The factory is only created if its checks are enabled
+        return settings.isHealthCheckEnabled("VipCoreLibraryRulesConnector") ? factory.get().getHealth().getReadinessCheck()
+                : VipCoreHealth.disabledCheck("VipCoreLibraryRulesConnector");
+    }
+
+    /**
+     * @return liveness check of the connector if VIPCORE_HEALTH_CHECKS lists VipCoreLibraryRulesConnector, see {@link VipCoreHealth}
+     */
+    @Produces
+    @Liveness
+    static HealthCheck livenessCheck(VipCoreConnectorSettings settings, Instance<VipCoreLibraryRulesConnectorFactory> factory) {
+        return settings.isHealthCheckEnabled("VipCoreLibraryRulesConnector") ? factory.get().getHealth().getLivenessCheck()
+                : VipCoreHealth.disabledCheck("VipCoreLibraryRulesConnector");
+    }
+
+    /**
+     * @return bytes transferred versus decoded, or null if response compression is not enabled
+     */
+    public ResponseCompressionMetrics getCompressionMetrics() {
+        return compression == null ? null : compression.getMetrics();
+    }
+
+    /**
+     * @return progress of the cache warm-up, {@link CacheWarmUp#isDone()} serves as readiness check
+     */
+    public CacheWarmUp getWarmUp() {
+        return warmUp;
+    }
+
     @PreDestroy
     public void tearDownConnector() {
+        if (management != null) {
+            management.unregister();
+        }
+        if (refresher != null) {
+            refresher.close();
+        }
+        if (cacheSnapshotter != null) {
+            cacheSnapshotter.close();
+        }
         vipCoreLibraryRulesConnector.close();
+        if (callCapture != null) {
+            callCapture.close();
+        }
+    }
+
+    /**
+     * @param libraryRule rule as name=value, a value of true or false is a boolean rule
+     * @return request for the libraries with the rule
+     */
+    static LibraryRulesRequest createLibraryRulesRequest(String libraryRule) {
+        final int separator = libraryRule.indexOf('=');
+        if (separator < 1) {
+            throw new IllegalArgumentException("Library rule must be given as name=value: " + libraryRule);
+        }
+        final LibraryRule rule = new LibraryRule();
+        rule.setName(libraryRule.substring(0, separator).trim());
+        final String value = libraryRule.substring(separator + 1).trim();
+        if ("true".equalsIgnoreCase(value) || "false".equalsIgnoreCase(value)) {
+            rule.setBool(Boolean.parseBoolean(value));
+        } else {
+            rule.setString(value);
+        }
+        final LibraryRulesRequest libraryRulesRequest = new LibraryRulesRequest();
+        libraryRulesRequest.setLibraryRule(List.of(rule));
+        return libraryRulesRequest;
     }
 }
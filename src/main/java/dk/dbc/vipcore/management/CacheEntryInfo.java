@@ -0,0 +1,60 @@
+/*
+ * Copyright Dansk Bibliotekscenter a/s. Licensed under GNU GPL v3
+ *  See license text at https://opensource.dbc.dk/licenses/gpl-3.0
+ */
+
+package dk.dbc.vipcore.management;
+
+import dk.dbc.vipcore.cache.CacheEntry;
+
+import java.time.Instant;
+
+/**
+ * Description of a cache entry, exposed as composite data over JMX
+ */
+public class CacheEntryInfo {
+    private final String key;
+    private final String value;
+    private final String createdAt;
+    private final String expiresAt;
+    private final boolean expired;
+
+    public CacheEntryInfo(String key, CacheEntry<?> entry) {
+        this.key = key;
+        this.value = String.valueOf(entry.getValue());
+        this.createdAt = Instant.ofEpochMilli(entry.getCreatedAt()).toString();
+        this.expiresAt = Instant.ofEpochMilli(entry.getExpiresAt()).toString();
+        this.expired = entry.isExpired(System.currentTimeMillis());
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    public String getValue() {
+        return value;
+    }
+
+    public String getCreatedAt() {
+        return createdAt;
+    }
+
+    public String getExpiresAt() {
+        return expiresAt;
+    }
+
+    public boolean isExpired() {
+        return expired;
+    }
+
+    @Override
+    public String toString() {
+        return "CacheEntryInfo{" +
+                "key='" + key + '\'' +
+                ", value='" + value + '\'' +
+                ", createdAt='" + createdAt + '\'' +
+                ", expiresAt='" + expiresAt + '\'' +
+                ", expired=" + expired +
+                '}';
+    }
+}
@@ -0,0 +1,62 @@
+/*
+ * Copyright Dansk Bibliotekscenter a/s. Licensed under GNU GPL v3
+ *  See license text at https://opensource.dbc.dk/licenses/gpl-3.0
+ */
+
+package dk.dbc.vipcore.management;
+
+import java.util.List;
+
+/**
+ * Runtime management of a connector over JMX
+ * <p>
+ * Cache names are those of the cache name constants of the connectors, durations are
+ * given as ISO-8601 durations, e.g. PT30M, and priorities as INTERACTIVE or BATCH.
+ * </p>
+ */
+public interface VipCoreConnectorMXBean {
+    List<String> getCacheNames();
+
+    int getCacheSize(String cacheName);
+
+    /**
+     * @return keys of the unexpired entries of the cache
+     */
+    List<String> getCacheKeys(String cacheName);
+
+    /**
+     * @return the entry, even if expired, or null if absent
+     */
+    CacheEntryInfo getCacheEntry(String cacheName, String key);
+
+    String getCachePolicy(String cacheName);
+
+    void setCacheTtl(String cacheName, String ttl);
+
+    void setCacheMaxSize(String cacheName, int maxSize);
+
+    /**
+     * @return number of entries removed
+     */
+    int invalidateAgency(String agencyId);
+
+    /**
+     * @return true if an entry was removed
+     */
+    boolean invalidateCacheEntry(String cacheName, String key);
+
+    void invalidateCache(String cacheName);
+
+    void invalidateAll();
+
+    /**
+     * @return maximum number of concurrent requests of the priority to each path, zero for no limit
+     */
+    int getMaxConcurrent(String priority);
+
+    void setMaxConcurrent(String priority, int maxConcurrent);
+
+    long getTimingLogThresholdMillis();
+
+    void setTimingLogThresholdMillis(long thresholdMillis);
+}
@@ -0,0 +1,174 @@
+/*
+ * Copyright Dansk Bibliotekscenter a/s. Licensed under GNU GPL v3
+ *  See license text at https://opensource.dbc.dk/licenses/gpl-3.0
+ */
+
+package dk.dbc.vipcore.management;
+
+import dk.dbc.vipcore.VipCoreConnector;
+import dk.dbc.vipcore.bulkhead.BulkheadPolicy;
+import dk.dbc.vipcore.bulkhead.Priority;
+import dk.dbc.vipcore.cache.CacheEntry;
+import dk.dbc.vipcore.cache.VipCoreCache;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * {@link VipCoreConnectorMXBean} of a connector
+ * <p>
+ * {@link #register(String)} registers the bean in the platform MBean server as
+ * dk.dbc.vipcore:type=VipCoreConnector,name=&lt;name&gt;. Changes are logged, as they
+ * alter the behaviour of the connector until the next change or restart.
+ * </p>
+ */
+public class VipCoreConnectorManagement implements VipCoreConnectorMXBean {
+    private static final Logger LOGGER = LoggerFactory.getLogger(VipCoreConnectorManagement.class);
+
+    private final VipCoreConnector connector;
+    private ObjectName objectName;
+
+    public VipCoreConnectorManagement(VipCoreConnector connector) {
+        this.connector = Objects.requireNonNull(connector, "connector must not be null");
+    }
+
+    /**
+     * @param name name of the bean, unique among the connectors of the JVM
+     * @return this management bean
+     * @throws JMException if the bean could not be registered, e.g. if the name is taken
+     */
+    public synchronized VipCoreConnectorManagement register(String name) throws JMException {
+        final ObjectName candidate = new ObjectName("dk.dbc.vipcore:type=VipCoreConnector,name=" + ObjectName.quote(name));
+        ManagementFactory.getPlatformMBeanServer().registerMBean(this, candidate);
+        objectName = candidate;
+        return this;
+    }
+
+    /**
+     * Unregisters the bean, if registered
+     */
+    public synchronized void unregister() {
+        if (objectName == null) {
+            return;
+        }
+        final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            if (server.isRegistered(objectName)) {
+                server.unregisterMBean(objectName);
+            }
+        } catch (JMException e) {
+            LOGGER.warn("Unable to unregister {}", objectName, e);
+        }
+        objectName = null;
+    }
+
+    public synchronized ObjectName getObjectName() {
+        return objectName;
+    }
+
+    @Override
+    public List<String> getCacheNames() {
+        final List<String> names = new ArrayList<>();
+        for (VipCoreCache<String, ?> cache : connector.getCaches()) {
+            names.add(cache.getName());
+        }
+        return names;
+    }
+
+    @Override
+    public int getCacheSize(String cacheName) {
+        return connector.getCache(cacheName).size();
+    }
+
+    @Override
+    public List<String> getCacheKeys(String cacheName) {
+        return new ArrayList<>(connector.getCache(cacheName).entries().keySet());
+    }
+
+    @Override
+    public CacheEntryInfo getCacheEntry(String cacheName, String key) {
+        final CacheEntry<?> entry = connector.getCache(cacheName).getEntry(key);
+        return entry == null ? null : new CacheEntryInfo(key, entry);
+    }
+
+    @Override
+    public String getCachePolicy(String cacheName) {
+        return connector.getCache(cacheName).getPolicy().toString();
+    }
+
+    @Override
+    public void setCacheTtl(String cacheName, String ttl) {
+        final VipCoreCache<String, ?> cache = connector.getCache(cacheName);
+        cache.setPolicy(cache.getPolicy().withTtl(Duration.parse(ttl)));
+        LOGGER.info("Set policy of {} to {}", cacheName, cache.getPolicy());
+    }
+
+    @Override
+    public void setCacheMaxSize(String cacheName, int maxSize) {
+        final VipCoreCache<String, ?> cache = connector.getCache(cacheName);
+        cache.setPolicy(cache.getPolicy().withMaxSize(maxSize));
+        LOGGER.info("Set policy of {} to {}", cacheName, cache.getPolicy());
+    }
+
+    @Override
+    public int invalidateAgency(String agencyId) {
+        final int removed = connector.invalidateAgency(agencyId);
+        LOGGER.info("Invalidated {} cache entries of agency {}", removed, agencyId);
+        return removed;
+    }
+
+    @Override
+    public boolean invalidateCacheEntry(String cacheName, String key) {
+        final VipCoreCache<String, ?> cache = connector.getCache(cacheName);
+        final boolean present = cache.getEntry(key) != null;
+        cache.invalidate(key);
+        LOGGER.info("Invalidated {} of {}", key, cacheName);
+        return present;
+    }
+
+    @Override
+    public void invalidateCache(String cacheName) {
+        connector.getCache(cacheName).invalidateAll();
+        LOGGER.info("Invalidated {}", cacheName);
+    }
+
+    @Override
+    public void invalidateAll() {
+        connector.invalidateAll();
+        LOGGER.info("Invalidated all caches of {}", connector.getClass().getSimpleName());
+    }
+
+    @Override
+    public int getMaxConcurrent(String priority) {
+        final BulkheadPolicy policy = connector.getBulkheads().getPolicy(Priority.valueOf(priority));
+        return policy == null ? 0 : policy.getMaxConcurrent();
+    }
+
+    @Override
+    public void setMaxConcurrent(String priority, int maxConcurrent) {
+        final Priority parsed = Priority.valueOf(priority);
+        final BulkheadPolicy policy = connector.getBulkheads().getPolicy(parsed);
+        final BulkheadPolicy changed = policy == null
+                ? BulkheadPolicy.of(maxConcurrent) : policy.withMaxConcurrent(maxConcurrent);
+        connector.setBulkheadPolicy(parsed, changed);
+        LOGGER.info("Set {} bulkhead policy of {} to {}", parsed, connector.getClass().getSimpleName(), changed);
+    }
+
+    @Override
+    public long getTimingLogThresholdMillis() {
+        return connector.getTimingLogThreshold().toMillis();
+    }
+
+    @Override
+    public void setTimingLogThresholdMillis(long thresholdMillis) {
+        connector.setTimingLogThreshold(Duration.ofMillis(thresholdMillis));
+    }
+}
@@ -1,28 +1,43 @@
 package dk.dbc.vipcore.service;
 
-import dk.dbc.commons.jsonb.JSONBContext;
-import dk.dbc.commons.jsonb.JSONBException;
 import dk.dbc.commons.useragent.UserAgent;
 import dk.dbc.httpclient.FailSafeHttpClient;
 import dk.dbc.vipcore.VipCoreConnector;
+import dk.dbc.vipcore.cache.AgencyCache;
+import dk.dbc.vipcore.cache.AgencyIds;
+import dk.dbc.vipcore.cache.CacheValueCodec;
+import dk.dbc.vipcore.cache.JsonCacheValueCodec;
+import dk.dbc.vipcore.cache.StringDeduplicator;
+import dk.dbc.vipcore.codec.JsonCodec;
+import dk.dbc.vipcore.codec.RequestBodyTemplate;
+import dk.dbc.vipcore.codec.ServiceCodec;
 import dk.dbc.vipcore.exception.VipCoreException;
 import dk.dbc.vipcore.marshallers.Information;
-import dk.dbc.vipcore.marshallers.ServiceRequest;
-import dk.dbc.vipcore.marshallers.ServiceResponse;
-import org.apache.commons.collections4.map.PassiveExpiringMap;
+import dk.dbc.vipcore.tracing.VipCoreTracing;
 
 import jakarta.ws.rs.client.Client;
-import java.util.concurrent.TimeUnit;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
 
 public class VipCoreServiceConnector extends VipCoreConnector {
-    private static final JSONBContext jsonbContext = new JSONBContext();
+    /**
+     * Name of the cache of service information by agency id
+     */
+    public static final String INFORMATION_CACHE = "serviceCache";
 
     private static final int MAX_CACHE_AGE = 8;
-    private final PassiveExpiringMap<String, Information> serviceCache;
+    // Keyed by agency id, the connector only uses the information service
+    private final AgencyCache<Information> serviceCache;
 
     private static final String SERVICE_PATH = "1.0/api/service";
 
     private static final String SERVICE_TYPE_INFORMATION = "information";
+    private static final RequestBodyTemplate INFORMATION_REQUEST = RequestBodyTemplate.of("service", SERVICE_TYPE_INFORMATION);
+
+    private static final CacheValueCodec<Information> INFORMATION_CODEC =
+            JsonCacheValueCodec.of(Information.class).afterDecode(VipCoreServiceConnector::compact);
 
     /**
      * Returns new instance with default retry policy
@@ -33,7 +48,7 @@ public class VipCoreServiceConnector extends VipCoreConnector {
     public VipCoreServiceConnector(Client httpClient, UserAgent userAgent, String baseUrl) {
         super(httpClient, userAgent, baseUrl, VipCoreConnector.TimingLogLevel.INFO);
 
-        serviceCache = new PassiveExpiringMap<>(MAX_CACHE_AGE, TimeUnit.HOURS);
+        serviceCache = createAgencyCache(INFORMATION_CACHE, Duration.ofHours(MAX_CACHE_AGE), INFORMATION_CODEC);
     }
 
     /**
@@ -46,7 +61,21 @@ public class VipCoreServiceConnector extends VipCoreConnector {
     public VipCoreServiceConnector(Client httpClient, UserAgent userAgent, String baseUrl, int cacheAge, VipCoreConnector.TimingLogLevel level) {
         super(httpClient, userAgent, baseUrl, level);
 
-        serviceCache = new PassiveExpiringMap<>(cacheAge, TimeUnit.HOURS);
+        serviceCache = createAgencyCache(INFORMATION_CACHE, Duration.ofHours(cacheAge), INFORMATION_CODEC);
+    }
+
+    /**
+     * Returns new instance with default retry policy and executor for bulk lookups
+     *
+     * @param httpClient web resources client
+     * @param baseUrl    base URL for vipcore service endpoint
+     * @param level      timings log level
+     * @param executor   executor for bulk lookups, or null to run them sequentially
+     */
+    public VipCoreServiceConnector(Client httpClient, UserAgent userAgent, String baseUrl, int cacheAge, VipCoreConnector.TimingLogLevel level, ExecutorService executor) {
+        super(httpClient, userAgent, baseUrl, level, executor);
+
+        serviceCache = createAgencyCache(INFORMATION_CACHE, Duration.ofHours(cacheAge), INFORMATION_CODEC);
     }
 
     /**
@@ -58,7 +87,7 @@ public class VipCoreServiceConnector extends VipCoreConnector {
     public VipCoreServiceConnector(FailSafeHttpClient failSafeHttpClient, String baseUrl) {
         super(failSafeHttpClient, baseUrl, VipCoreConnector.TimingLogLevel.INFO);
 
-        serviceCache = new PassiveExpiringMap<>(MAX_CACHE_AGE, TimeUnit.HOURS);
+        serviceCache = createAgencyCache(INFORMATION_CACHE, Duration.ofHours(MAX_CACHE_AGE), INFORMATION_CODEC);
     }
 
     /**
@@ -71,7 +100,21 @@ public class VipCoreServiceConnector extends VipCoreConnector {
     public VipCoreServiceConnector(FailSafeHttpClient failSafeHttpClient, String baseUrl, int cacheAge, VipCoreConnector.TimingLogLevel level) {
         super(failSafeHttpClient, baseUrl, level);
 
-        serviceCache = new PassiveExpiringMap<>(cacheAge, TimeUnit.HOURS);
+        serviceCache = createAgencyCache(INFORMATION_CACHE, Duration.ofHours(cacheAge), INFORMATION_CODEC);
+    }
+
+    /**
+     * Returns new instance with custom retry policy and executor for bulk lookups
+     *
+     * @param failSafeHttpClient web resources client with custom retry policy
+     * @param baseUrl            base URL for vipcore service endpoint
+     * @param level              timings log level
+     * @param executor           executor for bulk lookups, or null to run them sequentially
+     */
+    public VipCoreServiceConnector(FailSafeHttpClient failSafeHttpClient, String baseUrl, int cacheAge, VipCoreConnector.TimingLogLevel level, ExecutorService executor) {
+        super(failSafeHttpClient, baseUrl, level, executor);
+
+        serviceCache = createAgencyCache(INFORMATION_CACHE, Duration.ofHours(cacheAge), INFORMATION_CODEC);
     }
 
     public Information getInformation(String agencyId) throws VipCoreException {
@@ -79,31 +122,129 @@ public class VipCoreServiceConnector extends VipCoreConnector {
     }
 
     public Information getInformation(String agencyId, String trackingId) throws VipCoreException {
-        try {
-            final String cacheKey = generateCacheKey(SERVICE_TYPE_INFORMATION, agencyId);
-            final Information cacheValue = serviceCache.get(cacheKey);
-            if (cacheValue != null) {
-                return cacheValue;
-            } else {
-                final ServiceRequest serviceRequest = new ServiceRequest();
-                serviceRequest.setService(SERVICE_TYPE_INFORMATION);
-                serviceRequest.setAgencyId(agencyId);
-                if (trackingId != null) {
-                    serviceRequest.setTrackingId(trackingId);
-                }
-
-                final ServiceResponse serviceResponse = postRequest(SERVICE_PATH, jsonbContext.marshall(serviceRequest), ServiceResponse.class);
-                serviceCache.put(cacheKey, serviceResponse.getInformation());
-
-                return serviceResponse.getInformation();
+        return traced("getInformation", agencyId, trackingId, () -> postInformationRequest(agencyId, trackingId));
+    }
+
+    public Information getInformation(int agencyId) throws VipCoreException {
+        return getInformation(agencyId, null);
+    }
+
+    public Information getInformation(int agencyId, String trackingId) throws VipCoreException {
+        return traced("getInformation", agencyId, trackingId, () -> {
+            if (isLazyDecoding()) {
+                return serviceCache.get(agencyId,
+                        () -> postRequestForBody(SERVICE_PATH, createServiceRequestBody(agencyId, trackingId)),
+                        VipCoreServiceConnector::decodeInformation);
             }
-        } catch (JSONBException e) {
-            throw new VipCoreServiceConnectorException("Caught unexpected JSONBException", e);
+            return serviceCache.get(agencyId, () -> fetchInformation(AgencyIds.toString(agencyId), trackingId));
+        });
+    }
+
+    /**
+     * Returns the information of an agency if cached, without requesting it
+     *
+     * @param agencyId agency id
+     * @return the cached information, or null if not cached
+     */
+    public Information getCachedInformation(String agencyId) {
+        return serviceCache.getIfPresent(agencyId);
+    }
+
+    /**
+     * @param agencyId agency id as int, e.g. 10100 for agency 010100
+     * @return the cached information, or null if not cached
+     */
+    public Information getCachedInformation(int agencyId) {
+        return serviceCache.getIfPresent(agencyId);
+    }
+
+    /**
+     * Looks up the information of several agencies, in parallel if the connector
+     * was created with an executor
+     *
+     * @param agencyIds agency ids to look up
+     * @return information by agency id
+     * @throws VipCoreException if any of the lookups failed
+     */
+    public Map<String, Information> getInformation(Collection<String> agencyIds) throws VipCoreException {
+        return traced("getInformation", null, null,
+                () -> fanOut(agencyIds, agencyId -> postInformationRequest(agencyId, null)));
+    }
+
+    /**
+     * Loads the information of agencies into the cache unless already cached
+     * <p>
+     * With lazy decoding enabled, see {@link #setLazyDecoding(boolean)}, the responses are
+     * cached without being decoded.
+     * </p>
+     *
+     * @param agencyIds agency ids to load
+     * @return number of agencies loaded
+     * @throws VipCoreException if any of the loads failed
+     */
+    public int prefetchInformation(Collection<String> agencyIds) throws VipCoreException {
+        return traced("prefetchInformation", null, null, () -> {
+            final Map<String, Boolean> loaded = fanOut(agencyIds, this::prefetchInformation);
+            return (int) loaded.values().stream().filter(Boolean::booleanValue).count();
+        });
+    }
+
+    private boolean prefetchInformation(String agencyId) throws VipCoreException {
+        if (isLazyDecoding()) {
+            return serviceCache.preload(agencyId,
+                    () -> postRequestForBody(SERVICE_PATH, createServiceRequestBody(agencyId, null)),
+                    VipCoreServiceConnector::decodeInformation);
         }
+        if (serviceCache.getIfPresent(agencyId) != null) {
+            return false;
+        }
+        postInformationRequest(agencyId, null);
+        return true;
+    }
+
+    private Information postInformationRequest(String agencyId, String trackingId) throws VipCoreException {
+        if (isLazyDecoding()) {
+            return serviceCache.get(agencyId,
+                    () -> postRequestForBody(SERVICE_PATH, createServiceRequestBody(agencyId, trackingId)),
+                    VipCoreServiceConnector::decodeInformation);
+        }
+        return serviceCache.get(agencyId, () -> fetchInformation(agencyId, trackingId));
+    }
+
+    private Information fetchInformation(String agencyId, String trackingId) throws VipCoreException {
+        // Only the information is decoded, the rest of the service response is skipped
+        return compact(postRequest(SERVICE_PATH, createServiceRequestBody(agencyId, trackingId),
+                ServiceCodec::readInformation));
+    }
+
+    private static Information decodeInformation(byte[] body) throws VipCoreException {
+        return compact(JsonCodec.decode(body, ServiceCodec::readInformation));
     }
 
-    private String generateCacheKey(String serviceType, String agencyId) {
-        return String.format("%s_%s", serviceType, agencyId);
+    private static byte[] createServiceRequestBody(String agencyId, String trackingId) {
+        return INFORMATION_REQUEST.encode(agencyId, VipCoreTracing.trackingId(trackingId));
     }
 
+    private static byte[] createServiceRequestBody(int agencyId, String trackingId) {
+        return INFORMATION_REQUEST.encode(agencyId, VipCoreTracing.trackingId(trackingId));
+    }
+
+    /**
+     * Replaces the low-cardinality fields shared by many agencies with pooled instances
+     *
+     * @param information information to compact, may be null
+     * @return the given information
+     */
+    static Information compact(Information information) {
+        if (information != null) {
+            final StringDeduplicator strings = StringDeduplicator.SHARED;
+            information.setAgencyType(strings.dedup(information.getAgencyType()));
+            information.setBranchType(strings.dedup(information.getBranchType()));
+            information.setPostalCode(strings.dedup(information.getPostalCode()));
+            information.setCity(strings.dedup(information.getCity()));
+            information.setKvik(strings.dedup(information.getKvik()));
+            information.setNorfri(strings.dedup(information.getNorfri()));
+        }
+        return information;
+    }
 }
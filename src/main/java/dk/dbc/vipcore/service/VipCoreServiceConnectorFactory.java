@@ -3,18 +3,37 @@ package dk.dbc.vipcore.service;
 import dk.dbc.commons.useragent.UserAgent;
 import dk.dbc.httpclient.HttpClient;
 import dk.dbc.vipcore.VipCoreConnector;
+import dk.dbc.vipcore.VipCoreConnectorSettings;
+import dk.dbc.vipcore.cache.CachePolicy;
+import dk.dbc.vipcore.cache.CacheSnapshotter;
+import dk.dbc.vipcore.cache.CacheWarmUp;
+import dk.dbc.vipcore.capture.CallCapture;
+import dk.dbc.vipcore.compression.ResponseCompressionFeature;
+import dk.dbc.vipcore.compression.ResponseCompressionMetrics;
+import dk.dbc.vipcore.health.VipCoreHealth;
+import dk.dbc.vipcore.management.VipCoreConnectorManagement;
+import dk.dbc.vipcore.tracing.VipCoreTracingFilter;
 import jakarta.annotation.PostConstruct;
 import jakarta.annotation.PreDestroy;
 import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.inject.Instance;
 import jakarta.enterprise.inject.Produces;
 import jakarta.inject.Inject;
 import jakarta.ws.rs.client.Client;
 import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.eclipse.microprofile.health.HealthCheck;
+import org.eclipse.microprofile.health.Liveness;
+import org.eclipse.microprofile.health.Readiness;
 import org.glassfish.jersey.client.ClientConfig;
 import org.glassfish.jersey.jackson.JacksonFeature;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+
 /**
  * VipCoreServiceConnector factory
  * <p>
@@ -37,9 +56,26 @@ import org.slf4j.LoggerFactory;
  * <p>
  * CDI case depends on the vipcore service baseurl being defined as
  * the value of either a system property or environment variable
- * named VIPCORE_ENDPOINT. VIPCORE_SERVICE_TIMING_LOG_LEVEL
- * should be one of TRACE, DEBUG, INFO(default), WARN or ERROR, for setting
- * log level
+ * named VIPCORE_ENDPOINT. The settings shared by all connector factories,
+ * such as cache, bulkhead, timeout and health settings, are read by
+ * {@link VipCoreConnectorSettings}. Cache snapshots and call captures are
+ * named VipCoreServiceConnector, {@link #getCompressionMetrics()} reports the
+ * bytes transferred versus decoded and {@link #getHealth()} the readiness, produced as
+ * MicroProfile Health checks if VIPCORE_HEALTH_CHECKS lists VipCoreServiceConnector
+ * </p>
+ * <p>
+ * VIPCORE_INFORMATION_CACHE_TTL (ISO-8601 duration) overrides the cache age, and
+ * VIPCORE_INFORMATION_CACHE_MAX_SIZE (default 0, no limit) bounds the number of entries, see
+ * {@link CachePolicy}
+ * </p>
+ * <p>
+ * The cache is warmed up in the background at startup with the information of the
+ * agencies listed in VIPCORE_WARMUP_AGENCIES. At most VIPCORE_WARMUP_CONCURRENCY
+ * (default 4) requests run at once, {@link #getWarmUp()} reports the progress.
+ * </p>
+ * <p>
+ * Setting VIPCORE_CACHE_LAZY_DECODING to true caches compressed response bodies which are
+ * decoded on first use, see {@link VipCoreConnector#setLazyDecoding(boolean)}
  * </p>
  */
 @ApplicationScoped
@@ -48,35 +84,91 @@ public class VipCoreServiceConnectorFactory {
 
     public static VipCoreServiceConnector create(String vipcoreServiceBaseUrl) {
         final Client client = HttpClient.newClient(new ClientConfig()
-                .register(new JacksonFeature()));
+                .register(new JacksonFeature())
+                .register(new VipCoreTracingFilter()));
         LOGGER.info("Creating VipCoreServiceConnector for: {}", vipcoreServiceBaseUrl);
         return new VipCoreServiceConnector(client, UserAgent.forInternalRequests(), vipcoreServiceBaseUrl);
     }
 
     public static VipCoreServiceConnector create(String vipcoreServiceBaseUrl, int cacheAge, VipCoreConnector.TimingLogLevel level) {
         final Client client = HttpClient.newClient(new ClientConfig()
-                .register(new JacksonFeature()));
+                .register(new JacksonFeature())
+                .register(new VipCoreTracingFilter()));
         LOGGER.info("Creating VipCoreServiceConnector for: {}", vipcoreServiceBaseUrl);
         return new VipCoreServiceConnector(client, UserAgent.forInternalRequests(), vipcoreServiceBaseUrl, cacheAge, level);
     }
 
+    public static VipCoreServiceConnector create(String vipcoreServiceBaseUrl, int cacheAge, VipCoreConnector.TimingLogLevel level, ExecutorService executor) {
+        return create(vipcoreServiceBaseUrl, cacheAge, level, executor, null);
+    }
+
+    /**
+     * @param compression feature negotiating compressed responses, or null for uncompressed responses
+     */
+    public static VipCoreServiceConnector create(String vipcoreServiceBaseUrl, int cacheAge, VipCoreConnector.TimingLogLevel level, ExecutorService executor,
+            ResponseCompressionFeature compression) {
+        final ClientConfig clientConfig = new ClientConfig()
+                .register(new JacksonFeature())
+                .register(new VipCoreTracingFilter());
+        if (compression != null) {
+            clientConfig.register(compression);
+        }
+        final Client client = HttpClient.newClient(clientConfig);
+        LOGGER.info("Creating VipCoreServiceConnector for: {}", vipcoreServiceBaseUrl);
+        return new VipCoreServiceConnector(client, UserAgent.forInternalRequests(), vipcoreServiceBaseUrl, cacheAge, level, executor);
+    }
+
+    @Inject
+    private VipCoreConnectorSettings settings;
+
+    @Inject
+    @ConfigProperty(name = "VIPCORE_INFORMATION_CACHE_TTL")
+    private Optional<Duration> informationCacheTtl;
+
+    @Inject
+    @ConfigProperty(name = "VIPCORE_INFORMATION_CACHE_MAX_SIZE", defaultValue = "0")
+    private int informationCacheMaxSize;
+
     @Inject
-    @ConfigProperty(name = "VIPCORE_ENDPOINT")
-    private String vipcoreServiceBaseUrl;
+    @ConfigProperty(name = "VIPCORE_CACHE_LAZY_DECODING", defaultValue = "false")
+    private boolean lazyDecoding;
 
     @Inject
-    @ConfigProperty(name = "VIPCORE_SERVICE_TIMING_LOG_LEVEL", defaultValue = "INFO")
-    private VipCoreConnector.TimingLogLevel level;
+    @ConfigProperty(name = "VIPCORE_WARMUP_AGENCIES")
+    private Optional<List<String>> warmUpAgencies;
 
     @Inject
-    @ConfigProperty(name = "VIPCORE_CACHE_AGE", defaultValue = "8")
-    private int cacheAge;
+    @ConfigProperty(name = "VIPCORE_WARMUP_CONCURRENCY", defaultValue = "4")
+    private int warmUpConcurrency;
 
     VipCoreServiceConnector vipCoreServiceConnector;
+    ResponseCompressionFeature compression;
+    CacheSnapshotter cacheSnapshotter;
+    CallCapture callCapture;
+    CacheWarmUp warmUp;
+    VipCoreConnectorManagement management;
+    VipCoreHealth health;
 
     @PostConstruct
     public void initializeConnector() {
-        vipCoreServiceConnector = VipCoreServiceConnectorFactory.create(vipcoreServiceBaseUrl, cacheAge, level);
+        compression = settings.createCompression();
+        vipCoreServiceConnector = VipCoreServiceConnectorFactory.create(settings.getVipcoreServiceBaseUrl(),
+                settings.getCacheAge(), settings.getTimingLogLevel(), settings.createExecutor(), compression);
+        vipCoreServiceConnector.setCachePolicy(VipCoreServiceConnector.INFORMATION_CACHE,
+                settings.cachePolicy(informationCacheTtl, informationCacheMaxSize));
+        settings.configure(vipCoreServiceConnector);
+        vipCoreServiceConnector.setLazyDecoding(lazyDecoding);
+        health = new VipCoreHealth("VipCoreServiceConnector", settings.healthPolicy(), vipCoreServiceConnector);
+        management = settings.registerManagement(vipCoreServiceConnector, "VipCoreServiceConnector");
+        callCapture = settings.createCallCapture("VipCoreServiceConnector");
+        vipCoreServiceConnector.setCallCapture(callCapture);
+        cacheSnapshotter = settings.startCacheSnapshotter("VipCoreServiceConnector", vipCoreServiceConnector.getCaches());
+        warmUp = new CacheWarmUp("VipCoreServiceConnector", warmUpConcurrency);
+        for (String agencyId : warmUpAgencies.orElse(List.of())) {
+            warmUp.add("information of " + agencyId, () -> vipCoreServiceConnector.prefetchInformation(List.of(agencyId)));
+        }
+        warmUp.start();
+        health.setWarmUp(warmUp);
     }
 
     @Produces
@@ -84,8 +176,59 @@ public class VipCoreServiceConnectorFactory {
         return vipCoreServiceConnector;
     }
 
+    /**
+     * @return liveness and readiness checks of the connector, see {@link VipCoreHealth}
+     */
+    public VipCoreHealth getHealth() {
+        return health;
+    }
+
+    /**
+     * @return readiness check of the connector if VIPCORE_HEALTH_CHECKS lists VipCoreServiceConnector, see {@link VipCoreHealth}
+     */
+    @Produces
+    @Readiness
+    static HealthCheck readinessCheck(VipCoreConnectorSettings settings, Instance<VipCoreServiceConnectorFactory> factory) {
+        // The factory is only created if its checks are enabled
+        return settings.isHealthCheckEnabled("VipCoreServiceConnector") ? factory.get().getHealth().getReadinessCheck()
+                : VipCoreHealth.disabledCheck("VipCoreServiceConnector");
+    }
+
+    /**
+     * @return liveness check of the connector if VIPCORE_HEALTH_CHECKS lists VipCoreServiceConnector, see {@link VipCoreHealth}
+     */
+    @Produces
+    @Liveness
+    static HealthCheck livenessCheck(VipCoreConnectorSettings settings, Instance<VipCoreServiceConnectorFactory> factory) {
+        return settings.isHealthCheckEnabled("VipCoreServiceConnector") ? factory.get().getHealth().getLivenessCheck()
+                : VipCoreHealth.disabledCheck("VipCoreServiceConnector");
+    }
+
+    /**
+     * @return bytes transferred versus decoded, or null if response compression is not enabled
+     */
+    public ResponseCompressionMetrics getCompressionMetrics() {
+        return compression == null ? null : compression.getMetrics();
+    }
+
+    /**
+     * @return progress of the cache warm-up, {@link CacheWarmUp#isDone()} serves as readiness check
+     */
+    public CacheWarmUp getWarmUp() {
+        return warmUp;
+    }
+
     @PreDestroy
     public void tearDownConnector() {
+        if (management != null) {
+            management.unregister();
+        }
+        if (cacheSnapshotter != null) {
+            cacheSnapshotter.close();
+        }
         vipCoreServiceConnector.close();
+        if (callCapture != null) {
+            callCapture.close();
+        }
     }
 }
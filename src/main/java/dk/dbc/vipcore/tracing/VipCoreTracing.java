@@ -0,0 +1,275 @@
+/*
+ * Copyright Dansk Bibliotekscenter a/s. Licensed under GNU GPL v3
+ *  See license text at https://opensource.dbc.dk/licenses/gpl-3.0
+ */
+
+package dk.dbc.vipcore.tracing;
+
+import dk.dbc.vipcore.cache.AgencyIds;
+import io.opentelemetry.api.GlobalOpenTelemetry;
+import io.opentelemetry.api.common.AttributeKey;
+import io.opentelemetry.api.trace.Span;
+import io.opentelemetry.api.trace.SpanContext;
+import io.opentelemetry.api.trace.SpanKind;
+import io.opentelemetry.api.trace.StatusCode;
+import io.opentelemetry.api.trace.Tracer;
+import io.opentelemetry.context.Context;
+import io.opentelemetry.context.ContextKey;
+import io.opentelemetry.context.Scope;
+import io.opentelemetry.context.propagation.TextMapSetter;
+import jakarta.ws.rs.core.MultivaluedMap;
+
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiConsumer;
+
+/**
+ * OpenTelemetry instrumentation of the VipCore connectors
+ * <p>
+ * Every public connector method runs inside a call span. Outbound HTTP requests carry
+ * W3C trace context headers, and when {@link VipCoreTracingFilter} is registered on the
+ * jersey client, each HTTP attempt (including retries) gets its own child span.
+ * </p>
+ * <p>
+ * Spans are created through {@link GlobalOpenTelemetry}, so without an installed
+ * OpenTelemetry SDK all operations are no-ops.
+ * </p>
+ */
+public final class VipCoreTracing {
+    public static final String INSTRUMENTATION_SCOPE = "dk.dbc.vipcore-connector";
+
+    static final AttributeKey<String> OPERATION = AttributeKey.stringKey("vipcore.operation");
+    static final AttributeKey<String> AGENCY_ID = AttributeKey.stringKey("vipcore.agency_id");
+    static final AttributeKey<String> TRACKING_ID = AttributeKey.stringKey("vipcore.tracking_id");
+    static final AttributeKey<Boolean> CACHE_HIT = AttributeKey.booleanKey("vipcore.cache.hit");
+    static final AttributeKey<Long> ATTEMPT = AttributeKey.longKey("vipcore.attempt");
+    static final AttributeKey<Boolean> RETRY = AttributeKey.booleanKey("vipcore.retry");
+    static final AttributeKey<String> HTTP_METHOD = AttributeKey.stringKey("http.request.method");
+    static final AttributeKey<String> URL = AttributeKey.stringKey("url.full");
+    static final AttributeKey<Long> HTTP_STATUS = AttributeKey.longKey("http.response.status_code");
+
+    private static final ContextKey<Attempts> ATTEMPTS = ContextKey.named("vipcore-attempts");
+
+    private static final TextMapSetter<BiConsumer<String, String>> HEADER_SETTER =
+            (carrier, key, value) -> {
+                if (carrier != null) {
+                    carrier.accept(key, value);
+                }
+            };
+
+    private static final TextMapSetter<MultivaluedMap<String, Object>> REQUEST_HEADER_SETTER =
+            (carrier, key, value) -> {
+                if (carrier != null) {
+                    carrier.putSingle(key, value);
+                }
+            };
+
+    private VipCoreTracing() {
+    }
+
+    /**
+     * Starts a span for a single connector call and makes it current
+     *
+     * @param operation  connector operation name
+     * @param agencyId   agency id the call concerns, or null
+     * @param trackingId caller supplied tracking id, or null
+     * @return the call span, which must be ended by the caller
+     */
+    public static CallSpan startCall(String operation, String agencyId, String trackingId) {
+        final Span span = startSpan(operation);
+        if (agencyId != null) {
+            span.setAttribute(AGENCY_ID, agencyId);
+        }
+        return makeCurrent(span, trackingId);
+    }
+
+    /**
+     * Starts a span for a single connector call and makes it current
+     * <p>
+     * The agency id is only converted to a string if the span is recording.
+     * </p>
+     *
+     * @param operation  connector operation name
+     * @param agencyId   agency id as int
+     * @param trackingId caller supplied tracking id, or null
+     * @return the call span, which must be ended by the caller
+     */
+    public static CallSpan startCall(String operation, int agencyId, String trackingId) {
+        final Span span = startSpan(operation);
+        if (span.isRecording()) {
+            span.setAttribute(AGENCY_ID, AgencyIds.toString(agencyId));
+        }
+        return makeCurrent(span, trackingId);
+    }
+
+    private static Span startSpan(String operation) {
+        return tracer().spanBuilder("VipCore " + operation)
+                .setSpanKind(SpanKind.INTERNAL)
+                .setAttribute(OPERATION, operation)
+                .startSpan();
+    }
+
+    private static CallSpan makeCurrent(Span span, String trackingId) {
+        final String resolvedTrackingId = trackingId != null ? trackingId : traceIdOf(span);
+        if (resolvedTrackingId != null) {
+            span.setAttribute(TRACKING_ID, resolvedTrackingId);
+        }
+        final Attempts attempts = new Attempts();
+        final Scope scope = Context.current().with(span).with(ATTEMPTS, attempts).makeCurrent();
+        return new CallSpan(span, scope, attempts);
+    }
+
+    /**
+     * Records on the current call span whether the value was served from cache
+     *
+     * @param hit true on cache hit, false on cache miss
+     */
+    public static void cacheHit(boolean hit) {
+        Span.current().setAttribute(CACHE_HIT, hit);
+    }
+
+    /**
+     * Returns the tracking id to send to VipCore
+     *
+     * @param trackingId caller supplied tracking id, or null
+     * @return given tracking id if not null, otherwise the trace id of the active trace, or null
+     * if no trace is active
+     */
+    public static String trackingId(String trackingId) {
+        if (trackingId != null) {
+            return trackingId;
+        }
+        return traceIdOf(Span.current());
+    }
+
+    /**
+     * Injects W3C trace context headers for the current context
+     *
+     * @param headerConsumer receiver of header name and value
+     */
+    public static void injectHeaders(BiConsumer<String, String> headerConsumer) {
+        GlobalOpenTelemetry.getPropagators().getTextMapPropagator()
+                .inject(Context.current(), headerConsumer, HEADER_SETTER);
+    }
+
+    static void startAttempt(String method, String url, MultivaluedMap<String, Object> headers) {
+        final Context context = Context.current();
+        final Attempts attempts = context.get(ATTEMPTS);
+        if (attempts == null) {
+            // Not a request issued by a connector call
+            return;
+        }
+        final long attempt = attempts.next();
+        final Span span = tracer().spanBuilder("VipCore " + method)
+                .setParent(context)
+                .setSpanKind(SpanKind.CLIENT)
+                .setAttribute(ATTEMPT, attempt)
+                .setAttribute(RETRY, attempt > 1)
+                .setAttribute(HTTP_METHOD, method)
+                .setAttribute(URL, url)
+                .startSpan();
+        attempts.open(span);
+        GlobalOpenTelemetry.getPropagators().getTextMapPropagator()
+                .inject(context.with(span), headers, REQUEST_HEADER_SETTER);
+    }
+
+    static void endAttempt(int status) {
+        final Attempts attempts = Context.current().get(ATTEMPTS);
+        if (attempts != null) {
+            attempts.close(status);
+        }
+    }
+
+    private static Tracer tracer() {
+        return GlobalOpenTelemetry.getTracer(INSTRUMENTATION_SCOPE);
+    }
+
+    private static String traceIdOf(Span span) {
+        final SpanContext spanContext = span.getSpanContext();
+        return spanContext.isValid() ? spanContext.getTraceId() : null;
+    }
+
+    /**
+     * Span covering one connector call, from cache lookup to returned value
+     */
+    public static final class CallSpan {
+        private final Span span;
+        private final Scope scope;
+        private final Attempts attempts;
+
+        private CallSpan(Span span, Scope scope, Attempts attempts) {
+            this.span = span;
+            this.scope = scope;
+            this.attempts = attempts;
+        }
+
+        public void recordFailure(Throwable throwable) {
+            span.recordException(throwable);
+            span.setStatus(StatusCode.ERROR, throwable.getMessage());
+        }
+
+        public void end() {
+            attempts.abandon();
+            scope.close();
+            span.end();
+        }
+    }
+
+    /**
+     * Keeps track of HTTP attempts within a single connector call
+     */
+    private static final class Attempts {
+        // A lock rather than synchronized, ending a span must never pin a virtual thread
+        private final ReentrantLock lock = new ReentrantLock();
+        private long count;
+        private Span open;
+
+        private long next() {
+            lock.lock();
+            try {
+                // An attempt which failed without a response is never closed by the filter
+                abandon();
+                return ++count;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void open(Span span) {
+            lock.lock();
+            try {
+                open = span;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void close(int status) {
+            lock.lock();
+            try {
+                if (open != null) {
+                    open.setAttribute(HTTP_STATUS, status);
+                    if (status >= 500) {
+                        open.setStatus(StatusCode.ERROR);
+                    }
+                    open.end();
+                    open = null;
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void abandon() {
+            lock.lock();
+            try {
+                if (open != null) {
+                    open.setStatus(StatusCode.ERROR, "no response");
+                    open.end();
+                    open = null;
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+}
@@ -0,0 +1,31 @@
+/*
+ * Copyright Dansk Bibliotekscenter a/s. Licensed under GNU GPL v3
+ *  See license text at https://opensource.dbc.dk/licenses/gpl-3.0
+ */
+
+package dk.dbc.vipcore.tracing;
+
+import jakarta.ws.rs.client.ClientRequestContext;
+import jakarta.ws.rs.client.ClientRequestFilter;
+import jakarta.ws.rs.client.ClientResponseContext;
+import jakarta.ws.rs.client.ClientResponseFilter;
+
+/**
+ * Jersey client filter creating a child span per HTTP attempt made by a connector call
+ * <p>
+ * Requests not issued from within a connector call pass through untouched, so the filter
+ * is safe to register on a client shared with other code.
+ * </p>
+ */
+public class VipCoreTracingFilter implements ClientRequestFilter, ClientResponseFilter {
+    @Override
+    public void filter(ClientRequestContext requestContext) {
+        VipCoreTracing.startAttempt(requestContext.getMethod(),
+                requestContext.getUri().toString(), requestContext.getHeaders());
+    }
+
+    @Override
+    public void filter(ClientRequestContext requestContext, ClientResponseContext responseContext) {
+        VipCoreTracing.endAttempt(responseContext.getStatus());
+    }
+}
@@ -1,6 +1,7 @@
 package dk.dbc.vipcore;
 
 import com.github.tomakehurst.wiremock.WireMockServer;
+import com.github.tomakehurst.wiremock.matching.RequestPatternBuilder;
 import dk.dbc.commons.useragent.UserAgent;
 import dk.dbc.httpclient.HttpClient;
 import dk.dbc.vipcore.agencyinfo.VipCoreAgencyInfoConnector;
@@ -16,7 +17,12 @@ import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.Test;
 
+import static com.github.tomakehurst.wiremock.client.WireMock.aResponse;
 import static com.github.tomakehurst.wiremock.client.WireMock.configureFor;
+import static com.github.tomakehurst.wiremock.client.WireMock.equalToJson;
+import static com.github.tomakehurst.wiremock.client.WireMock.post;
+import static com.github.tomakehurst.wiremock.client.WireMock.postRequestedFor;
+import static com.github.tomakehurst.wiremock.client.WireMock.urlEqualTo;
 import static com.github.tomakehurst.wiremock.core.WireMockConfiguration.options;
 
 import static org.hamcrest.CoreMatchers.is;
@@ -64,4 +70,73 @@ public class VipCoreAgencyInfoConnectorTest {
         Assertions.assertThrows(ErrorInRequestException.class, () -> connector.getAgencyName("sdfsdf"), "error_in_request");
     }
 
+    @Test
+    void getNameStacklessErrorTest() {
+        connector.setStacklessErrors(true);
+        try {
+            final AgencyNotFoundException e = Assertions.assertThrows(AgencyNotFoundException.class,
+                    () -> connector.getAgencyName("000000"));
+            assertThat(e.getErrorCode(), is(AgencyNotFoundException.ERROR_CODE));
+            assertThat(e.getStackTrace().length, is(0));
+            assertThat(e == AgencyNotFoundException.stackless(), is(true));
+        } finally {
+            connector.setStacklessErrors(false);
+        }
+        final AgencyNotFoundException e = Assertions.assertThrows(AgencyNotFoundException.class,
+                () -> connector.getAgencyName("000000"));
+        assertThat(e.getErrorCode(), is(AgencyNotFoundException.ERROR_CODE));
+        assertThat(e.getStackTrace().length > 0, is(true));
+        assertThat(VipCoreException.of("unknown_error", true).getErrorCode(), is("unknown_error"));
+    }
+
+    @Test
+    void getNameFromInformationTest() throws VipCoreException {
+        stubInformation("790900", "{\"information\":{\"agencyId\":\"790900\",\"branchId\":\"790900\",\"agencyName\":\"DBC-Testbiblioteksvæsen\"}}");
+        // The information of a branch names the agency it belongs to
+        stubInformation("726000", "{\"information\":{\"agencyId\":\"726900\",\"branchId\":\"726000\",\"agencyName\":\"Halsnæs Kommune\"}}");
+        final UserAgent userAgent = new UserAgent("VipCoreAgencyInfoConnectorTest");
+        final VipCoreServiceConnector serviceConnector = new VipCoreServiceConnector(CLIENT, userAgent, wireMockHost, 1, VipCoreConnector.TimingLogLevel.INFO);
+        final VipCoreAgencyInfoConnector cachingConnector = new VipCoreAgencyInfoConnector(CLIENT, userAgent, wireMockHost, 1, VipCoreConnector.TimingLogLevel.INFO);
+        cachingConnector.setInformationSource(serviceConnector);
+        final RequestPatternBuilder agencyInfoRequests = postRequestedFor(urlEqualTo("/1.0/api/agencyinfo"))
+                .withRequestBody(equalToJson("{\"agencyId\":\"790900\"}", true, true));
+        final RequestPatternBuilder informationRequests = postRequestedFor(urlEqualTo("/1.0/api/service"))
+                .withRequestBody(equalToJson("{\"agencyId\":\"790900\",\"service\":\"information\"}", true, true));
+        final int agencyInfoCount = count(agencyInfoRequests);
+        final int informationCount = count(informationRequests);
+
+        // Information missing the cache is requested rather than the agency info
+        assertThat(cachingConnector.getAgencyName("790900"), is("DBC-Testbiblioteksvæsen"));
+        assertThat(cachingConnector.getInformationHits(), is(1L));
+        assertThat(count(informationRequests), is(informationCount + 1));
+        assertThat(count(agencyInfoRequests), is(agencyInfoCount));
+
+        // The name is cached
+        assertThat(cachingConnector.getAgencyName(790900), is("DBC-Testbiblioteksvæsen"));
+        assertThat(cachingConnector.getInformationHits(), is(1L));
+
+        // A name missing the cache is taken from the cached information without a request
+        cachingConnector.getCache(VipCoreAgencyInfoConnector.AGENCY_NAME_CACHE).invalidate("790900");
+        assertThat(cachingConnector.getAgencyName(790900), is("DBC-Testbiblioteksvæsen"));
+        assertThat(cachingConnector.getInformationHits(), is(2L));
+        assertThat(count(informationRequests), is(informationCount + 1));
+        assertThat(count(agencyInfoRequests), is(agencyInfoCount));
+
+        // The name of a branch is that of its first pickup agency, as given by the agency info
+        assertThat(cachingConnector.getAgencyName("726000"), is("Halsnæs Bibliotekerne"));
+        assertThat(cachingConnector.getInformationHits(), is(2L));
+    }
+
+    private static void stubInformation(String agencyId, String body) {
+        wireMockServer.stubFor(post(urlEqualTo("/1.0/api/service"))
+                .withRequestBody(equalToJson("{\"agencyId\":\"" + agencyId + "\",\"service\":\"information\"}", true, true))
+                .willReturn(aResponse()
+                        .withHeader("Content-Type", "application/json")
+                        .withBody(body)));
+    }
+
+    private static int count(RequestPatternBuilder requests) {
+        return wireMockServer.countRequestsMatching(requests.build()).getCount();
+    }
+
 }
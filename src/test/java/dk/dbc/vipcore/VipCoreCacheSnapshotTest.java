@@ -0,0 +1,112 @@
+package dk.dbc.vipcore;
+
+import com.github.tomakehurst.wiremock.WireMockServer;
+import com.github.tomakehurst.wiremock.matching.RequestPatternBuilder;
+import dk.dbc.commons.useragent.UserAgent;
+import dk.dbc.httpclient.HttpClient;
+import dk.dbc.vipcore.exception.VipCoreException;
+import dk.dbc.vipcore.libraryrules.VipCoreLibraryRulesConnector;
+import dk.dbc.vipcore.marshallers.Information;
+import dk.dbc.vipcore.marshallers.LibraryRules;
+import dk.dbc.vipcore.service.VipCoreServiceConnector;
+import jakarta.ws.rs.client.Client;
+import org.glassfish.jersey.client.ClientConfig;
+import org.glassfish.jersey.jackson.JacksonFeature;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Set;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.configureFor;
+import static com.github.tomakehurst.wiremock.client.WireMock.verify;
+import static com.github.tomakehurst.wiremock.core.WireMockConfiguration.options;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+class VipCoreCacheSnapshotTest {
+
+    private static WireMockServer wireMockServer;
+    private static String wireMockHost;
+
+    final static Client CLIENT = HttpClient.newClient(new ClientConfig()
+            .register(new JacksonFeature()));
+    final static UserAgent USER_AGENT = new UserAgent("VipCoreCacheSnapshotTest");
+
+    @TempDir
+    Path tempDir;
+
+    @BeforeAll
+    static void startWireMockServer() {
+        wireMockServer = new WireMockServer(options().dynamicPort()
+                .dynamicHttpsPort());
+        wireMockServer.start();
+        wireMockHost = "http://localhost:" + wireMockServer.port();
+        configureFor("localhost", wireMockServer.port());
+    }
+
+    @AfterAll
+    static void stopWireMockServer() {
+        wireMockServer.stop();
+    }
+
+    @Test
+    void libraryRulesSnapshotTest() throws VipCoreException, IOException {
+        final Path snapshot = tempDir.resolve("libraryrules.snapshot");
+        final VipCoreLibraryRulesConnector connector =
+                new VipCoreLibraryRulesConnector(CLIENT, USER_AGENT, wireMockHost, 1, VipCoreConnector.TimingLogLevel.INFO);
+        final LibraryRules expectedRules = connector.getLibraryRulesByAgencyId("710100");
+        final Set<String> expectedAllowed = connector.getAllowedLibraryRules("010100");
+        assertThat(connector.writeCacheSnapshot(snapshot), is(2));
+
+        wireMockServer.resetRequests();
+        final VipCoreLibraryRulesConnector restored =
+                new VipCoreLibraryRulesConnector(CLIENT, USER_AGENT, wireMockHost, 1, VipCoreConnector.TimingLogLevel.INFO);
+        assertThat(restored.readCacheSnapshot(snapshot), is(2));
+
+        assertThat(restored.getLibraryRulesByAgencyId("710100"), is(expectedRules));
+        assertThat(restored.getAllowedLibraryRules("010100"), is(expectedAllowed));
+        verify(0, new RequestPatternBuilder().withUrl("/1.0/api/libraryrules"));
+    }
+
+    @Test
+    void serviceSnapshotTest() throws VipCoreException, IOException {
+        final Path snapshot = tempDir.resolve("service.snapshot");
+        final VipCoreServiceConnector connector =
+                new VipCoreServiceConnector(CLIENT, USER_AGENT, wireMockHost, 1, VipCoreConnector.TimingLogLevel.INFO);
+        final Information expected = connector.getInformation("010100");
+        connector.writeCacheSnapshot(snapshot);
+
+        wireMockServer.resetRequests();
+        final VipCoreServiceConnector restored =
+                new VipCoreServiceConnector(CLIENT, USER_AGENT, wireMockHost, 1, VipCoreConnector.TimingLogLevel.INFO);
+        assertThat(restored.readCacheSnapshot(snapshot), is(1));
+
+        assertThat(restored.getInformation("010100"), is(expected));
+        verify(0, new RequestPatternBuilder().withUrl("/1.0/api/service"));
+    }
+
+    @Test
+    void expiredEntriesAreNotRestoredTest() throws VipCoreException, IOException {
+        final Path snapshot = tempDir.resolve("expired.snapshot");
+        final VipCoreServiceConnector connector =
+                new VipCoreServiceConnector(CLIENT, USER_AGENT, wireMockHost, 1, VipCoreConnector.TimingLogLevel.INFO);
+        connector.getInformation("010100");
+        connector.writeCacheSnapshot(snapshot);
+
+        // Caching disabled, nothing can be restored
+        final VipCoreServiceConnector restored =
+                new VipCoreServiceConnector(CLIENT, USER_AGENT, wireMockHost, 0, VipCoreConnector.TimingLogLevel.INFO);
+        assertThat(restored.readCacheSnapshot(snapshot), is(0));
+    }
+
+    @Test
+    void missingSnapshotTest() throws IOException {
+        final VipCoreServiceConnector connector =
+                new VipCoreServiceConnector(CLIENT, USER_AGENT, wireMockHost, 1, VipCoreConnector.TimingLogLevel.INFO);
+        assertThat(connector.readCacheSnapshot(tempDir.resolve("missing.snapshot")), is(0));
+    }
+}
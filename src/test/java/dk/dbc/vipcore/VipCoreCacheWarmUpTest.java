@@ -0,0 +1,79 @@
+package dk.dbc.vipcore;
+
+import com.github.tomakehurst.wiremock.WireMockServer;
+import com.github.tomakehurst.wiremock.matching.RequestPatternBuilder;
+import dk.dbc.commons.useragent.UserAgent;
+import dk.dbc.httpclient.HttpClient;
+import dk.dbc.vipcore.cache.CacheWarmUp;
+import dk.dbc.vipcore.exception.VipCoreException;
+import dk.dbc.vipcore.libraryrules.VipCoreLibraryRulesConnector;
+import jakarta.ws.rs.client.Client;
+import org.glassfish.jersey.client.ClientConfig;
+import org.glassfish.jersey.jackson.JacksonFeature;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.configureFor;
+import static com.github.tomakehurst.wiremock.client.WireMock.verify;
+import static com.github.tomakehurst.wiremock.core.WireMockConfiguration.options;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+class VipCoreCacheWarmUpTest {
+
+    private static WireMockServer wireMockServer;
+    private static String wireMockHost;
+
+    final static Client CLIENT = HttpClient.newClient(new ClientConfig()
+            .register(new JacksonFeature()));
+
+    @BeforeAll
+    static void startWireMockServer() {
+        wireMockServer = new WireMockServer(options().dynamicPort()
+                .dynamicHttpsPort());
+        wireMockServer.start();
+        wireMockHost = "http://localhost:" + wireMockServer.port();
+        configureFor("localhost", wireMockServer.port());
+    }
+
+    @AfterAll
+    static void stopWireMockServer() {
+        wireMockServer.stop();
+    }
+
+    @Test
+    void warmUpTest() throws VipCoreException, InterruptedException {
+        final UserAgent userAgent = new UserAgent("VipCoreCacheWarmUpTest");
+        final VipCoreLibraryRulesConnector connector =
+                new VipCoreLibraryRulesConnector(CLIENT, userAgent, wireMockHost, 1, VipCoreConnector.TimingLogLevel.INFO);
+
+        final CacheWarmUp warmUp = new CacheWarmUp("warmUpTest", 2)
+                .add("710100", () -> connector.getLibraryRulesByAgencyId("710100"))
+                .add("010100", () -> connector.getLibraryRulesByAgencyId("010100"))
+                .add("000000", () -> connector.getLibraryRulesByAgencyId("000000"));
+        assertThat(warmUp.isDone(), is(false));
+
+        warmUp.start();
+
+        assertThat(warmUp.await(Duration.ofSeconds(30)), is(true));
+        assertThat(warmUp.isDone(), is(true));
+        assertThat(warmUp.getTotal(), is(3));
+        assertThat(warmUp.getCompleted(), is(2));
+        assertThat(warmUp.getFailed(), is(1));
+
+        wireMockServer.resetRequests();
+        connector.getLibraryRulesByAgencyId("710100");
+        connector.getLibraryRulesByAgencyId("010100");
+        verify(0, new RequestPatternBuilder().withUrl("/1.0/api/libraryrules"));
+    }
+
+    @Test
+    void emptyWarmUpTest() {
+        final CacheWarmUp warmUp = new CacheWarmUp("emptyWarmUpTest", 1).start();
+
+        assertThat(warmUp.isDone(), is(true));
+    }
+}
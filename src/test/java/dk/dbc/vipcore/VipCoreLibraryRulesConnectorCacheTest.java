@@ -7,6 +7,7 @@ import dk.dbc.httpclient.HttpClient;
 import dk.dbc.vipcore.exception.VipCoreException;
 import dk.dbc.vipcore.libraryrules.VipCoreLibraryRulesConnector;
 import dk.dbc.vipcore.marshallers.LibraryRule;
+import dk.dbc.vipcore.marshallers.LibraryRules;
 import dk.dbc.vipcore.marshallers.LibraryRulesRequest;
 import jakarta.ws.rs.client.Client;
 import org.glassfish.jersey.client.ClientConfig;
@@ -17,10 +18,15 @@ import org.junit.jupiter.api.Test;
 
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.List;
+import java.util.Set;
 
 import static com.github.tomakehurst.wiremock.client.WireMock.configureFor;
 import static com.github.tomakehurst.wiremock.client.WireMock.verify;
 import static com.github.tomakehurst.wiremock.core.WireMockConfiguration.options;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.hamcrest.MatcherAssert.assertThat;
 
 class VipCoreLibraryRulesConnectorCacheTest {
 
@@ -103,4 +109,60 @@ class VipCoreLibraryRulesConnectorCacheTest {
 
         verify(1, new RequestPatternBuilder().withUrl("/1.0/api/libraryrules"));
     }
+
+    @Test
+    void intAgencyIdCacheTest() throws VipCoreException {
+        final VipCoreLibraryRulesConnector intConnector = new VipCoreLibraryRulesConnector(CLIENT,
+                new UserAgent("VipCoreLibraryRulesConnectorCacheTest"), wireMockHost, 1, VipCoreConnector.TimingLogLevel.INFO);
+        wireMockServer.resetRequests();
+
+        final LibraryRules libraryRules = intConnector.getLibraryRulesByAgencyId(10100);
+
+        // Int and string lookups share the cache entry
+        assertThat(intConnector.getLibraryRulesByAgencyId("010100"), is(libraryRules));
+        assertThat(intConnector.hasFeature(10100, VipCoreLibraryRulesConnector.Rule.AUTH_ROOT), is(true));
+        assertThat(intConnector.getAllowedLibraryRules(10100), is(intConnector.getAllowedLibraryRules("010100")));
+
+        verify(1, new RequestPatternBuilder().withUrl("/1.0/api/libraryrules"));
+    }
+
+    @Test
+    void ruleNamesAreDeduplicatedTest() throws VipCoreException {
+        final VipCoreLibraryRulesConnector dedupConnector = new VipCoreLibraryRulesConnector(CLIENT,
+                new UserAgent("VipCoreLibraryRulesConnectorCacheTest"), wireMockHost, 1, VipCoreConnector.TimingLogLevel.INFO);
+        final LibraryRules dbc = dedupConnector.getLibraryRulesByAgencyId("010100");
+        final LibraryRules dbcTest = dedupConnector.getLibraryRulesByAgencyId("710100");
+
+        for (LibraryRule libraryRule : dbc.getLibraryRule()) {
+            final VipCoreLibraryRulesConnector.Rule rule = Arrays.stream(VipCoreLibraryRulesConnector.Rule.values())
+                    .filter(r -> r.getValue().equals(libraryRule.getName()))
+                    .findFirst().orElse(null);
+            if (rule != null) {
+                assertThat(libraryRule.getName(), sameInstance(rule.getValue()));
+            }
+        }
+        assertThat(dbc.getLibraryRule().get(0).getName(), sameInstance(dbcTest.getLibraryRule().get(0).getName()));
+    }
+
+    @Test
+    void lazyDecodingTest() throws VipCoreException {
+        final VipCoreLibraryRulesConnector lazyConnector = new VipCoreLibraryRulesConnector(CLIENT,
+                new UserAgent("VipCoreLibraryRulesConnectorCacheTest"), wireMockHost, 1, VipCoreConnector.TimingLogLevel.INFO);
+        lazyConnector.setLazyDecoding(true);
+        wireMockServer.resetRequests();
+
+        assertThat(lazyConnector.prefetchLibraryRules(List.of("010100", "710100")), is(2));
+        assertThat(lazyConnector.prefetchLibraryRules(List.of("010100")), is(0));
+
+        // Prefetched entries are decoded on access without further requests
+        final LibraryRules lazy = lazyConnector.getLibraryRulesByAgencyId("010100");
+        assertThat(lazyConnector.hasFeature(10100, VipCoreLibraryRulesConnector.Rule.AUTH_ROOT), is(true));
+        final Set<String> lazyAllowed = lazyConnector.getAllowedLibraryRules("710100");
+        verify(2, new RequestPatternBuilder().withUrl("/1.0/api/libraryrules"));
+
+        final LibraryRules eager = connector.getLibraryRulesByAgencyId("010100");
+        assertThat(lazy.getAgencyId(), is(eager.getAgencyId()));
+        assertThat(lazy.getLibraryRule().size(), is(eager.getLibraryRule().size()));
+        assertThat(lazyAllowed, is(connector.getAllowedLibraryRules("710100")));
+    }
 }
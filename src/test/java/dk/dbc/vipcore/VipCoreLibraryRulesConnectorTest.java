@@ -10,6 +10,11 @@ import dk.dbc.vipcore.libraryrules.VipCoreLibraryRulesConnector;
 import dk.dbc.vipcore.marshallers.LibraryRule;
 import dk.dbc.vipcore.marshallers.LibraryRules;
 import dk.dbc.vipcore.marshallers.LibraryRulesRequest;
+import io.opentelemetry.api.trace.Span;
+import io.opentelemetry.api.trace.SpanContext;
+import io.opentelemetry.api.trace.TraceFlags;
+import io.opentelemetry.api.trace.TraceState;
+import io.opentelemetry.context.Scope;
 import jakarta.ws.rs.client.Client;
 import org.glassfish.jersey.client.ClientConfig;
 import org.glassfish.jersey.jackson.JacksonFeature;
@@ -25,6 +30,11 @@ import java.util.HashSet;
 import java.util.List;
 
 import static com.github.tomakehurst.wiremock.client.WireMock.configureFor;
+import static com.github.tomakehurst.wiremock.client.WireMock.equalTo;
+import static com.github.tomakehurst.wiremock.client.WireMock.matchingJsonPath;
+import static com.github.tomakehurst.wiremock.client.WireMock.postRequestedFor;
+import static com.github.tomakehurst.wiremock.client.WireMock.urlEqualTo;
+import static com.github.tomakehurst.wiremock.client.WireMock.verify;
 import static com.github.tomakehurst.wiremock.core.WireMockConfiguration.options;
 import static org.hamcrest.CoreMatchers.is;
 import static org.hamcrest.MatcherAssert.assertThat;
@@ -66,6 +76,15 @@ class VipCoreLibraryRulesConnectorTest {
         assertThat(connector.hasFeature("710100", VipCoreLibraryRulesConnector.Rule.AUTH_VERA), is(false));
     }
 
+    @Test
+    void intAgencyIdIsZeroPaddedTest() throws VipCoreException {
+        assertThat(connector.hasFeature(10100, VipCoreLibraryRulesConnector.Rule.AUTH_ROOT), is(true));
+        assertThat(connector.getAllowedLibraryRules(10100), is(connector.getAllowedLibraryRules("010100")));
+
+        verify(postRequestedFor(urlEqualTo("/1.0/api/libraryrules"))
+                .withRequestBody(matchingJsonPath("$.agencyId", equalTo("010100"))));
+    }
+
     @Test
     void getAllowedLibraryRulesTest() throws VipCoreException {
         assertThat(connector.getAllowedLibraryRules("010100"), is(new HashSet<>(
@@ -292,6 +311,21 @@ class VipCoreLibraryRulesConnectorTest {
         Assertions.assertThrows(ErrorInRequestException.class, () -> connector.getLibraryRulesByAgencyId("sdfsdf"), "error_in_request");
     }
 
+    @Test
+    void trackingIdFromActiveTraceTest() throws VipCoreException {
+        final String traceId = "4bf92f3577b34da6a3ce929d0e0e4736";
+        final Span parent = Span.wrap(SpanContext.create(traceId, "00f067aa0ba902b7",
+                TraceFlags.getSampled(), TraceState.getDefault()));
+
+        wireMockServer.resetRequests();
+        try (Scope ignored = parent.makeCurrent()) {
+            connector.getLibraryRulesByAgencyId("710100");
+        }
+
+        verify(postRequestedFor(urlEqualTo("/1.0/api/libraryrules"))
+                .withRequestBody(matchingJsonPath("$.trackingId", equalTo(traceId))));
+    }
+
     private LibraryRule createLibraryRule(String name, Boolean booleanValue, String stringValue) {
         LibraryRule libraryRule = new LibraryRule();
         libraryRule.setName(name);
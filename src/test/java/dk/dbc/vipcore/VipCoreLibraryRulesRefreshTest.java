@@ -0,0 +1,90 @@
+package dk.dbc.vipcore;
+
+import com.github.tomakehurst.wiremock.WireMockServer;
+import dk.dbc.commons.useragent.UserAgent;
+import dk.dbc.httpclient.HttpClient;
+import dk.dbc.vipcore.exception.VipCoreException;
+import dk.dbc.vipcore.libraryrules.VipCoreLibraryRulesConnector;
+import dk.dbc.vipcore.marshallers.LibraryRules;
+import org.glassfish.jersey.client.ClientConfig;
+import org.glassfish.jersey.jackson.JacksonFeature;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.aResponse;
+import static com.github.tomakehurst.wiremock.client.WireMock.equalToJson;
+import static com.github.tomakehurst.wiremock.client.WireMock.post;
+import static com.github.tomakehurst.wiremock.client.WireMock.urlEqualTo;
+import static com.github.tomakehurst.wiremock.core.WireMockConfiguration.options;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+class VipCoreLibraryRulesRefreshTest {
+    private static final String ENRICHMENT_RULES =
+            "{\"name\":\"create_enrichments\",\"bool\":true},{\"name\":\"use_enrichments\",\"bool\":true}";
+    private static final String REORDERED_ENRICHMENT_RULES =
+            "{\"name\":\"use_enrichments\",\"bool\":true},{\"name\":\"create_enrichments\",\"bool\":true}";
+
+    private static WireMockServer wireMockServer;
+    private static String wireMockHost;
+
+    @BeforeAll
+    static void startWireMockServer() {
+        wireMockServer = new WireMockServer(options().dynamicPort()
+                .dynamicHttpsPort());
+        wireMockServer.start();
+        wireMockHost = "http://localhost:" + wireMockServer.port();
+    }
+
+    @AfterAll
+    static void stopWireMockServer() {
+        wireMockServer.stop();
+    }
+
+    @Test
+    void refreshLibraryRulesTest() throws IOException, VipCoreException {
+        final String body = Files.readString(Paths.get("src/test/resources/__files/body-1.0-api-libraryrules-NYAR7.json"),
+                StandardCharsets.UTF_8).replace("710100", "234567");
+        stubLibraryRules(body);
+        final VipCoreLibraryRulesConnector connector = new VipCoreLibraryRulesConnector(
+                HttpClient.newClient(new ClientConfig().register(new JacksonFeature())),
+                new UserAgent("VipCoreLibraryRulesRefreshTest"), wireMockHost, 1, VipCoreConnector.TimingLogLevel.INFO);
+        final List<String> changes = new ArrayList<>();
+        connector.addRulesChangeListener((agencyId, before, after) ->
+                changes.add(agencyId + " " + before.getLibraryRule().size() + " " + after.getLibraryRule().size()));
+
+        // Refreshing an agency not yet cached caches it without notifying
+        assertThat(connector.refreshLibraryRules(List.of("234567")), is(0));
+        final LibraryRules cached = connector.getLibraryRulesByAgencyId("234567");
+        assertThat(connector.hasFeature(234567, VipCoreLibraryRulesConnector.Rule.AUTH_ROOT), is(false));
+
+        // The order of the rules does not matter, the cached instance is kept
+        stubLibraryRules(body.replace(ENRICHMENT_RULES, REORDERED_ENRICHMENT_RULES));
+        assertThat(connector.refreshCachedLibraryRules(), is(0));
+        assertThat(connector.getLibraryRulesByAgencyId("234567"), sameInstance(cached));
+        assertThat(changes.size(), is(0));
+
+        stubLibraryRules(body.replace("{\"name\":\"auth_root\",\"bool\":false}", "{\"name\":\"auth_root\",\"bool\":true}"));
+        assertThat(connector.refreshCachedLibraryRules(), is(1));
+        assertThat(connector.hasFeature(234567, VipCoreLibraryRulesConnector.Rule.AUTH_ROOT), is(true));
+        final int size = cached.getLibraryRule().size();
+        assertThat(changes, is(List.of("234567 " + size + " " + size)));
+    }
+
+    private static void stubLibraryRules(String body) {
+        wireMockServer.stubFor(post(urlEqualTo("/1.0/api/libraryrules"))
+                .withRequestBody(equalToJson("{\"agencyId\":\"234567\"}", true, true))
+                .willReturn(aResponse()
+                        .withHeader("Content-Type", "application/json")
+                        .withBody(body)));
+    }
+}
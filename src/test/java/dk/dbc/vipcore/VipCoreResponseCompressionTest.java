@@ -0,0 +1,126 @@
+package dk.dbc.vipcore;
+
+import com.github.tomakehurst.wiremock.WireMockServer;
+import dk.dbc.commons.useragent.UserAgent;
+import dk.dbc.httpclient.HttpClient;
+import dk.dbc.vipcore.compression.ResponseCompressionFeature;
+import dk.dbc.vipcore.compression.ResponseCompressionMetrics;
+import dk.dbc.vipcore.exception.VipCoreException;
+import dk.dbc.vipcore.libraryrules.VipCoreLibraryRulesConnector;
+import dk.dbc.vipcore.marshallers.Information;
+import dk.dbc.vipcore.marshallers.LibraryRules;
+import dk.dbc.vipcore.service.VipCoreServiceConnector;
+import jakarta.ws.rs.client.Client;
+import org.glassfish.jersey.client.ClientConfig;
+import org.glassfish.jersey.jackson.JacksonFeature;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.aResponse;
+import static com.github.tomakehurst.wiremock.client.WireMock.containing;
+import static com.github.tomakehurst.wiremock.client.WireMock.equalToJson;
+import static com.github.tomakehurst.wiremock.client.WireMock.post;
+import static com.github.tomakehurst.wiremock.client.WireMock.urlEqualTo;
+import static com.github.tomakehurst.wiremock.core.WireMockConfiguration.options;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.lessThan;
+
+class VipCoreResponseCompressionTest {
+    private static WireMockServer wireMockServer;
+    private static String wireMockHost;
+
+    @BeforeAll
+    static void startWireMockServer() {
+        wireMockServer = new WireMockServer(options().dynamicPort()
+                .dynamicHttpsPort());
+        wireMockServer.start();
+        wireMockHost = "http://localhost:" + wireMockServer.port();
+    }
+
+    @AfterAll
+    static void stopWireMockServer() {
+        wireMockServer.stop();
+    }
+
+    @Test
+    void gzipCompressedLibraryRulesTest() throws IOException, VipCoreException {
+        final String body = readBody("body-1.0-api-libraryrules-NYAR7.json").replace("710100", "123456");
+        final byte[] compressed = gzip(body.getBytes(StandardCharsets.UTF_8));
+        wireMockServer.stubFor(post(urlEqualTo("/1.0/api/libraryrules"))
+                .withHeader("Accept-Encoding", containing("gzip"))
+                .withRequestBody(equalToJson("{\"agencyId\":\"123456\"}", true, true))
+                .willReturn(aResponse()
+                        .withHeader("Content-Type", "application/json")
+                        .withHeader("Content-Encoding", "gzip")
+                        .withBody(compressed)));
+        final ResponseCompressionFeature compression = new ResponseCompressionFeature();
+        final VipCoreLibraryRulesConnector connector = new VipCoreLibraryRulesConnector(newClient(compression),
+                new UserAgent("VipCoreResponseCompressionTest"), wireMockHost, 1, VipCoreConnector.TimingLogLevel.INFO);
+
+        final LibraryRules libraryRules = connector.getLibraryRulesByAgencyId("123456");
+
+        assertThat(libraryRules.getAgencyType(), is("Folkebibliotek"));
+        final ResponseCompressionMetrics metrics = compression.getMetrics();
+        assertThat(metrics.getResponses(), is(1L));
+        assertThat(metrics.getCompressedResponses(), is(1L));
+        assertThat(metrics.getWireBytes(), lessThan(metrics.getDecodedBytes()));
+        assertThat(metrics.getCompressionRatio(), greaterThan(2.0));
+    }
+
+    @Test
+    void deflateCompressedInformationTest() throws IOException, VipCoreException {
+        final String body = readBody("body-1.0-api-service-6vNkY.json").replace("010100", "654321");
+        wireMockServer.stubFor(post(urlEqualTo("/1.0/api/service"))
+                .withHeader("Accept-Encoding", containing("deflate"))
+                .withRequestBody(equalToJson("{\"agencyId\":\"654321\",\"service\":\"information\"}", true, true))
+                .willReturn(aResponse()
+                        .withHeader("Content-Type", "application/json")
+                        .withHeader("Content-Encoding", "deflate")
+                        .withBody(deflate(body.getBytes(StandardCharsets.UTF_8)))));
+        final ResponseCompressionFeature compression = new ResponseCompressionFeature();
+        final VipCoreServiceConnector connector = new VipCoreServiceConnector(newClient(compression),
+                new UserAgent("VipCoreResponseCompressionTest"), wireMockHost, 1, VipCoreConnector.TimingLogLevel.INFO);
+
+        final Information information = connector.getInformation("654321");
+
+        assertThat(information.getCity(), is("Ballerup"));
+        assertThat(compression.getMetrics().getCompressedResponses(), is(1L));
+    }
+
+    private static Client newClient(ResponseCompressionFeature compression) {
+        return HttpClient.newClient(new ClientConfig()
+                .register(new JacksonFeature())
+                .register(compression));
+    }
+
+    private static String readBody(String fileName) throws IOException {
+        return Files.readString(Paths.get("src/test/resources/__files", fileName), StandardCharsets.UTF_8);
+    }
+
+    private static byte[] gzip(byte[] bytes) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(bytes);
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] deflate(byte[] bytes) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (DeflaterOutputStream deflate = new DeflaterOutputStream(out)) {
+            deflate.write(bytes);
+        }
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,106 @@
+package dk.dbc.vipcore;
+
+import com.github.tomakehurst.wiremock.WireMockServer;
+import com.github.tomakehurst.wiremock.matching.RequestPatternBuilder;
+import dk.dbc.commons.useragent.UserAgent;
+import dk.dbc.httpclient.HttpClient;
+import dk.dbc.vipcore.libraryrules.VipCoreLibraryRulesConnector;
+import dk.dbc.vipcore.marshallers.LibraryRules;
+import dk.dbc.vipcore.service.VipCoreServiceConnector;
+import jakarta.ws.rs.client.Client;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingStream;
+import org.glassfish.jersey.client.ClientConfig;
+import org.glassfish.jersey.jackson.JacksonFeature;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.configureFor;
+import static com.github.tomakehurst.wiremock.client.WireMock.verify;
+import static com.github.tomakehurst.wiremock.core.WireMockConfiguration.options;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+class VipCoreVirtualThreadTest {
+    private static final String PINNED_EVENT = "jdk.VirtualThreadPinned";
+
+    private static WireMockServer wireMockServer;
+    private static String wireMockHost;
+
+    final static Client CLIENT = HttpClient.newClient(new ClientConfig()
+            .register(new JacksonFeature()));
+
+    @BeforeAll
+    static void startWireMockServer() {
+        wireMockServer = new WireMockServer(options().dynamicPort()
+                .dynamicHttpsPort());
+        wireMockServer.start();
+        wireMockHost = "http://localhost:" + wireMockServer.port();
+        configureFor("localhost", wireMockServer.port());
+    }
+
+    @AfterAll
+    static void stopWireMockServer() {
+        wireMockServer.stop();
+    }
+
+    @Test
+    void concurrentLookupsDoNotPinCarrierThreads() throws Exception {
+        final UserAgent userAgent = new UserAgent("VipCoreVirtualThreadTest");
+        final ExecutorService virtualThreads = Executors.newVirtualThreadPerTaskExecutor();
+        final VipCoreLibraryRulesConnector connector = new VipCoreLibraryRulesConnector(CLIENT, userAgent, wireMockHost, 0, VipCoreConnector.TimingLogLevel.DEBUG, virtualThreads);
+        final List<RecordedEvent> pinnedEvents = new CopyOnWriteArrayList<>();
+
+        try (RecordingStream recordingStream = new RecordingStream()) {
+            recordingStream.enable(PINNED_EVENT).withThreshold(Duration.ZERO).withStackTrace();
+            recordingStream.onEvent(PINNED_EVENT, pinnedEvents::add);
+            recordingStream.startAsync();
+
+            final List<Future<Boolean>> lookups = new ArrayList<>();
+            for (int i = 0; i < 500; i++) {
+                final String agencyId = i % 2 == 0 ? "710100" : "010100";
+                lookups.add(virtualThreads.submit(() -> connector.hasFeature(agencyId, VipCoreLibraryRulesConnector.Rule.AUTH_ROOT)));
+            }
+            for (Future<Boolean> lookup : lookups) {
+                lookup.get();
+            }
+            final Map<String, LibraryRules> bulk = connector.getLibraryRulesByAgencyIds(List.of("710100", "010100"));
+            assertThat(bulk.size(), is(2));
+
+            recordingStream.stop();
+        } finally {
+            virtualThreads.shutdown();
+        }
+
+        assertThat("Pinned virtual threads: " + pinnedEvents, pinnedEvents.isEmpty(), is(true));
+    }
+
+    @Test
+    void concurrentMissesAreLoadedOnce() throws Exception {
+        final UserAgent userAgent = new UserAgent("VipCoreVirtualThreadTest");
+        final VipCoreServiceConnector connector = new VipCoreServiceConnector(CLIENT, userAgent, wireMockHost, 1, VipCoreConnector.TimingLogLevel.DEBUG);
+        wireMockServer.resetRequests();
+
+        try (ExecutorService virtualThreads = Executors.newVirtualThreadPerTaskExecutor()) {
+            final List<Future<?>> lookups = new ArrayList<>();
+            for (int i = 0; i < 200; i++) {
+                lookups.add(virtualThreads.submit(() -> connector.getInformation("010100")));
+            }
+            for (Future<?> lookup : lookups) {
+                lookup.get();
+            }
+        }
+
+        verify(1, new RequestPatternBuilder().withUrl("/1.0/api/service"));
+    }
+}
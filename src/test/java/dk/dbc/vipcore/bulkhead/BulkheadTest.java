@@ -0,0 +1,215 @@
+package dk.dbc.vipcore.bulkhead;
+
+import com.github.tomakehurst.wiremock.WireMockServer;
+import dk.dbc.commons.useragent.UserAgent;
+import dk.dbc.httpclient.HttpClient;
+import dk.dbc.vipcore.VipCoreConnector;
+import dk.dbc.vipcore.deadline.Deadline;
+import dk.dbc.vipcore.exception.BulkheadFullException;
+import dk.dbc.vipcore.exception.DeadlineExceededException;
+import dk.dbc.vipcore.exception.VipCoreException;
+import dk.dbc.vipcore.libraryrules.VipCoreLibraryRulesConnector;
+import io.opentelemetry.context.Scope;
+import org.glassfish.jersey.client.ClientConfig;
+import org.glassfish.jersey.jackson.JacksonFeature;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.aResponse;
+import static com.github.tomakehurst.wiremock.client.WireMock.post;
+import static com.github.tomakehurst.wiremock.client.WireMock.urlEqualTo;
+import static com.github.tomakehurst.wiremock.core.WireMockConfiguration.options;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class BulkheadTest {
+    private static final String LIBRARY_RULES_PATH = "1.0/api/libraryrules";
+
+    private static WireMockServer wireMockServer;
+
+    @BeforeAll
+    static void startWireMockServer() throws IOException {
+        wireMockServer = new WireMockServer(options().dynamicPort()
+                .dynamicHttpsPort());
+        wireMockServer.start();
+        wireMockServer.stubFor(post(urlEqualTo("/" + LIBRARY_RULES_PATH))
+                .willReturn(aResponse()
+                        .withHeader("Content-Type", "application/json")
+                        .withFixedDelay(500)
+                        .withBody(Files.readString(Paths.get("src/test/resources/__files",
+                                "body-1.0-api-libraryrules-NYAR7.json"), StandardCharsets.UTF_8))));
+    }
+
+    @AfterAll
+    static void stopWireMockServer() {
+        wireMockServer.stop();
+    }
+
+    @Test
+    void priorityFollowsContextTest() {
+        assertThat(Priority.current(), is(Priority.INTERACTIVE));
+        try (Scope ignored = Priority.BATCH.makeCurrent()) {
+            assertThat(Priority.current(), is(Priority.BATCH));
+        }
+        assertThat(Priority.current(), is(Priority.INTERACTIVE));
+    }
+
+    @Test
+    void tokenBucketTest() {
+        final AtomicLong clock = new AtomicLong();
+        final TokenBucket tokenBucket = new TokenBucket(10, 2, clock::get);
+        final long maxWait = TimeUnit.SECONDS.toNanos(1);
+
+        // The burst passes at once, after which tokens are reserved at the rate
+        assertThat(tokenBucket.reserve(0), is(0L));
+        assertThat(tokenBucket.reserve(0), is(0L));
+        assertThat(tokenBucket.reserve(0), is(-1L));
+        assertThat(tokenBucket.reserve(maxWait), is(TimeUnit.MILLISECONDS.toNanos(100)));
+        assertThat(tokenBucket.reserve(maxWait), is(TimeUnit.MILLISECONDS.toNanos(200)));
+
+        clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(300));
+        assertThat(tokenBucket.reserve(0), is(0L));
+        assertThat(tokenBucket.reserve(0), is(-1L));
+    }
+
+    @Test
+    void concurrencyLimitTest() throws VipCoreException {
+        final Bulkhead bulkhead = new Bulkhead("concurrencyLimitTest", BulkheadPolicy.of(2).withMaxWait(Duration.ZERO));
+        final Bulkhead.Permit first = bulkhead.acquire();
+        try (Bulkhead.Permit ignored = bulkhead.acquire()) {
+            assertThat(bulkhead.getAvailable(), is(0));
+            assertThrows(BulkheadFullException.class, bulkhead::acquire);
+            assertThat(bulkhead.getRejections(), is(1L));
+        }
+        first.close();
+        assertThat(bulkhead.getAvailable(), is(2));
+    }
+
+    @Test
+    void tokenRefundedOnRejectionTest() throws VipCoreException {
+        final Bulkhead bulkhead = new Bulkhead("tokenRefundedOnRejectionTest",
+                BulkheadPolicy.of(1).withRate(1).withBurst(2).withMaxWait(Duration.ZERO));
+        final Bulkhead.Permit first = bulkhead.acquire();
+        // Reserves the second token, then finds no concurrency slot
+        assertThrows(BulkheadFullException.class, bulkhead::acquire);
+        first.close();
+        // The second token was given back, so no refill is needed
+        bulkhead.acquire().close();
+        assertThat(bulkhead.getRejections(), is(1L));
+    }
+
+    @Test
+    void waitEndedByDeadlineIsNoRejectionTest() throws VipCoreException {
+        final Bulkhead bulkhead = new Bulkhead("waitEndedByDeadlineIsNoRejectionTest",
+                BulkheadPolicy.of(1).withRate(1).withBurst(1).withMaxWait(Duration.ofSeconds(30)));
+        try (Bulkhead.Permit ignored = bulkhead.acquire()) {
+            try (Scope ignoredDeadline = Deadline.after(Duration.ofMillis(100)).makeCurrent()) {
+                // The next token is a second away, beyond the deadline
+                assertThrows(DeadlineExceededException.class, bulkhead::acquire);
+            }
+        }
+        assertThat(bulkhead.getRejections(), is(0L));
+
+        final Bulkhead concurrent = new Bulkhead("waitEndedByDeadlineIsNoRejectionTest",
+                BulkheadPolicy.of(1).withMaxWait(Duration.ofSeconds(30)));
+        try (Bulkhead.Permit ignored = concurrent.acquire()) {
+            try (Scope ignoredDeadline = Deadline.after(Duration.ofMillis(100)).makeCurrent()) {
+                assertThrows(DeadlineExceededException.class, concurrent::acquire);
+            }
+        }
+        assertThat(concurrent.getRejections(), is(0L));
+
+        // A deadline beyond the maximum wait leaves the rejection to the bulkhead
+        final Bulkhead bounded = new Bulkhead("waitEndedByDeadlineIsNoRejectionTest",
+                BulkheadPolicy.of(1).withMaxWait(Duration.ofMillis(50)));
+        try (Bulkhead.Permit ignored = bounded.acquire()) {
+            try (Scope ignoredDeadline = Deadline.after(Duration.ofMinutes(1)).makeCurrent()) {
+                assertThrows(BulkheadFullException.class, bounded::acquire);
+            }
+        }
+        assertThat(bounded.getRejections(), is(1L));
+    }
+
+    @Test
+    void policyChangeKeepsPermitsInFlightTest() throws VipCoreException {
+        final Bulkheads bulkheads = new Bulkheads();
+        bulkheads.setPolicy(Priority.BATCH, BulkheadPolicy.of(2).withMaxWait(Duration.ZERO));
+        final Bulkhead bulkhead = bulkheads.get("path", Priority.BATCH);
+        final Bulkhead.Permit first = bulkhead.acquire();
+        final Bulkhead.Permit second = bulkhead.acquire();
+
+        bulkheads.setPolicy(Priority.BATCH, BulkheadPolicy.of(1).withMaxWait(Duration.ZERO));
+        assertThat(bulkheads.get("path", Priority.BATCH), is(sameInstance(bulkhead)));
+        assertThat(bulkhead.getPolicy().getMaxConcurrent(), is(1));
+        first.close();
+        // The request still in flight holds the only slot of the new limit
+        assertThat(bulkhead.getAvailable(), is(0));
+        assertThrows(BulkheadFullException.class, bulkhead::acquire);
+        second.close();
+        assertThat(bulkhead.getAvailable(), is(1));
+
+        bulkheads.setPolicy(Priority.BATCH, BulkheadPolicy.of(3).withMaxWait(Duration.ZERO));
+        assertThat(bulkhead.getAvailable(), is(3));
+    }
+
+    @Test
+    void policyPerPathAndPriorityTest() {
+        final Bulkheads bulkheads = new Bulkheads();
+        bulkheads.setPolicy(Priority.BATCH, BulkheadPolicy.of(4));
+        bulkheads.setPolicy("path", Priority.BATCH, BulkheadPolicy.of(1));
+
+        assertThat(bulkheads.get("path", Priority.INTERACTIVE), is(nullValue()));
+        assertThat(bulkheads.get("path", Priority.BATCH).getPolicy().getMaxConcurrent(), is(1));
+        assertThat(bulkheads.get("other", Priority.BATCH).getPolicy().getMaxConcurrent(), is(4));
+
+        bulkheads.setPolicy("path", Priority.BATCH, null);
+        assertThat(bulkheads.get("path", Priority.BATCH).getPolicy().getMaxConcurrent(), is(4));
+        bulkheads.setPolicy(Priority.BATCH, null);
+        assertThat(bulkheads.get("other", Priority.BATCH), is(nullValue()));
+    }
+
+    @Test
+    void batchCallsDoNotDelayInteractiveCallsTest() throws Exception {
+        final VipCoreLibraryRulesConnector connector = new VipCoreLibraryRulesConnector(
+                HttpClient.newClient(new ClientConfig().register(new JacksonFeature())),
+                new UserAgent("BulkheadTest"), "http://localhost:" + wireMockServer.port(), 1,
+                VipCoreConnector.TimingLogLevel.INFO);
+        connector.setBulkheadPolicy(Priority.BATCH, BulkheadPolicy.of(1).withMaxWait(Duration.ZERO));
+        try {
+            final CompletableFuture<Object> batchCall = CompletableFuture.supplyAsync(() -> {
+                try (Scope ignored = Priority.BATCH.makeCurrent()) {
+                    return connector.getLibraryRulesByAgencyId("456781");
+                } catch (VipCoreException e) {
+                    throw new IllegalStateException(e);
+                }
+            });
+            final Bulkhead batch = connector.getBulkheads().get(LIBRARY_RULES_PATH, Priority.BATCH);
+            while (batch.getAvailable() > 0 && !batchCall.isDone()) {
+                Thread.sleep(10);
+            }
+
+            try (Scope ignored = Priority.BATCH.makeCurrent()) {
+                assertThrows(BulkheadFullException.class, () -> connector.getLibraryRulesByAgencyId("456782"));
+            }
+            assertThat(connector.getLibraryRulesByAgencyId("456783"), is(notNullValue()));
+            assertThat(batchCall.get(5, TimeUnit.SECONDS), is(notNullValue()));
+            assertThat(batch.getRejections(), is(1L));
+        } finally {
+            connector.close();
+        }
+    }
+}
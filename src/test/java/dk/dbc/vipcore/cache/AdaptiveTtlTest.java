@@ -0,0 +1,132 @@
+package dk.dbc.vipcore.cache;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class AdaptiveTtlTest {
+    private static final CachePolicy ADAPTIVE = CachePolicy.of(Duration.ofHours(1))
+            .withAdaptiveTtl(Duration.ofMinutes(10), Duration.ofHours(8));
+    private static final CacheValueCodec<String> CODEC = new CacheValueCodec<>() {
+        @Override
+        public byte[] encode(String value) {
+            return value.getBytes(StandardCharsets.UTF_8);
+        }
+
+        @Override
+        public String decode(byte[] bytes) {
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+    };
+
+    @Test
+    void lifetimeAdaptsWithinBoundsTest() {
+        final long hour = Duration.ofHours(1).toMillis();
+        assertThat(ADAPTIVE.lifetimeMillis(0, false, ServerCacheHint.NONE), is(hour));
+        assertThat(ADAPTIVE.lifetimeMillis(hour, true, ServerCacheHint.NONE), is(2 * hour));
+        assertThat(ADAPTIVE.lifetimeMillis(hour, false, ServerCacheHint.NONE), is(hour / 2));
+        assertThat(ADAPTIVE.lifetimeMillis(6 * hour, true, ServerCacheHint.NONE), is(8 * hour));
+        assertThat(ADAPTIVE.lifetimeMillis(Duration.ofMinutes(15).toMillis(), false, ServerCacheHint.NONE),
+                is(Duration.ofMinutes(10).toMillis()));
+
+        final CachePolicy fixed = CachePolicy.of(Duration.ofHours(1));
+        assertThat(fixed.isAdaptive(), is(false));
+        assertThat(fixed.lifetimeMillis(hour, true, ServerCacheHint.NONE), is(hour));
+    }
+
+    @Test
+    void adaptiveBoundsAreValidatedTest() {
+        final CachePolicy fixed = CachePolicy.of(Duration.ofHours(1));
+        assertThrows(IllegalArgumentException.class,
+                () -> fixed.withAdaptiveTtl(Duration.ofHours(2), Duration.ofHours(1)));
+        assertThrows(IllegalArgumentException.class,
+                () -> fixed.withAdaptiveTtl(Duration.ofHours(2), Duration.ofHours(8)));
+        assertThrows(IllegalArgumentException.class,
+                () -> fixed.withAdaptiveTtl(Duration.ofMinutes(10), Duration.ofMinutes(30)));
+        assertThrows(IllegalArgumentException.class, () -> ADAPTIVE.withTtl(Duration.ofHours(9)));
+        assertThat(CachePolicy.of(Duration.ZERO).withAdaptiveTtl(Duration.ofMinutes(10), Duration.ofHours(8))
+                .isAdaptive(), is(true));
+        assertThat(fixed.withAdaptiveTtl(Duration.ofHours(1), Duration.ofHours(8)).isAdaptive(), is(true));
+    }
+
+    @Test
+    void serverHintsIgnoredByDefaultTest() {
+        final long hour = Duration.ofHours(1).toMillis();
+        assertThat(ADAPTIVE.lifetimeMillis(hour, true, 60000), is(2 * hour));
+        assertThat(ADAPTIVE.lifetimeMillis(hour, false, Duration.ofHours(3).toMillis()), is(hour / 2));
+        assertThat(CachePolicy.of(Duration.ofHours(1)).lifetimeMillis(0, false, 60000), is(hour));
+    }
+
+    @Test
+    void serverHintsTakePrecedenceTest() {
+        final long hour = Duration.ofHours(1).toMillis();
+        final CachePolicy hinted = ADAPTIVE.withServerHints(true);
+        assertThat(hinted.lifetimeMillis(hour, true, Duration.ofHours(3).toMillis()), is(3 * hour));
+        assertThat(hinted.lifetimeMillis(hour, true, 60000), is(Duration.ofMinutes(10).toMillis()));
+        assertThat(hinted.lifetimeMillis(hour, true, ServerCacheHint.NONE), is(2 * hour));
+
+        final CachePolicy fixed = CachePolicy.of(Duration.ofHours(1)).withServerHints(true);
+        assertThat(fixed.lifetimeMillis(0, false, 60000), is(60000L));
+        assertThat(fixed.lifetimeMillis(0, false, 0), is(0L));
+        assertThat(fixed.lifetimeMillis(0, false, 3 * hour), is(hour));
+    }
+
+    @Test
+    void parseCacheHeadersTest() {
+        assertThat(ServerCacheHint.maxAgeMillis(null, null, null), is(ServerCacheHint.NONE));
+        assertThat(ServerCacheHint.maxAgeMillis("public, max-age=600", null, null), is(600000L));
+        assertThat(ServerCacheHint.maxAgeMillis("no-cache", "Tue, 20 Oct 2026 08:00:00 GMT", null), is(0L));
+        assertThat(ServerCacheHint.maxAgeMillis("No-Store", null, null), is(0L));
+        assertThat(ServerCacheHint.maxAgeMillis("public", null, null), is(ServerCacheHint.NONE));
+        assertThat(ServerCacheHint.maxAgeMillis(null, "Tue, 20 Oct 2026 08:00:00 GMT",
+                "Tue, 20 Oct 2026 07:30:00 GMT"), is(Duration.ofMinutes(30).toMillis()));
+        assertThat(ServerCacheHint.maxAgeMillis(null, "0", null), is(0L));
+    }
+
+    @Test
+    void takeClearsHintTest() {
+        ServerCacheHint.record(60000);
+        assertThat(ServerCacheHint.take(), is(60000L));
+        assertThat(ServerCacheHint.take(), is(ServerCacheHint.NONE));
+    }
+
+    @Test
+    void reloadsAdaptLifetimeTest() {
+        final VipCoreCache<String, String> cache = new VipCoreCache<>("reloadsAdaptLifetimeTest", ADAPTIVE, CODEC);
+        cache.put("rules", "value1");
+        assertThat(lifetimeOf(cache, "rules"), is(Duration.ofHours(1).toMillis()));
+
+        cache.put("rules", "value1");
+        assertThat(lifetimeOf(cache, "rules"), is(Duration.ofHours(2).toMillis()));
+        assertThat(cache.getUnchangedReloads(), is(1L));
+
+        assertThat(cache.touch("rules"), is(true));
+        assertThat(lifetimeOf(cache, "rules"), is(Duration.ofHours(4).toMillis()));
+
+        cache.put("rules", "value2");
+        assertThat(lifetimeOf(cache, "rules"), is(Duration.ofHours(2).toMillis()));
+        assertThat(cache.getChangedReloads(), is(1L));
+    }
+
+    @Test
+    void loaderHintSetsLifetimeTest() throws Exception {
+        final VipCoreCache<String, String> cache = new VipCoreCache<>("loaderHintSetsLifetimeTest",
+                CachePolicy.of(Duration.ofHours(1)).withServerHints(true), CODEC);
+        cache.get("rules", () -> {
+            ServerCacheHint.record(Duration.ofMinutes(5).toMillis());
+            return "value";
+        });
+        assertThat(lifetimeOf(cache, "rules"), is(Duration.ofMinutes(5).toMillis()));
+        assertThat(ServerCacheHint.take(), is(ServerCacheHint.NONE));
+    }
+
+    private static long lifetimeOf(VipCoreCache<String, String> cache, String key) {
+        final CacheEntry<String> entry = cache.getEntry(key);
+        return entry.getExpiresAt() - entry.getCreatedAt();
+    }
+}
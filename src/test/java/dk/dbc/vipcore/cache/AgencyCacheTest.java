@@ -0,0 +1,78 @@
+package dk.dbc.vipcore.cache;
+
+import dk.dbc.vipcore.exception.VipCoreException;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+class AgencyCacheTest {
+
+    @Test
+    void agencyIdsTest() {
+        assertThat(AgencyIds.toInt("010100"), is(10100));
+        assertThat(AgencyIds.toInt("10100"), is(AgencyIds.NOT_NUMERIC));
+        assertThat(AgencyIds.toInt("01010a"), is(AgencyIds.NOT_NUMERIC));
+        assertThat(AgencyIds.toInt(null), is(AgencyIds.NOT_NUMERIC));
+        assertThat(AgencyIds.toString(10100), is("010100"));
+        assertThat(AgencyIds.toString(1234567), is("1234567"));
+    }
+
+    @Test
+    void intAndStringKeysShareEntriesTest() throws VipCoreException {
+        final AgencyCache<String> cache = new AgencyCache<>("intAndStringKeysShareEntriesTest", Duration.ofHours(1));
+        cache.put("010100", "DBC");
+        cache.put("DK-710100", "odd");
+
+        assertThat(cache.getIfPresent(10100), is("DBC"));
+        assertThat(cache.get(10100, () -> "loaded"), is("DBC"));
+        assertThat(cache.getIfPresent("DK-710100"), is("odd"));
+        assertThat(cache.get(710100, () -> "loaded"), is("loaded"));
+        assertThat(cache.getIfPresent("710100"), is("loaded"));
+        assertThat(cache.size(), is(3));
+        assertThat(cache.entries().keySet(), is(Map.of("010100", "", "710100", "", "DK-710100", "").keySet()));
+
+        cache.invalidate("010100");
+        assertThat(cache.getIfPresent(10100), is(nullValue()));
+        cache.invalidateAll();
+        assertThat(cache.size(), is(0));
+    }
+
+    @Test
+    void intEntryMapTest() {
+        final IntEntryMap<Integer> map = new IntEntryMap<>();
+        final Map<Integer, Integer> expected = new HashMap<>();
+        final Random random = new Random(42);
+        for (int i = 0; i < 100000; i++) {
+            final int key = random.nextInt(2000);
+            if (random.nextBoolean()) {
+                map.put(key, i);
+                expected.put(key, i);
+            } else {
+                assertThat(map.remove(key, null), is(expected.remove(key) != null));
+            }
+            assertThat(map.get(key), is(expected.get(key)));
+        }
+        assertThat(map.size(), is(expected.size()));
+        expected.forEach((key, value) -> assertThat(map.get(key), is(value)));
+    }
+
+    @Test
+    void negativeKeysAreNeverFoundTest() {
+        final AgencyCache<String> cache = new AgencyCache<>("negativeKeysAreNeverFoundTest", Duration.ofHours(1));
+        cache.put("010100", "DBC");
+
+        // -1 is the marker of empty slots
+        cache.invalidate(-1);
+        cache.invalidate(-2);
+        assertThat(cache.size(), is(1));
+        assertThat(cache.getIfPresent(-1), is(nullValue()));
+        assertThat(cache.getIfPresent(10100), is("DBC"));
+    }
+}
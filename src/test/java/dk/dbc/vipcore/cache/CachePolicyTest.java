@@ -0,0 +1,68 @@
+package dk.dbc.vipcore.cache;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class CachePolicyTest {
+
+    @Test
+    void jitterShortensLifetimeTest() {
+        final CachePolicy policy = CachePolicy.of(Duration.ofMinutes(10)).withJitter(0.2);
+        long shortest = Long.MAX_VALUE;
+        long longest = 0;
+        for (int i = 0; i < 1000; i++) {
+            final long lifetime = policy.lifetimeMillis();
+            shortest = Math.min(shortest, lifetime);
+            longest = Math.max(longest, lifetime);
+        }
+        assertThat(shortest, greaterThanOrEqualTo(Duration.ofMinutes(8).toMillis()));
+        assertThat(longest, lessThanOrEqualTo(Duration.ofMinutes(10).toMillis()));
+        // A thousand draws all within the same second of a two minute range would be no jitter at all
+        assertThat(longest - shortest > 1000, is(true));
+        assertThat(CachePolicy.of(Duration.ofMinutes(10)).lifetimeMillis(), is(Duration.ofMinutes(10).toMillis()));
+    }
+
+    @Test
+    void invalidPolicyTest() {
+        assertThrows(IllegalArgumentException.class, () -> CachePolicy.of(Duration.ofMinutes(-1)));
+        assertThrows(IllegalArgumentException.class, () -> CachePolicy.of(Duration.ofMinutes(1)).withJitter(1.5));
+        assertThrows(IllegalArgumentException.class, () -> CachePolicy.of(Duration.ofMinutes(1)).withMaxSize(-1));
+    }
+
+    @Test
+    void maxSizeEvictsEntriesClosestToExpiryTest() {
+        final AgencyCache<String> cache = new AgencyCache<>("maxSizeEvictsEntriesClosestToExpiryTest",
+                CachePolicy.of(Duration.ofHours(1)).withMaxSize(10), null);
+        final long now = System.currentTimeMillis();
+        for (int i = 1; i <= 10; i++) {
+            cache.restore(AgencyIds.toString(i), new CacheEntry<>("value" + i, now, now + i * 60000L));
+        }
+        cache.put("DK-11", "value11");
+        assertThat(cache.size(), is(9));
+        assertThat(cache.getEvictions(), is(2L));
+        assertThat(cache.getIfPresent(1), is(nullValue()));
+        assertThat(cache.getIfPresent(2), is(nullValue()));
+        assertThat(cache.getIfPresent(3), is("value3"));
+        assertThat(cache.getIfPresent("DK-11"), is(notNullValue()));
+    }
+
+    @Test
+    void lowerMaxSizeEvictsTest() {
+        final VipCoreCache<String, String> cache = new VipCoreCache<>("lowerMaxSizeEvictsTest", Duration.ofHours(1));
+        for (int i = 0; i < 100; i++) {
+            cache.put("key" + i, "value" + i);
+        }
+        cache.setPolicy(cache.getPolicy().withMaxSize(50));
+        assertThat(cache.size(), is(45));
+        assertThat(cache.getPolicy().getTtl(), is(Duration.ofHours(1)));
+    }
+}
@@ -0,0 +1,168 @@
+package dk.dbc.vipcore.cache;
+
+import dk.dbc.vipcore.exception.VipCoreException;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+class CacheRevalidationTest {
+    private static final Duration TTL = Duration.ofMillis(50);
+
+    private final AtomicReference<String> response = new AtomicReference<>("{\"rules\":1}");
+    private final AtomicInteger requests = new AtomicInteger();
+    private final AtomicInteger decodes = new AtomicInteger();
+
+    @Test
+    void unchangedResponseRenewsEntryTest() throws VipCoreException, InterruptedException {
+        final AgencyCache<String> cache = new AgencyCache<>("unchangedResponseRenewsEntryTest", TTL);
+        final String value = cache.getRevalidating(710100, this::load, this::decode);
+
+        expire();
+        assertThat(cache.getIfPresent(710100), is(nullValue()));
+        assertThat(cache.getRevalidating(710100, this::load, this::decode), sameInstance(value));
+        assertThat(requests.get(), is(2));
+        assertThat(decodes.get(), is(1));
+        assertThat(cache.getRevalidations(), is(1L));
+
+        response.set("{\"rules\":2}");
+        expire();
+        assertThat(cache.getRevalidating(710100, this::load, this::decode), is("{\"rules\":2}"));
+        assertThat(decodes.get(), is(2));
+        assertThat(cache.getRevalidations(), is(1L));
+    }
+
+    @Test
+    void unchangedResponseRenewsLazyEntryTest() throws VipCoreException, InterruptedException {
+        final VipCoreCache<String, String> cache = new VipCoreCache<>("unchangedResponseRenewsLazyEntryTest", TTL);
+        assertThat(cache.preload("rules", this::load, this::decode), is(true));
+
+        expire();
+        assertThat(cache.preload("rules", this::load, this::decode), is(true));
+        assertThat(decodes.get(), is(0));
+        assertThat(cache.getRevalidations(), is(1L));
+        assertThat(cache.get("rules", this::load, this::decode), is("{\"rules\":1}"));
+        assertThat(requests.get(), is(2));
+    }
+
+    @Test
+    void entriesWithoutFingerprintExpireTest() throws InterruptedException {
+        final VipCoreCache<String, String> cache = new VipCoreCache<>("entriesWithoutFingerprintExpireTest", TTL);
+        cache.put("rules", "value");
+
+        expire();
+        assertThat(cache.getIfPresent("rules"), is(nullValue()));
+        assertThat(cache.size(), is(0));
+    }
+
+    @Test
+    void undecodableRenewedEntryCountsOneReloadTest() throws VipCoreException, InterruptedException {
+        final VipCoreCache<String, String> cache = new VipCoreCache<>("undecodableRenewedEntryCountsOneReloadTest", TTL);
+        assertThat(cache.preload("rules", this::load, body -> null), is(true));
+
+        expire();
+        assertThat(cache.get("rules", this::load, body -> null), is(nullValue()));
+        assertThat(cache.getRevalidations(), is(1L));
+        assertThat(cache.getUnchangedReloads(), is(1L));
+        assertThat(cache.getChangedReloads(), is(0L));
+        assertThat(cache.size(), is(0));
+    }
+
+    @Test
+    void expiredEntriesNotRevalidatedAreSweptTest() throws VipCoreException, InterruptedException {
+        final VipCoreCache<String, String> cache = new VipCoreCache<>("expiredEntriesNotRevalidatedAreSweptTest", TTL);
+        cache.getRevalidating("rules", this::load, this::decode);
+
+        expire();
+        cache.put("other", "value");
+        assertThat("kept for revalidation", cache.size(), is(2));
+
+        expire();
+        cache.put("other", "value");
+        assertThat(cache.getEntry("rules"), is(nullValue()));
+        assertThat(cache.size(), is(1));
+    }
+
+    @Test
+    void entryPutWithBodyIsRenewedTest() throws VipCoreException, InterruptedException {
+        final VipCoreCache<String, String> cache = new VipCoreCache<>("entryPutWithBodyIsRenewedTest", TTL);
+        final String value = "{\"rules\":1}";
+        cache.put("rules", value, load());
+
+        expire();
+        assertThat(cache.getRevalidating("rules", this::load, this::decode), sameInstance(value));
+        assertThat(decodes.get(), is(0));
+        assertThat(cache.getRevalidations(), is(1L));
+        assertThat(cache.getUnchangedReloads(), is(1L));
+    }
+
+    @Test
+    void putWithBodyComparesWithRevalidatedEntryTest() throws VipCoreException {
+        final VipCoreCache<String, String> cache = new VipCoreCache<>("putWithBodyComparesWithRevalidatedEntryTest", TTL);
+        cache.getRevalidating("rules", this::load, this::decode);
+
+        cache.put("rules", "{\"rules\":1}", load());
+        assertThat(cache.getUnchangedReloads(), is(1L));
+        assertThat(cache.getChangedReloads(), is(0L));
+
+        response.set("{\"rules\":2}");
+        cache.put("rules", "{\"rules\":2}", load());
+        assertThat(cache.getUnchangedReloads(), is(1L));
+        assertThat(cache.getChangedReloads(), is(1L));
+    }
+
+    @Test
+    void valuePutComparesWithRevalidatedLoadTest() throws VipCoreException, InterruptedException {
+        final CachePolicy adaptive = CachePolicy.of(TTL).withAdaptiveTtl(TTL, TTL.multipliedBy(4));
+        final VipCoreCache<String, String> cache = new VipCoreCache<>("valuePutComparesWithRevalidatedLoadTest",
+                adaptive, new StringCodec());
+        final String value = "{\"rules\":1}";
+        cache.put("rules", value);
+
+        expire();
+        assertThat(cache.getRevalidating("rules", this::load, this::decode), sameInstance(value));
+        assertThat(cache.getUnchangedReloads(), is(1L));
+        assertThat(cache.getChangedReloads(), is(0L));
+        final CacheEntry<String> entry = cache.getEntry("rules");
+        assertThat(entry.getExpiresAt() - entry.getCreatedAt(), is(2 * TTL.toMillis()));
+
+        // The entry now carries the fingerprint of the body, the next reload is a revalidation
+        Thread.sleep(2 * TTL.toMillis() + 10);
+        assertThat(cache.getRevalidating("rules", this::load, this::decode), sameInstance(value));
+        assertThat(cache.getRevalidations(), is(1L));
+        assertThat(decodes.get(), is(1));
+    }
+
+    private byte[] load() {
+        requests.incrementAndGet();
+        return response.get().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private String decode(byte[] body) {
+        decodes.incrementAndGet();
+        return new String(body, StandardCharsets.UTF_8);
+    }
+
+    private static void expire() throws InterruptedException {
+        Thread.sleep(TTL.toMillis() + 10);
+    }
+
+    private static class StringCodec implements CacheValueCodec<String> {
+        @Override
+        public byte[] encode(String value) {
+            return value.getBytes(StandardCharsets.UTF_8);
+        }
+
+        @Override
+        public String decode(byte[] bytes) {
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package dk.dbc.vipcore.cache;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+class CacheSnapshotTest {
+    private static final Duration TTL = Duration.ofHours(1);
+
+    // Values starting with '!' are written as they are, but cannot be decoded again
+    private static final CacheValueCodec<String> CODEC = new CacheValueCodec<>() {
+        @Override
+        public byte[] encode(String value) {
+            return value.getBytes(StandardCharsets.UTF_8);
+        }
+
+        @Override
+        public String decode(byte[] bytes) throws IOException {
+            if (bytes.length > 0 && bytes[0] == '!') {
+                throw new IOException("Corrupted entry");
+            }
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+    };
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void corruptedEntryIsSkippedTest() throws IOException {
+        final Path snapshot = tempDir.resolve("corrupted.snapshot");
+        final VipCoreCache<String, String> rules = new VipCoreCache<>("rules", TTL, CODEC);
+        rules.put("710100", "!corrupted");
+        rules.put("010100", "rules");
+        final VipCoreCache<String, String> services = new VipCoreCache<>("services", TTL, CODEC);
+        services.put("010100", "service");
+        assertThat(CacheSnapshot.write(snapshot, List.of(rules, services)), is(3));
+
+        final VipCoreCache<String, String> restoredRules = new VipCoreCache<>("rules", TTL, CODEC);
+        final VipCoreCache<String, String> restoredServices = new VipCoreCache<>("services", TTL, CODEC);
+        assertThat(CacheSnapshot.read(snapshot, List.of(restoredRules, restoredServices)), is(2));
+
+        assertThat(restoredRules.getIfPresent("710100"), is(nullValue()));
+        assertThat(restoredRules.getIfPresent("010100"), is("rules"));
+        assertThat(restoredServices.getIfPresent("010100"), is("service"));
+    }
+}
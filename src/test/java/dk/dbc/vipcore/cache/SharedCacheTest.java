@@ -0,0 +1,100 @@
+package dk.dbc.vipcore.cache;
+
+import dk.dbc.vipcore.exception.VipCoreException;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class SharedCacheTest {
+    private static final CacheValueCodec<String> CODEC = new CacheValueCodec<>() {
+        @Override
+        public byte[] encode(String value) {
+            return value.getBytes(StandardCharsets.UTF_8);
+        }
+
+        @Override
+        public String decode(byte[] bytes) {
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+    };
+
+    private final AtomicInteger loads = new AtomicInteger();
+
+    @Test
+    void missInBothTiersLoadsOnceTest() throws VipCoreException {
+        final InMemorySharedCache shared = new InMemorySharedCache();
+        final AgencyCache<String> node1 = newCache(shared);
+        final AgencyCache<String> node2 = newCache(shared);
+
+        assertThat(node1.get(10100, () -> load("DBC")), is("DBC"));
+        assertThat(node2.get(10100, () -> load("other")), is("DBC"));
+        assertThat(node2.get("010100", () -> load("other")), is("DBC"));
+        assertThat(loads.get(), is(1));
+        assertThat(node2.getSharedHits(), is(1L));
+        assertThat(shared.size(), is(1));
+    }
+
+    @Test
+    void failingSharedCacheCountsAsMissTest() throws VipCoreException {
+        final AgencyCache<String> cache = newCache(new SharedCache() {
+            @Override
+            public CompletableFuture<CacheEntry<byte[]>> get(String cacheName, String key) {
+                return CompletableFuture.failedFuture(new IllegalStateException("down"));
+            }
+
+            @Override
+            public CompletableFuture<Void> put(String cacheName, String key, CacheEntry<byte[]> entry) {
+                return new CompletableFuture<>();
+            }
+        });
+
+        assertThat(cache.get("DK-710100", () -> load("odd")), is("odd"));
+        assertThat(loads.get(), is(1));
+        assertThat(cache.getSharedHits(), is(0L));
+    }
+
+    @Test
+    void fileSharedCacheTest(@TempDir Path directory) {
+        final FileSharedCache shared = new FileSharedCache(directory);
+        final long now = System.currentTimeMillis();
+
+        assertThat(shared.get("cache", "key").join(), is(nullValue()));
+        shared.put("cache", "key", new CacheEntry<>(CODEC.encode("value"), now, now + 60000)).join();
+        shared.put("cache", "expired", new CacheEntry<>(CODEC.encode("value"), now - 2, now - 1)).join();
+
+        final CacheEntry<byte[]> entry = shared.get("cache", "key").join();
+        assertThat(CODEC.decode(entry.getValue()), is("value"));
+        assertThat(entry.getExpiresAt(), is(now + 60000));
+        assertThat(shared.get("other", "key").join(), is(nullValue()));
+        assertThat(shared.get("cache", "expired").join(), is(nullValue()));
+    }
+
+    @Test
+    void cacheWithoutCodecRejectsSharedCacheTest() {
+        final VipCoreCache<String, String> cache = new VipCoreCache<>("cacheWithoutCodecRejectsSharedCacheTest", Duration.ofHours(1));
+        assertThrows(IllegalStateException.class,
+                () -> cache.setSharedCache(new InMemorySharedCache(), Duration.ofSeconds(1)));
+        assertThat(cache.getSharedCache(), is(nullValue()));
+    }
+
+    private AgencyCache<String> newCache(SharedCache shared) {
+        final AgencyCache<String> cache = new AgencyCache<>("sharedCacheTest", Duration.ofHours(1), CODEC);
+        cache.setSharedCache(shared, Duration.ofSeconds(1));
+        return cache;
+    }
+
+    private String load(String value) {
+        loads.incrementAndGet();
+        return value;
+    }
+}
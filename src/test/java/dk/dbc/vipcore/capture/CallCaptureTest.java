@@ -0,0 +1,92 @@
+package dk.dbc.vipcore.capture;
+
+import dk.dbc.httpclient.FailSafeHttpClient;
+import dk.dbc.vipcore.VipCoreConnector;
+import dk.dbc.vipcore.agencyinfo.VipCoreAgencyInfoConnector;
+import dk.dbc.vipcore.exception.AgencyNotFoundException;
+import dk.dbc.vipcore.libraryrules.VipCoreLibraryRulesConnector;
+import dk.dbc.vipcore.service.VipCoreServiceConnector;
+import dk.dbc.vipcore.simulator.LatencyDistribution;
+import dk.dbc.vipcore.simulator.VipCoreLoadDriver;
+import dk.dbc.vipcore.simulator.VipCoreReplay;
+import dk.dbc.vipcore.simulator.VipCoreSimulator;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThan;
+
+class CallCaptureTest {
+
+    @Test
+    void lineRoundTripTest() {
+        final CapturedCall call = new CapturedCall(1760860800000L, "getAgencyName", "710100",
+                "1.0/api/agencyinfo", 200, 1234, 15000, 15500);
+        assertThat(CapturedCall.parse(call.toLine()), is(call));
+
+        final CapturedCall hit = new CapturedCall(1760860800001L, "getLibraries", null, null, 0, -1, 0, 12);
+        assertThat(CapturedCall.parse(hit.toLine()), is(hit));
+        assertThat(hit.isCacheHit(), is(true));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> CapturedCall.parse("710100\tgetAgencyName"));
+    }
+
+    @Test
+    void captureAndReplayTest(@TempDir Path directory) throws Exception {
+        final Path file = directory.resolve("VipCoreAgencyInfoConnector.capture");
+        final VipCoreSimulator simulator = new VipCoreSimulator()
+                .withAgencies(10)
+                .withLatency(LatencyDistribution.fixed(Duration.ofMillis(2)))
+                .start();
+        final FailSafeHttpClient failSafeHttpClient = VipCoreLoadDriver.createFailSafeHttpClient(1);
+        try {
+            final VipCoreAgencyInfoConnector connector = new VipCoreAgencyInfoConnector(failSafeHttpClient,
+                    simulator.getBaseUrl(), 8, VipCoreConnector.TimingLogLevel.DEBUG);
+            try (CallCapture capture = new CallCapture(file)) {
+                connector.setCallCapture(capture);
+                connector.getAgencyName("710100");
+                connector.getAgencyName("710100");
+                Assertions.assertThrows(AgencyNotFoundException.class, () -> connector.getAgencyName("000000"));
+            }
+
+            final List<CapturedCall> calls = CallCapture.read(file);
+            assertThat(calls.size(), is(3));
+            assertThat(calls.get(0).getOperation(), is("getAgencyName"));
+            assertThat(calls.get(0).getKey(), is("710100"));
+            assertThat(calls.get(0).getPath(), is("1.0/api/agencyinfo"));
+            assertThat(calls.get(0).getStatus(), is(200));
+            assertThat(calls.get(0).getRequestMicros(), greaterThan(0L));
+            assertThat(calls.get(1).isCacheHit(), is(true));
+            assertThat(calls.get(1).getPath(), is(nullValue()));
+            assertThat(calls.get(2).getStatus(), is(404));
+
+            final VipCoreSimulator standIn = VipCoreReplay.standIn(calls).start();
+            try {
+                final String endpoint = standIn.getBaseUrl();
+                final VipCoreReplay replay = new VipCoreReplay(
+                        new VipCoreLibraryRulesConnector(failSafeHttpClient, endpoint, 8, VipCoreConnector.TimingLogLevel.DEBUG),
+                        new VipCoreServiceConnector(failSafeHttpClient, endpoint, 8, VipCoreConnector.TimingLogLevel.DEBUG),
+                        new VipCoreAgencyInfoConnector(failSafeHttpClient, endpoint, 8, VipCoreConnector.TimingLogLevel.DEBUG),
+                        calls);
+                final VipCoreLoadDriver.Report report = replay.run(100.0);
+                assertThat(report.getCalls(), is(3L));
+                assertThat(report.getErrors().get("AgencyNotFoundException"), is(1L));
+                assertThat(standIn.getAgencyIds().contains("710100"), is(true));
+                assertThat(standIn.getAgencyIds().contains("000000"), is(false));
+                // The second call is a cache hit again
+                assertThat(standIn.getRequestCount(VipCoreSimulator.AGENCY_INFO_PATH), is(2L));
+            } finally {
+                standIn.stop();
+            }
+        } finally {
+            failSafeHttpClient.getClient().close();
+            simulator.stop();
+        }
+    }
+}
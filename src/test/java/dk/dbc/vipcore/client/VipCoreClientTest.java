@@ -0,0 +1,149 @@
+package dk.dbc.vipcore.client;
+
+import com.github.tomakehurst.wiremock.WireMockServer;
+import dk.dbc.commons.useragent.UserAgent;
+import dk.dbc.httpclient.HttpClient;
+import dk.dbc.vipcore.VipCoreConnector;
+import dk.dbc.vipcore.agencyinfo.VipCoreAgencyInfoConnector;
+import dk.dbc.vipcore.exception.VipCoreException;
+import dk.dbc.vipcore.libraryrules.VipCoreLibraryRulesConnector;
+import org.glassfish.jersey.client.ClientConfig;
+import org.glassfish.jersey.jackson.JacksonFeature;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.time.Duration;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.aResponse;
+import static com.github.tomakehurst.wiremock.client.WireMock.equalToJson;
+import static com.github.tomakehurst.wiremock.client.WireMock.post;
+import static com.github.tomakehurst.wiremock.client.WireMock.postRequestedFor;
+import static com.github.tomakehurst.wiremock.client.WireMock.urlEqualTo;
+import static com.github.tomakehurst.wiremock.core.WireMockConfiguration.options;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.lessThan;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class VipCoreClientTest {
+    private static final int DELAY_MS = 500;
+
+    private static WireMockServer wireMockServer;
+    private static VipCoreClient client;
+
+    @BeforeAll
+    static void startWireMockServer() throws IOException {
+        wireMockServer = new WireMockServer(options().dynamicPort()
+                .dynamicHttpsPort());
+        wireMockServer.start();
+        stub("/1.0/api/libraryrules", "{\"agencyId\":\"345678\"}",
+                readBody("body-1.0-api-libraryrules-NYAR7.json").replace("710100", "345678"));
+        stub("/1.0/api/service", "{\"agencyId\":\"345678\",\"service\":\"information\"}",
+                readBody("body-1.0-api-service-6vNkY.json").replace("010100", "345678"));
+        stub("/1.0/api/agencyinfo", "{\"agencyId\":\"345678\"}",
+                readBody("body-1.0-api-agencyinfo-a1iiy.json").replace("790900", "345678"));
+        // 456789 is a branch of agency 456700, no agency info is stubbed for it
+        stub("/1.0/api/libraryrules", "{\"agencyId\":\"456789\"}",
+                readBody("body-1.0-api-libraryrules-NYAR7.json").replace("710100", "456789"));
+        stub("/1.0/api/service", "{\"agencyId\":\"456789\",\"service\":\"information\"}",
+                readBody("body-1.0-api-service-6vNkY.json").replace("\"agencyId\":\"010100\"", "\"agencyId\":\"456700\"")
+                        .replace("010100", "456789"));
+        // 567890 is a main agency, so its information and agency info give the same name
+        stub("/1.0/api/libraryrules", "{\"agencyId\":\"567890\"}",
+                readBody("body-1.0-api-libraryrules-NYAR7.json").replace("710100", "567890"));
+        stub("/1.0/api/service", "{\"agencyId\":\"567890\",\"service\":\"information\"}",
+                readBody("body-1.0-api-service-6vNkY.json").replace("010100", "567890")
+                        .replace("\"agencyName\":\"Dansk BiblioteksCenter\"", "\"agencyName\":\"DBC-Testbiblioteksvæsen\""));
+        stub("/1.0/api/agencyinfo", "{\"agencyId\":\"567890\"}",
+                readBody("body-1.0-api-agencyinfo-a1iiy.json").replace("790900", "567890"));
+        client = new VipCoreClient(HttpClient.newClient(new ClientConfig().register(new JacksonFeature())),
+                new UserAgent("VipCoreClientTest"), "http://localhost:" + wireMockServer.port(), 1,
+                VipCoreConnector.TimingLogLevel.INFO, null);
+    }
+
+    @AfterAll
+    static void stopWireMockServer() {
+        client.close();
+        wireMockServer.stop();
+    }
+
+    @Test
+    void getAgencyProfileTest() throws VipCoreException {
+        final long start = System.nanoTime();
+        final AgencyProfile profile = client.getAgencyProfile("345678");
+        final long elapsedMs = Duration.ofNanos(System.nanoTime() - start).toMillis();
+
+        assertThat(profile.getAgencyId(), is("345678"));
+        assertThat(profile.getLibraryRules().getAgencyType(), is("Folkebibliotek"));
+        assertThat(profile.getInformation().getCity(), is("Ballerup"));
+        assertThat(profile.getAgencyName(), is("DBC-Testbiblioteksvæsen"));
+        // The three lookups run in parallel, in sequence they would take at least three delays
+        assertThat(elapsedMs, lessThan(2L * DELAY_MS));
+
+        // Each part is cached by its connector
+        assertThat(client.getAgencyProfile(345678).getAgencyName(), is("DBC-Testbiblioteksvæsen"));
+        wireMockServer.verify(1, postRequestedFor(urlEqualTo("/1.0/api/agencyinfo"))
+                .withRequestBody(equalToJson("{\"agencyId\":\"345678\"}", true, true)));
+    }
+
+    @Test
+    void agencyNamesFromInformationTest() throws VipCoreException {
+        final VipCoreAgencyInfoConnector agencyInfoConnector = client.getAgencyInfoConnector();
+        client.setAgencyNamesFromInformation(true);
+        try {
+            final long informationHits = agencyInfoConnector.getInformationHits();
+            final long start = System.nanoTime();
+            final AgencyProfile profile = client.getAgencyProfile(567890);
+            final long elapsedMs = Duration.ofNanos(System.nanoTime() - start).toMillis();
+
+            // The name lookup joins the load of the information by the profile, even on a cold cache
+            assertThat(profile.getAgencyName(), is("DBC-Testbiblioteksvæsen"));
+            assertThat(elapsedMs, lessThan(2L * DELAY_MS));
+            assertThat(agencyInfoConnector.getInformationHits(), is(informationHits + 1));
+            wireMockServer.verify(1, postRequestedFor(urlEqualTo("/1.0/api/service"))
+                    .withRequestBody(equalToJson("{\"agencyId\":\"567890\",\"service\":\"information\"}", true, true)));
+            wireMockServer.verify(0, postRequestedFor(urlEqualTo("/1.0/api/agencyinfo"))
+                    .withRequestBody(equalToJson("{\"agencyId\":\"567890\"}", true, true)));
+            assertThat(agencyInfoConnector.getAgencyName(567890), is("DBC-Testbiblioteksvæsen"));
+
+            // The information of 456789 is that of a branch, so its name is requested from the agency info
+            assertThrows(VipCoreException.class, () -> agencyInfoConnector.getAgencyName("456789"));
+            assertThat(agencyInfoConnector.getInformationHits(), is(informationHits + 1));
+            wireMockServer.verify(1, postRequestedFor(urlEqualTo("/1.0/api/agencyinfo"))
+                    .withRequestBody(equalToJson("{\"agencyId\":\"456789\"}", true, true)));
+        } finally {
+            client.setAgencyNamesFromInformation(false);
+        }
+    }
+
+    @Test
+    void getAgencyProfileFailureTest() {
+        assertThrows(VipCoreException.class, () -> client.getAgencyProfile("000001"));
+    }
+
+    @Test
+    void cacheManagementTest() {
+        assertThat(client.getCaches().size(), is(4));
+        assertThat(client.getCache(VipCoreLibraryRulesConnector.LIBRARY_RULES_CACHE).getName(),
+                is("libraryRulesByAgencyIdCache"));
+        assertThrows(IllegalArgumentException.class, () -> client.getCache("unknown"));
+    }
+
+    private static void stub(String url, String request, String body) {
+        wireMockServer.stubFor(post(urlEqualTo(url))
+                .withRequestBody(equalToJson(request, true, true))
+                .willReturn(aResponse()
+                        .withHeader("Content-Type", "application/json")
+                        .withFixedDelay(DELAY_MS)
+                        .withBody(body)));
+    }
+
+    private static String readBody(String fileName) throws IOException {
+        return Files.readString(Paths.get("src/test/resources/__files", fileName), StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,115 @@
+package dk.dbc.vipcore.codec;
+
+import dk.dbc.vipcore.exception.VipCoreException;
+import dk.dbc.vipcore.marshallers.Information;
+import dk.dbc.vipcore.marshallers.LibraryRule;
+import dk.dbc.vipcore.marshallers.LibraryRules;
+import dk.dbc.vipcore.marshallers.LibraryRulesRequest;
+import dk.dbc.vipcore.marshallers.PickupAgency;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Set;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class JsonCodecTest {
+    private static final Path FILES = Paths.get("src/test/resources/__files");
+
+    @Test
+    void readLibraryRulesTest() throws IOException, VipCoreException {
+        final List<LibraryRules> libraryRules = JsonCodec.decode(
+                Files.readAllBytes(FILES.resolve("body-1.0-api-libraryrules-63hiG.json")), LibraryRulesCodec::readLibraryRules);
+
+        assertThat(libraryRules.get(0).getAgencyId(), is("010100"));
+        assertThat(libraryRules.get(0).getAgencyType(), is("Other"));
+        final LibraryRule createEnrichments = libraryRules.get(0).getLibraryRule().get(0);
+        assertThat(createEnrichments.getName(), is("create_enrichments"));
+        assertThat(createEnrichments.getBool(), is(true));
+        assertThat(createEnrichments.getString(), is(nullValue()));
+    }
+
+    @Test
+    void readAgencyIdsTest() throws VipCoreException {
+        final byte[] body = ("{\"libraryRules\":[{\"agencyId\":\"710100\",\"libraryRule\":[{\"name\":\"ims_library\",\"bool\":true}]}," +
+                "null,{\"agencyType\":\"Other\",\"agencyId\":\"010100\"}],\"unknown\":{\"agencyId\":\"000000\"}}")
+                .getBytes(StandardCharsets.UTF_8);
+
+        assertThat(JsonCodec.decode(body, LibraryRulesCodec::readAgencyIds), is(Set.of("710100", "010100")));
+        assertThat(JsonCodec.decode("{}".getBytes(StandardCharsets.UTF_8), LibraryRulesCodec::readAgencyIds), is(Set.of()));
+        assertThat(JsonCodec.decode("{}".getBytes(StandardCharsets.UTF_8), LibraryRulesCodec::readLibraryRules), is(nullValue()));
+    }
+
+    @Test
+    void readPickupAgencyTest() throws IOException, VipCoreException {
+        try (InputStream in = Files.newInputStream(FILES.resolve("body-1.0-api-agencyinfo-YYs2S.json"))) {
+            final PickupAgency pickupAgency = JsonCodec.decode(in, AgencyInfoCodec::readPickupAgency);
+            assertThat(pickupAgency.getAgencyId(), is("726000"));
+            assertThat(pickupAgency.getAgencyName(), is("Halsnæs Bibliotekerne"));
+        }
+        try (InputStream in = Files.newInputStream(FILES.resolve("body-1.0-api-agencyinfo-rE3aj.json"))) {
+            assertThat(JsonCodec.decode(in, AgencyInfoCodec::readPickupAgency), is(nullValue()));
+        }
+    }
+
+    @Test
+    void readInformationTest() throws IOException, VipCoreException {
+        final Information information = JsonCodec.decode(
+                Files.readAllBytes(FILES.resolve("body-1.0-api-service-6vNkY.json")), ServiceCodec::readInformation);
+
+        assertThat(information.getAgencyId(), is("010100"));
+        assertThat(information.getAgencyName(), is("Dansk BiblioteksCenter"));
+        assertThat(information.getCity(), is("Ballerup"));
+        assertThat(JsonCodec.decode("{\"information\":{\"agencyId\":\"710100\",\"unknown\":[{}]},\"trailing\":1}"
+                .getBytes(StandardCharsets.UTF_8), ServiceCodec::readInformation).getAgencyId(), is("710100"));
+        assertThat(JsonCodec.decode("{}".getBytes(StandardCharsets.UTF_8), ServiceCodec::readInformation), is(nullValue()));
+    }
+
+    @Test
+    void readErrorCodeTest() throws IOException, VipCoreException {
+        assertThat(JsonCodec.decode(Files.readAllBytes(FILES.resolve("body-1.0-api-libraryrules-7TVxi.json")),
+                ErrorMessageCodec::readErrorCode), is("agency_not_found"));
+        assertThat(JsonCodec.decode("{\"message\":{\"text\":\"x\"},\"error\":\"error_in_request\",\"trailing\":[1,"
+                .getBytes(StandardCharsets.UTF_8), ErrorMessageCodec::readErrorCode), is("error_in_request"));
+        assertThat(JsonCodec.decode("{\"message\":\"x\"}".getBytes(StandardCharsets.UTF_8),
+                ErrorMessageCodec::readErrorCode), is(nullValue()));
+    }
+
+    @Test
+    void encodeLibraryRulesRequestTest() throws IOException {
+        final LibraryRule imsLibrary = new LibraryRule();
+        imsLibrary.setName("ims_library");
+        imsLibrary.setBool(true);
+        final LibraryRule templateSet = new LibraryRule();
+        templateSet.setName("cataloging_template_set");
+        templateSet.setString("fbs\"");
+        final LibraryRulesRequest libraryRulesRequest = new LibraryRulesRequest();
+        libraryRulesRequest.setLibraryRule(List.of(imsLibrary, templateSet));
+
+        assertThat(new String(LibraryRulesCodec.encodeLibraryRulesRequest(libraryRulesRequest, null), StandardCharsets.UTF_8),
+                is("{\"libraryRule\":[{\"name\":\"ims_library\",\"bool\":true}," +
+                        "{\"name\":\"cataloging_template_set\",\"string\":\"fbs\\\"\"}]}"));
+        libraryRulesRequest.setTrackingId("caller");
+        assertThat(new String(LibraryRulesCodec.encodeLibraryRulesRequest(libraryRulesRequest, "trace"), StandardCharsets.UTF_8),
+                is("{\"libraryRule\":[{\"name\":\"ims_library\",\"bool\":true}," +
+                        "{\"name\":\"cataloging_template_set\",\"string\":\"fbs\\\"\"}],\"trackingId\":\"trace\"}"));
+        assertThat(libraryRulesRequest.getTrackingId(), is("caller"));
+    }
+
+    @Test
+    void invalidResponseTest() {
+        assertThrows(VipCoreException.class, () -> JsonCodec.decode(
+                "{\"libraryRules\":[{\"agencyId\":\"01".getBytes(StandardCharsets.UTF_8), LibraryRulesCodec::readLibraryRules));
+        assertThrows(VipCoreException.class, () -> JsonCodec.decode(
+                "[]".getBytes(StandardCharsets.UTF_8), LibraryRulesCodec::readLibraryRules));
+    }
+}
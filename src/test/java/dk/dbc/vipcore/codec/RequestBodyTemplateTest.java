@@ -0,0 +1,50 @@
+package dk.dbc.vipcore.codec;
+
+import dk.dbc.commons.jsonb.JSONBContext;
+import dk.dbc.commons.jsonb.JSONBException;
+import dk.dbc.vipcore.marshallers.ServiceRequest;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+class RequestBodyTemplateTest {
+    private static final RequestBodyTemplate AGENCY_REQUEST = RequestBodyTemplate.of();
+    private static final RequestBodyTemplate INFORMATION_REQUEST = RequestBodyTemplate.of("service", "information");
+
+    @Test
+    void encodeTest() {
+        assertThat(asString(AGENCY_REQUEST.encode("710100", null)), is("{\"agencyId\":\"710100\"}"));
+        assertThat(asString(AGENCY_REQUEST.encode(10100, "trace")), is("{\"agencyId\":\"010100\",\"trackingId\":\"trace\"}"));
+        assertThat(asString(INFORMATION_REQUEST.encode("010100", null)),
+                is("{\"service\":\"information\",\"agencyId\":\"010100\"}"));
+        assertThat(asString(AGENCY_REQUEST.encode(null, null)), is("{\"agencyId\":null}"));
+    }
+
+    @Test
+    void escapeTest() throws JSONBException {
+        final String trackingId = "a\"b\\c\n\u0001æ😀";
+        final ServiceRequest serviceRequest = new JSONBContext().unmarshall(
+                asString(INFORMATION_REQUEST.encode("DK-\"710100\"", trackingId)), ServiceRequest.class);
+
+        assertThat(serviceRequest.getService(), is("information"));
+        assertThat(serviceRequest.getAgencyId(), is("DK-\"710100\""));
+        assertThat(serviceRequest.getTrackingId(), is(trackingId));
+    }
+
+    @Test
+    void encodeWithoutTrackingIdTest() throws JSONBException {
+        final ServiceRequest serviceRequest = new JSONBContext().unmarshall(
+                asString(INFORMATION_REQUEST.encode(-1, null)), ServiceRequest.class);
+
+        assertThat(serviceRequest.getAgencyId(), is("-1"));
+        assertThat(serviceRequest.getTrackingId(), is(nullValue()));
+    }
+
+    private static String asString(byte[] body) {
+        return new String(body, StandardCharsets.UTF_8);
+    }
+}
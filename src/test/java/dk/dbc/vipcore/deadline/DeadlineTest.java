@@ -0,0 +1,177 @@
+package dk.dbc.vipcore.deadline;
+
+import com.github.tomakehurst.wiremock.WireMockServer;
+import com.github.tomakehurst.wiremock.stubbing.Scenario;
+import dk.dbc.commons.useragent.UserAgent;
+import dk.dbc.httpclient.HttpClient;
+import dk.dbc.vipcore.VipCoreConnector;
+import dk.dbc.vipcore.exception.DeadlineExceededException;
+import dk.dbc.vipcore.exception.VipCoreException;
+import dk.dbc.vipcore.libraryrules.VipCoreLibraryRulesConnector;
+import io.opentelemetry.context.Scope;
+import jakarta.ws.rs.client.Client;
+import org.glassfish.jersey.client.ClientConfig;
+import org.glassfish.jersey.client.ClientProperties;
+import org.glassfish.jersey.jackson.JacksonFeature;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.Instant;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.aResponse;
+import static com.github.tomakehurst.wiremock.client.WireMock.equalToJson;
+import static com.github.tomakehurst.wiremock.client.WireMock.post;
+import static com.github.tomakehurst.wiremock.client.WireMock.postRequestedFor;
+import static com.github.tomakehurst.wiremock.client.WireMock.urlEqualTo;
+import static com.github.tomakehurst.wiremock.core.WireMockConfiguration.options;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.lessThan;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class DeadlineTest {
+    private static WireMockServer wireMockServer;
+    private static VipCoreLibraryRulesConnector connector;
+
+    @BeforeAll
+    static void startWireMockServer() {
+        wireMockServer = new WireMockServer(options().dynamicPort()
+                .dynamicHttpsPort());
+        wireMockServer.start();
+        // Slow response
+        wireMockServer.stubFor(post(urlEqualTo("/1.0/api/libraryrules"))
+                .withRequestBody(equalToJson("{\"agencyId\":\"567891\"}", true, true))
+                .willReturn(aResponse()
+                        .withHeader("Content-Type", "application/json")
+                        .withFixedDelay(5000)
+                        .withBody("{}")));
+        // Retried by the default retry policy after 10 seconds
+        wireMockServer.stubFor(post(urlEqualTo("/1.0/api/libraryrules"))
+                .withRequestBody(equalToJson("{\"agencyId\":\"567892\"}", true, true))
+                .willReturn(aResponse().withStatus(500)));
+        wireMockServer.stubFor(post(urlEqualTo("/1.0/api/libraryrules"))
+                .withRequestBody(equalToJson("{\"agencyId\":\"567894\"}", true, true))
+                .willReturn(aResponse()
+                        .withHeader("Content-Type", "application/json")
+                        .withBody("{\"libraryRules\":[{\"agencyId\":\"567894\",\"libraryRule\":[]}]}")));
+        // Fails once, the retry would succeed
+        wireMockServer.stubFor(post(urlEqualTo("/1.0/api/libraryrules"))
+                .withRequestBody(equalToJson("{\"agencyId\":\"567895\"}", true, true))
+                .inScenario("retry").whenScenarioStateIs(Scenario.STARTED)
+                .willReturn(aResponse().withStatus(500))
+                .willSetStateTo("recovered"));
+        wireMockServer.stubFor(post(urlEqualTo("/1.0/api/libraryrules"))
+                .withRequestBody(equalToJson("{\"agencyId\":\"567895\"}", true, true))
+                .inScenario("retry").whenScenarioStateIs("recovered")
+                .willReturn(aResponse()
+                        .withHeader("Content-Type", "application/json")
+                        .withBody("{\"libraryRules\":[{\"agencyId\":\"567895\",\"libraryRule\":[]}]}")));
+        connector = new VipCoreLibraryRulesConnector(
+                HttpClient.newClient(new ClientConfig().register(new JacksonFeature())),
+                new UserAgent("DeadlineTest"), "http://localhost:" + wireMockServer.port(), 1,
+                VipCoreConnector.TimingLogLevel.INFO);
+    }
+
+    @AfterAll
+    static void stopWireMockServer() {
+        connector.close();
+        wireMockServer.stop();
+    }
+
+    @Test
+    void nestedDeadlineNeverExtendsOuterTest() {
+        final Deadline outer = Deadline.after(Duration.ofSeconds(1));
+        assertThat(Deadline.current(), is(nullValue()));
+        try (Scope ignored = outer.makeCurrent()) {
+            try (Scope ignoredInner = Deadline.after(Duration.ofMinutes(1)).makeCurrent()) {
+                assertThat(Deadline.current(), is(sameInstance(outer)));
+            }
+            final Deadline inner = Deadline.at(Instant.now().plusMillis(100));
+            try (Scope ignoredInner = inner.makeCurrent()) {
+                assertThat(Deadline.current(), is(sameInstance(inner)));
+            }
+        }
+        assertThat(Deadline.current(), is(nullValue()));
+        assertThat(Deadline.after(Duration.ofMillis(-1)).isExpired(), is(true));
+        assertThat(Deadline.after(Duration.ofMillis(-1)).remaining(), is(Duration.ZERO));
+    }
+
+    @Test
+    void slowResponseIsCancelledAtDeadlineTest() {
+        final long start = System.nanoTime();
+        try (Scope ignored = Deadline.after(Duration.ofMillis(200)).makeCurrent()) {
+            assertThrows(DeadlineExceededException.class, () -> connector.getLibraryRulesByAgencyId("567891"));
+        }
+        assertThat(Duration.ofNanos(System.nanoTime() - start).toMillis(), lessThan(2000L));
+    }
+
+    @Test
+    void deadlineCoversRetriesTest() {
+        connector.setDefaultTimeout(Duration.ofMillis(300));
+        try {
+            final long start = System.nanoTime();
+            assertThrows(DeadlineExceededException.class, () -> connector.getLibraryRulesByAgencyId("567892"));
+            assertThat(Duration.ofNanos(System.nanoTime() - start).toMillis(), lessThan(2000L));
+        } finally {
+            connector.setDefaultTimeout(null);
+        }
+    }
+
+    @Test
+    void httpTimeoutsAreSetPerRequestTest() throws VipCoreException {
+        final Client client = HttpClient.newClient(new ClientConfig().register(new JacksonFeature()));
+        final VipCoreLibraryRulesConnector timed = new VipCoreLibraryRulesConnector(client,
+                new UserAgent("DeadlineTest"), "http://localhost:" + wireMockServer.port(), 0,
+                VipCoreConnector.TimingLogLevel.INFO);
+        try {
+            final Object connectTimeout = client.getConfiguration().getProperty(ClientProperties.CONNECT_TIMEOUT);
+            final Object readTimeout = client.getConfiguration().getProperty(ClientProperties.READ_TIMEOUT);
+            timed.setHttpTimeouts(Duration.ofMillis(500), Duration.ofSeconds(1));
+            assertThat(client.getConfiguration().getProperty(ClientProperties.CONNECT_TIMEOUT), is(connectTimeout));
+            assertThat(client.getConfiguration().getProperty(ClientProperties.READ_TIMEOUT), is(readTimeout));
+
+            // Leaves time for both timeouts, so the request runs on the calling thread
+            try (Scope ignored = Deadline.after(Duration.ofSeconds(5)).makeCurrent()) {
+                assertThat(timed.getLibraryRulesByAgencyId("567894"), is(notNullValue()));
+            }
+        } finally {
+            timed.close();
+        }
+    }
+
+    @Test
+    void retryDelayEndsAtDeadlineOnCallingThreadTest() {
+        final Client client = HttpClient.newClient(new ClientConfig().register(new JacksonFeature()));
+        final VipCoreLibraryRulesConnector timed = new VipCoreLibraryRulesConnector(client,
+                new UserAgent("DeadlineTest"), "http://localhost:" + wireMockServer.port(), 0,
+                VipCoreConnector.TimingLogLevel.INFO);
+        try {
+            timed.setHttpTimeouts(Duration.ofMillis(100), Duration.ofMillis(200));
+            // Leaves time for both timeouts, but not for the retry delay of 10 seconds
+            final long start = System.nanoTime();
+            try (Scope ignored = Deadline.after(Duration.ofMillis(700)).makeCurrent()) {
+                assertThrows(DeadlineExceededException.class, () -> timed.getLibraryRulesByAgencyId("567895"));
+            }
+            assertThat(Duration.ofNanos(System.nanoTime() - start).toMillis(), lessThan(1000L));
+            // The retry was aborted at the deadline rather than sent
+            wireMockServer.verify(1, postRequestedFor(urlEqualTo("/1.0/api/libraryrules"))
+                    .withRequestBody(equalToJson("{\"agencyId\":\"567895\"}", true, true)));
+        } finally {
+            timed.close();
+        }
+    }
+
+    @Test
+    void expiredDeadlineFailsWithoutRequestTest() {
+        try (Scope ignored = Deadline.after(Duration.ZERO).makeCurrent()) {
+            assertThrows(DeadlineExceededException.class, () -> connector.getLibraryRulesByAgencyId("567893"));
+        }
+        wireMockServer.verify(0, postRequestedFor(urlEqualTo("/1.0/api/libraryrules"))
+                .withRequestBody(equalToJson("{\"agencyId\":\"567893\"}", true, true)));
+    }
+}
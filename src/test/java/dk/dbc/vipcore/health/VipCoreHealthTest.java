@@ -0,0 +1,79 @@
+package dk.dbc.vipcore.health;
+
+import dk.dbc.httpclient.FailSafeHttpClient;
+import dk.dbc.vipcore.VipCoreConnector;
+import dk.dbc.vipcore.agencyinfo.VipCoreAgencyInfoConnector;
+import dk.dbc.vipcore.simulator.LatencyDistribution;
+import dk.dbc.vipcore.simulator.VipCoreLoadDriver;
+import dk.dbc.vipcore.simulator.VipCoreSimulator;
+import org.eclipse.microprofile.health.HealthCheckResponse;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class VipCoreHealthTest {
+
+    @Test
+    void requestStatsTest() {
+        final RequestStats stats = new RequestStats(4);
+        assertThat(stats.snapshot(Duration.ofMinutes(1)).getLatency(95), is(Duration.ZERO));
+        for (int millis = 1; millis <= 6; millis++) {
+            stats.record(Duration.ofMillis(millis).toNanos(), millis == 6);
+        }
+        final RequestStats.Snapshot snapshot = stats.snapshot(Duration.ofMinutes(1));
+        assertThat(stats.getCount(), is(6L));
+        assertThat(snapshot.getRequests(), is(4));
+        assertThat(snapshot.getFailures(), is(1));
+        assertThat(snapshot.getErrorRate(), is(0.25));
+        assertThat(snapshot.getLatency(50), is(Duration.ofMillis(4)));
+        assertThat(snapshot.getLatency(100), is(Duration.ofMillis(6)));
+        assertThat(stats.snapshot(Duration.ofNanos(1)).getRequests(), is(0));
+        assertThrows(IllegalArgumentException.class, () -> HealthPolicy.of(null).withMaxErrorRate(2));
+    }
+
+    @Test
+    void disabledCheckTest() {
+        final HealthCheckResponse response = VipCoreHealth.disabledCheck("VipCoreClient").call();
+        assertThat(response.getName(), is("VipCoreClient"));
+        assertThat(response.getStatus(), is(HealthCheckResponse.Status.UP));
+        assertThat(response.getData().orElseThrow().get("enabled"), is(false));
+    }
+
+    @Test
+    void readinessFollowsLatencySloTest() throws Exception {
+        final VipCoreSimulator simulator = new VipCoreSimulator()
+                .withAgencies(10)
+                .withLatency(LatencyDistribution.fixed(Duration.ofMillis(50)))
+                .start();
+        final FailSafeHttpClient failSafeHttpClient = VipCoreLoadDriver.createFailSafeHttpClient(1);
+        try {
+            final VipCoreAgencyInfoConnector connector = new VipCoreAgencyInfoConnector(failSafeHttpClient,
+                    simulator.getBaseUrl(), 8, VipCoreConnector.TimingLogLevel.DEBUG);
+            final VipCoreHealth slow = new VipCoreHealth("slow", HealthPolicy.of(Duration.ofMillis(10))
+                    .withMinRequests(3), connector);
+            final VipCoreHealth fast = new VipCoreHealth("fast", HealthPolicy.of(Duration.ofSeconds(10))
+                    .withMinRequests(3), connector);
+
+            // Too few requests to judge
+            assertThat(slow.readiness().getStatus(), is(HealthCheckResponse.Status.UP));
+            for (String agencyId : simulator.getAgencyIds().subList(0, 3)) {
+                connector.getAgencyName(agencyId);
+            }
+            final HealthCheckResponse readiness = slow.readiness();
+            assertThat(readiness.getStatus(), is(HealthCheckResponse.Status.DOWN));
+            assertThat(readiness.getData().get().get("reason"), is("latency above SLO"));
+            assertThat(readiness.getData().get().get("requests"), is(3L));
+            assertThat(fast.readiness().getStatus(), is(HealthCheckResponse.Status.UP));
+
+            assertThat(slow.liveness().getStatus(), is(HealthCheckResponse.Status.UP));
+            connector.close();
+            assertThat(slow.liveness().getStatus(), is(HealthCheckResponse.Status.DOWN));
+        } finally {
+            simulator.stop();
+        }
+    }
+}
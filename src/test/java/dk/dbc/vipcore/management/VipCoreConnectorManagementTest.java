@@ -0,0 +1,106 @@
+package dk.dbc.vipcore.management;
+
+import com.github.tomakehurst.wiremock.WireMockServer;
+import dk.dbc.commons.useragent.UserAgent;
+import dk.dbc.httpclient.HttpClient;
+import dk.dbc.vipcore.VipCoreConnector;
+import dk.dbc.vipcore.bulkhead.Priority;
+import dk.dbc.vipcore.exception.VipCoreException;
+import dk.dbc.vipcore.libraryrules.VipCoreLibraryRulesConnector;
+import org.glassfish.jersey.client.ClientConfig;
+import org.glassfish.jersey.jackson.JacksonFeature;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+import java.lang.management.ManagementFactory;
+import java.time.Duration;
+
+import static com.github.tomakehurst.wiremock.core.WireMockConfiguration.options;
+import static org.hamcrest.CoreMatchers.hasItem;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+class VipCoreConnectorManagementTest {
+    private static WireMockServer wireMockServer;
+    private static VipCoreLibraryRulesConnector connector;
+
+    @BeforeAll
+    static void startWireMockServer() {
+        wireMockServer = new WireMockServer(options().dynamicPort()
+                .dynamicHttpsPort());
+        wireMockServer.start();
+        connector = new VipCoreLibraryRulesConnector(
+                HttpClient.newClient(new ClientConfig().register(new JacksonFeature())),
+                new UserAgent("VipCoreConnectorManagementTest"), "http://localhost:" + wireMockServer.port(), 1,
+                VipCoreConnector.TimingLogLevel.INFO);
+    }
+
+    @AfterAll
+    static void stopWireMockServer() {
+        connector.close();
+        wireMockServer.stop();
+    }
+
+    @Test
+    void invalidateAndInspectTest() throws VipCoreException {
+        final VipCoreConnectorManagement management = new VipCoreConnectorManagement(connector);
+        connector.getLibraryRulesByAgencyId("710100");
+        final String cacheName = VipCoreLibraryRulesConnector.LIBRARY_RULES_CACHE;
+
+        assertThat(management.getCacheNames(), hasItem(cacheName));
+        assertThat(management.getCacheKeys(cacheName), hasItem("710100"));
+        assertThat(management.getCacheEntry(cacheName, "710100").isExpired(), is(false));
+
+        assertThat(management.invalidateAgency("710100"), is(1));
+        assertThat(management.getCacheEntry(cacheName, "710100"), is(nullValue()));
+        assertThat(management.invalidateAgency("710100"), is(0));
+    }
+
+    @Test
+    void tuneTest() {
+        final VipCoreConnectorManagement management = new VipCoreConnectorManagement(connector);
+        final String cacheName = VipCoreLibraryRulesConnector.LIBRARIES_CACHE;
+        management.setCacheTtl(cacheName, "PT30M");
+        management.setCacheMaxSize(cacheName, 100);
+        assertThat(connector.getCache(cacheName).getPolicy().getTtl(), is(Duration.ofMinutes(30)));
+        assertThat(connector.getCache(cacheName).getPolicy().getMaxSize(), is(100));
+
+        management.setMaxConcurrent("BATCH", 2);
+        assertThat(management.getMaxConcurrent("BATCH"), is(2));
+        assertThat(connector.getBulkheads().getPolicy(Priority.BATCH).getMaxConcurrent(), is(2));
+        assertThat(management.getMaxConcurrent("INTERACTIVE"), is(0));
+        connector.setBulkheadPolicy(Priority.BATCH, null);
+
+        management.setTimingLogThresholdMillis(250);
+        assertThat(connector.getTimingLogThreshold(), is(Duration.ofMillis(250)));
+    }
+
+    @Test
+    void registerTest() throws JMException, VipCoreException {
+        final VipCoreConnectorManagement management = new VipCoreConnectorManagement(connector)
+                .register("VipCoreConnectorManagementTest");
+        try {
+            connector.getLibraryRulesByAgencyId("710100");
+            final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            final ObjectName name = management.getObjectName();
+            assertThat(server.isRegistered(name), is(true));
+
+            final CompositeData entry = (CompositeData) server.invoke(name, "getCacheEntry",
+                    new Object[]{VipCoreLibraryRulesConnector.LIBRARY_RULES_CACHE, "710100"},
+                    new String[]{String.class.getName(), String.class.getName()});
+            assertThat(entry.get("key"), is("710100"));
+            assertThat(server.getAttribute(name, "TimingLogThresholdMillis") instanceof Long, is(true));
+            server.invoke(name, "invalidateAll", new Object[0], new String[0]);
+            assertThat(connector.getCache(VipCoreLibraryRulesConnector.LIBRARY_RULES_CACHE).size(), is(0));
+        } finally {
+            management.unregister();
+        }
+        assertThat(management.getObjectName(), is(nullValue()));
+    }
+}
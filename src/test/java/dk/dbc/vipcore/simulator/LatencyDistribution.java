@@ -0,0 +1,65 @@
+/*
+ * Copyright Dansk Bibliotekscenter a/s. Licensed under GNU GPL v3
+ *  See license text at https://opensource.dbc.dk/licenses/gpl-3.0
+ */
+
+package dk.dbc.vipcore.simulator;
+
+import java.time.Duration;
+import java.util.Random;
+
+/**
+ * Response latency of the simulated VipCore service
+ */
+@FunctionalInterface
+public interface LatencyDistribution {
+    LatencyDistribution NONE = random -> 0;
+
+    /**
+     * @param random source of randomness
+     * @return latency in microseconds
+     */
+    long sampleMicros(Random random);
+
+    static LatencyDistribution fixed(Duration latency) {
+        final long micros = toMicros(latency);
+        return random -> micros;
+    }
+
+    static LatencyDistribution uniform(Duration min, Duration max) {
+        final long minMicros = toMicros(min);
+        final long spread = Math.max(toMicros(max) - minMicros, 0);
+        return random -> minMicros + (spread == 0 ? 0 : (long) (random.nextDouble() * spread));
+    }
+
+    /**
+     * Log-normal distribution, which is a reasonable model of service latencies
+     * with a long tail
+     *
+     * @param median median latency
+     * @param sigma  shape parameter, 0.5 gives a moderate tail, 1.0 a heavy one
+     * @return the distribution
+     */
+    static LatencyDistribution logNormal(Duration median, double sigma) {
+        final double mu = Math.log(toMicros(median));
+        return random -> (long) Math.exp(mu + sigma * random.nextGaussian());
+    }
+
+    /**
+     * Distribution drawing from observed latencies, e.g. captured in production
+     *
+     * @param micros observed latencies in microseconds
+     * @return the distribution, or {@link #NONE} if nothing was observed
+     */
+    static LatencyDistribution empirical(long[] micros) {
+        if (micros.length == 0) {
+            return NONE;
+        }
+        final long[] observed = micros.clone();
+        return random -> observed[random.nextInt(observed.length)];
+    }
+
+    private static long toMicros(Duration duration) {
+        return duration.toNanos() / 1000;
+    }
+}
@@ -0,0 +1,287 @@
+/*
+ * Copyright Dansk Bibliotekscenter a/s. Licensed under GNU GPL v3
+ *  See license text at https://opensource.dbc.dk/licenses/gpl-3.0
+ */
+
+package dk.dbc.vipcore.simulator;
+
+import dk.dbc.commons.useragent.UserAgent;
+import dk.dbc.httpclient.FailSafeHttpClient;
+import dk.dbc.httpclient.HttpClient;
+import dk.dbc.vipcore.VipCoreConnector;
+import dk.dbc.vipcore.agencyinfo.VipCoreAgencyInfoConnector;
+import dk.dbc.vipcore.exception.VipCoreException;
+import dk.dbc.vipcore.libraryrules.VipCoreLibraryRulesConnector;
+import dk.dbc.vipcore.marshallers.LibraryRule;
+import dk.dbc.vipcore.marshallers.LibraryRulesRequest;
+import dk.dbc.vipcore.service.VipCoreServiceConnector;
+import jakarta.ws.rs.ProcessingException;
+import jakarta.ws.rs.client.Client;
+import jakarta.ws.rs.core.Response;
+import net.jodah.failsafe.RetryPolicy;
+import org.glassfish.jersey.client.ClientConfig;
+import org.glassfish.jersey.jackson.JacksonFeature;
+
+import java.io.PrintStream;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Load test driver pushing the connectors with many concurrent threads
+ * <p>
+ * Runs against an embedded {@link VipCoreSimulator} unless an endpoint is given.
+ * Configured through system properties:
+ * </p>
+ * <ul>
+ *     <li>threads - number of concurrent callers (64)</li>
+ *     <li>duration - ISO-8601 duration of the run (PT30S)</li>
+ *     <li>agencies - size of the simulated data set (5000)</li>
+ *     <li>cacheAge - connector cache age in hours, 0 disables caching (8)</li>
+ *     <li>hotFraction - fraction of agencies receiving 80% of the calls (0.2)</li>
+ *     <li>latencyMedianMs, latencySigma - log-normal simulator latency (15, 0.6)</li>
+ *     <li>errorRate - rate of each of 500, 502 and service_unavailable responses (0.0)</li>
+ *     <li>slowNodes - number of slow nodes out of 4, 5 times slower (0)</li>
+ *     <li>endpoint - base URL of a real VipCore to use instead of the simulator</li>
+ * </ul>
+ */
+public class VipCoreLoadDriver {
+    public enum Operation {
+        HAS_FEATURE(50), GET_INFORMATION(25), GET_AGENCY_NAME(20), GET_LIBRARIES(5);
+
+        private final int weight;
+
+        Operation(int weight) {
+            this.weight = weight;
+        }
+    }
+
+    private static final int TOTAL_WEIGHT = Arrays.stream(Operation.values()).mapToInt(o -> o.weight).sum();
+
+    private final VipCoreLibraryRulesConnector libraryRulesConnector;
+    private final VipCoreServiceConnector serviceConnector;
+    private final VipCoreAgencyInfoConnector agencyInfoConnector;
+    private final List<String> agencyIds;
+    private final int hotAgencies;
+    private final List<LibraryRulesRequest> ruleQueries;
+
+    public VipCoreLoadDriver(VipCoreLibraryRulesConnector libraryRulesConnector,
+                             VipCoreServiceConnector serviceConnector,
+                             VipCoreAgencyInfoConnector agencyInfoConnector,
+                             List<String> agencyIds, double hotFraction) {
+        this.libraryRulesConnector = libraryRulesConnector;
+        this.serviceConnector = serviceConnector;
+        this.agencyInfoConnector = agencyInfoConnector;
+        this.agencyIds = new ArrayList<>(agencyIds);
+        this.hotAgencies = Math.max(1, (int) (agencyIds.size() * hotFraction));
+        this.ruleQueries = List.of(
+                ruleQuery(VipCoreLibraryRulesConnector.Rule.IMS_LIBRARY, true, null),
+                ruleQuery(VipCoreLibraryRulesConnector.Rule.AUTH_ROOT, true, null),
+                ruleQuery(VipCoreLibraryRulesConnector.Rule.CATALOGING_TEMPLATE_SET, null, "dbc"));
+    }
+
+    public static void main(String[] args) throws Exception {
+        final int threads = Integer.getInteger("threads", 64);
+        final Duration duration = Duration.parse(System.getProperty("duration", "PT30S"));
+        final int cacheAge = Integer.getInteger("cacheAge", 8);
+        final double hotFraction = Double.parseDouble(System.getProperty("hotFraction", "0.2"));
+        final double errorRate = Double.parseDouble(System.getProperty("errorRate", "0.0"));
+
+        VipCoreSimulator simulator = null;
+        String endpoint = System.getProperty("endpoint");
+        final List<String> agencyIds;
+        if (endpoint == null) {
+            simulator = new VipCoreSimulator()
+                    .withAgencies(Integer.getInteger("agencies", 5000))
+                    .withLatency(LatencyDistribution.logNormal(
+                            Duration.ofMillis(Long.getLong("latencyMedianMs", 15)),
+                            Double.parseDouble(System.getProperty("latencySigma", "0.6"))))
+                    .withErrorRates(errorRate, errorRate, errorRate)
+                    .withNodes(4, Integer.getInteger("slowNodes", 0), 5.0)
+                    .start();
+            endpoint = simulator.getBaseUrl();
+            agencyIds = simulator.getAgencyIds();
+        } else {
+            agencyIds = Arrays.asList(System.getProperty("agencyIds", "710100,010100").split(","));
+        }
+
+        final FailSafeHttpClient failSafeHttpClient = createFailSafeHttpClient(threads);
+        try {
+            final VipCoreLoadDriver driver = new VipCoreLoadDriver(
+                    new VipCoreLibraryRulesConnector(failSafeHttpClient, endpoint, cacheAge, VipCoreConnector.TimingLogLevel.DEBUG),
+                    new VipCoreServiceConnector(failSafeHttpClient, endpoint, cacheAge, VipCoreConnector.TimingLogLevel.DEBUG),
+                    new VipCoreAgencyInfoConnector(failSafeHttpClient, endpoint, cacheAge, VipCoreConnector.TimingLogLevel.DEBUG),
+                    agencyIds, hotFraction);
+            driver.run(threads, duration).print(System.out);
+        } finally {
+            failSafeHttpClient.getClient().close();
+            if (simulator != null) {
+                simulator.stop();
+            }
+        }
+    }
+
+    /**
+     * Creates a client with a short retry delay, so that injected errors do not
+     * stall the callers for the 10 seconds of the default retry policy
+     *
+     * @param threads number of concurrent callers
+     * @return client for the connectors
+     */
+    public static FailSafeHttpClient createFailSafeHttpClient(int threads) {
+        final Client client = HttpClient.newClient(new ClientConfig()
+                .register(new JacksonFeature()));
+        final RetryPolicy<Response> retryPolicy = new RetryPolicy<Response>()
+                .handle(ProcessingException.class)
+                .handleResultIf(response -> response.getStatus() == 500
+                        || response.getStatus() == 502)
+                .withDelay(Duration.ofMillis(50))
+                .withMaxRetries(3);
+        return FailSafeHttpClient.create(client, new UserAgent("VipCoreLoadDriver-" + threads), retryPolicy);
+    }
+
+    public Report run(int threads, Duration duration) throws Exception {
+        final ExecutorService executor = Executors.newFixedThreadPool(threads);
+        final Map<String, LongAdder> errors = new ConcurrentHashMap<>();
+        final long start = System.nanoTime();
+        final long end = start + duration.toNanos();
+        try {
+            final List<Future<long[]>> workers = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                workers.add(executor.submit(() -> work(end, errors)));
+            }
+            final List<long[]> latencies = new ArrayList<>();
+            for (Future<long[]> worker : workers) {
+                latencies.add(worker.get());
+            }
+            return new Report(threads, System.nanoTime() - start, latencies, errors);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private long[] work(long end, Map<String, LongAdder> errors) {
+        long[] latencies = new long[1024];
+        int count = 0;
+        final ThreadLocalRandom random = ThreadLocalRandom.current();
+        while (System.nanoTime() < end) {
+            final Operation operation = nextOperation(random);
+            final String agencyId = nextAgencyId(random);
+            final long callStart = System.nanoTime();
+            try {
+                call(operation, agencyId, random);
+            } catch (VipCoreException | RuntimeException e) {
+                errors.computeIfAbsent(e.getClass().getSimpleName(), k -> new LongAdder()).increment();
+            }
+            if (count == latencies.length) {
+                latencies = Arrays.copyOf(latencies, count * 2);
+            }
+            latencies[count++] = System.nanoTime() - callStart;
+        }
+        return Arrays.copyOf(latencies, count);
+    }
+
+    private void call(Operation operation, String agencyId, ThreadLocalRandom random) throws VipCoreException {
+        switch (operation) {
+            case HAS_FEATURE:
+                libraryRulesConnector.hasFeature(agencyId, VipCoreLibraryRulesConnector.Rule.USE_ENRICHMENTS);
+                break;
+            case GET_INFORMATION:
+                serviceConnector.getInformation(agencyId);
+                break;
+            case GET_AGENCY_NAME:
+                agencyInfoConnector.getAgencyName(agencyId);
+                break;
+            default:
+                libraryRulesConnector.getLibraries(ruleQueries.get(random.nextInt(ruleQueries.size())));
+                break;
+        }
+    }
+
+    private Operation nextOperation(ThreadLocalRandom random) {
+        int draw = random.nextInt(TOTAL_WEIGHT);
+        for (Operation operation : Operation.values()) {
+            draw -= operation.weight;
+            if (draw < 0) {
+                return operation;
+            }
+        }
+        return Operation.HAS_FEATURE;
+    }
+
+    private String nextAgencyId(ThreadLocalRandom random) {
+        // 80% of the calls go to the hot set of agencies
+        if (random.nextDouble() < 0.8) {
+            return agencyIds.get(random.nextInt(hotAgencies));
+        }
+        return agencyIds.get(random.nextInt(agencyIds.size()));
+    }
+
+    private static LibraryRulesRequest ruleQuery(VipCoreLibraryRulesConnector.Rule rule, Boolean bool, String string) {
+        final LibraryRule libraryRule = new LibraryRule();
+        libraryRule.setName(rule.getValue());
+        libraryRule.setBool(bool);
+        libraryRule.setString(string);
+        final LibraryRulesRequest libraryRulesRequest = new LibraryRulesRequest();
+        libraryRulesRequest.setLibraryRule(Collections.singletonList(libraryRule));
+        return libraryRulesRequest;
+    }
+
+    public static class Report {
+        private final int threads;
+        private final long elapsedNanos;
+        private final long[] latencies;
+        private final Map<String, Long> errors = new TreeMap<>();
+
+        Report(int threads, long elapsedNanos, List<long[]> latencies, Map<String, LongAdder> errors) {
+            this.threads = threads;
+            this.elapsedNanos = elapsedNanos;
+            this.latencies = latencies.stream().flatMapToLong(Arrays::stream).sorted().toArray();
+            errors.forEach((type, count) -> this.errors.put(type, count.sum()));
+        }
+
+        public long getCalls() {
+            return latencies.length;
+        }
+
+        public double getThroughput() {
+            return latencies.length / (elapsedNanos / 1e9);
+        }
+
+        public Map<String, Long> getErrors() {
+            return errors;
+        }
+
+        /**
+         * @param percentile percentile between 0 and 100
+         * @return call latency at the percentile in microseconds
+         */
+        public long getPercentileMicros(double percentile) {
+            if (latencies.length == 0) {
+                return 0;
+            }
+            final int index = (int) Math.ceil(percentile / 100.0 * latencies.length) - 1;
+            return latencies[Math.min(Math.max(index, 0), latencies.length - 1)] / 1000;
+        }
+
+        public void print(PrintStream out) {
+            out.printf("threads:     %d%n", threads);
+            out.printf("calls:       %d in %.1f s%n", getCalls(), elapsedNanos / 1e9);
+            out.printf("throughput:  %.1f calls/s%n", getThroughput());
+            out.printf("latency us:  p50=%d p90=%d p99=%d p99.9=%d max=%d%n",
+                    getPercentileMicros(50), getPercentileMicros(90), getPercentileMicros(99),
+                    getPercentileMicros(99.9), getPercentileMicros(100));
+            out.printf("errors:      %s%n", errors);
+        }
+    }
+}
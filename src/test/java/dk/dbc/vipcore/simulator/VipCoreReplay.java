@@ -0,0 +1,233 @@
+/*
+ * Copyright Dansk Bibliotekscenter a/s. Licensed under GNU GPL v3
+ *  See license text at https://opensource.dbc.dk/licenses/gpl-3.0
+ */
+
+package dk.dbc.vipcore.simulator;
+
+import dk.dbc.httpclient.FailSafeHttpClient;
+import dk.dbc.vipcore.VipCoreConnector;
+import dk.dbc.vipcore.agencyinfo.VipCoreAgencyInfoConnector;
+import dk.dbc.vipcore.capture.CallCapture;
+import dk.dbc.vipcore.capture.CapturedCall;
+import dk.dbc.vipcore.exception.VipCoreException;
+import dk.dbc.vipcore.libraryrules.VipCoreLibraryRulesConnector;
+import dk.dbc.vipcore.marshallers.LibraryRule;
+import dk.dbc.vipcore.marshallers.LibraryRulesRequest;
+import dk.dbc.vipcore.service.VipCoreServiceConnector;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Deterministic replay of a production workload captured by {@link CallCapture}
+ * <p>
+ * Every captured call is made again, to the same agency and at the same offset from the
+ * start of the capture, optionally sped up. Running the replay against an embedded
+ * {@link VipCoreSimulator} serving the captured agencies with the captured request latencies
+ * shows how cache sizes, TTLs and concurrency settings perform on the actual access pattern.
+ * Configured through system properties:
+ * </p>
+ * <ul>
+ *     <li>capture - capture file to replay (required)</li>
+ *     <li>speed - replay speed, 2.0 replays twice as fast as captured (1.0)</li>
+ *     <li>cacheAge - connector cache age in hours, 0 disables caching (8)</li>
+ *     <li>endpoint - base URL of a real VipCore to use instead of the simulator</li>
+ * </ul>
+ * <p>
+ * Rule queries are only captured as hashes, so each distinct query is replayed as one of
+ * a few representative queries. Calls of bulk operations are not replayed.
+ * </p>
+ */
+public class VipCoreReplay {
+    private final VipCoreLibraryRulesConnector libraryRulesConnector;
+    private final VipCoreServiceConnector serviceConnector;
+    private final VipCoreAgencyInfoConnector agencyInfoConnector;
+    private final List<CapturedCall> calls;
+    private final List<LibraryRulesRequest> ruleQueries;
+
+    public VipCoreReplay(VipCoreLibraryRulesConnector libraryRulesConnector,
+                         VipCoreServiceConnector serviceConnector,
+                         VipCoreAgencyInfoConnector agencyInfoConnector,
+                         List<CapturedCall> calls) {
+        this.libraryRulesConnector = libraryRulesConnector;
+        this.serviceConnector = serviceConnector;
+        this.agencyInfoConnector = agencyInfoConnector;
+        this.calls = new ArrayList<>(calls);
+        this.calls.sort(Comparator.comparingLong(CapturedCall::getTimestamp));
+        this.ruleQueries = List.of(
+                ruleQuery(VipCoreLibraryRulesConnector.Rule.IMS_LIBRARY, true, null),
+                ruleQuery(VipCoreLibraryRulesConnector.Rule.AUTH_ROOT, true, null),
+                ruleQuery(VipCoreLibraryRulesConnector.Rule.CATALOGING_TEMPLATE_SET, null, "dbc"));
+    }
+
+    public static void main(String[] args) throws Exception {
+        final Path capture = Paths.get(System.getProperty("capture"));
+        final double speed = Double.parseDouble(System.getProperty("speed", "1.0"));
+        final int cacheAge = Integer.getInteger("cacheAge", 8);
+        final List<CapturedCall> calls = CallCapture.read(capture);
+
+        VipCoreSimulator simulator = null;
+        String endpoint = System.getProperty("endpoint");
+        if (endpoint == null) {
+            simulator = standIn(calls).start();
+            endpoint = simulator.getBaseUrl();
+        }
+
+        final FailSafeHttpClient failSafeHttpClient = VipCoreLoadDriver.createFailSafeHttpClient(64);
+        try {
+            final VipCoreReplay replay = new VipCoreReplay(
+                    new VipCoreLibraryRulesConnector(failSafeHttpClient, endpoint, cacheAge, VipCoreConnector.TimingLogLevel.DEBUG),
+                    new VipCoreServiceConnector(failSafeHttpClient, endpoint, cacheAge, VipCoreConnector.TimingLogLevel.DEBUG),
+                    new VipCoreAgencyInfoConnector(failSafeHttpClient, endpoint, cacheAge, VipCoreConnector.TimingLogLevel.DEBUG),
+                    calls);
+            replay.run(speed).print(System.out);
+            System.out.printf("captured:    %d calls, %d requests%n",
+                    calls.size(), calls.stream().filter(call -> !call.isCacheHit()).count());
+            if (simulator != null) {
+                System.out.printf("replayed:    %d requests%n",
+                        simulator.getRequestCount(VipCoreSimulator.LIBRARY_RULES_PATH)
+                                + simulator.getRequestCount(VipCoreSimulator.SERVICE_PATH)
+                                + simulator.getRequestCount(VipCoreSimulator.AGENCY_INFO_PATH));
+            }
+        } finally {
+            failSafeHttpClient.getClient().close();
+            if (simulator != null) {
+                simulator.stop();
+            }
+        }
+    }
+
+    /**
+     * @param calls captured calls
+     * @return simulator serving the captured agencies with the captured request latencies
+     */
+    public static VipCoreSimulator standIn(List<CapturedCall> calls) {
+        final Set<String> agencyIds = new LinkedHashSet<>();
+        final List<Long> latencies = new ArrayList<>();
+        for (CapturedCall call : calls) {
+            // Agencies unknown in production stay unknown
+            if (call.getKey() != null && call.getStatus() != 404) {
+                agencyIds.add(call.getKey());
+            }
+            if (!call.isCacheHit()) {
+                latencies.add(call.getRequestMicros());
+            }
+        }
+        return new VipCoreSimulator()
+                .withAgencies(0)
+                .withAgencyIds(agencyIds)
+                .withLatency(LatencyDistribution.empirical(latencies.stream().mapToLong(Long::longValue).toArray()));
+    }
+
+    /**
+     * Replays the calls, each on its own virtual thread
+     *
+     * @param speed replay speed relative to the captured arrival times
+     * @return latencies and errors of the replayed calls, with the peak number of concurrent calls as threads
+     * @throws Exception if the replay was interrupted
+     */
+    public VipCoreLoadDriver.Report run(double speed) throws Exception {
+        final Map<String, LongAdder> errors = new ConcurrentHashMap<>();
+        final AtomicInteger inFlight = new AtomicInteger();
+        final AtomicInteger peak = new AtomicInteger();
+        final List<Future<Long>> replayed = new ArrayList<>();
+        final long start = System.nanoTime();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            if (!calls.isEmpty()) {
+                final long first = calls.get(0).getTimestamp();
+                for (CapturedCall call : calls) {
+                    if (!isReplayable(call)) {
+                        continue;
+                    }
+                    final long due = start + (long) (TimeUnit.MILLISECONDS.toNanos(call.getTimestamp() - first) / speed);
+                    final long wait = due - System.nanoTime();
+                    if (wait > 0) {
+                        TimeUnit.NANOSECONDS.sleep(wait);
+                    }
+                    replayed.add(executor.submit(() -> {
+                        peak.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+                        final long callStart = System.nanoTime();
+                        try {
+                            call(call);
+                        } catch (VipCoreException | RuntimeException e) {
+                            errors.computeIfAbsent(e.getClass().getSimpleName(), k -> new LongAdder()).increment();
+                        } finally {
+                            inFlight.decrementAndGet();
+                        }
+                        return System.nanoTime() - callStart;
+                    }));
+                }
+            }
+        }
+        final long[] latencies = new long[replayed.size()];
+        for (int i = 0; i < latencies.length; i++) {
+            latencies[i] = replayed.get(i).get();
+        }
+        return new VipCoreLoadDriver.Report(peak.get(), System.nanoTime() - start,
+                Collections.singletonList(latencies), errors);
+    }
+
+    private boolean isReplayable(CapturedCall call) {
+        switch (call.getOperation()) {
+            case "hasFeature":
+            case "getAllowedLibraryRules":
+            case "getLibraryRulesByAgencyId":
+            case "getInformation":
+            case "getAgencyName":
+                return call.getKey() != null;
+            case "getLibraries":
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private void call(CapturedCall call) throws VipCoreException {
+        switch (call.getOperation()) {
+            case "hasFeature":
+                libraryRulesConnector.hasFeature(call.getKey(), VipCoreLibraryRulesConnector.Rule.USE_ENRICHMENTS);
+                break;
+            case "getAllowedLibraryRules":
+                libraryRulesConnector.getAllowedLibraryRules(call.getKey());
+                break;
+            case "getLibraryRulesByAgencyId":
+                libraryRulesConnector.getLibraryRulesByAgencyId(call.getKey());
+                break;
+            case "getInformation":
+                serviceConnector.getInformation(call.getKey());
+                break;
+            case "getAgencyName":
+                agencyInfoConnector.getAgencyName(call.getKey());
+                break;
+            default:
+                final int query = call.getKey() == null ? 0 : Math.floorMod(call.getKey().hashCode(), ruleQueries.size());
+                libraryRulesConnector.getLibraries(ruleQueries.get(query));
+                break;
+        }
+    }
+
+    private static LibraryRulesRequest ruleQuery(VipCoreLibraryRulesConnector.Rule rule, Boolean bool, String string) {
+        final LibraryRule libraryRule = new LibraryRule();
+        libraryRule.setName(rule.getValue());
+        libraryRule.setBool(bool);
+        libraryRule.setString(string);
+        final LibraryRulesRequest libraryRulesRequest = new LibraryRulesRequest();
+        libraryRulesRequest.setLibraryRule(Collections.singletonList(libraryRule));
+        return libraryRulesRequest;
+    }
+}
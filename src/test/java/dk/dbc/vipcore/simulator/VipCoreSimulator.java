@@ -0,0 +1,445 @@
+/*
+ * Copyright Dansk Bibliotekscenter a/s. Licensed under GNU GPL v3
+ *  See license text at https://opensource.dbc.dk/licenses/gpl-3.0
+ */
+
+package dk.dbc.vipcore.simulator;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Embeddable stand-in for the VipCore service
+ * <p>
+ * Serves the libraryrules, service (information) and agencyinfo endpoints for a generated
+ * data set of agencies, derived from the recorded response bodies in src/test/resources/__files.
+ * Latency, error rates and slow cluster nodes are configurable, making the simulator usable
+ * both in functional tests and for offline load testing, see {@link VipCoreLoadDriver}.
+ * </p>
+ * <pre>
+ *    VipCoreSimulator simulator = new VipCoreSimulator()
+ *            .withAgencies(5000)
+ *            .withLatency(LatencyDistribution.logNormal(Duration.ofMillis(20), 0.6))
+ *            .withErrorRates(0.001, 0.001, 0.0005)
+ *            .withNodes(4, 1, 5.0)
+ *            .start();
+ *    ...
+ *    simulator.stop();
+ * </pre>
+ */
+public class VipCoreSimulator {
+    private static final Logger LOGGER = LoggerFactory.getLogger(VipCoreSimulator.class);
+
+    public static final String LIBRARY_RULES_PATH = "/1.0/api/libraryrules";
+    public static final String SERVICE_PATH = "/1.0/api/service";
+    public static final String AGENCY_INFO_PATH = "/1.0/api/agencyinfo";
+
+    private static final String PUBLIC_LIBRARY_RULES_TEMPLATE = "body-1.0-api-libraryrules-NYAR7.json";
+    private static final String OTHER_LIBRARY_RULES_TEMPLATE = "body-1.0-api-libraryrules-fJL8Z.json";
+    private static final String SERVICE_TEMPLATE = "body-1.0-api-service-6vNkY.json";
+    private static final String AGENCY_INFO_TEMPLATE = "body-1.0-api-agencyinfo-a1iiy.json";
+
+    private static final String[] CITIES = {
+            "København", "Aarhus", "Odense", "Aalborg", "Esbjerg", "Randers", "Kolding", "Horsens",
+            "Vejle", "Roskilde", "Herning", "Silkeborg", "Næstved", "Fredericia", "Viborg", "Køge"
+    };
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final Map<String, SimulatedAgency> agencies = new LinkedHashMap<>();
+    private final Map<String, byte[]> ruleQueryResponses = new ConcurrentHashMap<>();
+    private final Map<String, AtomicLong> requestCounts = new ConcurrentHashMap<>();
+    private final AtomicLong requestSequence = new AtomicLong();
+
+    private int agencyCount = 1000;
+    private List<String> extraAgencyIds = List.of();
+    private long seed = 42;
+    private LatencyDistribution latency = LatencyDistribution.NONE;
+    private double http500Rate;
+    private double http502Rate;
+    private double serviceUnavailableRate;
+    private int nodes = 1;
+    private int slowNodes;
+    private double slowNodeFactor = 1.0;
+
+    private HttpServer server;
+    private ExecutorService executor;
+
+    /**
+     * @param agencyCount number of agencies in the generated data set, in addition to
+     *                    the recorded agencies 710100 and 010100
+     * @return this simulator
+     */
+    public VipCoreSimulator withAgencies(int agencyCount) {
+        this.agencyCount = agencyCount;
+        return this;
+    }
+
+    /**
+     * @param agencyIds agencies added to the generated data set, e.g. the agencies of a
+     *                  captured production workload. Ids which are not six digits are left out
+     * @return this simulator
+     */
+    public VipCoreSimulator withAgencyIds(Collection<String> agencyIds) {
+        this.extraAgencyIds = new ArrayList<>(agencyIds);
+        return this;
+    }
+
+    /**
+     * @param seed seed for generating the data set
+     * @return this simulator
+     */
+    public VipCoreSimulator withSeed(long seed) {
+        this.seed = seed;
+        return this;
+    }
+
+    public VipCoreSimulator withLatency(LatencyDistribution latency) {
+        this.latency = latency;
+        return this;
+    }
+
+    /**
+     * @param http500Rate            fraction of requests answered with status 500
+     * @param http502Rate            fraction of requests answered with status 502
+     * @param serviceUnavailableRate fraction of requests answered with service_unavailable
+     * @return this simulator
+     */
+    public VipCoreSimulator withErrorRates(double http500Rate, double http502Rate, double serviceUnavailableRate) {
+        this.http500Rate = http500Rate;
+        this.http502Rate = http502Rate;
+        this.serviceUnavailableRate = serviceUnavailableRate;
+        return this;
+    }
+
+    /**
+     * Requests are distributed round-robin over a number of simulated cluster nodes,
+     * some of which may be slow
+     *
+     * @param nodes          number of nodes
+     * @param slowNodes      number of slow nodes among them
+     * @param slowNodeFactor latency multiplier of slow nodes
+     * @return this simulator
+     */
+    public VipCoreSimulator withNodes(int nodes, int slowNodes, double slowNodeFactor) {
+        if (nodes < 1 || slowNodes < 0 || slowNodes > nodes) {
+            throw new IllegalArgumentException("invalid node configuration");
+        }
+        this.nodes = nodes;
+        this.slowNodes = slowNodes;
+        this.slowNodeFactor = slowNodeFactor;
+        return this;
+    }
+
+    public VipCoreSimulator start() {
+        generateAgencies();
+        try {
+            server = HttpServer.create(new InetSocketAddress("localhost", 0), 1024);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        executor = Executors.newCachedThreadPool();
+        server.setExecutor(executor);
+        server.createContext(LIBRARY_RULES_PATH, this::handle);
+        server.createContext(SERVICE_PATH, this::handle);
+        server.createContext(AGENCY_INFO_PATH, this::handle);
+        server.start();
+        LOGGER.info("VipCore simulator serving {} agencies at {}", agencies.size(), getBaseUrl());
+        return this;
+    }
+
+    public void stop() {
+        if (server != null) {
+            server.stop(0);
+            executor.shutdownNow();
+            server = null;
+        }
+    }
+
+    public String getBaseUrl() {
+        return "http://localhost:" + server.getAddress().getPort();
+    }
+
+    public List<String> getAgencyIds() {
+        return Collections.unmodifiableList(new ArrayList<>(agencies.keySet()));
+    }
+
+    /**
+     * @param path endpoint path, e.g. {@link #LIBRARY_RULES_PATH}
+     * @return number of requests received on the path
+     */
+    public long getRequestCount(String path) {
+        final AtomicLong count = requestCounts.get(path);
+        return count == null ? 0 : count.get();
+    }
+
+    public void resetRequestCounts() {
+        requestCounts.clear();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        final String path = exchange.getHttpContext().getPath();
+        requestCounts.computeIfAbsent(path, k -> new AtomicLong()).incrementAndGet();
+        final int node = (int) (requestSequence.getAndIncrement() % nodes);
+        try {
+            final JsonNode request = readRequest(exchange);
+            final ThreadLocalRandom random = ThreadLocalRandom.current();
+            long delayMicros = latency.sampleMicros(random);
+            if (node < slowNodes) {
+                delayMicros = (long) (delayMicros * slowNodeFactor);
+            }
+            if (delayMicros > 0) {
+                TimeUnit.MICROSECONDS.sleep(delayMicros);
+            }
+
+            final double draw = random.nextDouble();
+            if (draw < http500Rate) {
+                respond(exchange, node, 500, error("internal_server_error"));
+            } else if (draw < http500Rate + http502Rate) {
+                respond(exchange, node, 502, error("bad_gateway"));
+            } else if (draw < http500Rate + http502Rate + serviceUnavailableRate) {
+                respond(exchange, node, 503, error("service_unavailable"));
+            } else if (request == null) {
+                respond(exchange, node, 400, error("error_in_request"));
+            } else {
+                serve(exchange, node, path, request);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void serve(HttpExchange exchange, int node, String path, JsonNode request) throws IOException {
+        if (LIBRARY_RULES_PATH.equals(path) && request.hasNonNull("libraryRule")) {
+            respond(exchange, node, 200, ruleQueryResponses.computeIfAbsent(
+                    request.get("libraryRule").toString(), k -> evaluateRuleQuery(request.get("libraryRule"))));
+            return;
+        }
+        final String agencyId = request.path("agencyId").asText("");
+        if (!agencyId.matches("\\d{6}")) {
+            respond(exchange, node, 400, error("error_in_request"));
+            return;
+        }
+        final SimulatedAgency agency = agencies.get(agencyId);
+        if (agency == null) {
+            respond(exchange, node, 404, error("agency_not_found"));
+            return;
+        }
+        switch (path) {
+            case LIBRARY_RULES_PATH:
+                respond(exchange, node, 200, agency.libraryRulesResponse);
+                break;
+            case SERVICE_PATH:
+                respond(exchange, node, 200, agency.serviceResponse);
+                break;
+            default:
+                respond(exchange, node, 200, agency.agencyInfoResponse);
+                break;
+        }
+    }
+
+    private JsonNode readRequest(HttpExchange exchange) {
+        try (InputStream body = exchange.getRequestBody()) {
+            final JsonNode request = objectMapper.readTree(body);
+            return request != null && request.isObject() ? request : null;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private void respond(HttpExchange exchange, int node, int status, byte[] body) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.getResponseHeaders().set("Cluster-Node", "vipcore-" + node);
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    private byte[] evaluateRuleQuery(JsonNode ruleQuery) {
+        final ObjectNode response = objectMapper.createObjectNode();
+        final ArrayNode libraryRules = objectMapper.createArrayNode();
+        for (SimulatedAgency agency : agencies.values()) {
+            if (agency.matches(ruleQuery)) {
+                libraryRules.add(agency.libraryRules);
+            }
+        }
+        if (!libraryRules.isEmpty()) {
+            response.set("libraryRules", libraryRules);
+        }
+        return toBytes(response);
+    }
+
+    private void generateAgencies() {
+        agencies.clear();
+        ruleQueryResponses.clear();
+        final Random random = new Random(seed);
+        final ObjectNode publicLibraryRules = (ObjectNode) readTemplate(PUBLIC_LIBRARY_RULES_TEMPLATE)
+                .get("libraryRules").get(0);
+        final ObjectNode otherLibraryRules = (ObjectNode) readTemplate(OTHER_LIBRARY_RULES_TEMPLATE)
+                .get("libraryRules").get(0);
+        final JsonNode information = readTemplate(SERVICE_TEMPLATE).get("information");
+        final JsonNode agencyInfo = readTemplate(AGENCY_INFO_TEMPLATE);
+
+        addAgency("710100", publicLibraryRules.deepCopy(), information, agencyInfo, "Københavns Biblioteker", "København", null);
+        addAgency("010100", otherLibraryRules.deepCopy(), information, agencyInfo, "Dansk BiblioteksCenter", "Ballerup", null);
+
+        for (String agencyId : extraAgencyIds) {
+            if (agencyId.matches("\\d{6}") && !agencies.containsKey(agencyId)) {
+                final String city = CITIES[random.nextInt(CITIES.length)];
+                addAgency(agencyId, publicLibraryRules.deepCopy(), information, agencyInfo,
+                        city + " Bibliotek " + agencyId, city, random);
+            }
+        }
+
+        int candidate = 700000;
+        while (agencies.size() < agencyCount + 2) {
+            candidate += 100;
+            final String agencyId = String.format("%06d", candidate);
+            if (agencies.containsKey(agencyId)) {
+                continue;
+            }
+            final String city = CITIES[random.nextInt(CITIES.length)];
+            final ObjectNode libraryRules = publicLibraryRules.deepCopy();
+            addAgency(agencyId, libraryRules, information, agencyInfo, city + " Bibliotek " + agencyId, city, random);
+        }
+    }
+
+    private void addAgency(String agencyId, ObjectNode libraryRules, JsonNode informationTemplate,
+                           JsonNode agencyInfoTemplate, String name, String city, Random random) {
+        libraryRules.put("agencyId", agencyId);
+        if (random != null) {
+            // Vary the rules commonly used in rule queries to get realistic result sizes
+            for (JsonNode rule : libraryRules.get("libraryRule")) {
+                final ObjectNode libraryRule = (ObjectNode) rule;
+                switch (libraryRule.get("name").asText()) {
+                    case "ims_library":
+                        libraryRule.put("bool", random.nextDouble() < 0.05);
+                        break;
+                    case "part_of_danbib":
+                    case "part_of_bibliotek_dk":
+                        libraryRule.put("bool", random.nextDouble() < 0.8);
+                        break;
+                    case "auth_root":
+                        libraryRule.put("bool", random.nextDouble() < 0.002);
+                        break;
+                    case "cataloging_template_set":
+                        libraryRule.put("string", random.nextDouble() < 0.9 ? "fbs" : "dbc");
+                        break;
+                    default:
+                        break;
+                }
+            }
+        }
+        final ObjectNode libraryRulesResponse = objectMapper.createObjectNode();
+        libraryRulesResponse.putArray("libraryRules").add(libraryRules);
+
+        final ObjectNode information = informationTemplate.deepCopy();
+        information.put("agencyId", agencyId);
+        information.put("branchId", agencyId);
+        information.put("sender", agencyId);
+        information.put("agencyName", name);
+        information.putObject("branchName").put("value", name);
+        information.put("city", city);
+        final ObjectNode serviceResponse = objectMapper.createObjectNode();
+        serviceResponse.set("information", information);
+
+        final ObjectNode agencyInfoResponse = agencyInfoTemplate.deepCopy();
+        for (JsonNode single : agencyInfoResponse.get("agencyInfo")) {
+            final ObjectNode pickupAgency = (ObjectNode) single.get("pickupAgency");
+            pickupAgency.put("agencyId", agencyId);
+            pickupAgency.put("agencyName", name);
+        }
+
+        agencies.put(agencyId, new SimulatedAgency(libraryRules,
+                toBytes(libraryRulesResponse), toBytes(serviceResponse), toBytes(agencyInfoResponse)));
+    }
+
+    private JsonNode readTemplate(String fileName) {
+        try (InputStream in = VipCoreSimulator.class.getResourceAsStream("/__files/" + fileName)) {
+            if (in == null) {
+                throw new IllegalStateException("Missing recorded body " + fileName);
+            }
+            return objectMapper.readTree(in);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private byte[] error(String error) {
+        return ("{\"error\":\"" + error + "\"}").getBytes(StandardCharsets.UTF_8);
+    }
+
+    private byte[] toBytes(JsonNode node) {
+        try {
+            return objectMapper.writeValueAsBytes(node);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static final class SimulatedAgency {
+        private final JsonNode libraryRules;
+        private final byte[] libraryRulesResponse;
+        private final byte[] serviceResponse;
+        private final byte[] agencyInfoResponse;
+
+        private SimulatedAgency(JsonNode libraryRules, byte[] libraryRulesResponse,
+                                byte[] serviceResponse, byte[] agencyInfoResponse) {
+            this.libraryRules = libraryRules;
+            this.libraryRulesResponse = libraryRulesResponse;
+            this.serviceResponse = serviceResponse;
+            this.agencyInfoResponse = agencyInfoResponse;
+        }
+
+        private boolean matches(JsonNode ruleQuery) {
+            for (JsonNode queried : ruleQuery) {
+                if (!hasRule(queried)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private boolean hasRule(JsonNode queried) {
+            final Iterator<JsonNode> rules = libraryRules.get("libraryRule").elements();
+            while (rules.hasNext()) {
+                final JsonNode rule = rules.next();
+                if (rule.path("name").equals(queried.path("name"))) {
+                    return queried.has("bool")
+                            ? rule.path("bool").equals(queried.get("bool"))
+                            : rule.path("string").equals(queried.path("string"));
+                }
+            }
+            return false;
+        }
+    }
+}
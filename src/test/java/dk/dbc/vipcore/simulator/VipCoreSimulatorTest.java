@@ -0,0 +1,112 @@
+package dk.dbc.vipcore.simulator;
+
+import dk.dbc.httpclient.FailSafeHttpClient;
+import dk.dbc.vipcore.VipCoreConnector;
+import dk.dbc.vipcore.agencyinfo.VipCoreAgencyInfoConnector;
+import dk.dbc.vipcore.exception.AgencyNotFoundException;
+import dk.dbc.vipcore.exception.ErrorInRequestException;
+import dk.dbc.vipcore.exception.ServiceUnavailableException;
+import dk.dbc.vipcore.exception.VipCoreException;
+import dk.dbc.vipcore.libraryrules.VipCoreLibraryRulesConnector;
+import dk.dbc.vipcore.marshallers.LibraryRule;
+import dk.dbc.vipcore.marshallers.LibraryRulesRequest;
+import dk.dbc.vipcore.service.VipCoreServiceConnector;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.hasItem;
+import static org.hamcrest.Matchers.lessThan;
+
+class VipCoreSimulatorTest {
+    private static VipCoreSimulator simulator;
+    private static FailSafeHttpClient failSafeHttpClient;
+    private static VipCoreLibraryRulesConnector libraryRulesConnector;
+    private static VipCoreServiceConnector serviceConnector;
+    private static VipCoreAgencyInfoConnector agencyInfoConnector;
+
+    @BeforeAll
+    static void startSimulator() {
+        simulator = new VipCoreSimulator()
+                .withAgencies(2000)
+                .withLatency(LatencyDistribution.uniform(Duration.ZERO, Duration.ofMillis(2)))
+                .start();
+        failSafeHttpClient = VipCoreLoadDriver.createFailSafeHttpClient(1);
+        libraryRulesConnector = new VipCoreLibraryRulesConnector(failSafeHttpClient, simulator.getBaseUrl(), 0, VipCoreConnector.TimingLogLevel.DEBUG);
+        serviceConnector = new VipCoreServiceConnector(failSafeHttpClient, simulator.getBaseUrl(), 0, VipCoreConnector.TimingLogLevel.DEBUG);
+        agencyInfoConnector = new VipCoreAgencyInfoConnector(failSafeHttpClient, simulator.getBaseUrl(), 0, VipCoreConnector.TimingLogLevel.DEBUG);
+    }
+
+    @AfterAll
+    static void stopSimulator() {
+        failSafeHttpClient.getClient().close();
+        simulator.stop();
+    }
+
+    @Test
+    void servesGeneratedAgencies() throws VipCoreException {
+        final List<String> agencyIds = simulator.getAgencyIds();
+        assertThat(agencyIds.size(), is(2002));
+
+        final String agencyId = agencyIds.get(1500);
+        assertThat(libraryRulesConnector.getLibraryRulesByAgencyId(agencyId).getAgencyId(), is(agencyId));
+        assertThat(serviceConnector.getInformation(agencyId).getAgencyId(), is(agencyId));
+        assertThat(agencyInfoConnector.getAgencyName(agencyId).endsWith(agencyId), is(true));
+        assertThat(libraryRulesConnector.hasFeature("010100", VipCoreLibraryRulesConnector.Rule.AUTH_ROOT), is(true));
+    }
+
+    @Test
+    void evaluatesRuleQueries() throws VipCoreException {
+        final LibraryRule imsLibrary = new LibraryRule();
+        imsLibrary.setName(VipCoreLibraryRulesConnector.Rule.IMS_LIBRARY.getValue());
+        imsLibrary.setBool(true);
+        final LibraryRulesRequest libraryRulesRequest = new LibraryRulesRequest();
+        libraryRulesRequest.setLibraryRule(Collections.singletonList(imsLibrary));
+
+        final Set<String> imsLibraries = libraryRulesConnector.getLibraries(libraryRulesRequest);
+
+        assertThat(imsLibraries, hasItem("710100"));
+        assertThat(imsLibraries.size(), greaterThan(10));
+        assertThat(imsLibraries.size(), lessThan(500));
+    }
+
+    @Test
+    void errors() {
+        Assertions.assertThrows(AgencyNotFoundException.class, () -> serviceConnector.getInformation("000000"));
+        Assertions.assertThrows(ErrorInRequestException.class, () -> agencyInfoConnector.getAgencyName("sdfsdf"));
+    }
+
+    @Test
+    void injectedServiceUnavailable() {
+        final VipCoreSimulator failing = new VipCoreSimulator()
+                .withAgencies(10)
+                .withErrorRates(0, 0, 1.0)
+                .start();
+        try {
+            final VipCoreServiceConnector connector = new VipCoreServiceConnector(failSafeHttpClient, failing.getBaseUrl(), 0, VipCoreConnector.TimingLogLevel.DEBUG);
+            Assertions.assertThrows(ServiceUnavailableException.class, () -> connector.getInformation("710100"));
+        } finally {
+            failing.stop();
+        }
+    }
+
+    @Test
+    void loadDriver() throws Exception {
+        final VipCoreLoadDriver driver = new VipCoreLoadDriver(libraryRulesConnector, serviceConnector,
+                agencyInfoConnector, simulator.getAgencyIds(), 0.2);
+
+        final VipCoreLoadDriver.Report report = driver.run(8, Duration.ofSeconds(1));
+
+        assertThat(report.getCalls(), greaterThan(0L));
+        assertThat(report.getErrors().isEmpty(), is(true));
+    }
+}